@@ -358,7 +358,7 @@ public abstract class AbstractHBCIJob {
     private SEG createJobSegment(int segnum) {
         SEG seg;
         try {
-            seg = new SEG(getName(), getName(), null, 0, passport.getSyntaxDocument());
+            seg = new SEG(getName(), getName(), null, 0, passport.getSyntaxSpec().getSyntaxModel());
             getLowlevelParams().forEach((key, value) -> {
                 seg.propagateValue(key, value,
                     SyntaxElement.TRY_TO_CREATE,
@@ -697,47 +697,14 @@ public abstract class AbstractHBCIJob {
         try {
             this.skip = false;
             this.loopCount++;
-            HashMap<String, String> result = status.getData();
-
-            // nachsehen, welche antwortsegmente ueberhaupt
-            // zu diesem task gehoeren
-
-            // res-num --> segmentheader (wird für sortierung der
-            // antwort-segmente benötigt)
-            HashMap<Integer, String> keyHeaders = new HashMap<>();
-            status.getData().keySet().forEach(key -> {
-                if (key.startsWith("GVRes") && key.endsWith(".SegHead.ref")) {
-
-                    String segref = result.get(key);
-                    if ((Integer.parseInt(segref)) - offset == idx) {
-                        // nummer des antwortsegments ermitteln
-                        int resnum = 0;
-                        if (key.startsWith("GVRes_")) {
-                            resnum = Integer.parseInt(key.substring(key.indexOf('_') + 1, key.indexOf('.')));
-                        }
-
-                        keyHeaders.put(
-                            new Integer(resnum),
-                            key.substring(0, key.length() - (".SegHead.ref").length()));
-                    }
-                }
-            });
-
-            saveBasicValues(result, idx + offset);
+            saveBasicValues(status, idx + offset);
             saveReturnValues(status, idx + offset);
 
-            // segment-header-namen der antwortsegmente in der reihenfolge des
-            // eintreffens sortieren
-            Object[] resnums = keyHeaders.keySet().toArray(new Object[0]);
-            Arrays.sort(resnums);
-
-            // alle antwortsegmente durchlaufen
-            for (Object resnum : resnums) {
-                // dabei reihenfolge des eintreffens beachten
-                String header = keyHeaders.get(resnum);
-
-                extractPlaintextResults(status, header, contentCounter);
-                extractResults(status, header, contentCounter++);
+            // alle antwortsegmente durchlaufen, die zu diesem task gehoeren;
+            // dabei reihenfolge des eintreffens beachten
+            for (HBCIMsgStatus.ResponseSegment segment : status.getResponseSegments(idx + offset)) {
+                extractPlaintextResults(segment, contentCounter);
+                extractResults(status, segment.getHeader(), contentCounter++);
                 // der contentCounter wird fuer jedes antwortsegment um 1 erhoeht
             }
         } catch (Exception e) {
@@ -749,15 +716,14 @@ public abstract class AbstractHBCIJob {
     /* wenn wenigstens ein HBCI-Rückgabewert für den aktuellen GV gefunden wurde,
        so werden im outStore zusätzlich die entsprechenden Dialog-Parameter
        gespeichert (Property @c basic.*) */
-    private void saveBasicValues(HashMap<String, String> result, int ref) {
+    private void saveBasicValues(HBCIMsgStatus status, int ref) {
         // wenn noch keine basic-daten gespeichert sind
         if (jobResult.getDialogId() == null) {
-            // Pfad des originalen MsgHead-Segmentes holen und um "orig_" ergaenzen,
-            // um den Key fuer die entsprechenden Daten in das result-Property zu erhalten
-            String msgheadName = "orig_" + result.get("1");
+            // Pfad des MsgHead-Segmentes der gesendeten nachricht holen
+            String msgheadName = status.getElementPath("1");
 
-            jobResult.storeResult("basic.dialogid", result.get(msgheadName + ".dialogid"));
-            jobResult.storeResult("basic.msgnum", result.get(msgheadName + ".msgnum"));
+            jobResult.storeResult("basic.dialogid", status.getSentValue(msgheadName + ".dialogid"));
+            jobResult.storeResult("basic.msgnum", status.getSentValue(msgheadName + ".msgnum"));
             jobResult.storeResult("basic.segnum", Integer.toString(ref));
 
             log.debug("basic values for " + getName() + " set to "
@@ -798,15 +764,9 @@ public abstract class AbstractHBCIJob {
     protected void extractResults(HBCIMsgStatus msgstatus, String header, int idx) {
     }
 
-    private void extractPlaintextResults(HBCIMsgStatus status, String header, int idx) {
-        HashMap<String, String> result = status.getData();
-        result.keySet().forEach(key -> {
-            if (key.startsWith(header + ".")) {
-                jobResult.storeResult(HBCIUtils.withCounter("content", idx) +
-                    "." +
-                    key.substring(header.length() + 1), result.get(key));
-            }
-        });
+    private void extractPlaintextResults(HBCIMsgStatus.ResponseSegment segment, int idx) {
+        String prefix = HBCIUtils.withCounter("content", idx) + ".";
+        segment.getData().forEach((key, value) -> jobResult.storeResult(prefix + key, value));
     }
 
     public HBCIJobResult getJobResult() {
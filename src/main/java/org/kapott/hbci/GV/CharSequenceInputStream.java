@@ -0,0 +1,72 @@
+package org.kapott.hbci.GV;
+
+import java.io.InputStream;
+
+/**
+ * {@link InputStream} über die CAMT-Daten aus {@link GVKUmsAllCamt}, ohne sie vorher in
+ * ein Byte-Array zu kopieren.
+ * <p>
+ * HBCI-Nachrichten werden intern als ISO-8859-1-Strings gehalten, d.h. jedes Zeichen
+ * entspricht genau einem Byte. Der Stream liefert deshalb für jedes Zeichen dessen
+ * unteres Byte.
+ */
+final class CharSequenceInputStream extends InputStream {
+
+    private final CharSequence data;
+    private final int end;
+    private int pos;
+    private int mark;
+
+    CharSequenceInputStream(CharSequence data) {
+        this.data = data;
+        this.end = data.length();
+    }
+
+    @Override
+    public int read() {
+        return (pos < end) ? (data.charAt(pos++) & 0xff) : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (off < 0 || len < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException();
+        if (len == 0)
+            return 0;
+        if (pos >= end)
+            return -1;
+
+        int count = Math.min(len, end - pos);
+        for (int i = 0; i < count; i++) {
+            b[off + i] = (byte) data.charAt(pos++);
+        }
+        return count;
+    }
+
+    @Override
+    public long skip(long n) {
+        long count = Math.max(0, Math.min(n, end - pos));
+        pos += (int) count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return end - pos;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public void mark(int readlimit) {
+        mark = pos;
+    }
+
+    @Override
+    public void reset() {
+        pos = mark;
+    }
+}
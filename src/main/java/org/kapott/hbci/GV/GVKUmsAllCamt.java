@@ -13,7 +13,6 @@ import org.kapott.hbci.GV.parsers.ISEPAParser;
 import org.kapott.hbci.GV.parsers.SEPAParserFactory;
 import org.kapott.hbci.GV_Result.GVRKUms;
 import org.kapott.hbci.GV_Result.GVRKUms.BTag;
-import org.kapott.hbci.comm.CommPinTan;
 import org.kapott.hbci.exceptions.HBCI_Exception;
 import org.kapott.hbci.manager.HBCIUtils;
 import org.kapott.hbci.passport.HBCIPassportInternal;
@@ -21,7 +20,6 @@ import org.kapott.hbci.sepa.SepaVersion;
 import org.kapott.hbci.sepa.SepaVersion.Type;
 import org.kapott.hbci.status.HBCIMsgStatus;
 
-import java.io.ByteArrayInputStream;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.List;
@@ -146,8 +144,9 @@ public class GVKUmsAllCamt extends AbstractSEPAGV {
             final SepaVersion version = SepaVersion.choose(format, camt);
             ISEPAParser<List<BTag>> parser = SEPAParserFactory.get(version);
 
-            log.debug("  parsing camt data: " + camt);
-            parser.parse(new ByteArrayInputStream(camt.getBytes(CommPinTan.ENCODING)), result.getDataPerDay());
+            if (log.isDebugEnabled())
+                log.debug("  parsing camt data: " + camt);
+            parser.parse(new CharSequenceInputStream(camt), result.getDataPerDay());
             log.debug("  parsed camt data, entries: " + result.getFlatData().size());
         } catch (Exception e) {
             log.error("  unable to parse camt data: " + e.getMessage());
@@ -160,10 +159,10 @@ public class GVKUmsAllCamt extends AbstractSEPAGV {
             final SepaVersion version = SepaVersion.choose(format, notbooked);
             ISEPAParser<List<BTag>> parser = SEPAParserFactory.get(version);
 
-            log.debug("  parsing unbooked camt data: " + notbooked);
+            if (log.isDebugEnabled())
+                log.debug("  parsing unbooked camt data: " + notbooked);
             result.camtNotBooked = notbooked;
-            parser.parse(new ByteArrayInputStream(notbooked.getBytes(CommPinTan.ENCODING)),
-                result.getDataPerDayUnbooked());
+            parser.parse(new CharSequenceInputStream(notbooked), result.getDataPerDayUnbooked());
             log.debug("  parsed unbooked camt data, entries: " + result.getFlatDataUnbooked().size());
         } catch (Exception e) {
             log.error("  unable to parse unbooked camt data: " + e.getMessage());
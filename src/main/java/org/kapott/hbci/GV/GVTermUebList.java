@@ -89,13 +89,9 @@ public final class GVTermUebList extends AbstractHBCIJob {
         if (entry.orderid != null && entry.orderid.length() != 0) {
             HashMap<String, String> p2 = new HashMap();
 
-            p2.keySet().forEach(key -> {
-                if (key.startsWith(header + ".") &&
-                    !key.startsWith(header + ".SegHead.") &&
-                    !key.endsWith(".id")) {
-                    p2.put(key.substring(header.length() + 1),
-                        result.get(key));
-                }
+            msgstatus.getResponseSegment(header).getData().forEach((key, value) -> {
+                if (!key.startsWith("SegHead.") && !key.endsWith(".id"))
+                    p2.put(key, value);
             });
 
 //TODO            passport.setPersistentData("termueb_" + entry.orderid, p2);
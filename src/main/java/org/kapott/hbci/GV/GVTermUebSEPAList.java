@@ -137,13 +137,9 @@ public final class GVTermUebSEPAList extends AbstractSEPAGV {
         if (entry.orderid != null && entry.orderid.length() != 0) {
             HashMap<String, String> p2 = new HashMap();
 
-            result.keySet().forEach(key -> {
-                if (key.startsWith(header + ".") &&
-                    !key.startsWith(header + ".SegHead.") &&
-                    !key.endsWith(".orderid")) {
-                    p2.put(key.substring(header.length() + 1),
-                        result.get(key));
-                }
+            msgstatus.getResponseSegment(header).getData().forEach((key, value) -> {
+                if (!key.startsWith("SegHead.") && !key.endsWith(".orderid"))
+                    p2.put(key, value);
             });
 
 //TODO            passport.setPersistentData("termueb_" + entry.orderid, p2);
@@ -41,7 +41,7 @@ public class GVVeuStep extends AbstractHBCIJob {
     }
 
     private String createSig() {
-        SEG sighead = new SEG("SigHeadUser", "SigHead", null, 0, passport.getSyntaxDocument());
+        SEG sighead = new SEG("SigHeadUser", "SigHead", null, 0, passport.getSyntaxSpec().getSyntaxModel());
 
         String sigheadName = sighead.getPath();
         String seccheckref = Integer.toString(Math.abs(new Random().nextInt()));
@@ -108,7 +108,7 @@ public class GVVeuStep extends AbstractHBCIJob {
             SyntaxElement.DONT_ALLOW_OVERWRITE);
 
 
-        SEG sigtail = new SEG("SigTailUser", "SigTail", null, 0, passport.getSyntaxDocument());
+        SEG sigtail = new SEG("SigTailUser", "SigTail", null, 0, passport.getSyntaxSpec().getSyntaxModel());
         sigtail.propagateValue(sigtail.getPath() + ".seccheckref", seccheckref,
             SyntaxElement.DONT_TRY_TO_CREATE,
             SyntaxElement.DONT_ALLOW_OVERWRITE);
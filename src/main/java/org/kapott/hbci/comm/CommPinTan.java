@@ -22,43 +22,41 @@ package org.kapott.hbci.comm;
 
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Base64InputStream;
 import org.kapott.hbci.callback.HBCICallback;
 import org.kapott.hbci.exceptions.CanNotParseMessageException;
 import org.kapott.hbci.exceptions.HBCI_Exception;
 import org.kapott.hbci.exceptions.ParseErrorException;
 import org.kapott.hbci.manager.HBCIUtils;
 import org.kapott.hbci.protocol.Message;
-import org.kapott.hbci.rewrite.Rewrite;
+import org.kapott.hbci.rewrite.RewriterPipeline;
 import org.kapott.hbci.status.HBCIMsgStatus;
 
-import java.io.ByteArrayOutputStream;
+import javax.net.ssl.SSLException;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.Authenticator;
-import java.net.HttpURLConnection;
-import java.net.PasswordAuthentication;
+import java.net.ConnectException;
 import java.net.URL;
+import java.net.UnknownHostException;
+import java.net.http.HttpConnectTimeoutException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
-import java.util.List;
-import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 @Slf4j
 public final class CommPinTan {
 
     public static final Charset ENCODING = StandardCharsets.ISO_8859_1;
-    /**
-     * Timeout fuer HTTP connect in Millisekunden.
-     */
-    private static final int HTTP_CONNECT_TIMEOUT = 60 * 1000;
-    /**
-     * Timeout fuer HTTP Read in Millisekunden.
-     */
-    private static final int HTTP_READ_TIMEOUT = 5 * HTTP_CONNECT_TIMEOUT;
+    // anfangsgroesse des puffers fuer die decodierte antwort
+    private static final int RESPONSE_BUFFER_SIZE = 16 * 1024;
     private HBCICallback callback;
     private URL url;
-    private HttpURLConnection conn;
+    private Transport transport = PooledHttpTransport.shared(TransportConfig.DEFAULT);
+    private HttpProxy proxy;
+    private MessageTap messageTap = new LoggingMessageTap();
 
     public CommPinTan(String host, HBCICallback callback) {
         this.callback = callback;
@@ -71,97 +69,135 @@ public final class CommPinTan {
         }
     }
 
+    /**
+     * Legt den Proxy für diese Verbindung fest. Der Proxy gilt nur für diese Instanz,
+     * System-Properties und Default-Authenticator der JVM bleiben unverändert.
+     *
+     * @param proxyHost Host und Port des Proxy im Format <code>host:port</code>.
+     */
     public CommPinTan withProxy(String proxyHost, String proxyUser, String proxyPass) {
-        if (proxyHost != null) {
-            String[] proxyData = proxyHost.split(":");
-            if (proxyData.length == 2) {
-                log.info(
-                    "HTTPS connections will be made using proxy " +
-                        proxyData[0] + "(Port " + proxyData[1] + ")");
-
-                Properties sysProps = System.getProperties();
-                sysProps.put("https.proxyHost", proxyData[0]);
-                sysProps.put("https.proxyPort", proxyData[1]);
-
-                log.debug("initializing HBCI4Java proxy authentication callback");
-                Authenticator.setDefault(new Authenticator() {
-                    @Override
-                    protected PasswordAuthentication getPasswordAuthentication() {
-                        return new PasswordAuthentication(proxyUser, proxyPass.toCharArray());
-                    }
-                });
-            }
+        HttpProxy parsed = HttpProxy.parse(proxyHost, proxyUser, proxyPass);
+        if (parsed != null) {
+            log.info(
+                "HTTPS connections will be made using proxy " +
+                    parsed.getHost() + "(Port " + parsed.getPort() + ")");
+            this.proxy = parsed;
         }
         return this;
     }
 
-    public Message pingpong(Message message, String messageName, List<Rewrite> rewriters, HBCIMsgStatus msgStatus) {
-        log.trace("---------------- request ----------------");
-        String rawMsg = message.toString(0);
-        if (log.isTraceEnabled()) {
-            Arrays.stream(rawMsg.split("'")).forEach(log::trace);
+    /**
+     * @param transport der für das Senden der Nachrichten zu benutzende Transport.
+     */
+    public CommPinTan withTransport(Transport transport) {
+        if (transport != null)
+            this.transport = transport;
+        return this;
+    }
+
+    /**
+     * @param messageTap der Mitschnitt für die gesendeten und empfangenen Nachrichten.
+     */
+    public CommPinTan withMessageTap(MessageTap messageTap) {
+        if (messageTap != null)
+            this.messageTap = messageTap;
+        return this;
+    }
+
+    public Message pingpong(Message message, String messageName, RewriterPipeline rewriters, HBCIMsgStatus msgStatus) {
+        byte[] request = prepareRequest(message);
+        InputStream response;
+        try {
+            response = transport.post(url, request, proxy);
+        } catch (IOException e) {
+            throw createTransportException(e);
         }
+        callback.status(HBCICallback.STATUS_MSG_RECV, null);
+        return handleResponse(message, messageName, rewriters, msgStatus, pong(response));
+    }
+
+    /**
+     * Wie {@link #pingpong(Message, String, RewriterPipeline, HBCIMsgStatus)}, wartet aber nicht
+     * auf die Antwort. Die Antwort wird mit {@link Transport#postAsyncFully} empfangen, ohne
+     * einen Thread zu blockieren, und in dem Thread verarbeitet, in dem der
+     * {@link Transport} das Future abschließt.
+     */
+    public CompletableFuture<Message> pingpongAsync(Message message, String messageName, RewriterPipeline rewriters,
+                                                    HBCIMsgStatus msgStatus) {
+        return pingpongAsync(message, messageName, rewriters, msgStatus, Runnable::run);
+    }
+
+    /**
+     * Wie {@link #pingpongAsync(Message, String, RewriterPipeline, HBCIMsgStatus)}; die Antwort
+     * wird aber in <code>executor</code> verarbeitet.
+     */
+    public CompletableFuture<Message> pingpongAsync(Message message, String messageName, RewriterPipeline rewriters,
+                                                    HBCIMsgStatus msgStatus, Executor executor) {
+        byte[] request = prepareRequest(message);
+        return transport.postAsyncFully(url, request, proxy)
+            .handleAsync((response, e) -> {
+                if (e != null)
+                    throw createTransportException(e);
+                callback.status(HBCICallback.STATUS_MSG_RECV, null);
+                return handleResponse(message, messageName, rewriters, msgStatus,
+                    new String(Base64.decodeBase64(response), ENCODING));
+            }, executor);
+    }
+
+    /**
+     * @return die base64-codierte nachricht
+     */
+    private byte[] prepareRequest(Message message) {
+        byte[] rawMsg = message.toByteArray();
+        if (messageTap.isEnabled())
+            messageTap.tap(MessageTap.Direction.SEND, rawMsg);
 
         // ausgehende nachricht versenden
         callback.status(HBCICallback.STATUS_MSG_SEND, null);
-        callback.status(HBCICallback.STATUS_MSG_RAW_SEND, rawMsg);
-        ping(message);
+        callback.status(HBCICallback.STATUS_MSG_RAW_SEND, message.toString(0));
+        return Base64.encodeBase64(rawMsg);
+    }
 
-        // nachricht empfangen
-        callback.status(HBCICallback.STATUS_MSG_RECV, null);
-        rawMsg = pong();
+    private Message handleResponse(Message message, String messageName, RewriterPipeline rewriters,
+                                   HBCIMsgStatus msgStatus, String rawMsg) {
         callback.status(HBCICallback.STATUS_MSG_RAW_RECV, rawMsg);
 
-//        try {
-//            FileOutputStream fileOutputStream = new FileOutputStream(new File(messageName+System.currentTimeMillis()+".txt"));
-//            IOUtils.write(rawMsg, fileOutputStream, ENCODING);
-//            fileOutputStream.close();
-//        } catch (IOException e) {
-//            e.printStackTrace();
-//        }
-
-        log.trace("---------------- response ----------------");
-        if (log.isTraceEnabled()) {
-            Arrays.stream(rawMsg.split("'")).forEach(log::trace);
-        }
+        if (messageTap.isEnabled())
+            messageTap.tap(MessageTap.Direction.RECEIVE, rawMsg.getBytes(ENCODING));
 
         try {
             // alle rewriter für verschlüsselte nachricht durchlaufen
-            for (Rewrite rewriter1 : rewriters) {
-                rawMsg = rewriter1.incomingCrypted(rawMsg, msgStatus, messageName);
-            }
+            rawMsg = rewriters.incomingCrypted(rawMsg, msgStatus, messageName);
             return parseResponseMessage(message, rawMsg, rewriters);
         } catch (Exception ex) {
             throw new CanNotParseMessageException(HBCIUtils.getLocMsg("EXCMSG_CANTPARSE"), rawMsg, ex);
         }
     }
 
-    private Message parseResponseMessage(Message inputMessage, String rawResponse, List<Rewrite> rewriters) {
+    private Message parseResponseMessage(Message inputMessage, String rawResponse, RewriterPipeline rewriters) {
         Message responseMessage;
 
         // versuche, nachricht als verschlüsselte nachricht zu parsen
         callback.status(HBCICallback.STATUS_MSG_PARSE, "CryptedRes");
         try {
             log.trace("trying to parse message as crypted message");
-            responseMessage = new Message("CryptedRes", rawResponse, inputMessage.getDocument(), Message.DONT_CHECK_SEQ,
+            responseMessage = new Message("CryptedRes", rawResponse, inputMessage.getSyntaxModel(), Message.DONT_CHECK_SEQ,
                 true);
         } catch (ParseErrorException e) {
             // wenn das schiefgeht...
-            log.trace("message seems not to be encrypted; tring to parse it as " + inputMessage.getName() + "Res " + inputMessage);
+            log.trace("message seems not to be encrypted; trying to parse it as {}Res", inputMessage.getName());
 
             // alle rewriter durchlaufen, um nachricht evtl. als unverschlüsselte rawMsg zu parsen
-            for (Rewrite rewriter1 : rewriters) {
-                rawResponse = rewriter1.incomingClearText(rawResponse);
-            }
+            rawResponse = rewriters.incomingClearText(rawResponse);
 
-            log.trace(rawResponse);
+            log.trace("{}", LoggingMessageTap.masked(rawResponse));
             // versuch, nachricht als unverschlüsselte rawMsg zu parsen
             callback.status(HBCICallback.STATUS_MSG_PARSE, inputMessage.getName() + "Res");
             try {
-                responseMessage = new Message(inputMessage.getName() + "Res", rawResponse, inputMessage.getDocument(),
+                responseMessage = new Message(inputMessage.getName() + "Res", rawResponse, inputMessage.getSyntaxModel(),
                     Message.CHECK_SEQ, true);
             } catch (ParseErrorException e2) {
-                responseMessage = new Message("ErrorRes", rawResponse, inputMessage.getDocument(),
+                responseMessage = new Message("ErrorRes", rawResponse, inputMessage.getSyntaxModel(),
                     Message.CHECK_SEQ, true);
             }
         }
@@ -169,48 +205,44 @@ public final class CommPinTan {
         return responseMessage;
     }
 
-    private void ping(Message msg) {
-        try {
-            byte[] b = Base64.encodeBase64(msg.toString(0).getBytes(ENCODING));
-
-            conn = (HttpURLConnection) url.openConnection();
-            conn.setConnectTimeout(HTTP_CONNECT_TIMEOUT);
-            conn.setReadTimeout(HTTP_READ_TIMEOUT);
-            conn.setDoOutput(true);
-            conn.setRequestMethod("POST");
-            conn.setRequestProperty("Content-Type", "application/octet-stream");
-            conn.setFixedLengthStreamingMode(b.length);
-
-            conn.connect();
-            OutputStream out = conn.getOutputStream();
-            out.write(b);
-            out.flush();
-            out.close();
-        } catch (Exception e) {
+    private static HBCI_Exception createTransportException(Throwable e) {
+        while (e instanceof CompletionException && e.getCause() != null)
+            e = e.getCause();
+
+        if (e instanceof IOException && isSendError((IOException) e)) {
             HBCI_Exception he = new HBCI_Exception(HBCIUtils.getLocMsg("EXCMSG_SENDERR"), e);
             he.setFatal(true); // Abbruch. Auch dann, wenn es ein anonymer BPD-Abruf war
-            throw he;
+            return he;
         }
-    }
 
-    private String pong() {
-        try {
-            byte[] b = new byte[1024];
+        // Die hier marieren wir nicht als fatal - ich meine mich zu erinnern,
+        // dass es Banken gibt, die einen anonymen BPD-Abruf mit einem HTTP-Fehlercode quittieren
+        return new HBCI_Exception(HBCIUtils.getLocMsg("EXCMSG_RECVERR"), e);
+    }
 
-            InputStream input = conn.getInputStream();
-            ByteArrayOutputStream output = new ByteArrayOutputStream();
+    /**
+     * @return true, wenn die nachricht gar nicht erst gesendet werden konnte
+     */
+    private static boolean isSendError(IOException e) {
+        return e instanceof ConnectException || e instanceof UnknownHostException ||
+            e instanceof HttpConnectTimeoutException || e instanceof SSLException;
+    }
 
-            int n;
-            while (-1 != (n = input.read(b))) {
-                output.write(b, 0, n);
+    /**
+     * decodiert die antwort beim lesen von der verbindung; die decodierten bytes
+     * werden nur einmal (beim erzeugen des strings) kopiert
+     */
+    private String pong(InputStream response) {
+        try (InputStream in = new Base64InputStream(response)) {
+            byte[] buffer = new byte[RESPONSE_BUFFER_SIZE];
+            int len = 0;
+            for (int n; (n = in.read(buffer, len, buffer.length - len)) != -1; ) {
+                len += n;
+                if (len == buffer.length)
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
             }
-
-            conn.disconnect();
-
-            return new String(Base64.decodeBase64(output.toByteArray()), ENCODING);
+            return new String(buffer, 0, len, ENCODING);
         } catch (Exception e) {
-            // Die hier marieren wir nicht als fatal - ich meine mich zu erinnern,
-            // dass es Banken gibt, die einen anonymen BPD-Abruf mit einem HTTP-Fehlercode quittieren
             throw new HBCI_Exception(HBCIUtils.getLocMsg("EXCMSG_RECVERR"), e);
         }
     }
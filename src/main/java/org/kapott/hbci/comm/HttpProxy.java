@@ -0,0 +1,42 @@
+package org.kapott.hbci.comm;
+
+import lombok.NonNull;
+import lombok.ToString;
+import lombok.Value;
+
+/**
+ * Proxy, über den ein {@link Transport} die Verbindung zum Bank-Server aufbaut.
+ * <p>
+ * Der Proxy gilt nur für die Requests, denen er übergeben wird; System-Properties
+ * und der Default-{@link java.net.Authenticator} der JVM werden nicht verändert.
+ */
+@Value
+public class HttpProxy {
+
+    @NonNull
+    String host;
+    int port;
+    /**
+     * Benutzername für die Proxy-Authentifizierung. Kann <code>null</code> sein.
+     */
+    String user;
+    @ToString.Exclude
+    String password;
+
+    /**
+     * @param proxy   Host und Port des Proxy im Format <code>host:port</code>.
+     * @param user     Benutzername für die Proxy-Authentifizierung. Kann <code>null</code> sein.
+     * @param password Passwort für die Proxy-Authentifizierung. Kann <code>null</code> sein.
+     * @return der Proxy oder <code>null</code>, wenn <code>proxy</code> nicht im Format
+     * <code>host:port</code> angegeben ist.
+     */
+    public static HttpProxy parse(String proxy, String user, String password) {
+        if (proxy == null)
+            return null;
+
+        String[] proxyData = proxy.split(":");
+        if (proxyData.length != 2)
+            return null;
+        return new HttpProxy(proxyData[0], Integer.parseInt(proxyData[1].trim()), user, password);
+    }
+}
@@ -0,0 +1,23 @@
+package org.kapott.hbci.comm;
+
+import java.io.IOException;
+
+/**
+ * Wird von einem {@link Transport} geworfen, wenn der Server die Nachricht mit einem
+ * HTTP-Fehlercode beantwortet hat.
+ */
+public class HttpStatusException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    public HttpStatusException(int statusCode, String url) {
+        super("Server returned HTTP response code: " + statusCode + " for URL: " + url);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
@@ -0,0 +1,114 @@
+package org.kapott.hbci.comm;
+
+import lombok.extern.slf4j.Slf4j;
+import org.kapott.hbci.protocol.Message;
+
+import java.util.function.Supplier;
+
+/**
+ * Standard-{@link MessageTap}: protokolliert die Nachrichten segmentweise im Log-Level
+ * TRACE, PIN und TAN werden dabei maskiert. Ist TRACE nicht aktiv, ist der Tap
+ * abgeschaltet.
+ */
+@Slf4j
+public class LoggingMessageTap implements MessageTap {
+
+    private static final String SIG_TAIL = "HNSHA:";
+    private static final String MASK = "***";
+
+    @Override
+    public boolean isEnabled() {
+        return log.isTraceEnabled();
+    }
+
+    @Override
+    public void tap(Direction direction, byte[] message) {
+        log.trace((direction == Direction.SEND) ? "---------------- request ----------------" :
+            "---------------- response ----------------");
+        for (String segment : mask(new String(message, CommPinTan.ENCODING)).split("'")) {
+            log.trace(segment);
+        }
+    }
+
+    /**
+     * Maskiert PIN und TAN (DE UserSig im Signaturabschluss HNSHA). Der Signaturabschluss
+     * wird auch in Binärdaten gesucht, weil die "verschlüsselte" PIN/TAN-Nachricht den
+     * Klartext enthält.
+     *
+     * @return die Nachricht, in der jede Komponente von PIN und TAN durch "***" ersetzt ist.
+     */
+    public static String mask(String msg) {
+        int pos = msg.indexOf(SIG_TAIL);
+        if (pos == -1)
+            return msg;
+
+        int len = msg.length();
+        StringBuilder ret = new StringBuilder(len);
+        int copied = 0;
+        while (pos != -1) {
+            // UserSig ist das dritte DE nach dem segmentkopf
+            int i = pos;
+            int plus = 0;
+            while (i < len && plus < 3 && msg.charAt(i) != '\'') {
+                char ch = msg.charAt(i);
+                if (ch == '?')
+                    i++;
+                else if (ch == '+')
+                    plus++;
+                i++;
+            }
+
+            if (plus == 3) {
+                ret.append(msg, copied, i);
+                boolean componentStart = true;
+                while (i < len && msg.charAt(i) != '\'') {
+                    char ch = msg.charAt(i);
+                    if (ch == ':') {
+                        ret.append(ch);
+                        componentStart = true;
+                    } else {
+                        if (componentStart)
+                            ret.append(MASK);
+                        componentStart = false;
+                        if (ch == '?')
+                            i++;
+                    }
+                    i++;
+                }
+                copied = Math.min(i, len);
+            }
+            pos = msg.indexOf(SIG_TAIL, i);
+        }
+        ret.append(msg, copied, len);
+        return ret.toString();
+    }
+
+    /**
+     * Für Log-Aufrufe mit Platzhalter: die Nachricht wird erst erzeugt und maskiert,
+     * wenn sie tatsächlich ausgegeben wird.
+     */
+    public static Object masked(Message message) {
+        return new Masked(() -> message.toString(0));
+    }
+
+    /**
+     * Wie {@link #masked(Message)}.
+     */
+    public static Object masked(String message) {
+        return new Masked(() -> message);
+    }
+
+    private static final class Masked {
+
+        private final Supplier<String> message;
+
+        private Masked(Supplier<String> message) {
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return mask(message.get());
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package org.kapott.hbci.comm;
+
+/**
+ * Mitschnitt der gesendeten und empfangenen PIN/TAN-Nachrichten.
+ * <p>
+ * {@link CommPinTan} übergibt jede Nachricht genau einmal so, wie sie über die
+ * Leitung geht (vor der Base64-Codierung bzw. nach der Decodierung). Die Nachrichten
+ * enthalten PIN und TAN im Klartext; Implementierungen sollten sie vor der Ausgabe mit
+ * {@link LoggingMessageTap#mask(String)} maskieren. Standard ist
+ * {@link LoggingMessageTap}; eigene Implementierungen können über
+ * {@link CommPinTan#withMessageTap(MessageTap)} oder die Passport-Property
+ * <code>client.connection.messageTap</code> eingebunden werden. Implementierungen
+ * müssen thread-safe sein.
+ */
+public interface MessageTap {
+
+    enum Direction {
+        SEND,
+        RECEIVE
+    }
+
+    /**
+     * Wird vor jeder Nachricht abgefragt. Liefert der Tap <code>false</code>, wird
+     * {@link #tap(Direction, byte[])} nicht aufgerufen und für den Mitschnitt nichts
+     * erzeugt oder kopiert.
+     */
+    boolean isEnabled();
+
+    /**
+     * @param direction ob die Nachricht gesendet oder empfangen wurde.
+     * @param message   die Nachricht in der Kodierung {@link CommPinTan#ENCODING}. Das
+     *                  Array darf nicht verändert werden.
+     */
+    void tap(Direction direction, byte[] message);
+}
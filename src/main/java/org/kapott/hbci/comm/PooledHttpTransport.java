@@ -0,0 +1,556 @@
+package org.kapott.hbci.comm;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.Authenticator;
+import java.net.InetSocketAddress;
+import java.net.PasswordAuthentication;
+import java.net.ProxySelector;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Standard-{@link Transport}, der die Verbindungen zu den Bank-Servern wiederverwendet.
+ * <p>
+ * Pro Bank-Server (Schema, Host und Port) und Proxy wird ein eigener {@link HttpClient} gehalten.
+ * Dieser hält die Verbindungen per HTTP keep-alive offen; da alle Clients den
+ * gleichen {@link javax.net.ssl.SSLContext} benutzen, werden auch
+ * TLS-Sessions wiederverwendet. Die Anzahl gleichzeitiger Requests (und damit
+ * Verbindungen) pro Bank-Server ist begrenzt, weitere Requests warten ohne einen
+ * Thread zu blockieren. Ein Request zählt dabei, bis der Stream mit der Antwort
+ * vollständig gelesen oder geschlossen wurde. Clients von Bank-Servern, die länger
+ * als {@link TransportConfig#getIdleTimeout()} nicht benutzt wurden, werden
+ * freigegeben.
+ * <p>
+ * Ein {@link HttpClient} kann erst ab Java 21 geschlossen werden. Auf älteren JVMs
+ * laufen Selector-Thread und offene Verbindungen eines freigegebenen Clients weiter,
+ * bis der Garbage Collector ihn einsammelt. {@link TransportConfig#getMaxHosts()}
+ * sollte deshalb mindestens so groß sein wie die Anzahl der Bank-Server, mit denen
+ * regelmäßig kommuniziert wird; sonst wird für jeden Wechsel ein neuer Client samt
+ * Thread erzeugt.
+ * <p>
+ * Wird beim Request ein {@link HttpProxy} angegeben, gelten Proxy und
+ * Proxy-Zugangsdaten nur für den Client dieses Bank-Servers. Ohne Proxy werden der
+ * Default-{@link ProxySelector} und der Default-{@link Authenticator} der JVM benutzt.
+ * <p>
+ * Anders als bei {@link javax.net.ssl.HttpsURLConnection} gelten die mit
+ * <code>HttpsURLConnection.setDefaultSSLSocketFactory()</code> bzw.
+ * <code>setDefaultHostnameVerifier()</code> gesetzten Defaults nicht. Eigene
+ * Zertifikate werden über {@link TransportConfig#getSslContext()} (oder
+ * <code>SSLContext.setDefault()</code>) konfiguriert; der Hostname wird immer gegen
+ * das Zertifikat des Bank-Servers geprüft.
+ */
+@Slf4j
+public final class PooledHttpTransport implements Transport {
+
+    private static final Map<TransportConfig, PooledHttpTransport> sharedTransports = new ConcurrentHashMap<>();
+
+    // reicht die anfrage an den jeweils aktuellen default-authenticator weiter
+    private static final Authenticator DEFAULT_AUTHENTICATOR = new Authenticator() {
+        @Override
+        protected PasswordAuthentication getPasswordAuthentication() {
+            return Authenticator.requestPasswordAuthentication(getRequestingHost(), getRequestingSite(),
+                getRequestingPort(), getRequestingProtocol(), getRequestingPrompt(), getRequestingScheme(),
+                getRequestingURL(), getRequestorType());
+        }
+    };
+
+    private final TransportConfig config;
+
+    // in zugriffsreihenfolge, der am laengsten nicht benutzte server steht vorne;
+    // zugriff nur unter 'lock'; kein synchronized, damit virtual threads nicht an
+    // ihren carrier-thread gebunden werden
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<HostKey, HostPool> hosts = new LinkedHashMap<>(16, 0.75f, true);
+
+    public PooledHttpTransport(TransportConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * @return einen von allen Aufrufern mit den gleichen Einstellungen gemeinsam
+     * benutzten Transport.
+     */
+    public static PooledHttpTransport shared(TransportConfig config) {
+        return sharedTransports.computeIfAbsent(config, PooledHttpTransport::new);
+    }
+
+    @Override
+    public InputStream post(URL url, byte[] request, HttpProxy proxy) throws IOException {
+        CompletableFuture<InputStream> future = postAsync(url, request, proxy);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            InterruptedIOException ie = new InterruptedIOException("interrupted while sending to " + url);
+            ie.initCause(e);
+            throw ie;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Sendet den Request über {@link HttpClient#sendAsync}. Sind bereits
+     * {@link TransportConfig#getMaxConnectionsPerHost()} Requests an den Bank-Server
+     * unterwegs, wird der Request in eine Warteschlange gestellt, ohne dabei einen
+     * Thread zu blockieren.
+     * <p>
+     * Das Future wird abgeschlossen, sobald die Header der Antwort da sind; der Body
+     * wird beim Lesen des Streams direkt von der Verbindung gelesen. Wie bei
+     * {@link java.net.HttpURLConnection#setReadTimeout(int)} gilt
+     * {@link TransportConfig#getReadTimeout()} für das Warten auf die Header und
+     * für jeden einzelnen Lesevorgang im Body.
+     */
+    @Override
+    public CompletableFuture<InputStream> postAsync(URL url, byte[] request, HttpProxy proxy) {
+        return send(url, request, proxy, HttpResponse.BodySubscribers::ofInputStream, (response, pool, result) -> {
+            InputStream body = new ResponseStream(response.body(), pool);
+            if (response.statusCode() >= 300) {
+                closeQuietly(body);
+                result.completeExceptionally(new HttpStatusException(response.statusCode(), url.toString()));
+            } else if (!result.complete(body)) {
+                // der aufrufer wartet nicht mehr
+                closeQuietly(body);
+            }
+        });
+    }
+
+    /**
+     * Wie {@link #postAsync(URL, byte[], HttpProxy)}; der Body wird aber ohne einen
+     * Thread zu blockieren von der Verbindung gelesen, das Future wird erst danach
+     * abgeschlossen. {@link TransportConfig#getReadTimeout()} gilt auch hier für jeden
+     * einzelnen Datenblock.
+     */
+    @Override
+    public CompletableFuture<byte[]> postAsyncFully(URL url, byte[] request, HttpProxy proxy) {
+        return send(url, request, proxy, HttpResponse.BodySubscribers::ofByteArray, (response, pool, result) -> {
+            release(pool);
+            if (response.statusCode() >= 300)
+                result.completeExceptionally(new HttpStatusException(response.statusCode(), url.toString()));
+            else
+                result.complete(response.body());
+        });
+    }
+
+    private <T, R> CompletableFuture<R> send(URL url, byte[] request, HttpProxy proxy,
+                                             Supplier<HttpResponse.BodySubscriber<T>> bodySubscriber,
+                                             ResponseHandler<T, R> handler) {
+        CompletableFuture<R> result = new CompletableFuture<>();
+
+        HttpRequest httpRequest;
+        try {
+            httpRequest = HttpRequest.newBuilder(url.toURI())
+                .timeout(config.getReadTimeout())
+                .header("Content-Type", "application/octet-stream")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(request))
+                .build();
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            result.completeExceptionally(new IOException(e));
+            return result;
+        }
+
+        HostPool pool = acquire(url, proxy);
+        Runnable task = () -> {
+            try {
+                pool.client.sendAsync(httpRequest, info -> new TimedBodySubscriber<>(bodySubscriber.get(),
+                    config.getReadTimeout()))
+                    .whenComplete((response, e) -> {
+                        if (e != null) {
+                            release(pool);
+                            result.completeExceptionally(unwrap(e));
+                            return;
+                        }
+                        handler.handle(response, pool, result);
+                    });
+            } catch (RuntimeException e) {
+                release(pool);
+                result.completeExceptionally(e);
+            }
+        };
+
+        if (schedule(pool, task))
+            task.run();
+        return result;
+    }
+
+    /**
+     * verarbeitet die antwort; 'pool' muss freigegeben werden, sobald die antwort
+     * nicht mehr von der verbindung gelesen wird
+     */
+    private interface ResponseHandler<T, R> {
+        void handle(HttpResponse<T> response, HostPool pool, CompletableFuture<R> result);
+    }
+
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException e) {
+            log.debug("error while closing response: " + e.getMessage());
+        }
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        while (e instanceof CompletionException && e.getCause() != null)
+            e = e.getCause();
+        // der abbruch durch den TimedBodySubscriber kommt evtl. nur als ursache an
+        if (e instanceof IOException && e.getCause() instanceof HttpTimeoutException)
+            e = e.getCause();
+        return e;
+    }
+
+    /**
+     * @return die Anzahl der aktuell gehaltenen Bank-Server.
+     */
+    public int getHostCount() {
+        lock.lock();
+        try {
+            return hosts.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private HostPool acquire(URL url, HttpProxy proxy) {
+        long now = System.nanoTime();
+        int port = (url.getPort() != -1) ? url.getPort() : url.getDefaultPort();
+        // die proxy-zugangsdaten gehoeren zum client und sind deshalb teil des schluessels
+        HostKey key = new HostKey(url.getProtocol() + "://" + url.getHost() + ":" + port, proxy);
+
+        HostPool pool;
+        List<HttpClient> evicted;
+        lock.lock();
+        try {
+            evicted = evict(now, !hosts.containsKey(key));
+            pool = hosts.get(key);
+            if (pool == null) {
+                log.debug("opening connection pool for " + key);
+                pool = new HostPool(createClient(proxy));
+                hosts.put(key, pool);
+            }
+            pool.active++;
+            pool.lastUsed = now;
+        } finally {
+            lock.unlock();
+        }
+
+        close(evicted);
+        return pool;
+    }
+
+    /**
+     * @return true, wenn der request sofort gestartet werden darf, sonst wird er in
+     * die warteschlange gestellt und von release() gestartet
+     */
+    private boolean schedule(HostPool pool, Runnable task) {
+        lock.lock();
+        try {
+            if (pool.running < config.getMaxConnectionsPerHost()) {
+                pool.running++;
+                return true;
+            }
+            pool.waiting.add(task);
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(HostPool pool) {
+        Runnable next;
+        lock.lock();
+        try {
+            pool.active--;
+            pool.lastUsed = System.nanoTime();
+            next = pool.waiting.poll();
+            if (next == null)
+                pool.running--;
+        } finally {
+            lock.unlock();
+        }
+        if (next != null)
+            next.run();
+    }
+
+    /**
+     * gibt die clients aller server frei, die laenger als 'idleTimeout' nicht benutzt
+     * wurden bzw. die ueber 'maxHosts' hinausgehen ('reserve': platz fuer einen
+     * weiteren server schaffen); clients mit laufenden requests bleiben erhalten.
+     *
+     * @return die freigegebenen clients, die ausserhalb des locks mit close()
+     * geschlossen werden muessen
+     */
+    private List<HttpClient> evict(long now, boolean reserve) {
+        long idleNanos = config.getIdleTimeout().toNanos();
+        int excess = hosts.size() - config.getMaxHosts() + (reserve ? 1 : 0);
+        List<HttpClient> evicted = Collections.emptyList();
+
+        for (Iterator<Map.Entry<HostKey, HostPool>> it = hosts.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<HostKey, HostPool> entry = it.next();
+            HostPool pool = entry.getValue();
+            if (pool.active > 0)
+                continue;
+
+            if (excess > 0 || now - pool.lastUsed > idleNanos) {
+                log.debug("releasing connection pool for " + entry.getKey());
+                it.remove();
+                excess--;
+                if (evicted.isEmpty())
+                    evicted = new ArrayList<>();
+                evicted.add(pool.client);
+            }
+        }
+        return evicted;
+    }
+
+    // HttpClient ist erst ab java 21 AutoCloseable. vorher gibt es kein close(), dann
+    // laufen selector-thread und verbindungen weiter, bis der client eingesammelt wird
+    private static void close(List<HttpClient> clients) {
+        for (HttpClient client : clients) {
+            if (client instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) client).close();
+                } catch (Exception e) {
+                    log.debug("error while closing http client: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private HttpClient createClient(HttpProxy proxy) {
+        // redirects wie bei HttpURLConnection folgen, aber nie von https nach http
+        HttpClient.Builder builder = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(config.getConnectTimeout());
+        if (config.getSslContext() != null)
+            builder.sslContext(config.getSslContext());
+
+        if (proxy != null) {
+            builder.proxy(ProxySelector.of(new InetSocketAddress(proxy.getHost(), proxy.getPort())));
+            // ohne zugangsdaten kein authenticator, ein 407 kommt dann als HttpStatusException an
+            if (proxy.getUser() != null)
+                builder.authenticator(createProxyAuthenticator(proxy));
+        } else {
+            builder.authenticator(DEFAULT_AUTHENTICATOR);
+            ProxySelector proxySelector = ProxySelector.getDefault();
+            if (proxySelector != null)
+                builder.proxy(proxySelector);
+        }
+
+        return builder.build();
+    }
+
+    // liefert die zugangsdaten nur an den proxy, nie an den bank-server
+    private static Authenticator createProxyAuthenticator(HttpProxy proxy) {
+        return new Authenticator() {
+            @Override
+            protected PasswordAuthentication getPasswordAuthentication() {
+                if (getRequestorType() != RequestorType.PROXY)
+                    return null;
+                String password = proxy.getPassword();
+                return new PasswordAuthentication(proxy.getUser(),
+                    (password != null) ? password.toCharArray() : new char[0]);
+            }
+        };
+    }
+
+    /**
+     * reicht den body an 'delegate' weiter; kommen bei einem lesevorgang laenger als
+     * 'timeout' keine daten vom bank-server, wird der request abgebrochen und der
+     * lesevorgang mit einer HttpTimeoutException beendet. gezaehlt wird nur, solange
+     * der leser auf daten wartet.
+     */
+    private static final class TimedBodySubscriber<T> implements HttpResponse.BodySubscriber<T> {
+
+        private final HttpResponse.BodySubscriber<T> delegate;
+        private final long timeoutNanos;
+        private final AtomicBoolean done = new AtomicBoolean();
+        // angeforderte, aber noch nicht gelieferte datenbloecke
+        private final AtomicLong demand = new AtomicLong();
+        private volatile long lastRead = System.nanoTime();
+        private volatile Flow.Subscription subscription;
+
+        private TimedBodySubscriber(HttpResponse.BodySubscriber<T> delegate, Duration timeout) {
+            this.delegate = delegate;
+            this.timeoutNanos = timeout.toNanos();
+        }
+
+        @Override
+        public CompletionStage<T> getBody() {
+            return delegate.getBody();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            delegate.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    lastRead = System.nanoTime();
+                    demand.accumulateAndGet(n, (a, b) -> (a + b < 0) ? Long.MAX_VALUE : a + b);
+                    subscription.request(n);
+                }
+
+                @Override
+                public void cancel() {
+                    done.set(true);
+                    subscription.cancel();
+                }
+            });
+            schedule(timeoutNanos);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> item) {
+            lastRead = System.nanoTime();
+            demand.decrementAndGet();
+            if (!done.get())
+                delegate.onNext(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (done.compareAndSet(false, true))
+                delegate.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            if (done.compareAndSet(false, true))
+                delegate.onComplete();
+        }
+
+        private void schedule(long delayNanos) {
+            CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS).execute(this::check);
+        }
+
+        private void check() {
+            if (done.get())
+                return;
+
+            long idle = System.nanoTime() - lastRead;
+            if (demand.get() <= 0 || idle < timeoutNanos) {
+                schedule(Math.max(timeoutNanos - idle, TimeUnit.MILLISECONDS.toNanos(10)));
+                return;
+            }
+
+            if (done.compareAndSet(false, true)) {
+                subscription.cancel();
+                delegate.onError(new HttpTimeoutException("read timed out"));
+            }
+        }
+    }
+
+    /**
+     * gibt den platz des requests im pool frei, sobald die antwort vollstaendig
+     * gelesen oder der stream geschlossen wurde
+     */
+    private final class ResponseStream extends FilterInputStream {
+
+        private final HostPool pool;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private ResponseStream(InputStream in, HostPool pool) {
+            super(in);
+            this.pool = pool;
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return released(super.read());
+            } catch (IOException e) {
+                throw timeoutOf(e);
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                return released(super.read(b, off, len));
+            } catch (IOException e) {
+                throw timeoutOf(e);
+            }
+        }
+
+        // der stream meldet den abbruch durch den TimedBodySubscriber nur als ursache
+        private IOException timeoutOf(IOException e) {
+            return (e.getCause() instanceof HttpTimeoutException) ? (HttpTimeoutException) e.getCause() : e;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                released(-1);
+            }
+        }
+
+        private int released(int n) {
+            if (n == -1 && released.compareAndSet(false, true))
+                release(pool);
+            return n;
+        }
+    }
+
+    @Value
+    private static class HostKey {
+        String server;
+        // toString() von HttpProxy enthaelt das passwort nicht
+        HttpProxy proxy;
+    }
+
+    private static final class HostPool {
+
+        private final HttpClient client;
+        // wartende requests, wenn bereits 'maxConnectionsPerHost' unterwegs sind
+        private final Deque<Runnable> waiting = new ArrayDeque<>();
+        // unterwegs befindliche requests
+        private int running;
+        // unterwegs befindliche und wartende requests
+        private int active;
+        private long lastUsed;
+
+        private HostPool(HttpClient client) {
+            this.client = client;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package org.kapott.hbci.comm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Transportschicht für PIN/TAN-Nachrichten.
+ * <p>
+ * {@link CommPinTan} übergibt der Implementierung die bereits Base64-codierte
+ * Nachricht und erwartet den (noch Base64-codierten) Body der Antwort als Stream,
+ * den es beim Lesen decodiert. Die
+ * Standard-Implementierung ist {@link PooledHttpTransport}; eigene
+ * Implementierungen können über {@link CommPinTan#withTransport(Transport)} oder die
+ * Passport-Property <code>client.connection.transport</code> eingebunden werden.
+ * Implementierungen müssen thread-safe sein.
+ */
+public interface Transport {
+
+    /**
+     * Sendet einen HTTP-POST an <code>url</code>.
+     *
+     * @param url     die URL des Bank-Servers.
+     * @param request der Body des Requests.
+     * @param proxy   der zu benutzende Proxy oder <code>null</code> für eine direkte
+     *                Verbindung (bzw. den Proxy der JVM-Konfiguration).
+     * @return der Body der Antwort. Der Stream muss vom Aufrufer geschlossen werden;
+     * bis dahin (bzw. bis er vollständig gelesen ist) kann die Verbindung belegt bleiben.
+     * @throws HttpStatusException wenn der Server mit einem HTTP-Fehlercode antwortet.
+     * @throws IOException         bei allen anderen Fehlern.
+     */
+    InputStream post(URL url, byte[] request, HttpProxy proxy) throws IOException;
+
+    /**
+     * Wie {@link #post(URL, byte[], HttpProxy)} ohne Proxy.
+     */
+    default InputStream post(URL url, byte[] request) throws IOException {
+        return post(url, request, null);
+    }
+
+    /**
+     * Wie {@link #post(URL, byte[], HttpProxy)}, blockiert den aufrufenden Thread aber nicht.
+     * <p>
+     * Die Default-Implementierung ruft {@link #post(URL, byte[], HttpProxy)} synchron auf
+     * und sollte deshalb von nicht-blockierenden Implementierungen überschrieben werden.
+     *
+     * @return der Body der Antwort. Im Fehlerfall wird das Future mit den bei
+     * {@link #post(URL, byte[], HttpProxy)} genannten Exceptions abgeschlossen.
+     */
+    default CompletableFuture<InputStream> postAsync(URL url, byte[] request, HttpProxy proxy) {
+        CompletableFuture<InputStream> future = new CompletableFuture<>();
+        try {
+            future.complete(post(url, request, proxy));
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Wie {@link #postAsync(URL, byte[], HttpProxy)} ohne Proxy.
+     */
+    default CompletableFuture<InputStream> postAsync(URL url, byte[] request) {
+        return postAsync(url, request, null);
+    }
+
+    /**
+     * Wie {@link #postAsync(URL, byte[], HttpProxy)}, das Future wird aber erst mit dem
+     * vollständig empfangenen Body abgeschlossen. Beim Empfangen wird kein Thread
+     * blockiert, der Abschluss des Futures kann also z.B. direkt die Antwort verarbeiten.
+     * <p>
+     * Die Default-Implementierung liest den Stream von
+     * {@link #postAsync(URL, byte[], HttpProxy)} blockierend und sollte deshalb von
+     * nicht-blockierenden Implementierungen überschrieben werden.
+     *
+     * @return der Body der Antwort. Im Fehlerfall wird das Future mit den bei
+     * {@link #post(URL, byte[], HttpProxy)} genannten Exceptions abgeschlossen.
+     */
+    default CompletableFuture<byte[]> postAsyncFully(URL url, byte[] request, HttpProxy proxy) {
+        return postAsync(url, request, proxy).thenApply(response -> {
+            try (InputStream in = response) {
+                return in.readAllBytes();
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+}
@@ -0,0 +1,98 @@
+package org.kapott.hbci.comm;
+
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.net.ssl.SSLContext;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Einstellungen für {@link PooledHttpTransport}.
+ * <p>
+ * Kann entweder per {@link #builder()} oder aus den Passport-Properties
+ * ({@link #fromProperties(Map)}) erzeugt werden:
+ * <ul>
+ * <li><code>client.connection.maxHosts</code> - Anzahl der Bank-Server, zu denen
+ * Verbindungen offen gehalten werden; siehe {@link PooledHttpTransport} zu
+ * freigegebenen Clients</li>
+ * <li><code>client.connection.maxPerHost</code> - maximale Anzahl gleichzeitiger
+ * Verbindungen zu einem Bank-Server</li>
+ * <li><code>client.connection.idleTimeout</code> - Sekunden, nach denen die
+ * Verbindungen zu einem nicht mehr benutzten Bank-Server freigegeben werden</li>
+ * <li><code>client.connection.connectTimeout</code> - Timeout für den
+ * Verbindungsaufbau in Sekunden</li>
+ * <li><code>client.connection.readTimeout</code> - Timeout für die Antwort in
+ * Sekunden; gilt für das Warten auf die Header und für jeden Lesevorgang im Body</li>
+ * <li><code>client.connection.maxParallelDialogs</code> - maximale Anzahl gleichzeitiger
+ * Dialoge eines {@link org.kapott.hbci.dialog.ParallelJobsExecutor} mit einem
+ * Bank-Server; ungültige Werte werden ignoriert</li>
+ * </ul>
+ * Der {@link SSLContext} kann nur per {@link #builder()} gesetzt werden; ohne wird
+ * der Default-{@link SSLContext} der JVM benutzt.
+ */
+@Slf4j
+@Value
+@Builder
+public class TransportConfig {
+
+    public static final TransportConfig DEFAULT = TransportConfig.builder().build();
+
+    @Builder.Default
+    int maxHosts = 16;
+    @Builder.Default
+    int maxConnectionsPerHost = 4;
+    @Builder.Default
+    Duration idleTimeout = Duration.ofMinutes(1);
+    @Builder.Default
+    Duration connectTimeout = Duration.ofSeconds(60);
+    @Builder.Default
+    Duration readTimeout = Duration.ofSeconds(5 * 60);
+    @Builder.Default
+    int maxParallelDialogs = 2;
+    SSLContext sslContext;
+
+    /**
+     * @param properties die Passport-Properties. Nicht gesetzte Werte werden mit
+     *                   den Defaults belegt.
+     * @return die Einstellungen.
+     */
+    public static TransportConfig fromProperties(Map<String, String> properties) {
+        TransportConfigBuilder builder = TransportConfig.builder();
+        if (properties == null)
+            return builder.build();
+
+        String value = properties.get("client.connection.maxHosts");
+        if (value != null)
+            builder.maxHosts(Integer.parseInt(value.trim()));
+        value = properties.get("client.connection.maxPerHost");
+        if (value != null)
+            builder.maxConnectionsPerHost(Integer.parseInt(value.trim()));
+        value = properties.get("client.connection.idleTimeout");
+        if (value != null)
+            builder.idleTimeout(Duration.ofSeconds(Long.parseLong(value.trim())));
+        value = properties.get("client.connection.connectTimeout");
+        if (value != null)
+            builder.connectTimeout(Duration.ofSeconds(Long.parseLong(value.trim())));
+        value = properties.get("client.connection.readTimeout");
+        if (value != null)
+            builder.readTimeout(Duration.ofSeconds(Long.parseLong(value.trim())));
+        value = properties.get("client.connection.maxParallelDialogs");
+        if (value != null)
+            builder.maxParallelDialogs(parsePositive("client.connection.maxParallelDialogs", value, 2));
+        return builder.build();
+    }
+
+    private static int parsePositive(String name, String value, int defaultValue) {
+        try {
+            int ret = Integer.parseInt(value.trim());
+            if (ret >= 1)
+                return ret;
+        } catch (NumberFormatException e) {
+            // ungueltiger wert, default verwenden
+        }
+        log.warn("invalid " + name + " " + value + ", using " + defaultValue);
+        return defaultValue;
+    }
+}
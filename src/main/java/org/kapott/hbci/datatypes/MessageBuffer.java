@@ -0,0 +1,82 @@
+package org.kapott.hbci.datatypes;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Schreibpuffer für eine zu versendende HBCI-Nachricht.
+ * <p>
+ * Das Gegenstück zu {@link ParseCursor}: Die Syntax-Elemente schreiben ihre Darstellung
+ * direkt als ISO-8859-1-Bytes hierher, so dass die Nachricht nicht erst als String
+ * aufgebaut und danach noch einmal kodiert werden muss. Zeichen, die es in ISO-8859-1
+ * nicht gibt, werden wie bei {@link String#getBytes(java.nio.charset.Charset)} durch
+ * "?" ersetzt.
+ * <p>
+ * Der Puffer ist nicht thread-sicher und wird pro Serialisierung neu erzeugt.
+ */
+public final class MessageBuffer {
+
+    private byte[] buf;
+    private int count;
+
+    public MessageBuffer() {
+        this(256);
+    }
+
+    public MessageBuffer(int capacity) {
+        this.buf = new byte[capacity];
+    }
+
+    public MessageBuffer append(char ch) {
+        ensureCapacity(count + 1);
+        buf[count++] = (ch <= 0xFF) ? (byte) ch : (byte) '?';
+        return this;
+    }
+
+    public MessageBuffer append(CharSequence st) {
+        int len = st.length();
+        ensureCapacity(count + len);
+        for (int i = 0; i < len; i++) {
+            char ch = st.charAt(i);
+            buf[count++] = (ch <= 0xFF) ? (byte) ch : (byte) '?';
+        }
+        return this;
+    }
+
+    public MessageBuffer append(int value) {
+        return append(Integer.toString(value));
+    }
+
+    /**
+     * @return die Anzahl der bisher geschriebenen Bytes.
+     */
+    public int length() {
+        return count;
+    }
+
+    /**
+     * Verwirft alles hinter den ersten <code>length</code> Bytes.
+     */
+    public void setLength(int length) {
+        if (length < 0 || length > count)
+            throw new IndexOutOfBoundsException("length " + length + " out of range [0, " + count + "]");
+        count = length;
+    }
+
+    /**
+     * @return eine Kopie der geschriebenen Bytes.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, count);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buf, 0, count, StandardCharsets.ISO_8859_1);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buf.length)
+            buf = Arrays.copyOf(buf, Math.max(capacity, buf.length << 1));
+    }
+}
@@ -0,0 +1,225 @@
+package org.kapott.hbci.datatypes;
+
+import org.kapott.hbci.manager.HBCIUtils;
+
+import java.nio.CharBuffer;
+
+/**
+ * Lesezeiger auf eine zu parsende HBCI-Nachricht.
+ * <p>
+ * Die Nachricht selbst wird nie verändert oder kopiert; beim Parsen wird lediglich
+ * die aktuelle Position weitergeschoben. Für das Backtracking merkt man sich die
+ * Position mit {@link #getPosition()} und setzt sie bei Bedarf mit
+ * {@link #setPosition(int)} zurück.
+ * <p>
+ * Als {@link CharSequence} repräsentiert der Cursor den noch nicht geparsten Rest
+ * der Nachricht, alle Indizes sind also relativ zur aktuellen Position.
+ */
+public final class ParseCursor implements CharSequence {
+
+    private final String data;
+    private int pos;
+
+    private int mismatchPos = -1;
+    private String mismatchPath;
+    private Mismatch mismatchCode;
+    private char mismatchDelim;
+    private String mismatchExpected;
+    private String mismatchFound;
+
+    public ParseCursor(String data) {
+        this.data = data;
+        this.pos = 0;
+    }
+
+    /**
+     * @return die absolute Position innerhalb der Nachricht.
+     */
+    public int getPosition() {
+        return pos;
+    }
+
+    /**
+     * Setzt den Cursor auf eine zuvor mit {@link #getPosition()} ermittelte Position.
+     */
+    public void setPosition(int pos) {
+        if (pos < 0 || pos > data.length())
+            throw new IndexOutOfBoundsException("position " + pos + " out of range [0, " + data.length() + "]");
+        this.pos = pos;
+    }
+
+    /**
+     * Schiebt den Cursor um <code>count</code> Zeichen weiter.
+     */
+    public void skip(int count) {
+        setPosition(pos + count);
+    }
+
+    /**
+     * @return die Gesamtlänge der Nachricht.
+     */
+    public int getTotalLength() {
+        return data.length();
+    }
+
+    /**
+     * @return das Zeichen an der absoluten Position <code>absPos</code>.
+     */
+    public char charAtPosition(int absPos) {
+        return data.charAt(absPos);
+    }
+
+    /**
+     * @return die Anzahl der noch nicht geparsten Zeichen.
+     */
+    @Override
+    public int length() {
+        return data.length() - pos;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return data.charAt(pos + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return data.subSequence(pos + start, pos + end);
+    }
+
+    public String substring(int start, int end) {
+        return data.substring(pos + start, pos + end);
+    }
+
+    public String substring(int start) {
+        return data.substring(pos + start);
+    }
+
+    /**
+     * @return eine Sicht auf den Bereich <code>[start, end)</code>, ohne die Daten zu
+     * kopieren. Die Sicht hält die gesamte Nachricht im Speicher und wird deshalb nur
+     * innerhalb des Pakets vergeben.
+     */
+    CharBuffer slice(int start, int end) {
+        return CharBuffer.wrap(data, pos + start, pos + end);
+    }
+
+    /**
+     * @return relative Position des nächsten Vorkommens von <code>ch</code> ab
+     * <code>fromIndex</code> oder -1.
+     */
+    public int indexOf(char ch, int fromIndex) {
+        int idx = data.indexOf(ch, pos + fromIndex);
+        return (idx == -1) ? -1 : idx - pos;
+    }
+
+    /**
+     * Merkt sich, dass das Element <code>path</code> an der aktuellen Position nicht
+     * passt. Behalten wird nur der Fehlschlag, der am weitesten in der Nachricht liegt;
+     * das ist beim Backtracking i.d.R. die eigentliche Fehlerursache.
+     * <p>
+     * Beim Parsen passen sehr viele Elemente probeweise nicht. Deshalb wird hier nur
+     * der Grund als Code gespeichert; den Text baut erst {@link #getMismatchReason()}.
+     */
+    public void setMismatch(String path, Mismatch code) {
+        setMismatch(path, code, (char) 0, null, null);
+    }
+
+    /**
+     * Wie {@link #setMismatch(String, Mismatch)}, wenn an der aktuellen Position nicht
+     * das Trennzeichen <code>expected</code> steht.
+     */
+    public void setDelimiterMismatch(String path, char expected) {
+        setMismatch(path, Mismatch.PREDELIM, expected, null, null);
+    }
+
+    /**
+     * Wie {@link #setMismatch(String, Mismatch)}, wenn der geparste Wert
+     * <code>found</code> nicht dem vorgegebenen Wert <code>expected</code> entspricht.
+     */
+    public void setValueMismatch(String path, String expected, String found) {
+        setMismatch(path, Mismatch.PREDEF, (char) 0, expected, found);
+    }
+
+    private void setMismatch(String path, Mismatch code, char delim, String expected, String found) {
+        if (pos <= mismatchPos)
+            return;
+
+        mismatchPos = pos;
+        mismatchPath = path;
+        mismatchCode = code;
+        mismatchDelim = delim;
+        mismatchExpected = expected;
+        mismatchFound = found;
+    }
+
+    /**
+     * @return die Position des am weitesten hinten liegenden Fehlschlags oder -1.
+     */
+    public int getMismatchPosition() {
+        return mismatchPos;
+    }
+
+    /**
+     * @return der Pfad des Elements, das an {@link #getMismatchPosition()} nicht passte.
+     */
+    public String getMismatchPath() {
+        return mismatchPath;
+    }
+
+    /**
+     * @return der Grund für den Fehlschlag an {@link #getMismatchPosition()} oder
+     * <code>null</code>.
+     */
+    public Mismatch getMismatchCode() {
+        return mismatchCode;
+    }
+
+    /**
+     * @return die Fehlerbeschreibung zu {@link #getMismatchPosition()} oder <code>null</code>.
+     */
+    public String getMismatchReason() {
+        if (mismatchCode == null)
+            return null;
+
+        switch (mismatchCode) {
+            case END_OF_STRING:
+                return HBCIUtils.getLocMsg("EXCMSG_ENDOFSTRG", mismatchPath);
+            case PREDELIM:
+                String found = mismatchPos < data.length() ? Character.toString(data.charAt(mismatchPos)) : "";
+                return HBCIUtils.getLocMsg("EXCMSG_PREDELIM",
+                    new Object[]{mismatchPath, Character.toString(mismatchDelim), found});
+            case EMPTY:
+                return HBCIUtils.getLocMsg("EXCMSG_EMPTY_X", mismatchPath);
+            case PREDEF:
+                return HBCIUtils.getLocMsg("EXCMSG_PREDEFERR",
+                    new Object[]{mismatchPath, mismatchExpected, mismatchFound});
+            default:
+                return HBCIUtils.getLocMsg("EXCMSG_PROT_ERRSYNDE", mismatchPath);
+        }
+    }
+
+    /**
+     * @return der noch nicht geparste Rest der Nachricht.
+     */
+    @Override
+    public String toString() {
+        return data.substring(pos);
+    }
+
+    /**
+     * Gründe, aus denen ein Element beim Parsen nicht passt.
+     */
+    public enum Mismatch {
+        /** Die Nachricht ist vor dem Element zu Ende. */
+        END_OF_STRING,
+        /** Vor dem Element steht nicht das erwartete Trennzeichen. */
+        PREDELIM,
+        /** Das Element ist leer, obwohl es einen Wert haben muss. */
+        EMPTY,
+        /** Der Wert passt nicht zum Datentyp des Elements. */
+        DATATYPE,
+        /** Der Wert weicht vom vorgegebenen Wert ab. */
+        PREDEF
+    }
+}
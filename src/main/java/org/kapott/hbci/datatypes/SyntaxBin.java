@@ -26,6 +26,7 @@ import org.kapott.hbci.exceptions.InvalidUserDataException;
 import org.kapott.hbci.manager.HBCIUtils;
 
 import java.math.BigInteger;
+import java.nio.CharBuffer;
 
 /* @internal
     @brief SyntaxBin enthält Binärdaten.
@@ -40,8 +41,13 @@ import java.math.BigInteger;
     @author $Author: willuhn $
 */
 
-// intern wird das byte-array gespeichert
+// intern wird das byte-array gespeichert; beim parsen zunaechst nur als sicht
+// auf die empfangene nachricht, der string wird erst bei bedarf erzeugt
 public class SyntaxBin extends SyntaxDE {
+
+    private CharBuffer slice;
+    private String data;
+
     /**
      * @internal @brief creates an object representing the BIN datatype
      * @see SyntaxDE
@@ -53,7 +59,7 @@ public class SyntaxBin extends SyntaxDE {
     /**
      * @see SyntaxDE
      */
-    public SyntaxBin(StringBuilder res, int minsize, int maxsize) {
+    public SyntaxBin(ParseCursor res, int minsize, int maxsize) {
         initData(res, minsize, maxsize);
     }
 
@@ -109,6 +115,8 @@ public class SyntaxBin extends SyntaxDE {
     }
 
     public void init(String x, int minlen, int maxlen) {
+        slice = null;
+        data = null;
         super.init(expand(x), minlen, maxlen);
     }
 
@@ -123,60 +131,117 @@ public class SyntaxBin extends SyntaxDE {
         return header + con;
     }
 
+    @Override
+    public String toString() {
+        return getContent();
+    }
+
+    @Override
+    public void appendTo(MessageBuffer sb) {
+        CharSequence con = (slice != null) ? slice : getContent();
+        sb.append('@').append(con.length()).append('@').append(con);
+    }
+
     /**
-     * @param st the string representing the complete datatype BIN
+     * @return den inhalt als string; beim parsen wird dieser erst beim ersten aufruf
+     * erzeugt, danach wird die sicht auf die nachricht freigegeben
+     */
+    @Override
+    protected String getContent() {
+        if (slice != null) {
+            data = slice.toString();
+            slice = null;
+        }
+        if (data != null)
+            return data;
+
+        String con = super.getContent();
+        return (con != null) ? con : "";
+    }
+
+    /**
+     * @return die laenge der binaerdaten in bytes
+     */
+    public int length() {
+        return (slice != null) ? slice.remaining() : getContent().length();
+    }
+
+    /**
+     * @param res the string representing the complete datatype BIN
      * @return the length of the header-field in this string (i.e.
      * the number of bytes making the @len@ part of the string
      * @internal @brief returns the size of the header
      */
-    private int getHeaderLen(String st) {
-        int idx = 0;
+    private static int getHeaderLen(CharSequence res, int startidx, int endidx) {
+        int idx = startidx;
         int delimFound = 0;
-        int len = st.length();
 
-        while (idx < len && delimFound != 2) {
-            if (st.charAt(idx++) == '@') {
+        while (idx < endidx && delimFound != 2) {
+            if (res.charAt(idx++) == '@') {
                 delimFound++;
             }
         }
 
-        return idx;
+        return idx - startidx;
     }
 
     /**
-     * @param st the content of an HBCI-BIN-datatype-field
-     * @return the "real" data wrapped into the given string
-     * @internal @brief gets the "real" value out of an HBCI-BIN-datatype
-     * <p>
-     * this method takes a string representing the value of a BIN-datatype
-     * and extracts the real value (the data making the element) from it.
-     * for this to achieve it removes the header containing the length
-     * of the data
+     * prueft ohne exception, ob der bereich [startidx, endidx) von <code>res</code>
+     * als Bin geparst werden kann, also mit einem vollstaendigen @len@-header
+     * beginnt, dessen daten noch vor endidx enden
      */
-    private String parse(String st) {
-        int headerLen = getHeaderLen(st);
-        String ret = "";
-
-        if (headerLen != 0) {
-            int size = Integer.parseInt(st.substring(1, headerLen - 1));
-            ret = st.substring(headerLen, headerLen + size);
+    public static boolean accepts(CharSequence res, int startidx, int endidx, int minsize) {
+        if (endidx == startidx)
+            return true;
+        if (res.charAt(startidx) != '@')
+            return false;
+
+        int idx = startidx + 1;
+        int size = 0;
+        while (idx < endidx && idx - startidx <= 9) {
+            char ch = res.charAt(idx);
+            if (ch < '0' || ch > '9')
+                break;
+            size = size * 10 + (ch - '0');
+            idx++;
         }
+        if (idx == startidx + 1 || idx >= endidx || res.charAt(idx) != '@')
+            return false;
 
-        return ret;
+        int dataStart = idx + 1;
+        return dataStart + size <= endidx && (size != 0 || minsize == 0);
     }
 
-    private void initData(StringBuilder res, int minsize, int maxsize) {
+    /**
+     * extrahiert die eigentlichen daten (ohne den @len@-header) aus dem
+     * bereich [startidx, endidx) der nachricht; die daten selbst werden dabei
+     * nicht kopiert
+     */
+    private void initData(ParseCursor res, int minsize, int maxsize) {
         int startidx = skipPreDelim(res);
         int endidx = findNextDelim(res, startidx);
-        String st = res.substring(startidx, endidx);
 
-        String temp = parse(st);
-        setContent(temp, minsize, maxsize);
+        slice = null;
+        data = null;
+        int headerLen = getHeaderLen(res, startidx, endidx);
+        if (headerLen != 0) {
+            int size = Integer.parseInt(res, startidx + 1, startidx + headerLen - 1, 10);
+            int dataStart = startidx + headerLen;
+            if (dataStart + size > endidx)
+                throw new StringIndexOutOfBoundsException("begin " + headerLen + ", end " + (headerLen + size) +
+                    ", length " + (endidx - startidx));
+
+            CharBuffer temp = res.slice(dataStart, dataStart + size);
+            checkContentLength(temp, minsize, maxsize);
+            slice = temp;
+        } else {
+            setContent("", minsize, maxsize);
+        }
 
-        res.delete(0, endidx);
+        res.skip(endidx);
     }
 
-    public void init(StringBuilder res, int minsize, int maxsize) {
+    public void init(ParseCursor res, int minsize, int maxsize) {
         initData(res, minsize, maxsize);
     }
 
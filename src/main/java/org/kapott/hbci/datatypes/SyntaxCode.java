@@ -26,7 +26,7 @@ public class SyntaxCode
         super(x, minlen, maxlen);
     }
 
-    public SyntaxCode(StringBuilder res, int minsize, int maxsize) {
+    public SyntaxCode(ParseCursor res, int minsize, int maxsize) {
         super(res, minsize, maxsize);
     }
 
@@ -36,7 +36,7 @@ public class SyntaxCode
         super.init(x, minlen, maxlen);
     }
 
-    public void init(StringBuilder res, int minsize, int maxsize) {
+    public void init(ParseCursor res, int minsize, int maxsize) {
         super.init(res, minsize, maxsize);
     }
 
@@ -35,7 +35,7 @@ public final class SyntaxCtr extends SyntaxDE {
         super(getCode(x.trim()), 3, 3);
     }
 
-    public SyntaxCtr(StringBuilder res, int minsize, int maxsize) {
+    public SyntaxCtr(ParseCursor res, int minsize, int maxsize) {
         initData(res, minsize, maxsize);
     }
 
@@ -202,17 +202,32 @@ public final class SyntaxCtr extends SyntaxDE {
         super.init(getCode(x.trim()), 3, 3);
     }
 
-    private void initData(StringBuilder res, int minsize, int maxsize) {
+    /**
+     * prueft ohne exception, ob der bereich [startidx, endidx) von <code>res</code>
+     * als Ctr geparst werden kann; alle bekannten laendercodes sind dreistellig
+     */
+    public static boolean accepts(CharSequence res, int startidx, int endidx, int minsize) {
+        if (endidx - startidx != 3)
+            return false;
+        for (int i = startidx; i < endidx; i++) {
+            char ch = res.charAt(i);
+            if (ch > '9' || ch < '0')
+                return false;
+        }
+        return true;
+    }
+
+    private void initData(ParseCursor res, int minsize, int maxsize) {
         int startidx = skipPreDelim(res);
         int endidx = findNextDelim(res, startidx);
         String st = res.substring(startidx, endidx);
 
         getName(st);
         setContent(st, 3, 3);
-        res.delete(0, endidx);
+        res.skip(endidx);
     }
 
-    public void init(StringBuilder res, int minsize, int maxsize) {
+    public void init(ParseCursor res, int minsize, int maxsize) {
         initData(res, minsize, maxsize);
     }
 
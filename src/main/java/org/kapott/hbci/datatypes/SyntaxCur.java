@@ -27,7 +27,7 @@ public final class SyntaxCur
         super(x.trim(), 3, 3);
     }
 
-    public SyntaxCur(StringBuilder res, int minsize, int maxsize) {
+    public SyntaxCur(ParseCursor res, int minsize, int maxsize) {
         initData(res, minsize, maxsize);
     }
 
@@ -37,16 +37,24 @@ public final class SyntaxCur
         super.init(x.trim(), 3, 3);
     }
 
-    private void initData(StringBuilder res, int minsize, int maxsize) {
+    /**
+     * prueft ohne exception, ob der bereich [startidx, endidx) von <code>res</code>
+     * als Cur geparst werden kann
+     */
+    public static boolean accepts(CharSequence res, int startidx, int endidx, int minsize) {
+        return endidx != startidx;
+    }
+
+    private void initData(ParseCursor res, int minsize, int maxsize) {
         int startidx = skipPreDelim(res);
         int endidx = findNextDelim(res, startidx);
         String st = res.substring(startidx, endidx);
 
         setContent(st, 3, 3);
-        res.delete(0, endidx);
+        res.skip(endidx);
     }
 
-    public void init(StringBuilder res, int minsize, int maxsize) {
+    public void init(ParseCursor res, int minsize, int maxsize) {
         initData(res, minsize, maxsize);
     }
 
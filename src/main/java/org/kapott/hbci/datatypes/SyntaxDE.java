@@ -85,7 +85,7 @@ public abstract class SyntaxDE {
      * (i.e. the return value is the index into the String @p res where we
      * can start fetching the next syntax token)
      */
-    protected static int skipPreDelim(StringBuilder res) {
+    protected static int skipPreDelim(CharSequence res) {
         int ret = 0;
 
         if (res.length() != 0) {
@@ -113,7 +113,7 @@ public abstract class SyntaxDE {
      * of an HBCI-specific data-element-delimiter and returns its
      * position.
      */
-    public static int findNextDelim(StringBuilder res, int startidx) {
+    public static int findNextDelim(CharSequence res, int startidx) {
         int ret = startidx;
         boolean quoted = false;
         boolean quit = false;
@@ -133,8 +133,7 @@ public abstract class SyntaxDE {
                         binLenStart = ret;
                     } else {
                         int binLenEnd = ret - 1;
-                        String st = res.substring(binLenStart, binLenEnd);
-                        int binLen = Integer.parseInt(st);
+                        int binLen = Integer.parseInt(res, binLenStart, binLenEnd, 10);
 
                         ret += binLen;
                         inBinLen = false;
@@ -148,7 +147,8 @@ public abstract class SyntaxDE {
             }
         }
 
-        return ret;
+        // bei abgeschnittenen binaerdaten zeigt die @len@-angabe ueber das ende hinaus
+        return Math.min(ret, len);
     }
 
     /**
@@ -164,7 +164,7 @@ public abstract class SyntaxDE {
         initData(x, minsize, maxsize);
     }
 
-    public void init(StringBuilder x, int minsize, int maxsize) {
+    public void init(ParseCursor x, int minsize, int maxsize) {
         initData(x.toString(), minsize, maxsize);
     }
 
@@ -189,17 +189,24 @@ public abstract class SyntaxDE {
      * @p minsize ... @p maxsize
      */
     protected final void setContent(String st, int minsize, int maxsize) {
+        checkContentLength(st, minsize, maxsize);
+        content = st;
+    }
+
+    /**
+     * prueft die laenge eines wertes wie {@link #setContent(String, int, int)}, ohne
+     * ihn zu uebernehmen
+     */
+    protected static void checkContentLength(CharSequence st, int minsize, int maxsize) {
         /* die stringlaenge muss zwischen minsize und maxsize liegen,
            im falle 'maxsize=0' kann sie beliebig gross sein */
         int len = st.length();
         if (len < minsize || (maxsize != 0 && len > maxsize)) {
             String msg = HBCIUtils.getLocMsg("EXC_DT_INV_STRINGLEN", new Object[]{
-                st, Integer.toString(len), Integer.toString(minsize), Integer.toString(maxsize)});
+                st.toString(), Integer.toString(len), Integer.toString(minsize), Integer.toString(maxsize)});
             if (len == 0)
                 throw new InvalidArgumentException(msg);
         }
-
-        content = st;
     }
 
     /**
@@ -215,6 +222,14 @@ public abstract class SyntaxDE {
         return (content != null) ? content : "";
     }
 
+    /**
+     * haengt die darstellung des elementes in der nachricht (wie {@link #toString(int)})
+     * an 'sb' an
+     */
+    public void appendTo(MessageBuffer sb) {
+        sb.append(toString(0));
+    }
+
     /**
      * @return Die human-reable Repraesentation dieses Elementes
      * @internal @brief Returns the human-readable value of this data element.
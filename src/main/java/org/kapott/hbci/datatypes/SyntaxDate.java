@@ -33,7 +33,7 @@ public final class SyntaxDate
         super(parseDate(x), 8, 8);
     }
 
-    public SyntaxDate(StringBuilder res, int minsize, int maxsize) {
+    public SyntaxDate(ParseCursor res, int minsize, int maxsize) {
         initData(res, minsize, maxsize);
     }
 
@@ -53,17 +53,29 @@ public final class SyntaxDate
         super.init(parseDate(x), 8, 8);
     }
 
-    private void initData(StringBuilder res, int minsize, int maxsize) {
+    /**
+     * prueft ohne exception, ob der bereich [startidx, endidx) von <code>res</code>
+     * als Date geparst werden kann. geprueft wird nur grob, ob ueberhaupt ein
+     * datum beginnt; alles weitere meldet der konstruktor
+     */
+    public static boolean accepts(CharSequence res, int startidx, int endidx, int minsize) {
+        if (endidx == startidx)
+            return false;
+        char ch = res.charAt(startidx);
+        return ch >= '0' && ch <= '9';
+    }
+
+    private void initData(ParseCursor res, int minsize, int maxsize) {
         int startidx = skipPreDelim(res);
         int endidx = findNextDelim(res, startidx);
         String st = res.substring(startidx, endidx);
 
         unparseDate(st);
         setContent(st, 8, 8);
-        res.delete(0, endidx);
+        res.skip(endidx);
     }
 
-    public void init(StringBuilder res, int minsize, int maxsize) {
+    public void init(ParseCursor res, int minsize, int maxsize) {
         initData(res, minsize, maxsize);
     }
 
@@ -32,7 +32,7 @@ public final class SyntaxDig
         super(buildString(st.trim(), minsize), minsize, maxsize);
     }
 
-    public SyntaxDig(StringBuilder res, int minsize, int maxsize) {
+    public SyntaxDig(ParseCursor res, int minsize, int maxsize) {
         initData(res, minsize, maxsize);
     }
 
@@ -67,7 +67,20 @@ public final class SyntaxDig
         super.init(buildString(st.trim(), minsize), minsize, maxsize);
     }
 
-    private void initData(StringBuilder res, int minsize, int maxsize) {
+    /**
+     * prueft ohne exception, ob der bereich [startidx, endidx) von <code>res</code>
+     * als Dig geparst werden kann
+     */
+    public static boolean accepts(CharSequence res, int startidx, int endidx, int minsize) {
+        for (int i = startidx; i < endidx; i++) {
+            char ch = res.charAt(i);
+            if (ch > '9' || ch < '0')
+                return false;
+        }
+        return true;
+    }
+
+    private void initData(ParseCursor res, int minsize, int maxsize) {
         int startidx = skipPreDelim(res);
         int endidx = findNextDelim(res, startidx);
         String st = res.substring(startidx, endidx);
@@ -81,10 +94,10 @@ public final class SyntaxDig
         }
 
         setContent(st, minsize, maxsize);
-        res.delete(0, endidx);
+        res.skip(endidx);
     }
 
-    public void init(StringBuilder res, int minsize, int maxsize) {
+    public void init(ParseCursor res, int minsize, int maxsize) {
         initData(res, minsize, maxsize);
     }
 }
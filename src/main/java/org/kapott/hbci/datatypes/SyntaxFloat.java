@@ -36,7 +36,7 @@ public class SyntaxFloat
         super(double2string(x), minsize, maxsize);
     }
 
-    public SyntaxFloat(StringBuilder res, int minsize, int maxsize) {
+    public SyntaxFloat(ParseCursor res, int minsize, int maxsize) {
         initData(res, minsize, maxsize);
     }
 
@@ -65,7 +65,19 @@ public class SyntaxFloat
         super.init(double2string(x), minsize, maxsize);
     }
 
-    private void initData(StringBuilder res, int minsize, int maxsize) {
+    /**
+     * prueft ohne exception, ob der bereich [startidx, endidx) von <code>res</code>
+     * als Float geparst werden kann. geprueft wird nur grob, ob ueberhaupt eine
+     * zahl beginnt; alles weitere meldet der konstruktor
+     */
+    public static boolean accepts(CharSequence res, int startidx, int endidx, int minsize) {
+        if (endidx == startidx)
+            return true;
+        char ch = res.charAt(startidx);
+        return (ch >= '0' && ch <= '9') || ch == ',' || ch == '-';
+    }
+
+    private void initData(ParseCursor res, int minsize, int maxsize) {
         String st = null;
 
         try {
@@ -84,14 +96,14 @@ public class SyntaxFloat
             }
 
             setContent(st, minsize, maxsize);
-            res.delete(0, endidx);
+            res.skip(endidx);
         } catch (Exception ex) {
             throw new InvalidUserDataException(HBCIUtils.getLocMsg("EXCMSG_FLOATERR", st), ex);
         }
     }
 
     @Override
-    public void init(StringBuilder res, int minsize, int maxsize) {
+    public void init(ParseCursor res, int minsize, int maxsize) {
         initData(res, minsize, maxsize);
     }
 
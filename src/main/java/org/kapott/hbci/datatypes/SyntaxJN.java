@@ -31,7 +31,7 @@ public class SyntaxJN
         super(check(x.trim()), 1, 1);
     }
 
-    public SyntaxJN(StringBuilder res, int minsize, int maxsize) {
+    public SyntaxJN(ParseCursor res, int minsize, int maxsize) {
         initData(res, minsize, maxsize);
     }
 
@@ -47,16 +47,27 @@ public class SyntaxJN
         super.init(check(x.trim()), 1, 1);
     }
 
-    private void initData(StringBuilder res, int minsize, int maxsize) {
+    /**
+     * prueft ohne exception, ob der bereich [startidx, endidx) von <code>res</code>
+     * als JN geparst werden kann
+     */
+    public static boolean accepts(CharSequence res, int startidx, int endidx, int minsize) {
+        if (endidx - startidx != 1)
+            return false;
+        char ch = res.charAt(startidx);
+        return ch == 'J' || ch == 'N';
+    }
+
+    private void initData(ParseCursor res, int minsize, int maxsize) {
         int startidx = skipPreDelim(res);
         int endidx = findNextDelim(res, startidx);
         String st = res.substring(startidx, endidx);
 
         setContent(check(st), 1, 1);
-        res.delete(0, endidx);
+        res.skip(endidx);
     }
 
-    public void init(StringBuilder res, int minsize, int maxsize) {
+    public void init(ParseCursor res, int minsize, int maxsize) {
         initData(res, minsize, maxsize);
     }
 }
@@ -31,7 +31,7 @@ public final class SyntaxNum extends SyntaxDE {
         super(check(st), minsize, maxsize);
     }
 
-    public SyntaxNum(StringBuilder res, int minsize, int maxsize) {
+    public SyntaxNum(ParseCursor res, int minsize, int maxsize) {
         initData(res, minsize, maxsize);
     }
 
@@ -57,7 +57,21 @@ public final class SyntaxNum extends SyntaxDE {
         super.init(check(st), minsize, maxsize);
     }
 
-    private void initData(StringBuilder res, int minsize, int maxsize) {
+    /**
+     * prueft ohne exception, ob der bereich [startidx, endidx) von <code>res</code>
+     * als Num geparst werden kann
+     */
+    public static boolean accepts(CharSequence res, int startidx, int endidx, int minsize) {
+        int len = endidx - startidx;
+        for (int i = startidx; i < endidx; i++) {
+            char ch = res.charAt(i);
+            if (ch > '9' || ch < '0' || (i == startidx && len != 1 && ch == '0'))
+                return false;
+        }
+        return true;
+    }
+
+    private void initData(ParseCursor res, int minsize, int maxsize) {
         int startidx = skipPreDelim(res);
         int endidx = findNextDelim(res, startidx);
         String st = res.substring(startidx, endidx);
@@ -71,10 +85,10 @@ public final class SyntaxNum extends SyntaxDE {
         }
 
         setContent(st, minsize, maxsize);
-        res.delete(0, endidx);
+        res.skip(endidx);
     }
 
-    public void init(StringBuilder res, int minsize, int maxsize) {
+    public void init(ParseCursor res, int minsize, int maxsize) {
         initData(res, minsize, maxsize);
     }
 
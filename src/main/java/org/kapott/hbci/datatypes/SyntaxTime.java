@@ -33,7 +33,7 @@ public final class SyntaxTime
         super(parseTime(x), 6, 6);
     }
 
-    public SyntaxTime(StringBuilder res, int minsize, int maxsize) {
+    public SyntaxTime(ParseCursor res, int minsize, int maxsize) {
         initData(res, minsize, maxsize);
     }
 
@@ -47,17 +47,29 @@ public final class SyntaxTime
         super.init(parseTime(x), 6, 6);
     }
 
-    private void initData(StringBuilder res, int minsize, int maxsize) {
+    /**
+     * prueft ohne exception, ob der bereich [startidx, endidx) von <code>res</code>
+     * als Time geparst werden kann. geprueft wird nur grob, ob ueberhaupt eine
+     * uhrzeit beginnt; alles weitere meldet der konstruktor
+     */
+    public static boolean accepts(CharSequence res, int startidx, int endidx, int minsize) {
+        if (endidx == startidx)
+            return false;
+        char ch = res.charAt(startidx);
+        return ch >= '0' && ch <= '9';
+    }
+
+    private void initData(ParseCursor res, int minsize, int maxsize) {
         int startidx = skipPreDelim(res);
         int endidx = findNextDelim(res, startidx);
         String st = res.substring(startidx, endidx);
 
         unparseTime(st);
         setContent(st, 6, 6);
-        res.delete(0, endidx);
+        res.skip(endidx);
     }
 
-    public void init(StringBuilder res, int minsize, int maxsize) {
+    public void init(ParseCursor res, int minsize, int maxsize) {
         initData(res, minsize, maxsize);
     }
 
@@ -20,34 +20,144 @@
 
 package org.kapott.hbci.datatypes.factory;
 
-import org.kapott.hbci.datatypes.SyntaxDE;
+import org.kapott.hbci.datatypes.*;
 import org.kapott.hbci.exceptions.NoSuchConstructorException;
 import org.kapott.hbci.exceptions.NoSuchSyntaxException;
 import org.kapott.hbci.exceptions.ParseErrorException;
 import org.kapott.hbci.manager.HBCIUtils;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
+import java.util.HashMap;
+import java.util.Map;
 
+/**
+ * Erzeugt die Datentyp-Objekte für DEs.
+ * <p>
+ * Für jeden HBCI-Datentyp ist ein {@link Creator} registriert, der die Konstruktoren
+ * der jeweiligen Syntax-Klasse direkt aufruft. Der Creator kann einmalig pro
+ * DE-Referenz ermittelt und danach beliebig oft verwendet werden.
+ */
 public class SyntaxDEFactory {
 
-    public static SyntaxDE createSyntaxDE(String dataType, String path, Object value, int minsize, int maxsize) {
-        // laden der klasse, die die syntax des de enthaelt
-        try {
-            Class c = Class.forName("org.kapott.hbci.datatypes.Syntax" + dataType, false,
-                SyntaxDEFactory.class.getClassLoader());
-            Constructor con = c.getConstructor(value.getClass(), int.class, int.class);
-            return (SyntaxDE) (con.newInstance(new Object[]{value, new Integer(minsize), new Integer(maxsize)}));
-        } catch (ClassNotFoundException e) {
+    private static final Map<String, Creator> creators = new HashMap<>();
+
+    static {
+        register("AN", SyntaxAN::new, SyntaxAN::new, null);
+        register("Bin", SyntaxBin::new, SyntaxBin::new, SyntaxBin::accepts);
+        register("Code", SyntaxCode::new, SyntaxCode::new, null);
+        register("Ctr", SyntaxCtr::new, SyntaxCtr::new, SyntaxCtr::accepts);
+        register("Cur", SyntaxCur::new, SyntaxCur::new, SyntaxCur::accepts);
+        register("Date", SyntaxDate::new, SyntaxDate::new, SyntaxDate::accepts);
+        register("Dig", SyntaxDig::new, SyntaxDig::new, SyntaxDig::accepts);
+        // ungueltige zeichen sind hier ein fataler fehler, den der konstruktor meldet
+        register("DTAUS", SyntaxDTAUS::new, SyntaxDTAUS::new, null);
+        register("Float", SyntaxFloat::new, SyntaxFloat::new, SyntaxFloat::accepts);
+        register("ID", SyntaxID::new, SyntaxID::new, null);
+        register("JN", SyntaxJN::new, SyntaxJN::new, SyntaxJN::accepts);
+        register("Num", SyntaxNum::new, SyntaxNum::new, SyntaxNum::accepts);
+        register("Time", SyntaxTime::new, SyntaxTime::new, SyntaxTime::accepts);
+        register("Wrt", SyntaxWrt::new, SyntaxWrt::new, null);
+    }
+
+    private static void register(String dataType, ValueConstructor fromValue, ParseConstructor fromCursor,
+                                 ParseCheck check) {
+        creators.put(dataType, new Creator(fromValue, fromCursor, check));
+    }
+
+    /**
+     * @param dataType der Datentyp (AN, Num, ...).
+     * @return der Creator für den Datentyp oder <code>null</code>, wenn es den Datentyp nicht gibt.
+     */
+    public static Creator findCreator(String dataType) {
+        return creators.get(dataType);
+    }
+
+    /**
+     * @param dataType der Datentyp (AN, Num, ...).
+     * @param path     Pfad des DE für die Fehlermeldung.
+     * @return der Creator für den Datentyp.
+     * @throws NoSuchSyntaxException wenn es den Datentyp nicht gibt.
+     */
+    public static Creator getCreator(String dataType, String path) {
+        Creator ret = creators.get(dataType);
+        if (ret == null)
             throw new NoSuchSyntaxException(dataType, path);
-        } catch (NoSuchMethodException e) {
-            throw new NoSuchConstructorException(dataType);
-        } catch (InstantiationException e) {
-            throw new RuntimeException(e);
-        } catch (IllegalAccessException e) {
-            throw new RuntimeException(e);
-        } catch (InvocationTargetException e) {
-            throw new ParseErrorException(HBCIUtils.getLocMsg("EXCMSG_PROT_ERRSYNDE", path), (Exception) e.getCause());
+        return ret;
+    }
+
+    public static SyntaxDE createSyntaxDE(String dataType, String path, Object value, int minsize, int maxsize) {
+        Creator creator = getCreator(dataType, path);
+        if (value instanceof String)
+            return creator.create(path, (String) value, minsize, maxsize);
+        if (value instanceof ParseCursor)
+            return creator.parse(path, (ParseCursor) value, minsize, maxsize);
+        throw new NoSuchConstructorException(dataType);
+    }
+
+    @FunctionalInterface
+    private interface ValueConstructor {
+        SyntaxDE create(String value, int minsize, int maxsize);
+    }
+
+    @FunctionalInterface
+    private interface ParseConstructor {
+        SyntaxDE create(ParseCursor res, int minsize, int maxsize);
+    }
+
+    @FunctionalInterface
+    private interface ParseCheck {
+        boolean accepts(CharSequence res, int startidx, int endidx, int minsize);
+    }
+
+    /**
+     * Erzeugt Objekte eines bestimmten Datentyps. Fehler im Konstruktor des Datentyps
+     * werden wie bisher in eine {@link ParseErrorException} verpackt.
+     */
+    public static final class Creator {
+
+        private final ValueConstructor fromValue;
+        private final ParseConstructor fromCursor;
+        private final ParseCheck check;
+
+        private Creator(ValueConstructor fromValue, ParseConstructor fromCursor, ParseCheck check) {
+            this.fromValue = fromValue;
+            this.fromCursor = fromCursor;
+            this.check = check;
+        }
+
+        /**
+         * Erzeugt den Datentyp aus einem Wert (beim Erzeugen von Nachrichten).
+         */
+        public SyntaxDE create(String path, String value, int minsize, int maxsize) {
+            try {
+                return fromValue.create(value, minsize, maxsize);
+            } catch (RuntimeException e) {
+                throw new ParseErrorException(HBCIUtils.getLocMsg("EXCMSG_PROT_ERRSYNDE", path), e);
+            }
+        }
+
+        /**
+         * Prüft ohne Exception, ob der Wert im Bereich <code>[startidx, endidx)</code> von
+         * <code>res</code> zum Datentyp passt. Beim Backtracking passen sehr viele Werte
+         * probeweise nicht; diese Fälle werden hier aussortiert, bevor {@link #parse} sie
+         * mit einer Exception ablehnen müsste. Ein <code>true</code> heißt nicht, dass
+         * {@link #parse} sicher gelingt.
+         *
+         * @param minsize Mindestlänge des Wertes.
+         * @return <code>false</code>, wenn der Wert sicher nicht zum Datentyp passt.
+         */
+        public boolean accepts(CharSequence res, int startidx, int endidx, int minsize) {
+            return check == null || check.accepts(res, startidx, endidx, minsize);
+        }
+
+        /**
+         * Erzeugt den Datentyp durch Parsen ab der aktuellen Position von <code>res</code>.
+         */
+        public SyntaxDE parse(String path, ParseCursor res, int minsize, int maxsize) {
+            try {
+                return fromCursor.create(res, minsize, maxsize);
+            } catch (RuntimeException e) {
+                throw new ParseErrorException(HBCIUtils.getLocMsg("EXCMSG_PROT_ERRSYNDE", path), e);
+            }
         }
     }
 }
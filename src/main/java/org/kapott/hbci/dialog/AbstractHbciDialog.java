@@ -17,6 +17,7 @@
 package org.kapott.hbci.dialog;
 
 import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.kapott.hbci.callback.HBCICallback;
 import org.kapott.hbci.manager.HBCIKernel;
@@ -30,6 +31,8 @@ import org.kapott.hbci.status.HBCIMsgStatus;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 @Slf4j
 public abstract class AbstractHbciDialog {
@@ -42,6 +45,13 @@ public abstract class AbstractHbciDialog {
     @Getter
     long msgnum;
     private boolean closed;
+    /**
+     * Executor für {@link #executeAsync(boolean)}, per Default ein virtual thread pro
+     * Dialog (siehe {@link DialogExecutors#getDefault()}).
+     */
+    @Getter
+    @Setter
+    private Executor executor = DialogExecutors.getDefault();
 
     AbstractHbciDialog(PinTanPassport passport) {
         this.passport = passport;
@@ -50,6 +60,15 @@ public abstract class AbstractHbciDialog {
 
     public abstract HBCIExecStatus execute(boolean close);
 
+    /**
+     * Führt den Dialog mit {@link #getExecutor()} aus. Der Dialog selbst (inkl. der
+     * Callbacks) läuft weiterhin synchron in einem Thread des Executors, der
+     * aufrufende Thread wird aber nicht blockiert.
+     */
+    public CompletableFuture<HBCIExecStatus> executeAsync(boolean close) {
+        return CompletableFuture.supplyAsync(() -> execute(close), executor);
+    }
+
     public abstract boolean isAnonymous();
 
     public HBCIMsgStatus dialogInit(boolean withHktan) {
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2018-2019 adorsys GmbH & Co KG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kapott.hbci.dialog;
+
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors für das Ausführen von Dialogen ({@link AbstractHbciDialog#executeAsync(boolean)}).
+ * <p>
+ * Ein Dialog blockiert während der Kommunikation mit der Bank und während der
+ * Callbacks (PIN/TAN-Abfrage). Läuft die Anwendung auf einer JVM mit virtual threads
+ * (Java 21+), wird deshalb jeder Dialog in einem eigenen virtual thread ausgeführt;
+ * sonst in einem eigenen (Daemon-)Thread.
+ */
+@Slf4j
+@UtilityClass
+public class DialogExecutors {
+
+    private static final Executor VIRTUAL_THREAD_EXECUTOR = createVirtualThreadExecutor();
+    private static final Executor DEFAULT_EXECUTOR = (VIRTUAL_THREAD_EXECUTOR != null) ? VIRTUAL_THREAD_EXECUTOR :
+        createPlatformThreadExecutor();
+
+    /**
+     * @return der Default-Executor für Dialoge: ein virtual thread pro Dialog, wenn
+     * verfügbar, sonst ein Thread pro Dialog.
+     */
+    public static Executor getDefault() {
+        return DEFAULT_EXECUTOR;
+    }
+
+    /**
+     * @return true, wenn die JVM virtual threads unterstützt.
+     */
+    public static boolean isVirtualThreadsAvailable() {
+        return VIRTUAL_THREAD_EXECUTOR != null;
+    }
+
+    private static Executor createPlatformThreadExecutor() {
+        log.debug("virtual threads not available, running dialogs on platform threads");
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "hbci-dialog-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // per reflection, da das projekt noch gegen java 11 gebaut wird
+    private static Executor createVirtualThreadExecutor() {
+        try {
+            return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -126,6 +126,34 @@ public final class HBCIJobsDialog extends AbstractHbciDialog {
         }
     }
 
+    /**
+     * Fügt mehrere Aufträge hinzu und verteilt sie mit {@link HBCIMessagePlanner} auf
+     * möglichst wenige Nachrichten. Die Nachrichten werden nach den bisher
+     * hinzugefügten Aufträgen gesendet; mit {@link #addTask(AbstractHBCIJob)}
+     * hinzugefügte Aufträge kommen danach in eine neue Nachricht.
+     *
+     * @return die Aufteilung, u.a. mit der Anzahl eingesparter Roundtrips.
+     */
+    public HBCIMessagePlanner.Plan addTasks(List<AbstractHBCIJob> jobs) {
+        for (AbstractHBCIJob job : jobs) {
+            try {
+                log.info(HBCIUtils.getLocMsg("EXCMSG_ADDJOB", job.getName()));
+                job.verifyConstraints();
+            } catch (Exception e) {
+                String msg = HBCIUtils.getLocMsg("EXCMSG_CANTADDJOB", job.getName());
+                log.error("task " + job.getName() + " will not be executed in current dialog");
+                throw new HBCI_Exception(msg, e);
+            }
+        }
+
+        HBCIMessagePlanner.Plan plan = new HBCIMessagePlanner(passport).plan(jobs);
+        plan.getMessages().forEach(queue::append);
+        log.info(plan.toString());
+
+        newMsg();
+        return plan;
+    }
+
     private int getTotalNumberOfGVSegsInCurrentMessage() {
         int total = 0;
 
@@ -164,7 +192,8 @@ public final class HBCIJobsDialog extends AbstractHbciDialog {
             try {
                 int taskNum = 0;
 
-                Message message = MessageFactory.createMessage(veu ? "CustomMsgVeu" : "CustomMsg", passport.getSyntaxDocument());
+                Message message = MessageFactory.createMessage(veu ? "CustomMsgVeu" : "CustomMsg",
+                    passport.getSyntaxSpec().getSyntaxModel());
 
                 // durch alle jobs loopen, die eigentlich in der aktuellen
                 // nachricht abgearbeitet werden müssten
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2018-2019 adorsys GmbH & Co KG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kapott.hbci.dialog;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.kapott.hbci.GV.AbstractHBCIJob;
+import org.kapott.hbci.comm.TransportConfig;
+import org.kapott.hbci.exceptions.HBCI_Exception;
+import org.kapott.hbci.passport.PinTanPassport;
+import org.kapott.hbci.status.HBCIExecStatus;
+import org.kapott.hbci.status.HBCIMsgStatus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Führt unabhängige Aufträge eines Benutzers, die keine TAN benötigen (z.B. Saldo-,
+ * Umsatz- oder Depotabfragen für viele Konten), in mehreren parallelen Dialogen mit
+ * demselben Passport aus.
+ * <p>
+ * Die Aufträge werden reihum auf die Dialoge verteilt; innerhalb eines Dialogs werden
+ * sie mit {@link HBCIJobsDialog#addTasks(List)} auf möglichst wenige Nachrichten
+ * verteilt. Jeder Dialog hat seine eigene Dialog-ID und Nachrichtennummer, die
+ * Signatur-ID des Passports wird atomar vergeben. Die erste Dialog-Initialisierung
+ * (inkl. einer evtl. nötigen UPD-Synchronisierung und PIN-Abfrage) läuft allein, die
+ * weiteren Dialoge starten erst danach. Die Änderungen am Passport nach den weiteren
+ * Initialisierungen serialisiert der {@link PinTanPassport} selbst. Die Callbacks des
+ * Passports werden aus mehreren Threads aufgerufen.
+ * <p>
+ * Wie viele Dialoge gleichzeitig mit einem Bank-Server laufen dürfen, wird über
+ * {@link TransportConfig#getMaxParallelDialogs()} (Passport-Property
+ * <code>client.connection.maxParallelDialogs</code>, Default 2) begrenzt. Die Grenze gilt
+ * gemeinsam für alle Executoren, deren Passports dieselben Verbindungs-Einstellungen
+ * haben; Passports mit anderen Einstellungen haben ihre eigene Grenze.
+ */
+@Slf4j
+public final class ParallelJobsExecutor {
+
+    private static final Map<PermitKey, Semaphore> bankPermits = new ConcurrentHashMap<>();
+
+    private final PinTanPassport passport;
+    private final int dialogs;
+    private boolean withHktan;
+    private Executor executor = DialogExecutors.getDefault();
+
+    /**
+     * @param dialogs max. Anzahl der Dialoge, auf die die Aufträge verteilt werden.
+     */
+    public ParallelJobsExecutor(PinTanPassport passport, int dialogs) {
+        if (dialogs < 1)
+            throw new IllegalArgumentException("dialogs must be at least 1");
+
+        this.passport = passport;
+        this.dialogs = dialogs;
+    }
+
+    /**
+     * @param withHktan wird an {@link AbstractHbciDialog#dialogInit(boolean)} übergeben.
+     */
+    public ParallelJobsExecutor withHktan(boolean withHktan) {
+        this.withHktan = withHktan;
+        return this;
+    }
+
+    public ParallelJobsExecutor withExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Wie {@link #executeAsync(List)}, wartet aber auf das Ende aller Dialoge.
+     */
+    public HBCIExecStatus execute(List<AbstractHBCIJob> jobs) {
+        return executeAsync(jobs).join();
+    }
+
+    /**
+     * @return die Status aller Dialoge in der Reihenfolge der Dialoge; die Ergebnisse der
+     * einzelnen Aufträge stehen wie gewohnt in deren Job-Results.
+     * @throws HBCI_Exception wenn ein Auftrag eine TAN benötigt.
+     */
+    public CompletableFuture<HBCIExecStatus> executeAsync(List<AbstractHBCIJob> jobs) {
+        for (AbstractHBCIJob job : jobs) {
+            if (passport.tan2StepRequired(job))
+                throw new HBCI_Exception(job.getName() + " needs a TAN and can not run in a parallel dialog");
+        }
+        if (jobs.isEmpty())
+            return CompletableFuture.completedFuture(new HBCIExecStatus(Collections.emptyList()));
+
+        List<List<AbstractHBCIJob>> groups = split(jobs, Math.min(dialogs, jobs.size()));
+        TransportConfig config = TransportConfig.fromProperties(passport.getProperties());
+        Semaphore permits = bankPermits.computeIfAbsent(new PermitKey(config, String.valueOf(passport.getHost())),
+            key -> new Semaphore(key.getConfig().getMaxParallelDialogs()));
+        log.debug("executing " + jobs.size() + " jobs in " + groups.size() + " parallel dialogs");
+
+        // die weiteren dialoge starten erst, wenn der erste initialisiert ist
+        CompletableFuture<Boolean> firstInit = new CompletableFuture<>();
+        List<CompletableFuture<HBCIExecStatus>> results = new ArrayList<>(groups.size());
+        results.add(CompletableFuture.supplyAsync(() -> runDialog(groups.get(0), permits, firstInit), executor));
+        for (List<AbstractHBCIJob> group : groups.subList(1, groups.size())) {
+            results.add(firstInit.thenApplyAsync(ok -> ok ? runDialog(group, permits, null) :
+                new HBCIExecStatus(Collections.emptyList()), executor));
+        }
+
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0]))
+            .thenApply(v -> merge(results));
+    }
+
+    // reihum verteilen, damit gleichartige auftraege auf alle dialoge kommen
+    private static List<List<AbstractHBCIJob>> split(List<AbstractHBCIJob> jobs, int count) {
+        List<List<AbstractHBCIJob>> groups = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            groups.add(new ArrayList<>());
+        }
+        for (int i = 0; i < jobs.size(); i++) {
+            groups.get(i % count).add(jobs.get(i));
+        }
+        return groups;
+    }
+
+    /**
+     * @param initDone wird nach der dialog-initialisierung mit deren erfolg abgeschlossen
+     *                 (nur beim ersten dialog, sonst null)
+     */
+    private HBCIExecStatus runDialog(List<AbstractHBCIJob> jobs, Semaphore permits,
+                                     CompletableFuture<Boolean> initDone) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (initDone != null)
+                initDone.complete(false);
+            HBCIExecStatus ret = new HBCIExecStatus(null);
+            ret.addException(e);
+            return ret;
+        }
+
+        try {
+            HBCIJobsDialog dialog = new HBCIJobsDialog(passport);
+
+            HBCIMsgStatus initStatus = dialog.dialogInit(withHktan);
+            if (initDone != null)
+                initDone.complete(initStatus.isOK());
+            if (!initStatus.isOK()) {
+                return new HBCIExecStatus(Collections.singletonList(initStatus));
+            }
+
+            dialog.addTasks(jobs);
+            HBCIExecStatus status = dialog.execute(true);
+
+            List<HBCIMsgStatus> msgStatusList = new ArrayList<>();
+            msgStatusList.add(initStatus);
+            if (status.getMsgStatusList() != null)
+                msgStatusList.addAll(status.getMsgStatusList());
+
+            HBCIExecStatus ret = new HBCIExecStatus(msgStatusList);
+            if (status.getExceptions() != null)
+                status.getExceptions().forEach(ret::addException);
+            return ret;
+        } catch (Exception e) {
+            HBCIExecStatus ret = new HBCIExecStatus(null);
+            ret.addException(e);
+            return ret;
+        } finally {
+            // falls die initialisierung mit einer exception abgebrochen wurde
+            if (initDone != null)
+                initDone.complete(false);
+            permits.release();
+        }
+    }
+
+    private static HBCIExecStatus merge(List<CompletableFuture<HBCIExecStatus>> results) {
+        List<HBCIMsgStatus> msgStatusList = new ArrayList<>();
+        List<Exception> exceptions = new ArrayList<>();
+        for (CompletableFuture<HBCIExecStatus> result : results) {
+            HBCIExecStatus status = result.join();
+            if (status.getMsgStatusList() != null)
+                msgStatusList.addAll(status.getMsgStatusList());
+            if (status.getExceptions() != null)
+                exceptions.addAll(status.getExceptions());
+        }
+
+        HBCIExecStatus ret = new HBCIExecStatus(msgStatusList);
+        exceptions.forEach(ret::addException);
+        return ret;
+    }
+
+    @Value
+    private static class PermitKey {
+        TransportConfig config;
+        String host;
+    }
+}
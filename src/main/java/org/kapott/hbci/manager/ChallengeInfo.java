@@ -45,10 +45,6 @@ import java.util.Map;
  */
 @Slf4j
 public class ChallengeInfo {
-    /**
-     * Das Singleton.
-     */
-    private static ChallengeInfo singleton = null;
     private Map<String, Job> data; // Die Parameter-Daten aus der XML-Datei.
 
     /**
@@ -105,10 +101,16 @@ public class ChallengeInfo {
      *
      * @return das Challenge-Info-Objekt.
      */
-    public static synchronized ChallengeInfo getInstance() {
-        if (singleton == null)
-            singleton = new ChallengeInfo();
-        return singleton;
+    public static ChallengeInfo getInstance() {
+        return Holder.SINGLETON;
+    }
+
+    /**
+     * Das Singleton. Wird beim ersten Zugriff von der JVM thread-safe erzeugt, ohne
+     * dass jeder Aufruf von {@link #getInstance()} synchronisiert werden muss.
+     */
+    private static final class Holder {
+        private static final ChallengeInfo SINGLETON = new ChallengeInfo();
     }
 
     /**
@@ -19,6 +19,10 @@ public final class DocumentFactory {
             DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
             dbf.setIgnoringComments(true);
             dbf.setValidating(true);
+            // das dokument wird von SyntaxModel.compile() ohnehin einmal komplett durchlaufen,
+            // das verzögerte expandieren der knoten bringt hier also nichts. thread-sicher wird
+            // das DOM dadurch nicht - gleichzeitige leser müssen über das SyntaxModel gehen
+            dbf.setFeature("http://apache.org/xml/features/dom/defer-node-expansion", false);
 
             DocumentBuilder db = dbf.newDocumentBuilder();
             return db.parse(syntaxStream);
@@ -15,6 +15,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Uebernimmt das Umwandeln eines Flicker-Codes in die blinkende Darstellung.
@@ -48,7 +50,11 @@ public class FlickerRenderer {
     private int clock = 0;
     private List<int[]> bitarray = null;
 
+    // thread und latch werden nur unter 'lock' veraendert; kein synchronized, damit
+    // wartende virtual threads nicht an ihren carrier-thread gebunden werden
+    private final ReentrantLock lock = new ReentrantLock();
     private Thread thread = null;
+    private CountDownLatch finished = null;
     private int iterations = 0;
     private int freq = FREQUENCY_DEFAULT;
 
@@ -145,11 +151,23 @@ public class FlickerRenderer {
      * renderer.waitFor();
      * System.out.println("Code uebertragen");
      */
-    public synchronized void start() {
-        // ggf. laufenden Thread beenden
-        stop();
+    public void start() {
+        lock.lock();
+        try {
+            // ggf. laufenden Thread beenden
+            stop();
 
-        this.thread = new Thread("Flicker Update-Thread") {
+            CountDownLatch latch = new CountDownLatch(1);
+            this.finished = latch;
+            this.thread = createThread(latch);
+            this.thread.start();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Thread createThread(CountDownLatch latch) {
+        return new Thread("Flicker Update-Thread") {
             public void run() {
                 // Wir fangen beim ersten Halbbyte an.
                 halfbyteid = 0;
@@ -192,27 +210,26 @@ public class FlickerRenderer {
                     }
                 } catch (InterruptedException e) {
                     // Ende der Anzeige
+                } finally {
+                    latch.countDown();
                 }
             }
         };
-        thread.start();
     }
 
     /**
      * Stoppt das Rendern.
      */
     public final void stop() {
-        if (this.thread != null) {
-            try {
-                if (this.thread != null) {
-                    this.thread.interrupt();
-                    synchronized (this.thread) {
-                        this.thread.notifyAll();
-                    }
-                }
-            } finally {
-                this.thread = null;
+        lock.lock();
+        try {
+            if (this.thread != null) {
+                this.thread.interrupt();
+                this.finished.countDown();
             }
+        } finally {
+            this.thread = null;
+            lock.unlock();
         }
     }
 
@@ -263,19 +280,21 @@ public class FlickerRenderer {
      * bis "stop()" aufgerufen wurde. Damit kann warten, bis die Uebertragung
      * abgeschlossen ist.
      */
-    public final synchronized void waitFor() {
-        if (this.thread == null)
-            return;
-
-        synchronized (this.thread) {
+    public final void waitFor() {
+        CountDownLatch latch;
+        lock.lock();
+        try {
             if (this.thread == null)
                 return;
+            latch = this.finished;
+        } finally {
+            lock.unlock();
+        }
 
-            try {
-                this.thread.wait();
-            } catch (InterruptedException e) {
-                // Wir sind raus.
-            }
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            // Wir sind raus.
         }
     }
 }
@@ -23,17 +23,24 @@ package org.kapott.hbci.manager;
 import lombok.extern.slf4j.Slf4j;
 import org.kapott.hbci.callback.HBCICallback;
 import org.kapott.hbci.comm.CommPinTan;
+import org.kapott.hbci.comm.LoggingMessageTap;
+import org.kapott.hbci.comm.MessageTap;
+import org.kapott.hbci.comm.PooledHttpTransport;
+import org.kapott.hbci.comm.Transport;
+import org.kapott.hbci.comm.TransportConfig;
 import org.kapott.hbci.exceptions.CanNotParseMessageException;
 import org.kapott.hbci.exceptions.HBCI_Exception;
 import org.kapott.hbci.passport.HBCIPassportInternal;
 import org.kapott.hbci.protocol.Message;
-import org.kapott.hbci.rewrite.Rewrite;
+import org.kapott.hbci.rewrite.RewriterPipeline;
 import org.kapott.hbci.security.Crypt;
 import org.kapott.hbci.security.Sig;
 import org.kapott.hbci.status.HBCIMsgStatus;
 
-import java.lang.reflect.Constructor;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 @Slf4j
 public final class HBCIKernel {
@@ -51,7 +58,50 @@ public final class HBCIKernel {
 
         this.commPinTan = new CommPinTan(passport.getHost(), passport.getCallback())
             .withProxy(passport.getProxy(), passport.getProxyUser(),
-                passport.getProxyPass());
+                passport.getProxyPass())
+            .withTransport(createTransport(passport.getProperties()))
+            .withMessageTap(createMessageTap(passport.getProperties()));
+    }
+
+    /**
+     * erzeugt den transport fuer die nachrichten; per property
+     * "client.connection.transport" kann eine eigene implementierung angegeben
+     * werden (mit konstruktor (TransportConfig) oder ohne parameter)
+     */
+    private static Transport createTransport(Map<String, String> properties) {
+        TransportConfig config = TransportConfig.fromProperties(properties);
+        String className = (properties != null) ? properties.get("client.connection.transport") : null;
+        if (className == null || className.trim().length() == 0)
+            return PooledHttpTransport.shared(config);
+
+        try {
+            Class<?> cl = HBCIKernel.class.getClassLoader().loadClass(className.trim());
+            try {
+                return (Transport) cl.getConstructor(TransportConfig.class).newInstance(config);
+            } catch (NoSuchMethodException e) {
+                return (Transport) cl.getConstructor().newInstance();
+            }
+        } catch (Exception e) {
+            throw new HBCI_Exception("error creating transport " + className, e);
+        }
+    }
+
+    /**
+     * erzeugt den mitschnitt der nachrichten; per property
+     * "client.connection.messageTap" kann eine eigene implementierung (mit
+     * konstruktor ohne parameter) angegeben werden
+     */
+    private static MessageTap createMessageTap(Map<String, String> properties) {
+        String className = (properties != null) ? properties.get("client.connection.messageTap") : null;
+        if (className == null || className.trim().length() == 0)
+            return null;
+
+        try {
+            Class<?> cl = HBCIKernel.class.getClassLoader().loadClass(className.trim());
+            return (MessageTap) cl.getConstructor().newInstance();
+        } catch (Exception e) {
+            throw new HBCI_Exception("error creating message tap " + className, e);
+        }
     }
 
     /*  Processes the current message (mid-level API).
@@ -74,97 +124,134 @@ public final class HBCIKernel {
                 the received message. */
     public HBCIMsgStatus rawDoIt(Message message, String responseMessageName, boolean signit, boolean cryptit) {
         HBCIMsgStatus msgStatus = new HBCIMsgStatus();
+        Outgoing outgoing = new Outgoing(message);
 
         try {
-            log.debug("generating raw message " + message.getName());
-            message.complete();
-            passport.getCallback().status(HBCICallback.STATUS_MSG_CREATE, message.getName());
+            prepareMessage(outgoing, responseMessageName, signit, cryptit, msgStatus);
+            Message response = commPinTan.pingpong(outgoing.message, outgoing.messageName, outgoing.rewriters,
+                msgStatus);
+            processResponse(response, outgoing, msgStatus);
+        } catch (Exception e) {
+            handleException(outgoing, msgStatus, e);
+        }
 
-            // liste der rewriter erzeugen
-            ArrayList<Rewrite> rewriters = getRewriters(passport.getProperties().get("kernel.rewriter"));
+        return msgStatus;
+    }
 
-            // alle rewriter durchlaufen und plaintextnachricht patchen
-            for (Rewrite rewriter1 : rewriters) {
-                message = rewriter1.outgoingClearText(message);
-            }
+    /**
+     * Asynchrone Variante von {@link #rawDoIt(Message, String, boolean, boolean)}.
+     * <p>
+     * Erzeugen, Signieren und Verschlüsseln der Nachricht sowie die Verarbeitung der
+     * Antwort laufen als einzelne Stufen eines {@link CompletableFuture}; während auf
+     * die Antwort der Bank gewartet und diese empfangen wird, ist kein Thread blockiert
+     * (siehe {@link org.kapott.hbci.comm.Transport#postAsyncFully}). Fehler werden wie
+     * bei {@link #rawDoIt(Message, String, boolean, boolean)} im zurückgegebenen
+     * {@link HBCIMsgStatus} gemeldet, das Future selbst wird immer regulär
+     * abgeschlossen.
+     */
+    public CompletableFuture<HBCIMsgStatus> rawDoItAsync(Message message, String responseMessageName, boolean signit,
+                                                         boolean cryptit) {
+        return rawDoItAsync(message, responseMessageName, signit, cryptit, Runnable::run);
+    }
 
-            // wenn nachricht signiert werden soll
-            if (signit) {
-                message = signMessage(message, rewriters);
-            }
+    /**
+     * Wie {@link #rawDoItAsync(Message, String, boolean, boolean)}; das Erzeugen der
+     * Nachricht und die Verarbeitung der Antwort laufen aber in <code>executor</code>.
+     */
+    public CompletableFuture<HBCIMsgStatus> rawDoItAsync(Message message, String responseMessageName, boolean signit,
+                                                         boolean cryptit, Executor executor) {
+        HBCIMsgStatus msgStatus = new HBCIMsgStatus();
+        Outgoing outgoing = new Outgoing(message);
+
+        return CompletableFuture.completedFuture(outgoing)
+            .thenApplyAsync(o -> {
+                try {
+                    prepareMessage(o, responseMessageName, signit, cryptit, msgStatus);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+                return o;
+            }, executor)
+            .thenCompose(o -> commPinTan.pingpongAsync(o.message, o.messageName, o.rewriters, msgStatus, executor))
+            .thenAcceptAsync(response -> processResponse(response, outgoing, msgStatus), executor)
+            .handle((result, e) -> {
+                if (e != null) {
+                    while (e instanceof CompletionException && e.getCause() != null)
+                        e = e.getCause();
+                    handleException(outgoing, msgStatus, e instanceof Exception ? (Exception) e :
+                        new HBCI_Exception(e.getMessage(), e));
+                }
+                return msgStatus;
+            });
+    }
 
-            processMessage(message, msgStatus);
+    /**
+     * erzeugt die zu sendende nachricht (rewriter, signatur, verschluesselung); die
+     * jeweils aktuelle nachricht steht danach in 'outgoing'
+     */
+    private void prepareMessage(Outgoing outgoing, String responseMessageName, boolean signit, boolean cryptit,
+                                HBCIMsgStatus msgStatus) throws Exception {
+        Message message = outgoing.message;
+        log.debug("generating raw message " + message.getName());
+        message.complete();
+        passport.getCallback().status(HBCICallback.STATUS_MSG_CREATE, message.getName());
+
+        // rewriter fuer die konfiguration des passports (nur einmal erzeugt)
+        RewriterPipeline rewriters = RewriterPipeline.forConfig(passport.getProperties().get("kernel.rewriter"));
+        outgoing.rewriters = rewriters;
+
+        // alle rewriter durchlaufen und plaintextnachricht patchen
+        message = rewriters.outgoingClearText(message);
+        outgoing.message = message;
+
+        // wenn nachricht signiert werden soll
+        if (signit) {
+            message = signMessage(message, rewriters);
+            outgoing.message = message;
+        }
 
-            String messageName = Optional.ofNullable(responseMessageName)
-                .orElse(message.getName());
+        processMessage(message, msgStatus);
 
-            // soll nachricht verschlüsselt werden?
-            if (cryptit) {
-                message = cryptMessage(message, rewriters);
-            }
+        outgoing.messageName = Optional.ofNullable(responseMessageName)
+            .orElse(message.getName());
 
-            sendMessage(message, messageName, msgStatus, rewriters);
-        } catch (Exception e) {
-            // TODO: hack to be able to "disable" HKEND response message analysis
-            // because some credit institutes are buggy regarding HKEND responses
-            if (message.getName().startsWith("DialogEnd")) {
-                log.error(e.getMessage(), e);
-                log.warn("error while receiving DialogEnd response - " +
-                    "but ignoring it because of special setting");
-            } else {
-                msgStatus.addException(e);
-            }
+        // soll nachricht verschlüsselt werden?
+        if (cryptit) {
+            outgoing.message = cryptMessage(message, rewriters);
         }
+    }
 
-        return msgStatus;
+    private void handleException(Outgoing outgoing, HBCIMsgStatus msgStatus, Exception e) {
+        // TODO: hack to be able to "disable" HKEND response message analysis
+        // because some credit institutes are buggy regarding HKEND responses
+        if (outgoing.message.getName().startsWith("DialogEnd")) {
+            log.error(e.getMessage(), e);
+            log.warn("error while receiving DialogEnd response - " +
+                "but ignoring it because of special setting");
+        } else {
+            msgStatus.addException(e);
+        }
     }
 
     private void processMessage(Message message, HBCIMsgStatus msgStatus) {
-        /* zu jeder SyntaxElement-Referenz (2:3,1)==(SEG:DEG,DE) den Pfad
-           des jeweiligen Elementes speichern */
-        HashMap<String, String> paths = new HashMap<>();
-        message.getElementPaths(paths, null, null, null);
-        msgStatus.addData(paths);
-
-        /* für alle Elemente (Pfadnamen) die aktuellen Werte speichern,
-           wie sie bei der ausgehenden Nachricht versandt werden */
-        HashMap<String, String> current = new HashMap<>();
-        message.extractValues(current);
-        HashMap<String, String> origs = new HashMap<>();
-
-        current.forEach((key, value) -> origs.put("orig_" + key, value));
-        msgStatus.addData(origs);
+        /* die gesendete nachricht merken; element-pfade und werte der nachricht
+           werden erst bei bedarf daraus gelesen */
+        msgStatus.setSentMessage(message);
 
         // zu versendene nachricht loggen
-        String outstring = message.toString(0);
-        log.debug("sending message: " + outstring);
+        log.debug("sending message: {}", LoggingMessageTap.masked(message));
 
         // max. nachrichtengröße aus BPD überprüfen
         int maxmsgsize = passport.getMaxMsgSizeKB();
-        if (maxmsgsize != 0 && (outstring.length() >> 10) > maxmsgsize) {
+        int msgsize = message.toByteArray().length;
+        if (maxmsgsize != 0 && (msgsize >> 10) > maxmsgsize) {
             String errmsg = HBCIUtils.getLocMsg("EXCMSG_MSGTOOLARGE",
-                new Object[]{Integer.toString(outstring.length() >> 10), Integer.toString(maxmsgsize)});
+                new Object[]{Integer.toString(msgsize >> 10), Integer.toString(maxmsgsize)});
             throw new HBCI_Exception(errmsg);
         }
     }
 
-    private ArrayList<Rewrite> getRewriters(String rewritersString) throws ClassNotFoundException, NoSuchMethodException
-        , InstantiationException, IllegalAccessException, java.lang.reflect.InvocationTargetException {
-        ArrayList<Rewrite> rewriters = new ArrayList<>();
-        StringTokenizer tok = new StringTokenizer(rewritersString, ",");
-        while (tok.hasMoreTokens()) {
-            String rewriterName = tok.nextToken().trim();
-            if (rewriterName.length() != 0) {
-                Class cl = this.getClass().getClassLoader().loadClass("org.kapott.hbci.rewrite.R" +
-                    rewriterName);
-                Constructor con = cl.getConstructor((Class[]) null);
-                rewriters.add((Rewrite) (con.newInstance((Object[]) null)));
-            }
-        }
-        return rewriters;
-    }
-
-    private Message signMessage(Message message, List<Rewrite> rewriters) {
+    private Message signMessage(Message message, RewriterPipeline rewriters) {
         log.debug("trying to insert signature");
         passport.getCallback().status(HBCICallback.STATUS_MSG_SIGN, null);
 
@@ -177,13 +264,10 @@ public final class HBCIKernel {
         }
 
         // alle rewrites erledigen, die *nach* dem hinzufügen der signatur stattfinden müssen
-        for (Rewrite rewriter : rewriters) {
-            message = rewriter.outgoingSigned(message);
-        }
-        return message;
+        return rewriters.outgoingSigned(message);
     }
 
-    private Message cryptMessage(Message message, List<Rewrite> rewriters) {
+    private Message cryptMessage(Message message, RewriterPipeline rewriters) {
         log.debug("trying to encrypt message");
         passport.getCallback().status(HBCICallback.STATUS_MSG_CRYPT, null);
 
@@ -197,27 +281,23 @@ public final class HBCIKernel {
         }
 
         // verschlüsselte nachricht patchen
-        for (Rewrite rewriter : rewriters) {
-            message = rewriter.outgoingCrypted(message);
-        }
+        message = rewriters.outgoingCrypted(message);
 
-        log.debug("encrypted message to be sent: " + message.toString(0));
+        log.debug("encrypted message to be sent: {}", LoggingMessageTap.masked(message));
 
         return message;
     }
 
-    private void sendMessage(Message message, String messageName, HBCIMsgStatus msgStatus, List<Rewrite> rewriters) {
-        Message response = commPinTan.pingpong(message, messageName, rewriters, msgStatus);
-        response = decryptMessage(rewriters, response, messageName + "Res");
+    private void processResponse(Message response, Outgoing outgoing, HBCIMsgStatus msgStatus) {
+        response = decryptMessage(outgoing.rewriters, response, outgoing.messageName + "Res");
 
-        // alle patches für die plaintextnachricht durchlaufen
-        for (Rewrite rewriter : rewriters) {
-            response = rewriter.incomingData(response);
-        }
+        // alle patches für die plaintextnachricht durchlaufen; die rewriter ändern
+        // die geparste nachricht direkt, sie muss danach nicht neu geparst werden
+        response = outgoing.rewriters.incomingData(response);
 
         // daten aus nachricht in status-objekt einstellen
         log.debug("extracting data from received message");
-        msgStatus.addData(response.getData());
+        msgStatus.addResponse(response);
         checkResponse(response);
         checkSig(response);
     }
@@ -258,7 +338,7 @@ public final class HBCIKernel {
             throw new HBCI_Exception(HBCIUtils.getLocMsg("EXCMSG_INVMSGNUM_REF"));
     }
 
-    private Message decryptMessage(List<Rewrite> rewriters, Message response, String responseMessageName) {
+    private Message decryptMessage(RewriterPipeline rewriters, Message response, String responseMessageName) {
         // ist antwortnachricht verschlüsselt?
         if (response.getName().equals("CryptedRes")) {
             passport.getCallback().status(HBCICallback.STATUS_MSG_DECRYPT, null);
@@ -272,26 +352,37 @@ public final class HBCIKernel {
 
             // alle patches für die unverschlüsselte nachricht durchlaufen
             log.debug("rewriting message");
-            for (Rewrite rewriter : rewriters) {
-                log.debug("applying rewriter " + rewriter.getClass().getSimpleName());
-                responseString = rewriter.incomingClearText(responseString);
-            }
+            responseString = rewriters.incomingClearText(responseString);
             log.debug("rewriting done");
 
-            log.debug("decrypted message after rewriting: " + responseString);
+            log.debug("decrypted message after rewriting: {}", LoggingMessageTap.masked(responseString));
 
             // nachricht als plaintextnachricht parsen
             try {
                 passport.getCallback().status(HBCICallback.STATUS_MSG_PARSE, response.getName() + "Res");
-                log.debug("message to pe parsed: " + response.toString(0));
-                response = new Message(responseMessageName, responseString, passport.getSyntaxDocument(),
+                response = new Message(responseMessageName, responseString, passport.getSyntaxSpec().getSyntaxModel(),
                     Message.CHECK_SEQ, true);
             } catch (Exception ex) {
                 throw new CanNotParseMessageException(HBCIUtils.getLocMsg("EXCMSG_CANTPARSE"), responseString, ex);
             }
         }
 
-        log.debug("received message after decryption: " + response.toString(0));
+        log.debug("received message after decryption: {}", LoggingMessageTap.masked(response));
         return response;
     }
+
+    /**
+     * die jeweils aktuelle ausgehende nachricht; wird durch rewriter, signatur und
+     * verschluesselung ersetzt
+     */
+    private static final class Outgoing {
+
+        private Message message;
+        private String messageName;
+        private RewriterPipeline rewriters;
+
+        private Outgoing(Message message) {
+            this.message = message;
+        }
+    }
 }
@@ -0,0 +1,191 @@
+package org.kapott.hbci.manager;
+
+import lombok.extern.slf4j.Slf4j;
+import org.kapott.hbci.GV.AbstractHBCIJob;
+import org.kapott.hbci.exceptions.HBCI_Exception;
+import org.kapott.hbci.passport.PinTanPassport;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Verteilt viele gleichartige Aufträge (z.B. Saldo- oder Umsatzabfragen für alle
+ * Konten eines Firmenkunden) auf möglichst wenige Nachrichten.
+ * <p>
+ * Dabei werden dieselben Grenzen eingehalten wie beim einzelnen Hinzufügen von
+ * Aufträgen zu einem Dialog: die max. Anzahl von Auftragsarten je Nachricht
+ * (<code>BPA.numgva</code>), die max. Anzahl von Aufträgen einer Art
+ * (<code>maxnum</code> aus den GV-Parametern) und die Grenze des Passports
+ * ({@link PinTanPassport#getMaxGVSegsPerMsg()}). Zusätzlich wird die Größe der
+ * Nachricht aus den Auftragsdaten und festen Zuschlägen für Kopf, Signatur und
+ * Verschlüsselung abgeschätzt und gegen <code>BPA.maxmsgsize</code> gehalten. Das ist
+ * nur eine Heuristik, die fertige Nachricht wird beim Senden von
+ * {@link HBCIKernel} noch einmal gegen die Grenze geprüft.
+ * Aufträge, die eine TAN benötigen, kommen jeweils in eine eigene Nachricht, da je
+ * Nachricht nur ein HKTAN erzeugt wird.
+ * <p>
+ * Ein Auftrag kommt in die erste Nachricht, in die er noch passt; die Reihenfolge
+ * der Aufträge einer Art bleibt dabei erhalten.
+ */
+@Slf4j
+public final class HBCIMessagePlanner {
+
+    // geschaetzte zuschlaege fuer nachrichtenkopf, signatur und verschluesselung bzw.
+    // segmentkopf; nicht gegen die fertige nachricht geprueft (das macht HBCIKernel)
+    private static final int MESSAGE_OVERHEAD = 1024;
+    private static final int SEGMENT_OVERHEAD = 32;
+
+    private final PinTanPassport passport;
+
+    public HBCIMessagePlanner(PinTanPassport passport) {
+        this.passport = passport;
+    }
+
+    /**
+     * @param jobs die Aufträge in der gewünschten Reihenfolge.
+     * @return die Aufteilung der Aufträge auf Nachrichten.
+     * @throws HBCI_Exception wenn ein Auftrag von der Bank nicht unterstützt wird.
+     */
+    public Plan plan(List<AbstractHBCIJob> jobs) {
+        int maxGVA = passport.getMaxGVperMsg();
+        int maxGVSegTotal = passport.getMaxGVSegsPerMsg();
+        int maxSize = passport.getMaxMsgSizeKB() << 10;
+
+        // die BPD werden je auftragsart nur einmal durchsucht
+        Map<String, String> hbciCodes = new HashMap<>();
+        Map<String, Integer> maxGVSegJob = new HashMap<>();
+        Map<String, Boolean> needsTan = new HashMap<>();
+
+        List<Batch> batches = new ArrayList<>();
+        List<Batch> open = new ArrayList<>();
+        for (AbstractHBCIJob job : jobs) {
+            String hbciCode = hbciCodes.computeIfAbsent(job.getName(), name -> job.getHBCICode());
+            if (hbciCode == null) {
+                throw new HBCI_Exception(job.getName() + " not supported");
+            }
+            int maxnum = maxGVSegJob.computeIfAbsent(hbciCode, code -> job.getMaxNumberPerMsg());
+            int size = estimateSize(job);
+
+            if (needsTan.computeIfAbsent(hbciCode, code -> passport.tan2StepRequired(job))) {
+                Batch batch = new Batch();
+                batch.add(job, hbciCode, size);
+                batches.add(batch);
+                continue;
+            }
+
+            Batch target = null;
+            for (Batch batch : open) {
+                if (batch.accepts(hbciCode, size, maxGVA, maxnum, maxSize)) {
+                    target = batch;
+                    break;
+                }
+            }
+            if (target == null) {
+                target = new Batch();
+                batches.add(target);
+                open.add(target);
+            }
+            target.add(job, hbciCode, size);
+
+            if (maxGVSegTotal > 0 && target.total >= maxGVSegTotal) {
+                open.remove(target);
+            }
+        }
+
+        List<HBCIMessage> messages = new ArrayList<>(batches.size());
+        batches.forEach(batch -> messages.add(batch.message));
+
+        Plan plan = new Plan(messages, jobs.size());
+        log.debug("planned " + plan);
+        return plan;
+    }
+
+    // laenge der werte plus trennzeichen
+    private static int estimateSize(AbstractHBCIJob job) {
+        int size = SEGMENT_OVERHEAD;
+        for (String value : job.getLowlevelParams().values()) {
+            size += ((value != null) ? value.length() : 0) + 1;
+        }
+        return size;
+    }
+
+    private static final class Batch {
+
+        private final HBCIMessage message = new HBCIMessage();
+        private final Map<String, Integer> countByCode = new HashMap<>();
+        private int total;
+        private int size = MESSAGE_OVERHEAD;
+
+        private boolean accepts(String hbciCode, int jobSize, int maxGVA, int maxGVSegJob, int maxSize) {
+            int count = countByCode.getOrDefault(hbciCode, 0);
+            if (maxGVA > 0 && count == 0 && countByCode.size() >= maxGVA)
+                return false;
+            if (maxGVSegJob > 0 && count >= maxGVSegJob)
+                return false;
+            return maxSize <= 0 || size + jobSize <= maxSize;
+        }
+
+        private void add(AbstractHBCIJob job, String hbciCode, int jobSize) {
+            message.append(job);
+            countByCode.merge(hbciCode, 1, Integer::sum);
+            total++;
+            size += jobSize;
+        }
+    }
+
+    /**
+     * Ergebnis von {@link #plan(List)}.
+     */
+    public static final class Plan {
+
+        private final List<HBCIMessage> messages;
+        private final int jobCount;
+
+        private Plan(List<HBCIMessage> messages, int jobCount) {
+            this.messages = Collections.unmodifiableList(messages);
+            this.jobCount = jobCount;
+        }
+
+        /**
+         * @return die Nachrichten mit den Aufträgen, in der Reihenfolge, in der sie
+         * gesendet werden sollen.
+         */
+        public List<HBCIMessage> getMessages() {
+            return messages;
+        }
+
+        /**
+         * @return eine neue Queue mit den Nachrichten.
+         */
+        public HBCIMessageQueue toQueue() {
+            HBCIMessageQueue queue = new HBCIMessageQueue();
+            messages.forEach(queue::append);
+            return queue;
+        }
+
+        public int getJobCount() {
+            return jobCount;
+        }
+
+        public int getMessageCount() {
+            return messages.size();
+        }
+
+        /**
+         * @return die Anzahl der Nachrichten (und damit Roundtrips zur Bank), die
+         * gegenüber einer Nachricht je Auftrag eingespart werden.
+         */
+        public int getRoundTripsSaved() {
+            return jobCount - messages.size();
+        }
+
+        @Override
+        public String toString() {
+            return jobCount + " jobs in " + messages.size() + " messages, " + getRoundTripsSaved() +
+                " round trips saved";
+        }
+    }
+}
@@ -23,7 +23,7 @@ package org.kapott.hbci.manager;
 import lombok.experimental.UtilityClass;
 import org.kapott.hbci.passport.HBCIPassportInternal;
 import org.kapott.hbci.protocol.Message;
-import org.w3c.dom.Document;
+import org.kapott.hbci.protocol.SyntaxModel;
 
 import java.util.Optional;
 
@@ -34,7 +34,7 @@ public final class MessageFactory {
 
     public static Message createDialogInit(String dialogName, String syncMode, HBCIPassportInternal passport,
                                            boolean withHktan, String orderSegCode) {
-        Message message = createMessage(dialogName, passport.getSyntaxDocument());
+        Message message = createMessage(dialogName, passport.getSyntaxSpec().getSyntaxModel());
         message.rawSet("MsgHead.dialogid", "0");
         message.rawSet("MsgHead.msgnum", "1");
         message.rawSet("MsgTail.msgnum", "1");
@@ -68,7 +68,7 @@ public final class MessageFactory {
     }
 
     public static Message createAnonymousDialogInit(HBCIPassportInternal passport) {
-        Message message = createMessage("DialogInitAnon", passport.getSyntaxDocument());
+        Message message = createMessage("DialogInitAnon", passport.getSyntaxSpec().getSyntaxModel());
         message.rawSet("MsgHead.dialogid", "0");
         message.rawSet("MsgHead.msgnum", "1");
         message.rawSet("MsgTail.msgnum", "1");
@@ -96,7 +96,7 @@ public final class MessageFactory {
     public static Message createDialogEnd(boolean anonymous, HBCIPassportInternal passport, String dialogid,
                                           long msgNumber) {
         Message message = MessageFactory.createMessage(anonymous ? "DialogEndAnon" : "DialogEnd",
-            passport.getSyntaxDocument());
+            passport.getSyntaxSpec().getSyntaxModel());
         message.rawSet("DialogEndS.dialogid", dialogid);
         message.rawSet("MsgHead.dialogid", dialogid);
         message.rawSet("MsgHead.msgnum", Long.toString(msgNumber));
@@ -107,7 +107,7 @@ public final class MessageFactory {
 
     /**
      * @param msgName  The name (i.e. XML-identifier for a MSGdef-node) of the message to be generated.
-     * @param document hbci-definition xml document
+     * @param model    compiled hbci syntax definition
      * @return A new MSG object representing the generated message.
      * <p>
      * The document description for the message to be generated is taken from an
@@ -115,8 +115,8 @@ public final class MessageFactory {
      * <p>
      * To build the message the values stored in @c clientValues will be used.
      */
-    public static Message createMessage(String msgName, Document document) {
-        return new Message(msgName, document);
+    public static Message createMessage(String msgName, SyntaxModel model) {
+        return model.createMessage(msgName);
     }
 
 }
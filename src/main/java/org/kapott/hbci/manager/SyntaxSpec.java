@@ -0,0 +1,90 @@
+package org.kapott.hbci.manager;
+
+import org.kapott.hbci.protocol.SyntaxModel;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import java.util.*;
+
+/**
+ * Geparste Syntax-Spezifikation (hbci-*.xml) einer HBCI-Version.
+ * <p>
+ * Instanzen werden von der {@link SyntaxSpecRegistry} genau einmal pro HBCI-Version
+ * erzeugt und von allen Passports, Nachrichten und Dialogen gemeinsam verwendet.
+ * Für das Erzeugen und Parsen von Nachrichten wird das DOM-Dokument einmalig in ein
+ * {@link SyntaxModel} übersetzt; nur dieses darf von mehreren Threads gleichzeitig
+ * benutzt werden. Das DOM selbst ist auch bei reinen Lesezugriffen nicht thread-sicher
+ * und darf von Aufrufern nicht verändert werden.
+ */
+public final class SyntaxSpec {
+
+    private final String hbciVersion;
+    private final Document document;
+    private final SyntaxModel syntaxModel;
+    private final Map<String, List<String>> lowlevelGVs;
+
+    SyntaxSpec(String hbciVersion, Document document) {
+        this.hbciVersion = hbciVersion;
+        this.document = document;
+        this.syntaxModel = SyntaxModel.compile(document);
+        this.lowlevelGVs = Collections.unmodifiableMap(collectLowlevelGVs(document));
+    }
+
+    /**
+     * Ermittelt alle im Element "GV" referenzierten Lowlevel-Geschäftsvorfälle
+     * mit den jeweils unterstützten Segment-Versionen.
+     */
+    private static Map<String, List<String>> collectLowlevelGVs(Document document) {
+        Map<String, List<String>> result = new HashMap<>();
+
+        Element gvlist = document.getElementById("GV");
+        if (gvlist == null)
+            return result;
+
+        for (Node gvref = gvlist.getFirstChild(); gvref != null; gvref = gvref.getNextSibling()) {
+            if (gvref.getNodeType() == Node.ELEMENT_NODE) {
+                String type = ((Element) gvref).getAttribute("type");
+
+                int pos = type.length() - 1;
+                char ch;
+                while ((ch = type.charAt(pos)) >= '0' && ch <= '9') {
+                    pos--;
+                }
+
+                String gvname = type.substring(0, pos + 1);
+                result.computeIfAbsent(gvname, k -> new ArrayList<>()).add(type.substring(pos + 1));
+            }
+        }
+
+        result.replaceAll((gvname, versions) -> Collections.unmodifiableList(versions));
+        return result;
+    }
+
+    public String getHbciVersion() {
+        return hbciVersion;
+    }
+
+    /**
+     * @return das Syntax-Dokument. Nicht thread-sicher - gleichzeitige Zugriffe müssen
+     * über {@link #getSyntaxModel()} laufen.
+     */
+    public Document getDocument() {
+        return document;
+    }
+
+    /**
+     * @return das vorkompilierte Syntax-Modell des Dokumentes.
+     */
+    public SyntaxModel getSyntaxModel() {
+        return syntaxModel;
+    }
+
+    /**
+     * @return Lowlevel-Name jedes Geschäftsvorfalls, abgebildet auf die Liste der in der
+     * Syntax-Spezifikation enthaltenen Segment-Versionen.
+     */
+    public Map<String, List<String>> getLowlevelGVs() {
+        return lowlevelGVs;
+    }
+}
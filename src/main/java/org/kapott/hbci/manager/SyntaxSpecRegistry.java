@@ -0,0 +1,85 @@
+package org.kapott.hbci.manager;
+
+import lombok.extern.slf4j.Slf4j;
+import org.w3c.dom.Document;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Prozessweiter Cache der HBCI-Syntax-Spezifikationen.
+ * <p>
+ * Jede HBCI-Version wird beim ersten Zugriff genau einmal geladen und validiert;
+ * alle weiteren Passports erhalten dieselbe {@link SyntaxSpec}-Instanz. Über
+ * {@link #setLoader(Function)}, {@link #evict(String)} und {@link #reload(String)}
+ * lassen sich Spezifikationen zur Laufzeit austauschen. Bereits erzeugte Passports
+ * behalten die Spezifikation, mit der sie initialisiert wurden; erst neu erzeugte
+ * Passports verwenden die neu geladene Version.
+ */
+@Slf4j
+public final class SyntaxSpecRegistry {
+
+    private static final Map<String, SyntaxSpec> specs = new ConcurrentHashMap<>();
+    private static volatile Function<String, Document> loader = DocumentFactory::createDocument;
+
+    private SyntaxSpecRegistry() {
+    }
+
+    /**
+     * @param hbciversion die HBCI-Version (z.B. "300" oder "plus").
+     * @return die gemeinsam genutzte Syntax-Spezifikation für diese Version.
+     */
+    public static SyntaxSpec getSpec(String hbciversion) {
+        Objects.requireNonNull(hbciversion, "hbciversion must not be null");
+        return specs.computeIfAbsent(hbciversion, SyntaxSpecRegistry::load);
+    }
+
+    /**
+     * Lädt die Spezifikation der angegebenen Version neu und ersetzt die bisher
+     * gecachte Instanz.
+     *
+     * @param hbciversion die HBCI-Version.
+     * @return die neu geladene Spezifikation.
+     */
+    public static SyntaxSpec reload(String hbciversion) {
+        SyntaxSpec spec = load(hbciversion);
+        specs.put(hbciversion, spec);
+        return spec;
+    }
+
+    /**
+     * Entfernt die Spezifikation der angegebenen Version aus dem Cache. Sie wird
+     * beim nächsten Zugriff neu geladen.
+     */
+    public static void evict(String hbciversion) {
+        if (specs.remove(hbciversion) != null)
+            log.info("evicted syntax spec for hbci version " + hbciversion);
+    }
+
+    /**
+     * Entfernt alle gecachten Spezifikationen.
+     */
+    public static void evictAll() {
+        specs.clear();
+        log.info("evicted all syntax specs");
+    }
+
+    /**
+     * Legt fest, wie die Syntax-Dokumente geladen werden. Per Default werden die im
+     * Classpath enthaltenen Dateien "hbci-&lt;version&gt;.xml" verwendet. Alle bereits
+     * gecachten Spezifikationen werden verworfen.
+     *
+     * @param newLoader liefert zu einer HBCI-Version das validierte Syntax-Dokument.
+     */
+    public static void setLoader(Function<String, Document> newLoader) {
+        loader = Objects.requireNonNull(newLoader, "loader must not be null");
+        evictAll();
+    }
+
+    private static SyntaxSpec load(String hbciversion) {
+        log.info("loading syntax spec for hbci version " + hbciversion);
+        return new SyntaxSpec(hbciversion, loader.apply(hbciversion));
+    }
+}
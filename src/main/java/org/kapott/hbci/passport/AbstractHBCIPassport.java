@@ -30,16 +30,15 @@ import org.kapott.hbci.callback.HBCICallback;
 import org.kapott.hbci.exceptions.HBCI_Exception;
 import org.kapott.hbci.exceptions.InvalidArgumentException;
 import org.kapott.hbci.exceptions.InvalidUserDataException;
-import org.kapott.hbci.manager.DocumentFactory;
 import org.kapott.hbci.manager.HBCIProduct;
 import org.kapott.hbci.manager.HBCIUtils;
+import org.kapott.hbci.manager.SyntaxSpec;
+import org.kapott.hbci.manager.SyntaxSpecRegistry;
 import org.kapott.hbci.structures.Konto;
 import org.kapott.hbci.structures.Limit;
 import org.kapott.hbci.structures.Value;
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 import java.io.Serializable;
 import java.lang.reflect.Constructor;
@@ -62,8 +61,10 @@ public abstract class AbstractHBCIPassport implements HBCIPassportInternal, Seri
 
     protected HBCICallback callback;
     protected Map<String, String> properties;
-    private Map<String, String> bpd;
-    private Map<String, String> upd;
+    // bpd und upd werden nur ersetzt, nicht veraendert; volatile, damit parallele
+    // dialoge immer eine vollstaendige version sehen
+    private volatile Map<String, String> bpd;
+    private volatile Map<String, String> upd;
     private String hbciversion;
     private String country;
     private String blz;
@@ -73,7 +74,7 @@ public abstract class AbstractHBCIPassport implements HBCIPassportInternal, Seri
     private String customerid;
     private String sysid;
     private Long sigid;
-    private Document syntaxDocument;
+    private transient SyntaxSpec syntaxSpec;
     private HBCIProduct hbciProduct;
 
     public AbstractHBCIPassport(String hbciversion, Map<String, String> properties, HBCICallback callback,
@@ -141,11 +142,11 @@ public abstract class AbstractHBCIPassport implements HBCIPassportInternal, Seri
         return getInstance(callback, properties, (Object) null);
     }
 
-    /* Initialisieren eines Message-Generators. Der <syntaFileStream> ist ein
-     * Stream, mit dem eine XML-Datei mit einer HBCI-Syntaxspezifikation
-     * eingelesen wird */
+    /* Initialisieren eines Message-Generators. Die Syntaxspezifikation wird
+     * nicht mehr pro Passport eingelesen, sondern aus der prozessweiten
+     * SyntaxSpecRegistry geholt */
     private void init() {
-        this.syntaxDocument = DocumentFactory.createDocument(hbciversion);
+        this.syntaxSpec = SyntaxSpecRegistry.getSpec(hbciversion);
 
         setCountry(properties.get("client.passport.country"));
         setBLZ(properties.get("client.passport.blz"));
@@ -375,18 +376,28 @@ public abstract class AbstractHBCIPassport implements HBCIPassportInternal, Seri
         return (value != null) ? value : "0";
     }
 
-    public final Long getSigId() {
+    public final synchronized Long getSigId() {
         return sigid != null ? sigid : 1;
     }
 
-    public final void setSigId(Long sigid) {
+    public final synchronized void setSigId(Long sigid) {
         this.sigid = sigid;
     }
 
-    public void incSigId() {
+    public synchronized void incSigId() {
         setSigId(getSigId() + 1);
     }
 
+    /**
+     * Liefert die aktuelle Signatur-ID und erhöht sie in einem Schritt, so dass
+     * parallele Dialoge mit demselben Passport nie dieselbe ID verwenden.
+     */
+    public synchronized Long nextSigId() {
+        Long ret = getSigId();
+        incSigId();
+        return ret;
+    }
+
     public Map<String, String> getParamSegmentNames() {
         Map<String, String> ret = new HashMap<>();
 
@@ -481,7 +492,7 @@ public abstract class AbstractHBCIPassport implements HBCIPassportInternal, Seri
         paramSegments.keySet().forEach(segName -> {
             // überprüfen, ob parameter-segment tatsächlich zu einem GV gehört
             // gilt z.b. für "PinTan" nicht
-            if (getLowlevelGVs(syntaxDocument).containsKey(segName))
+            if (getSyntaxSpec().getLowlevelGVs().containsKey(segName))
                 result.put(segName, paramSegments.get(segName));
         });
 
@@ -494,10 +505,12 @@ public abstract class AbstractHBCIPassport implements HBCIPassportInternal, Seri
 
     /**
      * @param type the name of the syntaxelement to be returned
-     * @return a XML-node with the definition of the requested syntaxelement
+     * @return a XML-node with the definition of the requested syntaxelement.
+     * Reads the shared syntax document, which is not thread-safe; message code
+     * uses {@link org.kapott.hbci.protocol.SyntaxModel} instead.
      */
     public Node getSyntaxDef(String type) {
-        Node ret = syntaxDocument.getElementById(type);
+        Node ret = getSyntaxDocument().getElementById(type);
         if (ret == null)
             throw new org.kapott.hbci.exceptions.NoSuchElementException("element", type);
         return ret;
@@ -537,37 +550,6 @@ public abstract class AbstractHBCIPassport implements HBCIPassportInternal, Seri
         return getJobRestrictions(gvname, version);
     }
 
-    private HashMap<String, List<String>> getLowlevelGVs(Document document) {
-        HashMap<String, List<String>> result = new HashMap<>();
-
-        Element gvlist = document.getElementById("GV");
-        NodeList gvs = gvlist.getChildNodes();
-        int len = gvs.getLength();
-        StringBuilder type = new StringBuilder();
-
-        for (int i = 0; i < len; i++) {
-            Node gvref = gvs.item(i);
-            if (gvref.getNodeType() == Node.ELEMENT_NODE) {
-                type.setLength(0);
-                type.append(((Element) gvref).getAttribute("type"));
-
-                int pos = type.length() - 1;
-                char ch;
-
-                while ((ch = type.charAt(pos)) >= '0' && ch <= '9') {
-                    pos--;
-                }
-
-                String gvname = type.substring(0, pos + 1);
-                List<String> entry = result.computeIfAbsent(gvname, k -> new ArrayList<>());
-
-                entry.add(type.substring(pos + 1));
-            }
-        }
-
-        return result;
-    }
-
     public String getOrderHashMode(int segVersion) {
         return getBPD().keySet().stream()
             .filter(key -> {
@@ -588,8 +570,15 @@ public abstract class AbstractHBCIPassport implements HBCIPassportInternal, Seri
         return hbciProduct;
     }
 
+    public SyntaxSpec getSyntaxSpec() {
+        // nach dem Deserialisieren ist die (transiente) Spezifikation noch nicht gesetzt
+        if (syntaxSpec == null)
+            syntaxSpec = SyntaxSpecRegistry.getSpec(hbciversion);
+        return syntaxSpec;
+    }
+
     public Document getSyntaxDocument() {
-        return syntaxDocument;
+        return getSyntaxSpec().getDocument();
     }
 
     public final Map<String, String> getBPD() {
@@ -23,6 +23,7 @@ package org.kapott.hbci.passport;
 import org.kapott.hbci.callback.HBCICallback;
 import org.kapott.hbci.manager.HBCIProduct;
 import org.kapott.hbci.manager.HBCITwoStepMechanism;
+import org.kapott.hbci.manager.SyntaxSpec;
 import org.kapott.hbci.status.HBCIMsgStatus;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
@@ -90,6 +91,8 @@ public interface HBCIPassportInternal extends HBCIPassport {
 
     void incSigId();
 
+    Long nextSigId();
+
     Map<String, String> getParamSegmentNames();
 
     Map<String, String> getJobRestrictions(String specname);
@@ -131,6 +134,8 @@ public interface HBCIPassportInternal extends HBCIPassport {
 
     Map<String, String> getLowlevelJobRestrictions(String gvname);
 
+    SyntaxSpec getSyntaxSpec();
+
     Document getSyntaxDocument();
 
     Node getSyntaxDef(String name);
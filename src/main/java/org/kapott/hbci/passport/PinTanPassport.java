@@ -36,6 +36,7 @@ import org.kapott.hbci.status.HBCIRetVal;
 import java.nio.charset.StandardCharsets;
 import java.security.Security;
 import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static org.kapott.hbci.security.Sig.SECFUNC_SIG_PT_1STEP;
 
@@ -56,6 +57,10 @@ public class PinTanPassport extends AbstractHBCIPassport {
     private HBCITwoStepMechanism currentSecMechInfo;
     private List<String> userTwostepMechanisms = new ArrayList<>();
     private String pin;
+    // laufen mehrere dialoge mit dem passport parallel, werden die aenderungen nach der
+    // dialog-initialisierung hierueber serialisiert; kein synchronized, damit virtual
+    // threads waehrend der callbacks nicht an ihren carrier-thread gebunden werden
+    private final ReentrantLock lock = new ReentrantLock();
 
     public PinTanPassport(String hbciversion, Map<String, String> properties, HBCICallback callback,
                           HBCIProduct product) {
@@ -238,24 +243,30 @@ public class PinTanPassport extends AbstractHBCIPassport {
     }
 
     public void updateUPD(Map<String, String> result) {
-        log.debug("extracting UPD from results");
+        lock.lock();
+        try {
+            log.debug("extracting UPD from results");
 
-        Map<String, String> newUpd = new HashMap<>();
+            Map<String, String> newUpd = new HashMap<>();
 
-        result.forEach((key, value) -> {
-            if (key.startsWith("UPD.")) {
-                newUpd.put(key.substring(4), value);
-            }
-        });
+            result.forEach((key, value) -> {
+                if (key.startsWith("UPD.")) {
+                    newUpd.put(key.substring(4), value);
+                }
+            });
 
-        if (newUpd.size() != 0 && isUpdNotEmpty(newUpd)) {
-            newUpd.put("_hbciversion", getHBCIVersion());
+            if (newUpd.size() != 0 && isUpdNotEmpty(newUpd)) {
+                newUpd.put("_hbciversion", getHBCIVersion());
 
-            String oldVersion = getUPDVersion();
-            setUPD(newUpd);
+                String oldVersion = getUPDVersion();
+                setUPD(newUpd);
 
-            log.info("installed new UPD [old version: " + oldVersion + ", new version: " + getUPDVersion() + "]");
-            getCallback().status(HBCICallback.STATUS_INIT_UPD_DONE, getUPD());
+                log.info("installed new UPD [old version: " + oldVersion + ", new version: " + getUPDVersion() +
+                    "]");
+                getCallback().status(HBCICallback.STATUS_INIT_UPD_DONE, getUPD());
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -265,28 +276,33 @@ public class PinTanPassport extends AbstractHBCIPassport {
     }
 
     public void postInitResponseHook(HBCIMsgStatus msgStatus) {
-        if (!msgStatus.isOK()) {
-            log.debug("dialog init ended with errors - searching for return code 'wrong PIN'");
+        lock.lock();
+        try {
+            if (!msgStatus.isOK()) {
+                log.debug("dialog init ended with errors - searching for return code 'wrong PIN'");
 
-            Optional.ofNullable(msgStatus.getInvalidPinCode())
-                .ifPresent(invalidPinCode -> {
-                    log.info("detected 'invalid PIN' error - clearing passport PIN");
-                    clearPIN();
+                Optional.ofNullable(msgStatus.getInvalidPinCode())
+                    .ifPresent(invalidPinCode -> {
+                        log.info("detected 'invalid PIN' error - clearing passport PIN");
+                        clearPIN();
 
-                    // Aufrufer informieren, dass falsche PIN eingegeben wurde (um evtl. PIN aus Puffer zu löschen,
-                    // etc.)
-                    StringBuilder retData = new StringBuilder();
-                    callback.callback(HBCICallback.WRONG_PIN, msgStatus.getErrorList(), HBCICallback.TYPE_TEXT,
-                        retData);
-                });
+                        // Aufrufer informieren, dass falsche PIN eingegeben wurde (um evtl. PIN aus Puffer zu löschen,
+                        // etc.)
+                        StringBuilder retData = new StringBuilder();
+                        callback.callback(HBCICallback.WRONG_PIN, msgStatus.getErrorList(), HBCICallback.TYPE_TEXT,
+                            retData);
+                    });
 
-        }
+            }
 
-        log.debug("autosecfunc: search for 3920s in response to detect allowed twostep secmechs");
+            log.debug("autosecfunc: search for 3920s in response to detect allowed twostep secmechs");
 
-        searchFor3920s(msgStatus.globStatus.getWarnings());
-        searchFor3920s(msgStatus.segStatus.getWarnings());
-        searchFor3072s(msgStatus.segStatus.getWarnings());
+            searchFor3920s(msgStatus.globStatus.getWarnings());
+            searchFor3920s(msgStatus.segStatus.getWarnings());
+            searchFor3072s(msgStatus.segStatus.getWarnings());
+        } finally {
+            lock.unlock();
+        }
     }
 
     public HBCITwoStepMechanism getCurrentSecMechInfo() {
@@ -472,7 +488,26 @@ public class PinTanPassport extends AbstractHBCIPassport {
         this.userTwostepMechanisms = l;
     }
 
+    /**
+     * Standardmäßig wird bei PIN/TAN nur ein Auftrag je Nachricht gesendet. Mit der
+     * Passport-Property <code>client.passport.PinTan.maxGVSegsPerMsg</code> kann das
+     * erhöht werden, z.B. für Banken, die bei Firmenkunden mehrere Saldo- oder
+     * Umsatzabfragen in einer Nachricht annehmen. Die Grenzen aus den BPD gelten
+     * zusätzlich. Ungültige Werte (keine Zahl oder kleiner 1) werden ignoriert.
+     */
     public int getMaxGVSegsPerMsg() {
+        String max = getProperties().get("client.passport.PinTan.maxGVSegsPerMsg");
+        if (max == null)
+            return 1;
+
+        try {
+            int value = Integer.parseInt(max.trim());
+            if (value >= 1)
+                return value;
+        } catch (NumberFormatException e) {
+            // ungueltiger wert, default verwenden
+        }
+        log.warn("invalid client.passport.PinTan.maxGVSegsPerMsg " + max + ", using 1");
         return 1;
     }
 }
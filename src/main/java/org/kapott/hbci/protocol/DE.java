@@ -20,39 +20,55 @@
 
 package org.kapott.hbci.protocol;
 
+import org.kapott.hbci.datatypes.MessageBuffer;
+import org.kapott.hbci.datatypes.ParseCursor;
 import org.kapott.hbci.datatypes.SyntaxDE;
 import org.kapott.hbci.datatypes.factory.SyntaxDEFactory;
 import org.kapott.hbci.exceptions.*;
-import org.kapott.hbci.manager.HBCIUtils;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Map;
-import java.util.List;
 import java.util.Properties;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public final class DE extends SyntaxElement {
 
     private SyntaxDE value;
+    private SyntaxDEFactory.Creator creator;
     private int minsize;
     private int maxsize;
-    private List<String> valids;
+    private Set<String> valids;
 
-    public DE(Node dedef, String name, String path, int idx, Document document) {
-        super(((Element) dedef).getAttribute("type"), name, path, idx, null);
-        initData(dedef, name, path, idx, document);
+    public DE(SyntaxRef dedef, String name, String path, int idx, SyntaxModel model) {
+        super(dedef.getType(), name, path, idx, null);
+        initData(dedef, name, path, idx, model);
     }
 
-    public DE(Node dedef, String name, String path, char predelim, int idx, StringBuilder res, int fullResLen,
-              Map<String, String> predefs, Map<String, String> valids) {
-        super(((Element) dedef).getAttribute("type"), name, path, predelim, idx, res, fullResLen, null, predefs, valids);
+    public DE(SyntaxRef dedef, String name, String path, char predelim, int idx, ParseCursor res, int fullResLen,
+              Map<String, String> predefs, Map<String, Set<String>> valids) {
+        super(dedef.getType(), name, path, predelim, idx, res, fullResLen, null, predefs, valids);
         initData(dedef, res, predefs, predelim, valids);
     }
 
+    // der wert (SyntaxDE) wird bei jedem setValue() neu erzeugt und kann deshalb
+    // mit der vorlage geteilt werden
+    private DE(DE template) {
+        super(template);
+        this.value = template.value;
+        this.creator = template.creator;
+        this.minsize = template.minsize;
+        this.maxsize = template.maxsize;
+        this.valids = template.valids;
+    }
+
+    @Override
+    protected DE copy() {
+        return new DE(this);
+    }
+
     @Override
-    protected MultipleSyntaxElements createNewChildContainer(Node dedef, Document document) {
+    protected MultipleSyntaxElements createNewChildContainer(SyntaxRef dedef, SyntaxModel model) {
         return null;
     }
 
@@ -103,26 +119,13 @@ public final class DE extends SyntaxElement {
         return ret;
     }
 
-    private void initData(Node dedef, String name, String path, int idx, Document document) {
+    private void initData(SyntaxRef dedef, String name, String path, int idx, SyntaxModel model) {
         this.value = null;
-        this.valids = new ArrayList<String>();
+        this.valids = Collections.emptySet();
+        this.creator = dedef.getCreator();
 
-        String st;
-
-        minsize = 1;
-        st = ((Element) dedef).getAttribute("minsize");
-        if (st.length() != 0)
-            minsize = Integer.parseInt(st);
-
-        maxsize = 0;
-        st = ((Element) dedef).getAttribute("maxsize");
-        if (st.length() != 0)
-            maxsize = Integer.parseInt(st);
-    }
-
-    public void init(Node dedef, String name, String path, int idx, Document document) {
-        super.init(((Element) dedef).getAttribute("type"), name, path, idx, null);
-        initData(dedef, name, path, idx, document);
+        minsize = dedef.getMinsize();
+        maxsize = dedef.getMaxsize();
     }
 
     /**
@@ -135,18 +138,9 @@ public final class DE extends SyntaxElement {
             throw new NoValueGivenException(getPath());
         }
 
-        if (valids.size() != 0) {
-            boolean ok = false;
-            String valString = (value != null) ? value.toString() : "";
-
-            for (int i = 0; i < valids.size(); i++) {
-                if (valids.get(i).equals(valString)) {
-                    ok = true;
-                    break;
-                }
-            }
-
-            if (!ok) {
+        if (!valids.isEmpty()) {
+            String valString = value.toString();
+            if (!valids.contains(valString)) {
                 throw new NoValidValueException(getPath(), valString);
             }
         }
@@ -154,7 +148,7 @@ public final class DE extends SyntaxElement {
         setValid(true);
     }
 
-    public void setValids(List<String> valids) {
+    public void setValids(Set<String> valids) {
         this.valids = valids;
     }
 
@@ -169,13 +163,14 @@ public final class DE extends SyntaxElement {
     // ---------------------------------------------------------------------------------------------------------------
 
     public void setValue(String st) {
-        this.value = SyntaxDEFactory.createSyntaxDE(getType(), getPath(), st, minsize, maxsize);
+        this.value = getCreator().create(getPath(), st, minsize, maxsize);
+        contentChanged();
     }
 
     @Override
-    protected MultipleSyntaxElements parseNewChildContainer(Node deref, char predelim0, char predelim1,
-                                                            StringBuilder res, int fullResLen, Document document, Map<String,
-        String> predefs, Map<String, String> valids) {
+    protected MultipleSyntaxElements parseNewChildContainer(SyntaxRef deref, char predelim0, char predelim1,
+                                                            ParseCursor res, int fullResLen, SyntaxModel model, Map<String,
+        String> predefs, Map<String, Set<String>> valids) {
         return null;
     }
 
@@ -187,88 +182,96 @@ public final class DE extends SyntaxElement {
     /**
      * anlegen eines de beim parsen funktioniert analog zum
      * anlegen eines de bei der message-synthese
+     *
+     * @return {@link ParseResult#OK}, wenn das de an dieser stelle passt. ein
+     * nicht passendes de wird nicht per exception signalisiert; exceptions
+     * werden nur noch bei fatalen fehlern geworfen
      */
-    private void parseValue(StringBuilder res, Map<String, String> predefs, char preDelim,
-                            Map<String, String> valids) {
+    private ParseResult parseValue(ParseCursor res, Map<String, String> predefs, char preDelim,
+                                   Map<String, Set<String>> valids) {
         int len = res.length();
 
-        if (preDelim != (char) 0 && res.charAt(0) != preDelim) {
-            if (len == 0) {
-                throw new ParseErrorException(HBCIUtils.getLocMsg("EXCMSG_ENDOFSTRG", getPath()));
-            }
+        if (preDelim != (char) 0) {
+            // ende des strings erreicht
+            if (len == 0)
+                return mismatch(res, ParseResult.MISMATCH, ParseCursor.Mismatch.END_OF_STRING);
 
-            // log.("error string: "+res.toString(),log._ERR);
-            // log.("current: "+getPath()+":"+type+"("+minsize+","+maxsize+")="+value,log._ERR);
-            // log.("predelimiter mismatch (required:"+getPreDelim()+" found:"+temp.charAt(0)+")",log._ERR);
-            throw new PredelimErrorException(getPath(), Character.toString(preDelim),
-                Character.toString(res.charAt(0)));
+            if (res.charAt(0) != preDelim) {
+                res.setDelimiterMismatch(getPath(), preDelim);
+                return ParseResult.PREDELIM_MISMATCH;
+            }
         }
 
-        this.value = SyntaxDEFactory.createSyntaxDE(getType(), getPath(), res, minsize, maxsize);
+        // leere elemente gar nicht erst an den datentyp uebergeben - die werden
+        // dort bei minsize>0 ohnehin abgelehnt
+        int startidx = (len != 0 && isDelimiter(res.charAt(0))) ? 1 : 0;
+        int endidx = SyntaxDE.findNextDelim(res, startidx);
+        if (minsize > 0 && endidx == startidx)
+            return mismatch(res, ParseResult.MISMATCH, ParseCursor.Mismatch.EMPTY);
+
+        // offensichtlich unpassende werte ohne exception aussortieren
+        SyntaxDEFactory.Creator valueCreator = getCreator();
+        if (!valueCreator.accepts(res, startidx, endidx, minsize))
+            return mismatch(res, ParseResult.MISMATCH, ParseCursor.Mismatch.DATATYPE);
+
+        try {
+            this.value = valueCreator.parse(getPath(), res, minsize, maxsize);
+        } catch (ParseErrorException e) {
+            // [willuhn 2012-03-06, BUG 1129] weiterwerfen, wenn sie als fatal eingestuft ist
+            if (e.isFatal())
+                throw e;
+            return mismatch(res, ParseResult.MISMATCH, ParseCursor.Mismatch.DATATYPE);
+        }
 
         String valueString = value.toString(0);
         String predefined = predefs.get(getPath());
         if (predefined != null) {
             if (!valueString.equals(predefined)) {
-                throw new ParseErrorException(HBCIUtils.getLocMsg("EXCMSG_PREDEFERR",
-                    new Object[]{getPath(), predefined, value}));
+                res.setValueMismatch(getPath(), predefined, valueString);
+                return ParseResult.MISMATCH;
             }
         }
 
-        boolean atLeastOne = false;
-        boolean ok = false;
         if (valids != null) {
-            String header = getPath() + ".value";
-            for (String key : valids.keySet()) {
-                if (key.startsWith(header) &&
-                    key.indexOf(".", header.length()) == -1) {
-
-                    atLeastOne = true;
-                    String validValue = valids.get(key);
-                    if (valueString.equals(validValue)) {
-                        ok = true;
-                        break;
-                    }
-                }
+            Set<String> validValues = valids.get(getPath());
+            if (validValues != null && !validValues.isEmpty() && !validValues.contains(valueString)) {
+                throw new NoValidValueException(getPath(), valueString);
             }
         }
 
-        if (atLeastOne && !ok) {
-            throw new NoValidValueException(getPath(), valueString);
-        }
+        return ParseResult.OK;
     }
 
-    private void initData(Node dedef, StringBuilder res, Map<String, String> predefs, char preDelim,
-                          Map<String, String> valids) {
-        setValid(false);
+    // der fehlschlag wird nicht per exception gemeldet, fuer die fehlermeldung der
+    // nachricht aber am cursor vermerkt; den text baut erst der cursor, wenn er gebraucht wird
+    private ParseResult mismatch(ParseCursor res, ParseResult result, ParseCursor.Mismatch code) {
+        res.setMismatch(getPath(), code);
+        return result;
+    }
 
-        value = null;
-        this.valids = new ArrayList<>();
+    private SyntaxDEFactory.Creator getCreator() {
+        // unbekannter datentyp: wie bisher erst beim erzeugen des wertes melden
+        return (creator != null) ? creator : SyntaxDEFactory.getCreator(getType(), getPath());
+    }
 
-        String st;
+    private static boolean isDelimiter(char ch) {
+        return ch == '\'' || ch == '+' || ch == ':';
+    }
 
-        minsize = 1;
-        st = ((Element) dedef).getAttribute("minsize");
-        if (st.length() != 0)
-            minsize = Integer.parseInt(st);
+    private void initData(SyntaxRef dedef, ParseCursor res, Map<String, String> predefs, char preDelim,
+                          Map<String, Set<String>> valids) {
+        setValid(false);
 
-        maxsize = 0;
-        st = ((Element) dedef).getAttribute("maxsize");
-        if (st.length() != 0)
-            maxsize = Integer.parseInt(st);
+        value = null;
+        this.valids = Collections.emptySet();
+        this.creator = dedef.getCreator();
 
-        try {
-            parseValue(res, predefs, preDelim, valids);
-            setValid(true);
-        } catch (RuntimeException e) {
-            throw e;
-        }
-    }
+        minsize = dedef.getMinsize();
+        maxsize = dedef.getMaxsize();
 
-    public void init(Node dedef, String name, String path, char predelim, int idx, StringBuilder res, int fullResLen, Map<String,
-        String> predefs, Map<String, String> valids) {
-        super.init(((Element) dedef).getAttribute("type"), name, path, predelim, idx, res, fullResLen, null, predefs, valids);
-        initData(dedef, res, predefs, predelim, valids);
+        ParseResult result = parseValue(res, predefs, preDelim, valids);
+        setParseResult(result);
+        setValid(result == ParseResult.OK);
     }
 
     @Override
@@ -277,6 +280,12 @@ public final class DE extends SyntaxElement {
             values.put(getPath(), value.toString());
     }
 
+    @Override
+    void forEachDE(Consumer<DE> action) {
+        if (isValid())
+            action.accept(this);
+    }
+
     @Override
     public String toString() {
         return isValid() ? value.toString() : "";
@@ -287,6 +296,12 @@ public final class DE extends SyntaxElement {
         return isValid() ? value.toString(0) : "";
     }
 
+    @Override
+    protected void appendTo(MessageBuffer sb) {
+        if (isValid())
+            value.appendTo(sb);
+    }
+
     public void getElementPaths(Properties p, int[] segref, int[] degref, int[] deref) {
         if (deref == null) {
             p.setProperty(segref[0] +
@@ -20,47 +20,58 @@
 
 package org.kapott.hbci.protocol;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
+import org.kapott.hbci.datatypes.MessageBuffer;
+import org.kapott.hbci.datatypes.ParseCursor;
 
 import java.util.Map;
 import java.util.Iterator;
 import java.util.ListIterator;
+import java.util.Set;
 
 public final class DEG extends SyntaxElement {
 
-    public DEG(String type, String name, String path, int idx, Document document) {
-        super(type, name, path, idx, document);
+    public DEG(String type, String name, String path, int idx, SyntaxModel model) {
+        super(type, name, path, idx, model);
     }
 
-    public DEG(String type, String name, String path, char predelim, int idx, StringBuilder res, int fullResLen, Document document,
-               Map<String, String> predefs, Map<String, String> valids) {
-        super(type, name, path, predelim, idx, res, fullResLen, document, predefs, valids);
+    public DEG(String type, String name, String path, char predelim, int idx, ParseCursor res, int fullResLen, SyntaxModel model,
+               Map<String, String> predefs, Map<String, Set<String>> valids) {
+        super(type, name, path, predelim, idx, res, fullResLen, model, predefs, valids);
+    }
+
+    private DEG(DEG template) {
+        super(template);
+    }
+
+    @Override
+    protected DEG copy() {
+        return new DEG(this);
     }
 
     protected String getElementTypeName() {
         return "DEG";
     }
 
-    protected MultipleSyntaxElements createNewChildContainer(Node ref, Document document) {
+    protected MultipleSyntaxElements createNewChildContainer(SyntaxRef ref, SyntaxModel model) {
         MultipleSyntaxElements ret = null;
 
-        if ((ref.getNodeName()).equals("DE"))
-            ret = new MultipleDEs(ref, ':', getPath(), document);
-        else if ((ref.getNodeName()).equals("DEG"))
-            ret = new MultipleDEGs(ref, ':', getPath(), document);
+        if (ref.getKind() == SyntaxRef.Kind.DE)
+            ret = new MultipleDEs(ref, ':', getPath(), model);
+        else if (ref.getKind() == SyntaxRef.Kind.DEG)
+            ret = new MultipleDEGs(ref, ':', getPath(), model);
 
         return ret;
     }
 
-    public void init(String type, String name, String path, int idx, Document document) {
-        super.init(type, name, path, idx, document);
-    }
-
     // ---------------------------------------------------------------------------------------------------------------
 
     public String toString(int dummy) {
-        StringBuilder ret = new StringBuilder(128);
+        MessageBuffer ret = new MessageBuffer(128);
+        appendTo(ret);
+        return ret.toString();
+    }
+
+    protected void appendTo(MessageBuffer ret) {
         boolean first = true;
 
         if (isValid()) {
@@ -73,7 +84,7 @@ public final class DEG extends SyntaxElement {
                 saveLen = ret.length();
                 MultipleSyntaxElements dataList = i.next();
                 if (dataList != null)
-                    ret.append(dataList.toString(0));
+                    dataList.appendTo(ret);
 
                 if (ret.length() == saveLen && !first) {
                     tooMuch++;
@@ -86,23 +97,20 @@ public final class DEG extends SyntaxElement {
             // das auslassen von leeren elementen am ende darf nur erfolgen, wenn
             // es nicht um eine DEG innerhalb einer anderen DEG handelt
             if (getParent().getParent().getInDelim() != ':') {
-                int retlen = ret.length();
-                ret.delete(retlen - tooMuch, retlen);
+                ret.setLength(ret.length() - tooMuch);
             }
         }
-
-        return ret.toString();
     }
 
-    protected MultipleSyntaxElements parseNewChildContainer(Node dataref, char predelim0, char predelim1,
-                                                            StringBuilder res, int fullResLen, Document document, Map<String,
-        String> predefs, Map<String, String> valids) {
+    protected MultipleSyntaxElements parseNewChildContainer(SyntaxRef dataref, char predelim0, char predelim1,
+                                                            ParseCursor res, int fullResLen, SyntaxModel model, Map<String,
+        String> predefs, Map<String, Set<String>> valids) {
         MultipleSyntaxElements ret = null;
 
-        if ((dataref.getNodeName()).equals("DEG"))
-            ret = new MultipleDEGs(dataref, ':', getPath(), predelim0, predelim1, res, fullResLen, document, predefs, valids);
-        else if ((dataref.getNodeName()).equals("DE"))
-            ret = new MultipleDEs(dataref, ':', getPath(), predelim0, predelim1, res, fullResLen, document, predefs, valids);
+        if (dataref.getKind() == SyntaxRef.Kind.DEG)
+            ret = new MultipleDEGs(dataref, ':', getPath(), predelim0, predelim1, res, fullResLen, model, predefs, valids);
+        else if (dataref.getKind() == SyntaxRef.Kind.DE)
+            ret = new MultipleDEs(dataref, ':', getPath(), predelim0, predelim1, res, fullResLen, model, predefs, valids);
 
         return ret;
     }
@@ -111,11 +119,6 @@ public final class DEG extends SyntaxElement {
         return ':';
     }
 
-    public void init(String type, String name, String path, char predelim, int idx, StringBuilder res, int fullResLen,
-                     Document document, Map<String, String> predefs, Map<String, String> valids) {
-        super.init(type, name, path, predelim, idx, res, fullResLen, document, predefs, valids);
-    }
-
     public void getElementPaths(Map<String, String> p, int[] segref, int[] degref, int[] deref) {
         if (deref == null) {
             p.put(segref[0] + ":" + degref[0], getPath());
@@ -22,16 +22,20 @@ package org.kapott.hbci.protocol;
 
 import lombok.extern.slf4j.Slf4j;
 import org.kapott.hbci.comm.CommPinTan;
+import org.kapott.hbci.datatypes.MessageBuffer;
+import org.kapott.hbci.datatypes.ParseCursor;
 import org.kapott.hbci.exceptions.HBCI_Exception;
 import org.kapott.hbci.exceptions.NoSuchPathException;
+import org.kapott.hbci.exceptions.ParseErrorException;
 import org.w3c.dom.Document;
-import org.w3c.dom.Node;
 
 import java.text.DecimalFormat;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 @Slf4j
 public final class Message extends SyntaxElement {
@@ -40,35 +44,76 @@ public final class Message extends SyntaxElement {
     public static final boolean DONT_CHECK_SEQ = false;
     public static final boolean DONT_CHECK_VALIDS = false;
 
-    private Document document;
     private Map<String, String> clientValues = new HashMap<>();
 
-    public Message(String type, Document document) {
-        super(type, type, null, 0, document);
+    // index pfad->element fuer getElement(), getValueOfDE() und propagateValue();
+    // wird erst nach dem erzeugen der nachricht beim ersten zugriff aufgebaut
+    private boolean indexable;
+    private Map<String, SyntaxElement> pathIndex;
+
+    // zwischengespeicherte darstellung der nachricht; wird bei jeder aenderung
+    // an der nachricht verworfen (siehe contentChanged()). das byte-array verlaesst
+    // die klasse nie, toByteArray() liefert immer eine kopie
+    private String messageString;
+    private byte[] messageBytes;
+
+    /**
+     * Erzeugt eine neue, leere Nachricht. Für ausgehende Nachrichten ist
+     * {@link SyntaxModel#createMessage(String)} schneller.
+     */
+    public Message(String type, SyntaxModel model) {
+        super(type, type, null, 0, model);
+        this.indexable = true;
     }
 
-    public Message(String type, String res, Document document, boolean checkSeq, boolean checkValids) {
-        super(type, type, null, (char) 0, 0, new StringBuilder(res), res.length(),
-            document,
-            new HashMap<>(),
-            checkValids ? new HashMap<>() : null);
+    public Message(String type, String res, SyntaxModel model, boolean checkSeq, boolean checkValids) {
+        this(type, new ParseCursor(res), model, checkValids);
         if (checkSeq)
             checkSegSeq(1);
+        this.indexable = true;
     }
 
-    public void init(String type, Document document) {
-        super.init(type, type, null, 0, document);
+    private Message(String type, ParseCursor res, SyntaxModel model, boolean checkValids) {
+        super(type, type, null, (char) 0, 0, res, res.length(), model, new HashMap<>(),
+            checkValids ? new HashMap<>() : null);
+
+        // beim parsen werden fehlschlaege nur als status weitergereicht; passt die
+        // nachricht als ganzes nicht, dann ist das hier ein echter fehler
+        if (getParseResult() != ParseResult.OK) {
+            List<MultipleSyntaxElements> containers = getChildContainers();
+            String path = containers.isEmpty() ? getPath() : containers.get(containers.size() - 1).getPath();
+            StringBuilder msg = new StringBuilder("reststring in ").append(path).append(": ").append(res);
+            if (res.getMismatchPosition() != -1) {
+                // die am weitesten hinten liegende stelle, an der kein element mehr passte
+                msg.append(" (at position ").append(res.getMismatchPosition()).append(": ")
+                    .append(res.getMismatchReason()).append(")");
+            }
+            throw new ParseErrorException(msg.toString());
+        }
     }
 
-    protected MultipleSyntaxElements createNewChildContainer(Node ref, Document document) {
-        this.document = document;
+    private Message(Message template) {
+        super(template);
+        this.clientValues.putAll(template.clientValues);
+        this.indexable = true;
+    }
 
+    /**
+     * @return eine unabhaengige kopie dieser nachricht; aenderungen an der kopie
+     * wirken sich nicht auf das original aus und umgekehrt
+     */
+    @Override
+    public Message copy() {
+        return new Message(this);
+    }
+
+    protected MultipleSyntaxElements createNewChildContainer(SyntaxRef ref, SyntaxModel model) {
         MultipleSyntaxElements ret = null;
 
-        if ((ref.getNodeName()).equals("SEG"))
-            ret = new MultipleSEGs(ref, getPath(), document);
-        else if ((ref.getNodeName()).equals("SF"))
-            ret = new MultipleSFs(ref, getPath(), document);
+        if (ref.getKind() == SyntaxRef.Kind.SEG)
+            ret = new MultipleSEGs(ref, getPath(), model);
+        else if (ref.getKind() == SyntaxRef.Kind.SF)
+            ret = new MultipleSFs(ref, getPath(), model);
 
         return ret;
     }
@@ -94,17 +139,22 @@ public final class Message extends SyntaxElement {
         });
     }
 
-    /**
-     * setzen des feldes "nachrichtengroesse" im nachrichtenkopf einer nachricht
-     */
-    private void setMsgSizeValue(int value, boolean allowOverwrite) {
+    private DE getMsgSizeElement() {
         String absPath = getPath() + ".MsgHead.msgsize";
         SyntaxElement msgsizeElem = getElement(absPath);
 
         if (msgsizeElem == null)
             throw new NoSuchPathException(absPath);
 
-        int size = ((DE) msgsizeElem).getMinSize();
+        return (DE) msgsizeElem;
+    }
+
+    /**
+     * setzen des feldes "nachrichtengroesse" im nachrichtenkopf einer nachricht
+     */
+    private void setMsgSizeValue(int value, boolean allowOverwrite) {
+        String absPath = getPath() + ".MsgHead.msgsize";
+        int size = getMsgSizeElement().getMinSize();
         char[] zeros = new char[size];
         Arrays.fill(zeros, '0');
         DecimalFormat df = new DecimalFormat(String.valueOf(zeros));
@@ -117,7 +167,44 @@ public final class Message extends SyntaxElement {
     }
 
     public void autoSetMsgSize() {
-        setMsgSizeValue(toString(0).length(), ALLOW_OVERWRITE);
+        byte[] bytes = getBytes();
+        DE msgsize = getMsgSizeElement();
+        String oldValue = msgsize.toString(0);
+
+        // verwirft die zwischengespeicherte darstellung
+        setMsgSizeValue(bytes.length, ALLOW_OVERWRITE);
+
+        // die nachrichtengroesse hat eine feste laenge und steht direkt hinter dem
+        // segmentkopf des nachrichtenkopfes - sie wird deshalb in der bereits
+        // erzeugten darstellung ersetzt, statt die nachricht neu zu serialisieren.
+        // das array ist nur intern bekannt und darf deshalb geaendert werden
+        String newValue = msgsize.toString(0);
+        int pos = indexOf(bytes, (byte) '+') + 1;
+        if (pos > 0 && newValue.length() == oldValue.length() && regionMatches(bytes, pos, oldValue)) {
+            for (int i = 0; i < newValue.length(); i++) {
+                bytes[pos + i] = (byte) newValue.charAt(i);
+            }
+            this.messageBytes = bytes;
+        }
+    }
+
+    private static int indexOf(byte[] bytes, byte b) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == b)
+                return i;
+        }
+        return -1;
+    }
+
+    private static boolean regionMatches(byte[] bytes, int pos, String st) {
+        if (pos + st.length() > bytes.length)
+            return false;
+
+        for (int i = 0; i < st.length(); i++) {
+            if (bytes[pos + i] != (byte) st.charAt(i))
+                return false;
+        }
+        return true;
     }
 
     public void complete() {
@@ -130,57 +217,80 @@ public final class Message extends SyntaxElement {
         autoSetMsgSize();
     }
 
+    /**
+     * Liefert die Nachricht so, wie sie versendet wird. Die Darstellung wird nur einmal
+     * erzeugt und bis zur nächsten Änderung an der Nachricht zwischengespeichert.
+     */
     @Override
     public String toString(int dummy) {
-        StringBuilder ret = new StringBuilder(1024);
+        if (messageString == null)
+            messageString = new String(getBytes(), CommPinTan.ENCODING);
+        return messageString;
+    }
 
+    /**
+     * Liefert die Nachricht in der Kodierung, in der sie versendet wird. Die Bytes
+     * werden nur einmal erzeugt; zurückgegeben wird jeweils eine Kopie.
+     */
+    public byte[] toByteArray() {
+        return getBytes().clone();
+    }
+
+    // die elemente schreiben direkt in ISO-8859-1 in den puffer, die nachricht wird
+    // also nicht erst als string aufgebaut und danach noch einmal kodiert
+    private byte[] getBytes() {
+        if (messageBytes == null) {
+            MessageBuffer buffer = new MessageBuffer(4096);
+            appendTo(buffer);
+            messageBytes = buffer.toByteArray();
+        }
+        return messageBytes;
+    }
+
+    @Override
+    protected void appendTo(MessageBuffer sb) {
         if (isValid())
             for (MultipleSyntaxElements list : getChildContainers()) {
                 if (list != null)
-                    ret.append(list.toString(0));
+                    list.appendTo(sb);
             }
-
-        return ret.toString();
     }
 
-    // -------------------------------------------------------------------------------------------
+    @Override
+    protected void contentChanged() {
+        messageString = null;
+        messageBytes = null;
+    }
 
-    public void init(String type, String res, Document document, boolean checkSeq, boolean checkValids) {
-        super.init(type, type, null, (char) 0, 0, new StringBuilder(res), res.length(),
-            document, new HashMap<>(),
-            checkValids ? new HashMap<>() : null);
-        if (checkSeq)
-            checkSegSeq(1);
+    @Override
+    protected void structureChanged() {
+        pathIndex = null;
+        contentChanged();
     }
 
+    // -------------------------------------------------------------------------------------------
+
     protected char getInDelim() {
         return '\'';
     }
 
-    protected MultipleSyntaxElements parseNewChildContainer(Node segref, char predelim0, char predelim1,
-                                                            StringBuilder res, int fullResLen, Document document, Map<String,
-        String> predefs, Map<String, String> valids) {
+    protected MultipleSyntaxElements parseNewChildContainer(SyntaxRef segref, char predelim0, char predelim1,
+                                                            ParseCursor res, int fullResLen, SyntaxModel model, Map<String,
+        String> predefs, Map<String, Set<String>> valids) {
         MultipleSyntaxElements ret = null;
 
-        if ((segref.getNodeName()).equals("SEG"))
-            ret = new MultipleSEGs(segref, getPath(), predelim0, predelim1, res, fullResLen, document, predefs, valids);
-        else if ((segref.getNodeName()).equals("SF"))
-            ret = new MultipleSFs(segref, getPath(), predelim0, predelim1, res, fullResLen, document, predefs, valids);
+        if (segref.getKind() == SyntaxRef.Kind.SEG)
+            ret = new MultipleSEGs(segref, getPath(), predelim0, predelim1, res, fullResLen, model, predefs, valids);
+        else if (segref.getKind() == SyntaxRef.Kind.SF)
+            ret = new MultipleSFs(segref, getPath(), predelim0, predelim1, res, fullResLen, model, predefs, valids);
 
         return ret;
     }
 
     @Override
     public String getValueOfDE(String path) {
-        String ret = null;
-
-        for (MultipleSyntaxElements l : getChildContainers()) {
-            String temp = l.getValueOfDE(path);
-            if (temp != null) {
-                ret = temp;
-                break;
-            }
-        }
+        SyntaxElement elem = getElement(path);
+        String ret = (elem != null && elem != this) ? elem.getValueOfDE(path) : null;
 
         if (ret == null)
             throw new NoSuchPathException(path);
@@ -188,6 +298,55 @@ public final class Message extends SyntaxElement {
         return ret;
     }
 
+    @Override
+    public String getValueOfDE(String path, int zero) {
+        SyntaxElement elem = getElement(path);
+        return (elem != null && elem != this) ? elem.getValueOfDE(path, 0) : null;
+    }
+
+    /**
+     * Sucht das Element zunächst im Pfad-Index. Elemente werden nie aus einer Nachricht
+     * entfernt, ein Treffer im Index ist also immer gültig; nur Elemente, die nach dem
+     * Aufbau des Index erzeugt wurden, werden wie bisher im Baum gesucht und dann
+     * nachgetragen.
+     */
+    @Override
+    public SyntaxElement getElement(String path) {
+        Map<String, SyntaxElement> index = getPathIndex();
+        if (index == null)
+            return super.getElement(path);
+
+        SyntaxElement ret = index.get(path);
+        if (ret == null) {
+            ret = super.getElement(path);
+            if (ret != null)
+                index.put(path, ret);
+        }
+        return ret;
+    }
+
+    @Override
+    public boolean propagateValue(String destPath, String value, boolean tryToCreate, boolean allowOverwrite) {
+        Map<String, SyntaxElement> index = getPathIndex();
+        SyntaxElement elem = (index != null) ? index.get(destPath) : null;
+
+        // element existiert noch nicht (oder ist noch nicht im index) - dann
+        // wie bisher durch den baum laufen und ggf. anlegen
+        if (elem == null || elem == this)
+            return super.propagateValue(destPath, value, tryToCreate, allowOverwrite);
+
+        return elem.propagateValue(destPath, value, tryToCreate, allowOverwrite);
+    }
+
+    private Map<String, SyntaxElement> getPathIndex() {
+        if (pathIndex == null && indexable) {
+            Map<String, SyntaxElement> index = new HashMap<>();
+            indexElements(index);
+            pathIndex = index;
+        }
+        return pathIndex;
+    }
+
     // -------------------------------------------------------------------------------------------
 
     public Map<String, String> getData() {
@@ -202,6 +361,38 @@ public final class Message extends SyntaxElement {
         return p;
     }
 
+    /**
+     * Ruft <code>action</code> für alle DEs der Nachricht auf, die einen Wert haben.
+     * Anders als bei {@link #getData()} wird dabei keine Kopie aller Werte angelegt.
+     */
+    @Override
+    public void forEachDE(Consumer<DE> action) {
+        super.forEachDE(action);
+    }
+
+    /**
+     * Ändert den Wert eines vorhandenen DE einer geparsten Nachricht, ohne dass die
+     * Nachricht neu geparst werden muss. Die Positionen ({@link #getPosInMsg()}) aller
+     * nachfolgenden Elemente werden um die Längenänderung verschoben und passen damit
+     * weiterhin zu {@link #toString(int)}.
+     *
+     * @param path  Pfad des DE (inklusive Nachrichtenname).
+     * @param value der neue Wert, im selben Format wie bei {@link #propagateValue(String, String, boolean,
+     *              boolean)}.
+     * @throws NoSuchPathException wenn die Nachricht kein solches DE mit einem Wert enthält.
+     */
+    public void patchValue(String path, String value) {
+        SyntaxElement elem = getElement(path);
+        if (!(elem instanceof DE) || !elem.isValid())
+            throw new NoSuchPathException(path);
+
+        int oldLength = elem.toString(0).length();
+        ((DE) elem).setValue(value);
+        int delta = elem.toString(0).length() - oldLength;
+        if (delta != 0)
+            shiftPositions(elem.getPosInMsg(), delta);
+    }
+
     @Override
     public void getElementPaths(Map<String, String> p, int[] segref, int[] degref, int[] deref) {
         segref = new int[1];
@@ -230,31 +421,29 @@ public final class Message extends SyntaxElement {
     public byte[] getPlainString() {
         try {
             // remove msghead and msgtail first
-            StringBuilder ret = new StringBuilder(1024);
             List<MultipleSyntaxElements> childs = getChildContainers();
-            int len = childs.size();
+            byte[] bytes = getBytes();
 
             /* skip one segment at start and one segment at end of message
                (msghead and msgtail), the rest will be encrypted */
-            for (int i = 1; i < len - 1; i++) {
-                ret.append(childs.get(i).toString(0));
-            }
+            int start = childs.get(0).toString(0).length();
+            int end = bytes.length - childs.get(childs.size() - 1).toString(0).length();
 
-            // pad message
-            int padLength = 8 - (ret.length() % 8);
-            for (int i = 0; i < padLength - 1; i++) {
-                ret.append((char) (0));
-            }
-            ret.append((char) (padLength));
+            // pad message (mit 0-bytes, das letzte byte enthaelt die laenge)
+            int padLength = 8 - ((end - start) % 8);
+            byte[] ret = new byte[end - start + padLength];
+            System.arraycopy(bytes, start, ret, 0, end - start);
+            ret[ret.length - 1] = (byte) padLength;
 
-            return ret.toString().getBytes(CommPinTan.ENCODING);
+            return ret;
         } catch (Exception ex) {
             throw new HBCI_Exception("*** error while extracting plain message string", ex);
         }
     }
 
     public Document getDocument() {
-        return document;
+        SyntaxModel model = getSyntaxModel();
+        return model != null ? model.getDocument() : null;
     }
 
     /**
@@ -21,30 +21,41 @@
 package org.kapott.hbci.protocol;
 
 import lombok.extern.slf4j.Slf4j;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
+import org.kapott.hbci.datatypes.MessageBuffer;
+import org.kapott.hbci.datatypes.ParseCursor;
 
 import java.util.Map;
 import java.util.Iterator;
+import java.util.Set;
 
 @Slf4j
 public final class MultipleDEGs extends MultipleSyntaxElements {
 
     private char delimiter;
 
-    public MultipleDEGs(Node degref, char delimiter, String path, Document document) {
-        super(degref, path, document);
+    public MultipleDEGs(SyntaxRef degref, char delimiter, String path, SyntaxModel model) {
+        super(degref, path, model);
         initData(delimiter);
     }
 
-    public MultipleDEGs(Node degref, char delimiter, String path, char predelim0, char predelim1, StringBuilder res, int fullResLen,
-                        Document document, Map<String, String> predefs, Map<String, String> valids) {
-        super(degref, path, predelim0, predelim1, res, fullResLen, document, predefs, valids);
+    public MultipleDEGs(SyntaxRef degref, char delimiter, String path, char predelim0, char predelim1, ParseCursor res, int fullResLen,
+                        SyntaxModel model, Map<String, String> predefs, Map<String, Set<String>> valids) {
+        super(degref, path, predelim0, predelim1, res, fullResLen, model, predefs, valids);
         initData(delimiter);
     }
 
-    protected SyntaxElement createAndAppendNewElement(Node ref, String path, int idx, Document document) {
-        SyntaxElement ret = new DEG(getType(), getName(), path, idx, document);
+    private MultipleDEGs(MultipleDEGs template) {
+        super(template);
+        this.delimiter = template.delimiter;
+    }
+
+    @Override
+    protected MultipleDEGs copy() {
+        return new MultipleDEGs(this);
+    }
+
+    protected SyntaxElement createAndAppendNewElement(SyntaxRef ref, String path, int idx, SyntaxModel model) {
+        SyntaxElement ret = new DEG(getType(), getName(), path, idx, model);
 
         addElement(ret);
         return ret;
@@ -54,13 +65,13 @@ public final class MultipleDEGs extends MultipleSyntaxElements {
         this.delimiter = delimiter;
     }
 
-    public void init(Node degref, char delimiter, String path, Document document) {
-        super.init(degref, path, document);
-        initData(delimiter);
+    public String toString(int dummy) {
+        MessageBuffer ret = new MessageBuffer(128);
+        appendTo(ret);
+        return ret.toString();
     }
 
-    public String toString(int dummy) {
-        StringBuilder ret = new StringBuilder(128);
+    protected void appendTo(MessageBuffer ret) {
         boolean first = true;
 
         for (SyntaxElement syntaxElement : getElements()) {
@@ -69,26 +80,16 @@ public final class MultipleDEGs extends MultipleSyntaxElements {
             first = false;
 
             if (syntaxElement != null)
-                ret.append(((DEG) syntaxElement).toString(0));
+                syntaxElement.appendTo(ret);
         }
-
-        return ret.toString();
     }
 
     // --------------------------------------------------------------------------------------------------------------
 
-    protected SyntaxElement parseAndAppendNewElement(Node ref, String path, char predelim, int idx, StringBuilder res,
-                                                     int fullResLen, Document document, Map<String, String> predefs,
-                                                     Map<String, String> valids) {
-        SyntaxElement ret;
-        addElement((ret = new DEG(getType(), getName(), path, predelim, idx, res, fullResLen, document, predefs, valids)));
-        return ret;
-    }
-
-    public void init(Node degref, char delimiter, String path, char predelim0, char predelim1, StringBuilder res, int fullResLen,
-                     Document document, Map<String, String> predefs, Map<String, String> valids) {
-        super.init(degref, path, predelim0, predelim1, res, fullResLen, document, predefs, valids);
-        initData(delimiter);
+    protected SyntaxElement parseNewElement(SyntaxRef ref, String path, char predelim, int idx, ParseCursor res,
+                                            int fullResLen, SyntaxModel model, Map<String, String> predefs,
+                                            Map<String, Set<String>> valids) {
+        return new DEG(getType(), getName(), path, predelim, idx, res, fullResLen, model, predefs, valids);
     }
 
     public void getElementPaths(Map<String, String> p, int[] segref, int[] degref, int[] deref) {
@@ -21,45 +21,51 @@
 package org.kapott.hbci.protocol;
 
 import lombok.extern.slf4j.Slf4j;
+import org.kapott.hbci.datatypes.MessageBuffer;
+import org.kapott.hbci.datatypes.ParseCursor;
 import org.kapott.hbci.manager.HBCIUtils;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
 
 import java.util.*;
 
 @Slf4j
 public final class MultipleDEs extends MultipleSyntaxElements {
     private char delimiter;
-    private List<String> valids;
+    private Set<String> valids;
 
-    public MultipleDEs(Node dedef, char delimiter, String path, Document document) {
-        super(dedef, path, document);
+    public MultipleDEs(SyntaxRef dedef, char delimiter, String path, SyntaxModel model) {
+        super(dedef, path, model);
         initData(delimiter);
     }
 
-    public MultipleDEs(Node deref, char delimiter, String path, char predelim0, char predelim1, StringBuilder res,
-                       int fullResLen, Document document, Map<String, String> predefs, Map<String, String> valids) {
-        super(deref, path, predelim0, predelim1, res, fullResLen, document, predefs, valids);
+    public MultipleDEs(SyntaxRef deref, char delimiter, String path, char predelim0, char predelim1, ParseCursor res,
+                       int fullResLen, SyntaxModel model, Map<String, String> predefs, Map<String, Set<String>> valids) {
+        super(deref, path, predelim0, predelim1, res, fullResLen, model, predefs, valids);
         initData(delimiter);
     }
 
-    protected SyntaxElement createAndAppendNewElement(Node deref, String path, int idx, Document document) {
-        SyntaxElement ret;
-        addElement(ret = new DE(deref, getName(), path, idx, document));
-        return ret;
+    private MultipleDEs(MultipleDEs template) {
+        super(template);
+        this.delimiter = template.delimiter;
+        this.valids = new HashSet<>(template.valids);
     }
 
-    public void init(Node dedef, char delimiter, String path, Document document) {
-        super.init(dedef, path, document);
-        initData(delimiter);
+    @Override
+    protected MultipleDEs copy() {
+        return new MultipleDEs(this);
+    }
+
+    protected SyntaxElement createAndAppendNewElement(SyntaxRef deref, String path, int idx, SyntaxModel model) {
+        SyntaxElement ret;
+        addElement(ret = new DE(deref, getName(), path, idx, model));
+        return ret;
     }
 
-    protected boolean storeValidValueInDE(String destPath, String value) {
+    protected boolean storeValidValuesInDE(String destPath, Set<String> values) {
         boolean ret = false;
 
         // wenn dieses de gemeint ist
         if (destPath.equals(getPath())) {
-            valids.add(value);
+            valids.addAll(values);
             ret = true;
         }
 
@@ -72,7 +78,12 @@ public final class MultipleDEs extends MultipleSyntaxElements {
     }
 
     public String toString(int dummy) {
-        StringBuilder ret = new StringBuilder(128);
+        MessageBuffer ret = new MessageBuffer(128);
+        appendTo(ret);
+        return ret.toString();
+    }
+
+    protected void appendTo(MessageBuffer ret) {
         boolean first = true;
 
         for (ListIterator<SyntaxElement> i = getElements().listIterator(); i.hasNext(); ) {
@@ -82,46 +93,28 @@ public final class MultipleDEs extends MultipleSyntaxElements {
 
             DE de = (DE) (i.next());
             if (de != null)
-                ret.append(de.toString(0));
+                de.appendTo(ret);
         }
-
-        return ret.toString();
     }
 
     // -------------------------------------------------------------------------------------------------------
 
-    protected SyntaxElement parseAndAppendNewElement(Node ref, String path, char predelim, int idx, StringBuilder res,
-                                                     int fullResLen, Document document, Map<String, String> predefs,
-                                                     Map<String, String> valids) {
-        SyntaxElement ret;
-
-        Map<String, String> newValids = new HashMap<>();
+    protected SyntaxElement parseNewElement(SyntaxRef ref, String path, char predelim, int idx, ParseCursor res,
+                                            int fullResLen, SyntaxModel model, Map<String, String> predefs,
+                                            Map<String, Set<String>> valids) {
+        // die gueltigen werte gelten fuer alle wiederholungen dieses DE
         if (idx != 0 && valids != null) {
-            String header = getPath() + ".value";
-
-            valids.forEach((key, value) -> {
-                if (key.startsWith(header) && key.indexOf(".", header.length()) == -1) {
-                    int dotPos = key.lastIndexOf('.');
-                    String newKey = key.substring(0, dotPos) + HBCIUtils.withCounter("", idx) + key.substring(dotPos);
-                    newValids.put(newKey, value);
-                }
-            });
+            Set<String> values = valids.get(getPath());
+            if (values != null)
+                valids.put(HBCIUtils.withCounter(getPath(), idx), values);
         }
-        valids.putAll(newValids);
 
-        addElement(ret = new DE(ref, getName(), path, predelim, idx, res, fullResLen, predefs, valids));
-        return ret;
+        return new DE(ref, getName(), path, predelim, idx, res, fullResLen, predefs, valids);
     }
 
     private void initData(char delimiter) {
         this.delimiter = delimiter;
-        this.valids = new ArrayList<>();
-    }
-
-    public void init(Node deref, char delimiter, String path, char predelim0, char predelim1, StringBuilder res,
-                     int fullResLen, Document document, Map<String, String> predefs, Map<String, String> valids) {
-        super.init(deref, path, predelim0, predelim1, res, fullResLen, document, predefs, valids);
-        initData(delimiter);
+        this.valids = new HashSet<>();
     }
 
     public void getElementPaths(Map<String, String> p, int[] segref, int[] degref, int[] deref) {
@@ -21,33 +21,38 @@
 package org.kapott.hbci.protocol;
 
 import lombok.extern.slf4j.Slf4j;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
+import org.kapott.hbci.datatypes.MessageBuffer;
+import org.kapott.hbci.datatypes.ParseCursor;
 
 import java.util.Map;
+import java.util.Set;
 
 @Slf4j
 public final class MultipleSEGs extends MultipleSyntaxElements {
 
-    MultipleSEGs(Node segref, String path, Document document) {
-        super(segref, path, document);
+    MultipleSEGs(SyntaxRef segref, String path, SyntaxModel model) {
+        super(segref, path, model);
     }
 
-    MultipleSEGs(Node segref, String path, char predelim0, char predelim1, StringBuilder res, int fullResLen,
-                 Document document
-        , Map<String, String> predefs, Map<String, String> valids) {
-        super(segref, path, predelim0, predelim1, res, fullResLen, document, predefs, valids);
+    MultipleSEGs(SyntaxRef segref, String path, char predelim0, char predelim1, ParseCursor res, int fullResLen,
+                 SyntaxModel model
+        , Map<String, String> predefs, Map<String, Set<String>> valids) {
+        super(segref, path, predelim0, predelim1, res, fullResLen, model, predefs, valids);
     }
 
-    protected SyntaxElement createAndAppendNewElement(Node ref, String path, int idx, Document document) {
-        SyntaxElement ret = new SEG(getType(), getName(), path, idx, document);
-        addElement(ret);
-        return ret;
+    private MultipleSEGs(MultipleSEGs template) {
+        super(template);
     }
 
     @Override
-    public void init(Node segref, String path, Document document) {
-        super.init(segref, path, document);
+    protected MultipleSEGs copy() {
+        return new MultipleSEGs(this);
+    }
+
+    protected SyntaxElement createAndAppendNewElement(SyntaxRef ref, String path, int idx, SyntaxModel model) {
+        SyntaxElement ret = new SEG(getType(), getName(), path, idx, model);
+        addElement(ret);
+        return ret;
     }
 
     @Override
@@ -57,30 +62,23 @@ public final class MultipleSEGs extends MultipleSyntaxElements {
 
     @Override
     public String toString(int dummy) {
-        StringBuilder ret = new StringBuilder(256);
+        MessageBuffer ret = new MessageBuffer(256);
+        appendTo(ret);
+        return ret.toString();
+    }
+
+    protected void appendTo(MessageBuffer ret) {
 
         for (SyntaxElement syntaxElement : getElements()) {
             if (syntaxElement != null)
-                ret.append(((SEG) syntaxElement).toString(0));
+                syntaxElement.appendTo(ret);
         }
-
-        return ret.toString();
-    }
-
-    @Override
-    public void init(Node segref, String path, char predelim0, char predelim1, StringBuilder res, int fullResLen,
-                     Document document,
-                     Map<String, String> predefs, Map<String, String> valids) {
-        super.init(segref, path, predelim0, predelim1, res, fullResLen, document, predefs, valids);
     }
 
-    protected SyntaxElement parseAndAppendNewElement(Node ref, String path, char predelim, int idx, StringBuilder res,
-                                                     int fullResLen, Document document, Map<String, String> predefs,
-                                                     Map<String, String> valids) {
-        SyntaxElement ret = new SEG(getType(), getName(), path, predelim, idx, res, fullResLen, document, predefs,
-            valids);
-        addElement(ret);
-        return ret;
+    protected SyntaxElement parseNewElement(SyntaxRef ref, String path, char predelim, int idx, ParseCursor res,
+                                            int fullResLen, SyntaxModel model, Map<String, String> predefs,
+                                            Map<String, Set<String>> valids) {
+        return new SEG(getType(), getName(), path, predelim, idx, res, fullResLen, model, predefs, valids);
     }
 
     @Override
@@ -21,60 +21,62 @@
 package org.kapott.hbci.protocol;
 
 import lombok.extern.slf4j.Slf4j;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
+import org.kapott.hbci.datatypes.MessageBuffer;
+import org.kapott.hbci.datatypes.ParseCursor;
 
 import java.util.Map;
 import java.util.Iterator;
 import java.util.ListIterator;
+import java.util.Set;
 
 @Slf4j
 public final class MultipleSFs extends MultipleSyntaxElements {
 
-    public MultipleSFs(Node sfref, String path, Document document) {
-        super(sfref, path, document);
+    public MultipleSFs(SyntaxRef sfref, String path, SyntaxModel model) {
+        super(sfref, path, model);
     }
 
-    public MultipleSFs(Node sfref, String path, char predelim0, char predelim1, StringBuilder res, int fullResLen, Document document,
-                       Map<String, String> predefs, Map<String, String> valids) {
-        super(sfref, path, predelim0, predelim1, res, fullResLen, document, predefs, valids);
+    public MultipleSFs(SyntaxRef sfref, String path, char predelim0, char predelim1, ParseCursor res, int fullResLen, SyntaxModel model,
+                       Map<String, String> predefs, Map<String, Set<String>> valids) {
+        super(sfref, path, predelim0, predelim1, res, fullResLen, model, predefs, valids);
     }
 
-    protected SyntaxElement createAndAppendNewElement(Node ref, String path, int idx, Document document) {
+    private MultipleSFs(MultipleSFs template) {
+        super(template);
+    }
+
+    @Override
+    protected MultipleSFs copy() {
+        return new MultipleSFs(this);
+    }
+
+    protected SyntaxElement createAndAppendNewElement(SyntaxRef ref, String path, int idx, SyntaxModel model) {
         SyntaxElement ret = null;
-        addElement((ret = new SF(getType(), getName(), path, idx, document)));
+        addElement((ret = new SF(getType(), getName(), path, idx, model)));
         return ret;
     }
 
-    public void init(Node sfref, String path, Document document) {
-        super.init(sfref, path, document);
+    public String toString(int dummy) {
+        MessageBuffer ret = new MessageBuffer(256);
+        appendTo(ret);
+        return ret.toString();
     }
 
-    public String toString(int dummy) {
-        StringBuilder ret = new StringBuilder(256);
+    protected void appendTo(MessageBuffer ret) {
 
         for (ListIterator<SyntaxElement> i = getElements().listIterator(); i.hasNext(); ) {
             SF sf = (SF) (i.next());
             if (sf != null)
-                ret.append(sf.toString(0));
+                sf.appendTo(ret);
         }
-
-        return ret.toString();
     }
 
     // ---------------------------------------------------------------------------------------------------------------
 
-    public void init(Node sfref, String path, char predelim0, char predelim1, StringBuilder res, int fullResLen, Document document,
-                     Map<String, String> predefs, Map<String, String> valids) {
-        super.init(sfref, path, predelim0, predelim1, res, fullResLen, document, predefs, valids);
-    }
-
-    protected SyntaxElement parseAndAppendNewElement(Node ref, String path, char predelim, int idx, StringBuilder res,
-                                                     int fullResLen, Document document, Map<String, String> predefs,
-                                                     Map<String, String> valids) {
-        SyntaxElement ret;
-        addElement((ret = new SF(getType(), getName(), path, predelim, idx, res, fullResLen, document, predefs, valids)));
-        return ret;
+    protected SyntaxElement parseNewElement(SyntaxRef ref, String path, char predelim, int idx, ParseCursor res,
+                                            int fullResLen, SyntaxModel model, Map<String, String> predefs,
+                                            Map<String, Set<String>> valids) {
+        return new SF(getType(), getName(), path, predelim, idx, res, fullResLen, model, predefs, valids);
     }
 
     public void getElementPaths(Map<String, String> p, int[] segref, int[] degref, int[] deref) {
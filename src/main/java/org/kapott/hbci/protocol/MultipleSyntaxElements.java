@@ -21,18 +21,16 @@
 package org.kapott.hbci.protocol;
 
 import lombok.extern.slf4j.Slf4j;
+import org.kapott.hbci.datatypes.MessageBuffer;
+import org.kapott.hbci.datatypes.ParseCursor;
 import org.kapott.hbci.exceptions.NoValueGivenException;
-import org.kapott.hbci.exceptions.ParseErrorException;
-import org.kapott.hbci.exceptions.PredelimErrorException;
 import org.kapott.hbci.exceptions.TooMuchElementsException;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.Set;
 
 /* die child-elemente von strukturierten syntaxelementen (msg, seg, sg, deg)
     werden nicht direkt als listenelemente der uebergeordneten
@@ -58,21 +56,23 @@ public abstract class MultipleSyntaxElements {
     private int maxnum;
     private int syntaxIdx; // die Position dieses Container innerhalb
     // der Syntax-Definition des Eltern-Elementes
-    private Document document;
-    private Node ref;
+    private SyntaxModel model;
+    private SyntaxRef ref;
     private SyntaxElement parent;
+    // nur beim parsen: ergebnis des parse-vorganges fuer diesen container
+    private ParseResult parseResult = ParseResult.OK;
 
     /**
      * anlegen eines neuen syntaxelementarrays fuer ein syntaxelement;
-     * ref ist eine xml-node-referenz auf das syntaxelement
+     * ref ist die vorkompilierte referenz auf das syntaxelement
      */
-    protected MultipleSyntaxElements(Node ref, String path, Document document) {
-        initData(ref, path, document);
+    protected MultipleSyntaxElements(SyntaxRef ref, String path, SyntaxModel model) {
+        initData(ref, path, model);
     }
 
     /**
      * anlegen einer neuen syntaxelementlist beim parsen des strings res;
-     * - ref ist dabei die referenz auf einen xml-node, der das
+     * - ref ist dabei die vorkompilierte referenz, die das
      * syntaxelement festlegt, fuer den die syntaxelementlist erzeugt werden soll;
      * - predefs siehe SyntaxElement()
      * - predelim0 ist der delimiter, der vor dem ersten element innerhalb dieser
@@ -84,40 +84,68 @@ public abstract class MultipleSyntaxElements {
      * einer msg repraesentiert), predelim1 ist allerdings immer der delimiter,
      * der fuer das aktuell uebergeordnete syntaxelement zu verwenden ist)
      */
-    protected MultipleSyntaxElements(Node ref, String path, char predelim0, char predelim1, StringBuilder res,
-                                     int fullResLen, Document document, Map<String, String> predefs,
-                                     Map<String, String> valids) {
-        initData(ref, path, predelim0, predelim1, res, fullResLen, document, predefs, valids);
+    protected MultipleSyntaxElements(SyntaxRef ref, String path, char predelim0, char predelim1, ParseCursor res,
+                                     int fullResLen, SyntaxModel model, Map<String, String> predefs,
+                                     Map<String, Set<String>> valids) {
+        initData(ref, path, predelim0, predelim1, res, fullResLen, model, predefs, valids);
     }
 
+    /**
+     * erzeugt eine tiefe kopie von 'template' (siehe SyntaxElement(SyntaxElement))
+     */
+    protected MultipleSyntaxElements(MultipleSyntaxElements template) {
+        this.path = template.path;
+        this.name = template.name;
+        this.type = template.type;
+        this.minnum = template.minnum;
+        this.maxnum = template.maxnum;
+        this.syntaxIdx = template.syntaxIdx;
+        this.model = template.model;
+        this.ref = template.ref;
+
+        this.elements = new ArrayList<>(template.elements.size());
+        for (SyntaxElement e : template.elements) {
+            SyntaxElement copy = null;
+            if (e != null) {
+                copy = e.copy();
+                copy.setParent(this);
+            }
+            elements.add(copy);
+        }
+    }
+
+    /**
+     * @return eine tiefe kopie dieses containers (ohne parent)
+     */
+    protected abstract MultipleSyntaxElements copy();
+
     /**
      * erzeugt einen neuen eintrag in der elements liste; dabei wird ein
-     * syntaxelement erzeugt, das im xml-node ref referenziert wird;
+     * syntaxelement erzeugt, das in ref referenziert wird;
      * idx ist die indexnummer des zu erzeugenden syntaxelementes
      * innerhalb der elementlist
      */
-    protected abstract SyntaxElement createAndAppendNewElement(Node ref, String path, int idx, Document document);
+    protected abstract SyntaxElement createAndAppendNewElement(SyntaxRef ref, String path, int idx, SyntaxModel model);
 
     /**
-     * siehe SyntaxElement::parseElementList()
+     * beim parsen: erzeugt ein neues syntaxelement aus dem reststring. das
+     * element wird nur dann in die elements liste aufgenommen, wenn es an
+     * dieser stelle passt (siehe {@link SyntaxElement#getParseResult()})
      */
-    protected abstract SyntaxElement parseAndAppendNewElement(Node ref, String path, char predelim, int idx,
-                                                              StringBuilder res, int fullResLen, Document document,
+    protected abstract SyntaxElement parseNewElement(SyntaxRef ref, String path, char predelim, int idx,
+                                                              ParseCursor res, int fullResLen, SyntaxModel model,
                                                               Map<String,
-                                                                  String> predefs, Map<String, String> valids);
+                                                                  String> predefs, Map<String, Set<String>> valids);
 
-    private void initData(Node ref, String path, Document document) {
-        type = ((Element) ref).getAttribute("type");
-        name = ((Element) ref).getAttribute("name");
-        if (name.length() == 0) {
-            name = type;
-        }
+    private void initData(SyntaxRef ref, String path, SyntaxModel model) {
+        type = ref.getType();
+        name = ref.getName();
 
         this.elements = new ArrayList<>();
         this.parent = null;
         this.syntaxIdx = -1;
         this.ref = ref;
-        this.document = document;
+        this.model = model;
 
         StringBuilder temppath = new StringBuilder(128);
         if (path != null && path.length() != 0)
@@ -125,17 +153,8 @@ public abstract class MultipleSyntaxElements {
         temppath.append(name);
         this.path = temppath.toString();
 
-        String st;
-
-        minnum = 1;
-        st = ((Element) ref).getAttribute("minnum");
-        if (st.length() != 0)
-            minnum = Integer.parseInt(st);
-
-        maxnum = 1;
-        st = ((Element) ref).getAttribute("maxnum");
-        if (st.length() != 0)
-            maxnum = Integer.parseInt(st);
+        minnum = ref.getMinnum();
+        maxnum = ref.getMaxnum();
 
         try {
             // anlegen mindestens eines syntaxelementes
@@ -144,14 +163,14 @@ public abstract class MultipleSyntaxElements {
             // die in Wirklichkeit gar nicht optional sind, aber mit der Option
             // DONT_TRY_TO_CREATE erzeugt werden, so dass sie also nicht angelegt
             // werden würden und somit fehlerhafte Nachrichten die Folge wären.
-            SyntaxElement child = createAndAppendNewElement(ref, path, 0, document);
+            SyntaxElement child = createAndAppendNewElement(ref, path, 0, model);
             if (child != null)
                 child.setParent(this);
 
             /* erzeugen sovieler syntaxelemente, bis die mindestanzahl
              aus der syntaxdefinition erreicht ist */
             for (int i = 1; i < minnum; i++) {
-                child = createAndAppendNewElement(ref, path, i, document);
+                child = createAndAppendNewElement(ref, path, i, model);
                 if (child != null)
                     child.setParent(this);
             }
@@ -160,10 +179,6 @@ public abstract class MultipleSyntaxElements {
         }
     }
 
-    protected void init(Node ref, String path, Document document) {
-        initData(ref, path, document);
-    }
-
     /**
      * siehe SyntaxElement::propagateValue()
      */
@@ -187,10 +202,12 @@ public abstract class MultipleSyntaxElements {
                     String temppath = path.substring(0, path.lastIndexOf("."));
 
                     for (int i = elements.size(); i < number; i++) {
-                        SyntaxElement child = createAndAppendNewElement(ref, temppath, i, document);
+                        SyntaxElement child = createAndAppendNewElement(ref, temppath, i, model);
                         if (child != null)
                             child.setParent(this);
                     }
+                    if (parent != null)
+                        parent.contentChanged();
                 }
             }
         }
@@ -208,6 +225,13 @@ public abstract class MultipleSyntaxElements {
         return ret;
     }
 
+    /**
+     * @return nur beim parsen: ob dieser container an der geparsten stelle passt
+     */
+    ParseResult getParseResult() {
+        return parseResult;
+    }
+
     public SyntaxElement getParent() {
         return parent;
     }
@@ -224,13 +248,13 @@ public abstract class MultipleSyntaxElements {
         this.syntaxIdx = syntaxIdx;
     }
 
-    protected boolean storeValidValueInDE(String destPath, String value) {
+    protected boolean storeValidValuesInDE(String destPath, Set<String> values) {
         boolean ret = false;
 
         for (SyntaxElement e : elements) {
             String ePath = e.getPath();
             if (destPath.equals(ePath) || destPath.startsWith(ePath + ".")) {
-                if (e.storeValidValueInDE(destPath, value)) {
+                if (e.storeValidValuesInDE(destPath, values)) {
                     ret = true;
                 }
                 break;
@@ -309,6 +333,17 @@ public abstract class MultipleSyntaxElements {
         elements.add(x);
     }
 
+    /**
+     * ersetzt das element an position 'idx' (z.B. den platzhalter fuer den
+     * signaturkopf) durch 'elem'
+     */
+    public void setElement(int idx, SyntaxElement elem) {
+        elements.set(idx, elem);
+        elem.setParent(this);
+        if (parent != null)
+            parent.structureChanged();
+    }
+
     public List<SyntaxElement> getElements() {
         return elements;
     }
@@ -338,18 +373,15 @@ public abstract class MultipleSyntaxElements {
         return idx;
     }
 
-    private void initData(Node ref, String path, char predelim0, char predelim1, StringBuilder res, int fullResLen,
-                          Document document,
-                          Map<String, String> predefs, Map<String, String> valids) {
+    private void initData(SyntaxRef ref, String path, char predelim0, char predelim1, ParseCursor res, int fullResLen,
+                          SyntaxModel model,
+                          Map<String, String> predefs, Map<String, Set<String>> valids) {
         this.ref = null;
-        this.document = null;
+        this.model = null;
         this.syntaxIdx = -1;
         this.elements = new ArrayList<>();
-        this.type = ((Element) ref).getAttribute("type");
-        this.name = ((Element) ref).getAttribute("name");
-        if (name.length() == 0) {
-            this.name = this.type;
-        }
+        this.type = ref.getType();
+        this.name = ref.getName();
         this.parent = null;
 
         StringBuilder temppath = new StringBuilder(128);
@@ -358,143 +390,133 @@ public abstract class MultipleSyntaxElements {
         temppath.append(name);
         this.path = temppath.toString();
 
-        String st;
-
-        minnum = 1;
-        st = ((Element) ref).getAttribute("minnum");
-        if (st.length() != 0)
-            minnum = Integer.parseInt(st);
-
-        maxnum = 1;
-        st = ((Element) ref).getAttribute("maxnum");
-        if (st.length() != 0)
-            maxnum = Integer.parseInt(st);
+        minnum = ref.getMinnum();
+        maxnum = ref.getMaxnum();
 
         int idx = 0;
         boolean ready = false;
 
-        try {
-            while (!ready) {
-                // sichern des reststrings
-                StringBuilder save = new StringBuilder(res.toString());
-                boolean emptyElementFound = false;
-
-                try {
-                    // versuch, ein weiteres syntaxelement zu erzeugen
-                    SyntaxElement child = parseAndAppendNewElement(ref, path, (idx == 0) ? predelim0 : predelim1, idx
-                        , res, fullResLen, document, predefs, valids);
-                    if (child != null)
-                        child.setParent(this);
-                } catch (ParseErrorException e) {
-
-                    // [willuhn 2012-03-06, BUG 1129] weiterwerfen, wenn sie als fatal eingestuft ist
-                    if (e.isFatal())
-                        throw e;
-
-                    // wenn das nicht klappt, dann reststring zuruecksetzen, aber nur,
-                    //   wenn naechstes zeichen nicht wieder ein delimiter ist
-                    //   dann war naemlich das zu generierende DE leer!!!
-
-                    // charAt(0) ist auf jede fall ein delimiter.
-                    // wenn auch charAt(1) ein delimiter ist, dann ist
-                    // das dazwischenliegende syntaxelement leer; in diesem
-                    // fall muss der vorderste delimiter entfernt werden
-                    // (so dass es so aussieht, als wurde das leere syntaxelement
-                    // irgendwie richtig geparst)
-
-                    // die exception kann entweder durch einen document-fehler oder durch
-                    // ein leeres element (was ein spezieller fall eines document-fehlers ist)
-                    // ausgeloest worden sein.
-                    // da das entfernen von leeren elementen optional ist (und manchmal sogar
-                    // sinvollerweise gar nicht stattfindet), muessen die exceptions, die wegen
-                    // leerer elemente geworfen wurden, als OK akzeptiert werden, solange die
-                    // mindestanzahl bereits gefuellter elemente erreicht ist
-
-                    if (save.length() > 1) {
-
-                        //////////////////////////////////////////////////////////////////////
-                        // Dirty-Hack fuer Sonderfall optionale MultipleDEGs. Also eine Liste vieler DEGs,
-                        // die alle optional sein koennen. bei den "AllowedGV" koennen das 999 sein.
-                        // Wir wuerden hier jedes einzeln parsen - nur um festzustellen, dass
-                        // nichts drin steht und wir ein AllowedGV-DEG ohne GV-Code erzeugen,
-                        // weil da eigentlich nur noch sowas steht: "++++++++++++++++++++ usw".
-                        // Das verlaengert das Parsen enorm. Wir kuerzen daher hier ab.
-                        // Wenn this ein MultiDEGs mit minnum = 0 und maxnum > 1 ist, dann checken
-                        // wir, ob auf dem Substring von "save(0,maxnum-idx)" nur noch "+"-Zeichen
-                        // kommen. Wenn das der Fall ist, koennen wir hier abbrechen
-                        // Siehe http://www.onlinebanking-forum.de/forum/topic.php?t=19879&page=last#last_post
-                        if ((this instanceof MultipleDEGs) && this.minnum == 0 && this.maxnum > 1 && idx > 1) {
-                            int size = this.maxnum - idx;
-                            if (size > save.length())
-                                size = save.length();
-                            String rest = save.substring(0, size);
-                            if (containsOnly(rest, '+')) {
-                                log.debug("applying shortcut for optional MultipleDEGs, have no more content in " +
-                                    "according range");
-                                res.replace(0, res.length(), res.substring(size - 1)); // Wir schneiden die "+++++..
-                                // ." alle weg
-                                ready = true;
-                                continue;
-                            }
-                        }
-                        //////////////////////////////////////////////////////////////////////
-
-                        char secondChar = save.charAt(1);
+        while (!ready) {
+            // sichern der aktuellen position im reststring
+            int start = res.getPosition();
+            int save = start;
+            boolean emptyElementFound = false;
 
-                        if (secondChar == '+' || secondChar == ':' || secondChar == '\'') {
-                            // nur wenn der Fehler nicht durch einen predelimiter-error
-                            // verursacht wurde, darf der delimiter (der also offensichtlich richtig
-                            // und erwartet war) geloescht werden
-                            if (!(e instanceof PredelimErrorException)) {
-                                save.deleteCharAt(0);
-                            }
+            // versuch, ein weiteres syntaxelement zu erzeugen
+            SyntaxElement child = parseNewElement(ref, path, (idx == 0) ? predelim0 : predelim1, idx,
+                res, fullResLen, model, predefs, valids);
+            ParseResult result = child.getParseResult();
 
-                            emptyElementFound = true;
+            if (result == ParseResult.OK) {
+                addElement(child);
+                child.setParent(this);
+            } else {
+                // wenn das nicht klappt, dann reststring zuruecksetzen, aber nur,
+                //   wenn naechstes zeichen nicht wieder ein delimiter ist
+                //   dann war naemlich das zu generierende DE leer!!!
+
+                // charAt(0) ist auf jede fall ein delimiter.
+                // wenn auch charAt(1) ein delimiter ist, dann ist
+                // das dazwischenliegende syntaxelement leer; in diesem
+                // fall muss der vorderste delimiter entfernt werden
+                // (so dass es so aussieht, als wurde das leere syntaxelement
+                // irgendwie richtig geparst)
+
+                // der fehlschlag kann entweder durch einen syntax-fehler oder durch
+                // ein leeres element (was ein spezieller fall eines syntax-fehlers ist)
+                // ausgeloest worden sein.
+                // da das entfernen von leeren elementen optional ist (und manchmal sogar
+                // sinvollerweise gar nicht stattfindet), muessen fehlschlaege, die wegen
+                // leerer elemente auftraten, als OK akzeptiert werden, solange die
+                // mindestanzahl bereits gefuellter elemente erreicht ist
+
+                int saveLen = res.getTotalLength() - save;
+                if (saveLen > 1) {
+
+                    //////////////////////////////////////////////////////////////////////
+                    // Dirty-Hack fuer Sonderfall optionale MultipleDEGs. Also eine Liste vieler DEGs,
+                    // die alle optional sein koennen. bei den "AllowedGV" koennen das 999 sein.
+                    // Wir wuerden hier jedes einzeln parsen - nur um festzustellen, dass
+                    // nichts drin steht und wir ein AllowedGV-DEG ohne GV-Code erzeugen,
+                    // weil da eigentlich nur noch sowas steht: "++++++++++++++++++++ usw".
+                    // Das verlaengert das Parsen enorm. Wir kuerzen daher hier ab.
+                    // Wenn this ein MultiDEGs mit minnum = 0 und maxnum > 1 ist, dann checken
+                    // wir, ob auf dem Substring von "save(0,maxnum-idx)" nur noch "+"-Zeichen
+                    // kommen. Wenn das der Fall ist, koennen wir hier abbrechen
+                    // Siehe http://www.onlinebanking-forum.de/forum/topic.php?t=19879&page=last#last_post
+                    if ((this instanceof MultipleDEGs) && this.minnum == 0 && this.maxnum > 1 && idx > 1) {
+                        int size = this.maxnum - idx;
+                        if (size > saveLen)
+                            size = saveLen;
+                        if (containsOnly(res, save, size, '+')) {
+                            log.debug("applying shortcut for optional MultipleDEGs, have no more content in " +
+                                "according range");
+                            res.skip(size - 1); // Wir schneiden die "+++++..
+                            // ." alle weg
+                            ready = true;
+                            continue;
                         }
-                    } else {
-                        emptyElementFound = true;
                     }
+                    //////////////////////////////////////////////////////////////////////
 
-                    res.replace(0, res.length(), save.toString());
+                    char secondChar = res.charAtPosition(save + 1);
 
-                    /* wenn bisher weniger als die mindestanzahl geklappt hat,
-                     dann exception werfen */
-                    if (idx < minnum)
-                        throw new ParseErrorException("reststring in " + getPath() + ": " + res.toString(), e);
+                    if (secondChar == '+' || secondChar == ':' || secondChar == '\'') {
+                        // nur wenn der Fehler nicht durch einen predelimiter-error
+                        // verursacht wurde, darf der delimiter (der also offensichtlich richtig
+                        // und erwartet war) geloescht werden
+                        if (result != ParseResult.PREDELIM_MISMATCH) {
+                            save++;
+                        }
 
-                    // es wird nur dann aufgehoert, weitere elemente dem aktuellen container hinzu-
-                    // zufuegen, wenn ein element gefunden wurde, was offentsichlich nicht mehr dazu-
-                    // gehoert (exception, aber nicht leeres element) --> dann stimmt naemlich entweder
-                    // der predelimiter nicht, oder die document ist falsch
-                    if (!emptyElementFound) {
-                        ready = true;
+                        emptyElementFound = true;
                     }
+                } else {
+                    emptyElementFound = true;
+                }
+
+                res.setPosition(save);
+
+                /* wenn bisher weniger als die mindestanzahl geklappt hat,
+                 dann passt dieser container nicht */
+                if (idx < minnum) {
+                    parseResult = ParseResult.MISMATCH;
+                    return;
                 }
 
-                // anlegen eines neuen synaxelementes hat geklappt, bzw.
-                // ein FEHLER beim anlegen kann aufgrund der gegebenen constraints
-                // akzeptiert werden (leeres element, aber mindestanzahl erreicht)
-                idx++;
-
-                /* wenn die maxanzahl erreicht wurde oder
-                 wenn die maxanzahl nicht definiert ist, aber kein neues element
-                 erzeugt werden konnte (wenn gesicherter reststring und tatsaechlicher
-                 reststring gleich sind; minnum ist aber erreicht),
-                 dann diesen container normal beenden */
-                if ((maxnum != 0 && idx >= maxnum) ||
-                    (maxnum == 0 && save.toString().equals(res.toString()) && !emptyElementFound)) {
+                // es wird nur dann aufgehoert, weitere elemente dem aktuellen container hinzu-
+                // zufuegen, wenn ein element gefunden wurde, was offentsichlich nicht mehr dazu-
+                // gehoert (fehlschlag, aber nicht leeres element) --> dann stimmt naemlich entweder
+                // der predelimiter nicht, oder die syntax ist falsch
+                if (!emptyElementFound) {
                     ready = true;
                 }
             }
-        } catch (RuntimeException e) {
-            throw e;
+
+            // anlegen eines neuen synaxelementes hat geklappt, bzw.
+            // ein FEHLER beim anlegen kann aufgrund der gegebenen constraints
+            // akzeptiert werden (leeres element, aber mindestanzahl erreicht)
+            idx++;
+
+            /* wenn die maxanzahl erreicht wurde oder
+             wenn die maxanzahl nicht definiert ist, aber kein neues element
+             erzeugt werden konnte (wenn gesicherter reststring und tatsaechlicher
+             reststring gleich sind; minnum ist aber erreicht),
+             dann diesen container normal beenden */
+            if ((maxnum != 0 && idx >= maxnum) ||
+                (maxnum == 0 && save == res.getPosition() && !emptyElementFound)) {
+                ready = true;
+            }
+
+            // ein leeres element, bei dem nicht einmal ein delimiter entfernt werden
+            // konnte (z.b. am ende einer abgeschnittenen nachricht), wuerde bei
+            // unbegrenzter maxanzahl immer wieder an derselben stelle gefunden
+            if (maxnum == 0 && result != ParseResult.OK && res.getPosition() == start) {
+                ready = true;
+            }
         }
-    }
 
-    protected void init(Node ref, String path, char predelim0, char predelim1, StringBuilder res, int fullResLen,
-                        Document document,
-                        Map<String, String> predefs, Map<String, String> valids) {
-        initData(ref, path, predelim0, predelim1, res, fullResLen, document, predefs, valids);
+        parseResult = ParseResult.OK;
     }
 
     /**
@@ -518,6 +540,13 @@ public abstract class MultipleSyntaxElements {
         return toString();
     }
 
+    /**
+     * siehe SyntaxElement::appendTo()
+     */
+    protected void appendTo(MessageBuffer sb) {
+        sb.append(toString(0));
+    }
+
     public void getElementPaths(Map<String, String> p, int[] segref, int[] degref, int[] deref) {
     }
 
@@ -528,9 +557,9 @@ public abstract class MultipleSyntaxElements {
      * @param c das Zeichen.
      * @return true, wenn der Text nur dieses Zeichen enthaelt.
      */
-    private boolean containsOnly(String s, char c) {
-        for (char c2 : s.toCharArray()) {
-            if (c != c2)
+    private boolean containsOnly(ParseCursor res, int start, int len, char c) {
+        for (int i = start; i < start + len; i++) {
+            if (res.charAtPosition(i) != c)
                 return false;
         }
 
@@ -544,7 +573,7 @@ public abstract class MultipleSyntaxElements {
         parent = null;
         path = null;
         ref = null;
-        document = null;
+        model = null;
         type = null;
     }
 }
@@ -0,0 +1,27 @@
+package org.kapott.hbci.protocol;
+
+/**
+ * Ergebnis des Parsens eines Syntaxelementes bzw. eines Containers.
+ * <p>
+ * Dass ein Element an einer Stelle nicht passt, ist beim Parsen der Normalfall
+ * (optionale Elemente, Backtracking) und wird deshalb nicht per Exception, sondern
+ * über diesen Status signalisiert. Echte Fehler (z.B. als fatal markierte
+ * Datenfehler) werden weiterhin als Exception geworfen.
+ */
+enum ParseResult {
+
+    /**
+     * Das Element wurde erfolgreich geparst.
+     */
+    OK,
+
+    /**
+     * Das Element passt nicht an diese Stelle der Nachricht.
+     */
+    MISMATCH,
+
+    /**
+     * Das Element passt nicht, weil der Delimiter vor dem Element nicht stimmt.
+     */
+    PREDELIM_MISMATCH
+}
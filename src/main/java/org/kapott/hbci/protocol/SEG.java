@@ -20,46 +20,57 @@
 
 package org.kapott.hbci.protocol;
 
+import org.kapott.hbci.datatypes.MessageBuffer;
+import org.kapott.hbci.datatypes.ParseCursor;
 import org.kapott.hbci.exceptions.InvalidSegSeqException;
 import org.kapott.hbci.exceptions.NoSuchPathException;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
 
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 public final class SEG extends SyntaxElement {
 
-    public SEG(String type, String name, String path, int idx, Document document) {
-        super(type, name, path, idx, document);
+    public SEG(String type, String name, String path, int idx, SyntaxModel model) {
+        super(type, name, path, idx, model);
     }
 
-    public SEG(String type, String name, String path, char predelim, int idx, StringBuilder res, int fullResLen, Document document,
-               Map<String, String> predefs, Map<String, String> valids) {
-        super(type, name, path, predelim, idx, res, fullResLen, document, predefs, valids);
+    public SEG(String type, String name, String path, char predelim, int idx, ParseCursor res, int fullResLen, SyntaxModel model,
+               Map<String, String> predefs, Map<String, Set<String>> valids) {
+        super(type, name, path, predelim, idx, res, fullResLen, model, predefs, valids);
+    }
+
+    private SEG(SEG template) {
+        super(template);
+    }
+
+    @Override
+    protected SEG copy() {
+        return new SEG(this);
     }
 
     protected String getElementTypeName() {
         return "SEG";
     }
 
-    protected MultipleSyntaxElements createNewChildContainer(Node ref, Document document) {
+    protected MultipleSyntaxElements createNewChildContainer(SyntaxRef ref, SyntaxModel model) {
         MultipleSyntaxElements ret = null;
 
-        if ((ref.getNodeName()).equals("DE"))
-            ret = new MultipleDEs(ref, '+', getPath(), document);
-        else if ((ref.getNodeName()).equals("DEG"))
-            ret = new MultipleDEGs(ref, '+', getPath(), document);
+        if (ref.getKind() == SyntaxRef.Kind.DE)
+            ret = new MultipleDEs(ref, '+', getPath(), model);
+        else if (ref.getKind() == SyntaxRef.Kind.DEG)
+            ret = new MultipleDEGs(ref, '+', getPath(), model);
 
         return ret;
     }
 
-    public void init(String type, String name, String path, int idx, Document document) {
-        super.init(type, name, path, idx, document);
+    public String toString(int dummy) {
+        MessageBuffer ret = new MessageBuffer(256);
+        appendTo(ret);
+        return ret.toString();
     }
 
-    public String toString(int dummy) {
-        StringBuilder ret = new StringBuilder(256);
+    protected void appendTo(MessageBuffer ret) {
         boolean first = true;
 
         if (isValid()) {
@@ -71,7 +82,7 @@ public final class SEG extends SyntaxElement {
 
                 saveLen = ret.length();
                 if (multipleSyntaxElements != null)
-                    ret.append(multipleSyntaxElements.toString(0));
+                    multipleSyntaxElements.appendTo(ret);
 
                 if (ret.length() == saveLen && !first) {
                     tooMuch++;
@@ -81,12 +92,9 @@ public final class SEG extends SyntaxElement {
                 first = false;
             }
 
-            int retlen = ret.length();
-            ret.delete(retlen - tooMuch, retlen);
+            ret.setLength(ret.length() - tooMuch);
             ret.append('\'');
         }
-
-        return ret.toString();
     }
 
     public void setSeq(int idx, boolean allowOverwrite) {
@@ -120,15 +128,15 @@ public final class SEG extends SyntaxElement {
             .orElse(null);
     }
 
-    protected MultipleSyntaxElements parseNewChildContainer(Node dataref, char predelim0, char predelim1,
-                                                            StringBuilder res, int fullResLen, Document document, Map<String,
-        String> predefs, Map<String, String> valids) {
+    protected MultipleSyntaxElements parseNewChildContainer(SyntaxRef dataref, char predelim0, char predelim1,
+                                                            ParseCursor res, int fullResLen, SyntaxModel model, Map<String,
+        String> predefs, Map<String, Set<String>> valids) {
         MultipleSyntaxElements ret = null;
 
-        if ((dataref.getNodeName()).equals("DEG"))
-            ret = new MultipleDEGs(dataref, '+', getPath(), predelim0, predelim1, res, fullResLen, document, predefs, valids);
-        else if ((dataref.getNodeName()).equals("DE"))
-            ret = new MultipleDEs(dataref, '+', getPath(), predelim0, predelim1, res, fullResLen, document, predefs, valids);
+        if (dataref.getKind() == SyntaxRef.Kind.DEG)
+            ret = new MultipleDEGs(dataref, '+', getPath(), predelim0, predelim1, res, fullResLen, model, predefs, valids);
+        else if (dataref.getKind() == SyntaxRef.Kind.DE)
+            ret = new MultipleDEs(dataref, '+', getPath(), predelim0, predelim1, res, fullResLen, model, predefs, valids);
 
         return ret;
     }
@@ -137,11 +145,6 @@ public final class SEG extends SyntaxElement {
         return '+';
     }
 
-    public void init(String type, String name, String path, char predelim, int idx, StringBuilder res, int fullResLen,
-                     Document document, Map<String, String> predefs, Map<String, String> valids) {
-        super.init(type, name, path, predelim, idx, res, fullResLen, document, predefs, valids);
-    }
-
     public int checkSegSeq(int value) {
         int num = Integer.parseInt(getValueOfDE(getPath() + ".SegHead.seq"));
         if (num != value) {
@@ -0,0 +1,175 @@
+package org.kapott.hbci.protocol;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import java.util.*;
+
+/**
+ * Vorkompilierte Syntax-Definition (MSGdef, SFdef, SEGdef oder DEGdef).
+ * <p>
+ * Enthält die Kind-Referenzen in Syntax-Reihenfolge sowie die vorgegebenen
+ * Werte ("value") und gültigen Werte ("valids") der Definition. Instanzen
+ * werden ausschließlich von {@link SyntaxModel} erzeugt und sind nach dem
+ * Kompilieren unveränderlich.
+ */
+public final class SyntaxDef {
+
+    private static final SyntaxRef[] NO_REFS = new SyntaxRef[0];
+    private static final String[] NO_STRINGS = new String[0];
+
+    private final String id;
+    private final boolean needsRequestTag;
+    private final boolean dontSign;
+    private final boolean dontCrypt;
+    private final SyntaxRef[] children;
+    private final String[] valuePaths;
+    private final String[] values;
+    private final String[] validPaths;
+    private final List<Set<String>> validValues;
+    private final String segCode;
+    private final String segVersion;
+
+    SyntaxDef(Element def) {
+        this.id = def.getAttribute("id");
+        this.needsRequestTag = def.getAttribute("needsRequestTag").equals("1");
+        this.dontSign = def.getAttribute("dontsign").length() != 0;
+        this.dontCrypt = def.getAttribute("dontcrypt").length() != 0;
+
+        List<SyntaxRef> refs = new ArrayList<>();
+        List<String> vPaths = new ArrayList<>();
+        List<String> vValues = new ArrayList<>();
+        List<String> validsPaths = new ArrayList<>();
+        List<Set<String>> validsValues = new ArrayList<>();
+        String code = "";
+        String version = "";
+
+        for (Node node = def.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node.getNodeType() != Node.ELEMENT_NODE)
+                continue;
+
+            Element elem = (Element) node;
+            switch (elem.getNodeName()) {
+                case "value":
+                    String path = elem.getAttribute("path");
+                    String value = elem.getFirstChild().getNodeValue();
+                    vPaths.add(path);
+                    vValues.add(value);
+                    if (path.equals("SegHead.code"))
+                        code = value;
+                    else if (path.equals("SegHead.version"))
+                        version = value;
+                    break;
+                case "valids":
+                    Set<String> valids = new LinkedHashSet<>();
+                    for (Node v = elem.getFirstChild(); v != null; v = v.getNextSibling()) {
+                        if (v.getNodeType() == Node.ELEMENT_NODE)
+                            valids.add(v.getFirstChild().getNodeValue());
+                    }
+                    validsPaths.add(elem.getAttribute("path"));
+                    validsValues.add(Collections.unmodifiableSet(valids));
+                    break;
+                default:
+                    refs.add(new SyntaxRef(elem));
+            }
+        }
+
+        this.children = refs.toArray(NO_REFS);
+        this.valuePaths = vPaths.toArray(NO_STRINGS);
+        this.values = vValues.toArray(NO_STRINGS);
+        this.validPaths = validsPaths.toArray(NO_STRINGS);
+        this.validValues = Collections.unmodifiableList(validsValues);
+        this.segCode = code;
+        this.segVersion = version;
+    }
+
+    void link(SyntaxModel model) {
+        for (SyntaxRef ref : children) {
+            ref.link(model);
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public boolean needsRequestTag() {
+        return needsRequestTag;
+    }
+
+    /**
+     * @return true, wenn die Nachricht laut Spezifikation nicht signiert wird (nur bei MSGdef).
+     */
+    public boolean isDontSign() {
+        return dontSign;
+    }
+
+    /**
+     * @return true, wenn die Nachricht laut Spezifikation nicht verschlüsselt wird (nur bei MSGdef).
+     */
+    public boolean isDontCrypt() {
+        return dontCrypt;
+    }
+
+    /**
+     * @return die Kind-Referenzen in der Reihenfolge der Syntax-Definition. Das Array darf
+     * nicht verändert werden.
+     */
+    SyntaxRef[] getChildren() {
+        return children;
+    }
+
+    /**
+     * @param name Name eines Kind-Elementes.
+     * @return Position des Kind-Elementes in der Syntax-Definition oder -1.
+     */
+    int indexOfChild(String name) {
+        for (int i = 0; i < children.length; i++) {
+            if (children[i].getName().equals(name))
+                return i;
+        }
+        return -1;
+    }
+
+    int getValueCount() {
+        return values.length;
+    }
+
+    String getValuePath(int idx) {
+        return valuePaths[idx];
+    }
+
+    String getValue(int idx) {
+        return values[idx];
+    }
+
+    int getValidsCount() {
+        return validPaths.length;
+    }
+
+    String getValidsPath(int idx) {
+        return validPaths[idx];
+    }
+
+    /**
+     * @return die gültigen Werte für den DE unter {@link #getValidsPath(int)}. Das Set
+     * ist unveränderlich und wird von allen Nachrichten gemeinsam benutzt.
+     */
+    Set<String> getValidValues(int idx) {
+        return validValues.get(idx);
+    }
+
+    /**
+     * @return der laut Spezifikation vorgegebene Segment-Code ("SegHead.code") oder "".
+     */
+    String getSegCode() {
+        return segCode;
+    }
+
+    /**
+     * @return die laut Spezifikation vorgegebene Segment-Version ("SegHead.version") oder "".
+     */
+    String getSegVersion() {
+        return segVersion;
+    }
+}
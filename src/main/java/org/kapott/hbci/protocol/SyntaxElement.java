@@ -21,18 +21,18 @@
 package org.kapott.hbci.protocol;
 
 import lombok.extern.slf4j.Slf4j;
+import org.kapott.hbci.datatypes.MessageBuffer;
+import org.kapott.hbci.datatypes.ParseCursor;
 import org.kapott.hbci.exceptions.HBCI_Exception;
 import org.kapott.hbci.exceptions.NoSuchPathException;
 import org.kapott.hbci.manager.HBCIUtils;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /* ein syntaxelement ist ein strukturelement einer hbci-nachricht (die nachricht
     selbst, eine segmentfolge, ein einzelnes segment, eine deg oder
@@ -65,14 +65,16 @@ public abstract class SyntaxElement {
 
     private MultipleSyntaxElements parent;
     // Wird von einigen Rewriter-Modules beim Parsen verwendet, um im Antwort-String
-    // an der richtigen Stelle Daten auszuschneiden oder einzufügen.
-    // TODO: Problem dabei ist nur: sobald auch nur *ein* Rewriter die Antwort-
-    // Message verändert, stimmen von allen anderen SyntaxElementen die
-    // Werte für posInMsg nicht mehr (es sei denn, es wird nach dem
-    // Verändern ein neues MSG-Objekt erzeugt).
+    // an der richtigen Stelle Daten auszuschneiden oder einzufügen. Position des
+    // pre-delimiters in der geparsten Nachricht; wird ein Wert über
+    // Message#patchValue() geändert, werden die Positionen aller nachfolgenden
+    // Elemente angepasst. Nach anderen Änderungen an der Nachricht stimmen die
+    // Werte nicht mehr.
     private int posInMsg;
-    private Document document;
-    private Node def;
+    // nur beim parsen: ergebnis des parse-vorganges fuer dieses element
+    private ParseResult parseResult = ParseResult.OK;
+    private SyntaxModel model;
+    private SyntaxDef def;
     /**
      * wird fuer datenelemente benoetigt, die sonst unbeabsichtigt generiert werden koennten.
      * das problem ist, dass es datenelemente (bisher nur bei segmenten bekannt) gibt,
@@ -129,8 +131,8 @@ public abstract class SyntaxElement {
      * elementes innerhalb der syntaxelementliste fuer dieses element (falls ein
      * bestimmtes syntaxelement mehr als einmal auftreten kann)
      */
-    protected SyntaxElement(String type, String name, String path, int idx, Document document) {
-        initData(type, name, path, idx, document);
+    protected SyntaxElement(String type, String name, String path, int idx, SyntaxModel model) {
+        initData(type, name, path, idx, model);
     }
 
     // TODO: aus konsistenz-gründen auch in MultipleSyntaxElements create und
@@ -147,11 +149,38 @@ public abstract class SyntaxElement {
      * enthalten, die fuer einige syntaxelemente den wert angeben, den diese
      * elemente zwingend haben muessen (z.b. ein bestimmter segmentcode o.ae.)
      */
-    protected SyntaxElement(String type, String name, String path, char predelim, int idx, StringBuilder res, int fullResLen,
-                            Document document, Map<String, String> predefs, Map<String, String> valids) {
-        initData(type, name, path, predelim, idx, res, fullResLen, document, predefs, valids);
+    protected SyntaxElement(String type, String name, String path, char predelim, int idx, ParseCursor res, int fullResLen,
+                            SyntaxModel model, Map<String, String> predefs, Map<String, Set<String>> valids) {
+        initData(type, name, path, predelim, idx, res, fullResLen, model, predefs, valids);
     }
 
+    /**
+     * erzeugt eine tiefe kopie von 'template'; die kopie teilt sich mit der
+     * vorlage nur unveraenderliche objekte (pfade, syntax-definitionen, werte)
+     */
+    protected SyntaxElement(SyntaxElement template) {
+        this.name = template.name;
+        this.type = template.type;
+        this.path = template.path;
+        this.valid = template.valid;
+        this.posInMsg = template.posInMsg;
+        this.model = template.model;
+        this.def = template.def;
+        this.needsRequestTag = template.needsRequestTag;
+        this.haveRequestTag = template.haveRequestTag;
+
+        for (MultipleSyntaxElements c : template.childContainers) {
+            MultipleSyntaxElements copy = c.copy();
+            copy.setParent(this);
+            childContainers.add(copy);
+        }
+    }
+
+    /**
+     * @return eine tiefe kopie dieses elementes (ohne parent)
+     */
+    protected abstract SyntaxElement copy();
+
     /**
      * gibt einen string mit den typnamen (msg,seg,deg,de,...) des
      * elementes zurueck
@@ -166,34 +195,34 @@ public abstract class SyntaxElement {
     protected abstract char getInDelim();
 
     /**
-     * erzeugt einen neuen Child-Container, welcher durch den
-     * xml-knoten 'ref' identifiziert wird; wird beim erzeugen von elementen
+     * erzeugt einen neuen Child-Container, welcher durch die vorkompilierte
+     * referenz 'ref' identifiziert wird; wird beim erzeugen von elementen
      * benutzt
      */
-    protected abstract MultipleSyntaxElements createNewChildContainer(Node ref, Document document);
+    protected abstract MultipleSyntaxElements createNewChildContainer(SyntaxRef ref, SyntaxModel model);
 
     /**
-     * beim parsen: haengt an die 'childElements' ein neues Element an. der
-     * xml-knoten 'ref' gibt an, um welches element es sich dabei handelt; aus
+     * beim parsen: haengt an die 'childElements' ein neues Element an. die
+     * referenz 'ref' gibt an, um welches element es sich dabei handelt; aus
      * 'res' (der zu parsende String) wird der wert fuer das element ermittelt
      * (falls es sich um ein de handelt); in 'predefined' ist der wert des
-     * elementes zu finden, der laut syntaxdefinition ('document') an dieser stelle
+     * elementes zu finden, der laut syntaxdefinition ('model') an dieser stelle
      * auftauchen mueste (optional; z.b. fuer segmentcodes); 'predelim*' geben
      * die delimiter an, die direkt vor dem zu erzeugenden syntaxelement
      * auftauchen muessten
      */
-    protected abstract MultipleSyntaxElements parseNewChildContainer(Node ref, char predelim0, char predelim1,
-                                                                     StringBuilder res, int fullResLen, Document document,
+    protected abstract MultipleSyntaxElements parseNewChildContainer(SyntaxRef ref, char predelim0, char predelim1,
+                                                                     ParseCursor res, int fullResLen, SyntaxModel model,
                                                                      Map<String, String> predefs, Map<String,
-        String> valids);
+        Set<String>> valids);
 
-    private void initData(String type, String name, String ppath, int idx, Document document) {
+    private void initData(String type, String name, String ppath, int idx, SyntaxModel model) {
         if (getElementTypeName().equals("SEG"))
             log.trace("creating segment " + ppath + " -> " + name + "(" + idx + ")");
 
         this.type = type;
         this.name = name;
-        this.document = document;
+        this.model = model;
 
         /* der pfad wird gebildet aus bisherigem pfad
          plus name des elementes
@@ -206,26 +235,21 @@ public abstract class SyntaxElement {
 
         setValid(false);
 
-        if (document != null) {
-            this.def = getSyntaxDef(type, document);
+        if (model != null) {
+            this.def = model.getDef(getElementTypeName(), type);
 
             // erzeugen der child-elemente
-            String requestTag = ((Element) def).getAttribute("needsRequestTag");
-            if (requestTag != null && requestTag.equals("1"))
-                needsRequestTag = true;
-
-            int syntaxIdx = 0;
-            for (Node ref = def.getFirstChild(); ref != null; ref = ref.getNextSibling()) {
-                if (ref.getNodeType() == Node.ELEMENT_NODE) {
-                    MultipleSyntaxElements child = createAndAppendNewChildContainer(ref, document);
-                    if (child != null) {
-                        child.setParent(this);
-                        child.setSyntaxIdx(syntaxIdx);
-
-                        if (getElementTypeName().equals("MSG"))
-                            log.trace("child container " + child.getPath() + " has syntaxIdx=" + child.getSyntaxIdx());
-                    }
-                    syntaxIdx++;
+            needsRequestTag = def.needsRequestTag();
+
+            SyntaxRef[] refs = def.getChildren();
+            for (int syntaxIdx = 0; syntaxIdx < refs.length; syntaxIdx++) {
+                MultipleSyntaxElements child = createAndAppendNewChildContainer(refs[syntaxIdx], model);
+                if (child != null) {
+                    child.setParent(this);
+                    child.setSyntaxIdx(syntaxIdx);
+
+                    if (getElementTypeName().equals("MSG"))
+                        log.trace("child container " + child.getPath() + " has syntaxIdx=" + child.getSyntaxIdx());
                 }
             }
 
@@ -241,58 +265,37 @@ public abstract class SyntaxElement {
             // wird nur für Segmentfolgen angewendet. Und in Segmentfolgen-
             // Definitionen sind keine values oder valids angegeben, so dass
             // dieser Code hier gar keine Relevanz für Segmentfolgen hat
-            NodeList valueNodes = ((Element) def).getElementsByTagName("value");
-            int len = valueNodes.getLength();
+            int len = def.getValueCount();
             String dottedPath = this.path + ".";
             for (int i = 0; i < len; i++) {
-                Node valueNode = valueNodes.item(i);
-                String valuePath = ((Element) valueNode).getAttribute("path");
-                String value = (valueNode.getFirstChild()).getNodeValue();
-                String destpath = dottedPath + valuePath;
+                String destpath = dottedPath + def.getValuePath(i);
 
-                if (!propagateValue(destpath, value, TRY_TO_CREATE, DONT_ALLOW_OVERWRITE))
+                if (!propagateValue(destpath, def.getValue(i), TRY_TO_CREATE, DONT_ALLOW_OVERWRITE))
                     throw new NoSuchPathException(destpath);
             }
 
             /* durchlaufen aller "valids"-knoten und speichern der valid-values */
             // TODO: das hier ebenfalls später machen, siehe "values"
-            NodeList validNodes = ((Element) def).getElementsByTagName("valids");
-            len = validNodes.getLength();
-            dottedPath = getPath() + ".";
+            len = def.getValidsCount();
             for (int i = 0; i < len; i++) {
-                Node validNode = validNodes.item(i);
-                String valuePath = ((Element) (validNode)).getAttribute("path");
-                String absPath = dottedPath + valuePath;
-
-                NodeList validvalueNodes = ((Element) (validNode)).getElementsByTagName("validvalue");
-                int len2 = validvalueNodes.getLength();
-                for (int j = 0; j < len2; j++) {
-                    Node validvalue = validvalueNodes.item(j);
-                    String value = (validvalue.getFirstChild()).getNodeValue();
-
-                    storeValidValueInDE(absPath, value);
-                }
+                storeValidValuesInDE(dottedPath + def.getValidsPath(i), def.getValidValues(i));
             }
         }
     }
 
-    protected void init(String type, String name, String path, int idx, Document document) {
-        initData(type, name, path, idx, document);
-    }
-
-    protected MultipleSyntaxElements createAndAppendNewChildContainer(Node ref, Document document) {
-        MultipleSyntaxElements ret = createNewChildContainer(ref, document);
+    protected MultipleSyntaxElements createAndAppendNewChildContainer(SyntaxRef ref, SyntaxModel model) {
+        MultipleSyntaxElements ret = createNewChildContainer(ref, model);
         if (ret != null)
             addChildContainer(ret);
         return ret;
     }
 
-    protected boolean storeValidValueInDE(String destPath, String value) {
+    protected boolean storeValidValuesInDE(String destPath, Set<String> values) {
         boolean ret = false;
 
         for (Iterator<MultipleSyntaxElements> i = childContainers.listIterator(); i.hasNext(); ) {
             MultipleSyntaxElements l = i.next();
-            if (l.storeValidValueInDE(destPath, value)) {
+            if (l.storeValidValuesInDE(destPath, values)) {
                 ret = true;
                 break;
             }
@@ -323,16 +326,17 @@ public abstract class SyntaxElement {
         return idx;
     }
 
-    private void initData(String type, String name, String ppath, char predelim, int idx, StringBuilder res,
-                          int fullResLen, Document document, Map<String, String> predefs, Map<String, String> valids) {
+    private void initData(String type, String name, String ppath, char predelim, int idx, ParseCursor res,
+                          int fullResLen, SyntaxModel model, Map<String, String> predefs, Map<String, Set<String>> valids) {
         this.type = type;
         this.name = name;
         this.parent = null;
         this.childContainers = new ArrayList<>();
         this.needsRequestTag = false;
         this.haveRequestTag = false;
-        this.document = document;
+        this.model = model;
         this.def = null;
+        this.parseResult = ParseResult.MISMATCH;
         /* position des aktuellen datenelementes berechnet sich aus der
          * gesamtlänge des ursprünglichen msg-strings minus der länge des
          * reststrings, der jetzt zu parsen ist, und der mit dem aktuellen
@@ -347,69 +351,57 @@ public abstract class SyntaxElement {
 
         setValid(false);
 
-        if (document != null) {
-            this.def = getSyntaxDef(type, document);
+        if (model != null) {
+            this.def = model.getDef(getElementTypeName(), type);
 
             /* fuellen der 'predefs'-tabelle mit den in der
              syntaxbeschreibung vorgegebenen werten */
-            NodeList valueNodes = ((Element) def).getElementsByTagName("value");
             String dottedPath = getPath() + ".";
-            int len = valueNodes.getLength();
+            int len = def.getValueCount();
             for (int i = 0; i < len; i++) {
-                Node valueNode = valueNodes.item(i);
-                String valuePath = ((Element) valueNode).getAttribute("path");
-                String value = (valueNode.getFirstChild()).getNodeValue();
-
-                predefs.put(dottedPath + valuePath, value);
+                predefs.put(dottedPath + def.getValuePath(i), def.getValue(i));
             }
 
             if (valids != null) {
-                /* durchlaufen aller "valids"-knoten und speichern der valid-values */
-                NodeList validNodes = ((Element) def).getElementsByTagName("valids");
-                len = validNodes.getLength();
+                /* durchlaufen aller "valids"-knoten und speichern der valid-values;
+                 der schluessel ist direkt der pfad des betroffenen DE */
+                len = def.getValidsCount();
                 for (int i = 0; i < len; i++) {
-                    Node validNode = validNodes.item(i);
-                    String valuePath = ((Element) (validNode)).getAttribute("path");
-                    String absPath = dottedPath + valuePath;
-
-                    NodeList validvalueNodes = ((Element) (validNode)).getElementsByTagName("validvalue");
-                    int len2 = validvalueNodes.getLength();
-                    for (int j = 0; j < len2; j++) {
-                        Node validvalue = validvalueNodes.item(j);
-                        String value = (validvalue.getFirstChild()).getNodeValue();
-                        valids.put(HBCIUtils.withCounter(absPath + ".value", j), value);
-                    }
+                    valids.put(dottedPath + def.getValidsPath(i), def.getValidValues(i));
                 }
             }
 
             // anlegen der child-elemente
-            int counter = 0;
-            for (Node ref = def.getFirstChild(); ref != null; ref = ref.getNextSibling()) {
-                if (ref.getNodeType() == Node.ELEMENT_NODE) {
-                    MultipleSyntaxElements child = parseAndAppendNewChildContainer(ref,
-                        ((counter++) == 0) ? predelim : getInDelim(),
-                        getInDelim(),
-                        res, fullResLen, document, predefs, valids);
-
-                    if (child != null) {
-                        child.setParent(this);
-
-                        // TODO: this is a very very dirty hack to fix the problem with the params-template;
-                        // bei der SF "Params", die mit <SF type="Params" maxnum="0"/> referenziert wird,
-                        // soll nach jedem erfolgreich in die SF aufgenommenen Param-Segment eine neue
-                        // SF begonnen werden, damit das Problem mit dem am Ende der SF stehenden Template-
-                        // Param-Segment nicht mehr auftritt
-                        // dazu wird beim hinzufuegen von segmenten zur sf ueberprueft, ob diese evtl. bereits
-                        // segmente enthaelt (hasValidChilds()). falls das der fall ist, so wird
-                        // kein neues segment hinzugefuegt
-                        // analoges gilt für die SF "GVRes" - hier muss dafür gesorgt werden, dass jede
-                        // antwort in ein eigenes GVRes kommt, damit die zuordnung reihenfolge-erkennung
-                        // der empfangenen GVRes-segmente funktioniert (in HBCIJobImpl.fillJobResult())
-                        if ((this instanceof SF) &&
-                            (getName().equals("Params") || getName().equals("GVRes")) &&
-                            ((MultipleSEGs) child).hasValidChilds()) {
-                            break;
-                        }
+            SyntaxRef[] refs = def.getChildren();
+            for (int counter = 0; counter < refs.length; counter++) {
+                MultipleSyntaxElements child = parseAndAppendNewChildContainer(refs[counter],
+                    (counter == 0) ? predelim : getInDelim(),
+                    getInDelim(),
+                    res, fullResLen, model, predefs, valids);
+
+                if (child != null) {
+                    child.setParent(this);
+
+                    // ein pflicht-child passt nicht, also passt auch dieses element
+                    // nicht an diese stelle
+                    if (child.getParseResult() != ParseResult.OK)
+                        return;
+
+                    // TODO: this is a very very dirty hack to fix the problem with the params-template;
+                    // bei der SF "Params", die mit <SF type="Params" maxnum="0"/> referenziert wird,
+                    // soll nach jedem erfolgreich in die SF aufgenommenen Param-Segment eine neue
+                    // SF begonnen werden, damit das Problem mit dem am Ende der SF stehenden Template-
+                    // Param-Segment nicht mehr auftritt
+                    // dazu wird beim hinzufuegen von segmenten zur sf ueberprueft, ob diese evtl. bereits
+                    // segmente enthaelt (hasValidChilds()). falls das der fall ist, so wird
+                    // kein neues segment hinzugefuegt
+                    // analoges gilt für die SF "GVRes" - hier muss dafür gesorgt werden, dass jede
+                    // antwort in ein eigenes GVRes kommt, damit die zuordnung reihenfolge-erkennung
+                    // der empfangenen GVRes-segmente funktioniert (in HBCIJobImpl.fillJobResult())
+                    if ((this instanceof SF) &&
+                        (getName().equals("Params") || getName().equals("GVRes")) &&
+                        ((MultipleSEGs) child).hasValidChilds()) {
+                        break;
                     }
                 }
             }
@@ -417,18 +409,14 @@ public abstract class SyntaxElement {
 
         // if there was no error until here, this syntaxelement is valid
         setValid(true);
+        this.parseResult = ParseResult.OK;
     }
 
-    protected void init(String type, String name, String path, char predelim, int idx, StringBuilder res, int fullResLen,
-                        Document document, Map<String, String> predefs, Map<String, String> valids) {
-        initData(type, name, path, predelim, idx, res, fullResLen, document, predefs, valids);
-    }
-
-    protected MultipleSyntaxElements parseAndAppendNewChildContainer(Node ref, char predelim0, char predelim1,
-                                                                     StringBuilder res, int fullResLen, Document document,
+    protected MultipleSyntaxElements parseAndAppendNewChildContainer(SyntaxRef ref, char predelim0, char predelim1,
+                                                                     ParseCursor res, int fullResLen, SyntaxModel model,
                                                                      Map<String, String> predefs, Map<String,
-        String> valids) {
-        MultipleSyntaxElements ret = parseNewChildContainer(ref, predelim0, predelim1, res, fullResLen, document, predefs, valids);
+        Set<String>> valids) {
+        MultipleSyntaxElements ret = parseNewChildContainer(ref, predelim0, predelim1, res, fullResLen, model, predefs, valids);
         if (ret != null)
             addChildContainer(ret);
         return ret;
@@ -470,10 +458,12 @@ public abstract class SyntaxElement {
         boolean ret = false;
 
         if (destPath.equals(getPath())) {
-            if (value != null && value.equals("requested"))
+            if (value != null && value.equals("requested")) {
                 this.haveRequestTag = true;
-            else
+                contentChanged();
+            } else {
                 throw new HBCI_Exception(HBCIUtils.getLocMsg("EXCMSG_INVVALUE", new Object[]{destPath, value}));
+            }
             ret = true;
         } else {
             // damit überspringen wir gleich elemente, bei denen es mit
@@ -524,30 +514,13 @@ public abstract class SyntaxElement {
                     }
 
                     if (!found) {
-                        // jetzt durch alle child-elemente des definierenden XML-Knotens
-                        // loopen und den ref-Knoten suchen, der das fehlende Element
-                        // beschreibt
-                        int newChildIdx = 0;
-                        Node ref;
-                        found = false;
-                        for (ref = def.getFirstChild(); ref != null; ref = ref.getNextSibling()) {
-                            if (ref.getNodeType() == Node.ELEMENT_NODE) {
-                                String type = ((Element) ref).getAttribute("type");
-                                String name = ((Element) ref).getAttribute("name");
-                                if (name.length() == 0) {
-                                    name = type;
-                                }
-                                if (name.equals(subType)) {
-                                    found = true;
-                                    break;
-                                }
-                                newChildIdx++;
-                            }
-                        }
+                        // in der syntax-definition die referenz suchen, die das
+                        // fehlende Element beschreibt
+                        int newChildIdx = def.indexOfChild(subType);
 
-                        if (found) {
+                        if (newChildIdx != -1) {
                             // entsprechenden child-container erzeugen
-                            MultipleSyntaxElements child = createNewChildContainer(ref, document);
+                            MultipleSyntaxElements child = createNewChildContainer(def.getChildren()[newChildIdx], model);
                             child.setParent(this);
                             child.setSyntaxIdx(newChildIdx);
 
@@ -568,6 +541,7 @@ public abstract class SyntaxElement {
                             }
                             log.trace("  inserting child container with syntaxIdx " + newChildIdx + " at position " + newPosi);
                             childContainers.add(newPosi, child);
+                            contentChanged();
 
                             // now try to propagate the value to the newly created child
                             ret = child.propagateValue(destPath, value, tryToCreate, allowOverwrite);
@@ -633,6 +607,49 @@ public abstract class SyntaxElement {
         return ret;
     }
 
+    /**
+     * traegt dieses element und alle darunter liegenden elemente mit ihrem
+     * pfad in 'index' ein (siehe Message#getElement(String))
+     */
+    void indexElements(Map<String, SyntaxElement> index) {
+        index.putIfAbsent(getPath(), this);
+
+        for (MultipleSyntaxElements l : childContainers) {
+            for (SyntaxElement e : l.getElements()) {
+                if (e != null)
+                    e.indexElements(index);
+            }
+        }
+    }
+
+    /**
+     * verschiebt die position dieses elementes und aller darunter liegenden
+     * elemente, die hinter 'after' stehen, um 'delta' zeichen
+     */
+    void shiftPositions(int after, int delta) {
+        if (posInMsg > after)
+            posInMsg += delta;
+
+        for (MultipleSyntaxElements l : childContainers) {
+            for (SyntaxElement e : l.getElements()) {
+                if (e != null)
+                    e.shiftPositions(after, delta);
+            }
+        }
+    }
+
+    /**
+     * ruft 'action' fuer alle gueltigen DEs unterhalb dieses elementes auf
+     */
+    void forEachDE(Consumer<DE> action) {
+        for (MultipleSyntaxElements l : childContainers) {
+            for (SyntaxElement e : l.getElements()) {
+                if (e != null)
+                    e.forEachDE(action);
+            }
+        }
+    }
+
     /**
      * @return the path to this element
      */
@@ -664,15 +681,18 @@ public abstract class SyntaxElement {
     }
 
     /**
-     * @param type     the name of the syntaxelement to be returned
-     * @param document the structure containing the current syntaxdefinition
-     * @return a XML-node with the definition of the requested syntaxelement
+     * @return the precompiled definition of this syntaxelement or <code>null</code>,
+     * if the element has been created without syntax model
      */
-    public final Node getSyntaxDef(String type, Document document) {
-        Node ret = document.getElementById(type);
-        if (ret == null)
-            throw new org.kapott.hbci.exceptions.NoSuchElementException(getElementTypeName(), type);
-        return ret;
+    public final SyntaxDef getSyntaxDef() {
+        return def;
+    }
+
+    /**
+     * @return the syntax model this element has been created from
+     */
+    public final SyntaxModel getSyntaxModel() {
+        return model;
     }
 
     public boolean isValid() {
@@ -680,7 +700,41 @@ public abstract class SyntaxElement {
     }
 
     protected final void setValid(boolean valid) {
-        this.valid = valid;
+        if (this.valid != valid) {
+            this.valid = valid;
+            contentChanged();
+        }
+    }
+
+    /**
+     * meldet eine aenderung am inhalt dieses elementes (wert, gueltigkeit,
+     * neue child-elemente) nach oben bis zur nachricht weiter
+     */
+    protected void contentChanged() {
+        SyntaxElement p = (parent != null) ? parent.getParent() : null;
+        if (p != null)
+            p.contentChanged();
+    }
+
+    /**
+     * meldet nach oben bis zur nachricht, dass ein child-element durch ein
+     * anderes ersetzt wurde
+     */
+    protected void structureChanged() {
+        SyntaxElement p = (parent != null) ? parent.getParent() : null;
+        if (p != null)
+            p.structureChanged();
+    }
+
+    /**
+     * @return nur beim parsen: ob dieses element an der geparsten stelle passt
+     */
+    ParseResult getParseResult() {
+        return parseResult;
+    }
+
+    protected final void setParseResult(ParseResult parseResult) {
+        this.parseResult = parseResult;
     }
 
     public int checkSegSeq(int value) {
@@ -695,6 +749,14 @@ public abstract class SyntaxElement {
         return toString();
     }
 
+    /**
+     * haengt die nachrichten-darstellung dieses elementes (siehe
+     * {@link #toString(int)}) an 'sb' an
+     */
+    protected void appendTo(MessageBuffer sb) {
+        sb.append(toString(0));
+    }
+
     /**
      * ueberpreuft, ob das syntaxelement alle restriktionen einhaelt; ist das
      * nicht der fall, so wird eine Exception ausgeloest. die meisten
@@ -0,0 +1,103 @@
+package org.kapott.hbci.protocol;
+
+import lombok.extern.slf4j.Slf4j;
+import org.kapott.hbci.exceptions.NoSuchElementException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Vorkompiliertes Modell einer HBCI-Syntax-Spezifikation.
+ * <p>
+ * Beim Erzeugen wird das DOM-Dokument einmalig durchlaufen und jede MSGdef, SFdef,
+ * SEGdef und DEGdef in einen {@link SyntaxDef} übersetzt. Das Erzeugen und Parsen
+ * von Nachrichten arbeitet danach ausschließlich auf diesen Deskriptoren. Das Modell
+ * ist unveränderlich und kann von beliebig vielen Threads gleichzeitig benutzt werden.
+ */
+@Slf4j
+public final class SyntaxModel {
+
+    private final Document document;
+    private final Map<String, SyntaxDef> defs;
+    private final Map<String, Message> messageTemplates = new ConcurrentHashMap<>();
+
+    private SyntaxModel(Document document) {
+        this.document = document;
+
+        Map<String, SyntaxDef> temp = new HashMap<>();
+        for (Node group = document.getDocumentElement().getFirstChild(); group != null;
+             group = group.getNextSibling()) {
+            if (group.getNodeType() != Node.ELEMENT_NODE)
+                continue;
+
+            for (Node def = group.getFirstChild(); def != null; def = def.getNextSibling()) {
+                if (def.getNodeType() == Node.ELEMENT_NODE) {
+                    SyntaxDef syntaxDef = new SyntaxDef((Element) def);
+                    temp.put(syntaxDef.getId(), syntaxDef);
+                }
+            }
+        }
+        this.defs = Collections.unmodifiableMap(temp);
+
+        for (SyntaxDef def : defs.values()) {
+            def.link(this);
+        }
+    }
+
+    /**
+     * Übersetzt ein Syntax-Dokument. Das ist teuer; Modelle werden deshalb nicht pro
+     * Nachricht erzeugt, sondern einmal pro HBCI-Version über
+     * {@link org.kapott.hbci.manager.SyntaxSpec#getSyntaxModel()} geholt.
+     *
+     * @param document das Syntax-Dokument.
+     * @return das neue Modell.
+     */
+    public static SyntaxModel compile(Document document) {
+        log.debug("compiling syntax model");
+        return new SyntaxModel(document);
+    }
+
+    /**
+     * @return das Syntax-Dokument, aus dem dieses Modell erzeugt wurde. Anders als das
+     * Modell ist das DOM nicht thread-sicher.
+     */
+    public Document getDocument() {
+        return document;
+    }
+
+    /**
+     * @param elementTypeName Typ des Elementes (MSG, SEG, ...) für die Fehlermeldung.
+     * @param id              die ID der Definition.
+     * @return die Definition.
+     * @throws NoSuchElementException wenn es keine Definition mit dieser ID gibt.
+     */
+    public SyntaxDef getDef(String elementTypeName, String id) {
+        SyntaxDef ret = defs.get(id);
+        if (ret == null)
+            throw new NoSuchElementException(elementTypeName, id);
+        return ret;
+    }
+
+    /**
+     * Erzeugt eine neue, leere Nachricht vom Typ <code>type</code>.
+     * <p>
+     * Pro Nachrichtentyp wird beim ersten Aufruf eine Vorlage aufgebaut (inkl. aller
+     * Default-Werte aus der Spezifikation); jeder weitere Aufruf liefert nur noch
+     * eine Kopie dieser Vorlage. Die Vorlage selbst wird nie herausgegeben und
+     * deshalb auch nie verändert.
+     *
+     * @param type Name der MSGdef.
+     * @return die neue Nachricht.
+     * @throws NoSuchElementException wenn es keine Definition mit diesem Namen gibt.
+     */
+    public Message createMessage(String type) {
+        return messageTemplates.computeIfAbsent(type, t -> new Message(t, this)).copy();
+    }
+
+    SyntaxDef findDef(String id) {
+        return defs.get(id);
+    }
+}
@@ -0,0 +1,100 @@
+package org.kapott.hbci.protocol;
+
+import org.kapott.hbci.datatypes.factory.SyntaxDEFactory;
+import org.w3c.dom.Element;
+
+/**
+ * Vorkompilierte Referenz auf ein Kind-Element innerhalb einer Syntax-Definition,
+ * also ein &lt;DE&gt;-, &lt;DEG&gt;-, &lt;SEG&gt;- oder &lt;SF&gt;-Knoten aus der
+ * hbci-*.xml. Alle Attribute werden beim Kompilieren einmalig ausgewertet.
+ */
+public final class SyntaxRef {
+
+    public enum Kind {
+        DE, DEG, SEG, SF
+    }
+
+    private final Kind kind;
+    private final String type;
+    private final String name;
+    private final int minnum;
+    private final int maxnum;
+    private final int minsize;
+    private final int maxsize;
+    private SyntaxDef def;
+    private SyntaxDEFactory.Creator creator;
+
+    SyntaxRef(Element ref) {
+        this.kind = Kind.valueOf(ref.getNodeName());
+        this.type = ref.getAttribute("type");
+
+        String st = ref.getAttribute("name");
+        this.name = (st.length() != 0) ? st : type;
+
+        this.minnum = intAttribute(ref, "minnum", 1);
+        this.maxnum = intAttribute(ref, "maxnum", 1);
+        this.minsize = intAttribute(ref, "minsize", 1);
+        this.maxsize = intAttribute(ref, "maxsize", 0);
+    }
+
+    private static int intAttribute(Element ref, String name, int defaultValue) {
+        String st = ref.getAttribute(name);
+        return (st.length() != 0) ? Integer.parseInt(st) : defaultValue;
+    }
+
+    void link(SyntaxModel model) {
+        if (kind != Kind.DE)
+            this.def = model.findDef(type);
+        else
+            this.creator = SyntaxDEFactory.findCreator(type);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return bei DEs der Datentyp (AN, Num, ...), sonst die ID der referenzierten Definition.
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return der Name des Elementes; ist kein Name angegeben, wird der Typ verwendet.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public int getMinnum() {
+        return minnum;
+    }
+
+    public int getMaxnum() {
+        return maxnum;
+    }
+
+    public int getMinsize() {
+        return minsize;
+    }
+
+    public int getMaxsize() {
+        return maxsize;
+    }
+
+    /**
+     * @return die referenzierte Definition oder <code>null</code> bei DEs.
+     */
+    public SyntaxDef getDef() {
+        return def;
+    }
+
+    /**
+     * @return bei DEs der Creator für den Datentyp oder <code>null</code>, wenn der
+     * Datentyp unbekannt ist bzw. es sich nicht um ein DE handelt.
+     */
+    SyntaxDEFactory.Creator getCreator() {
+        return creator;
+    }
+}
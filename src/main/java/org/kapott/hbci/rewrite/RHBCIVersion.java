@@ -40,25 +40,32 @@ import org.kapott.hbci.status.HBCIMsgStatus;
 @Slf4j
 public class RHBCIVersion extends Rewrite {
 
+    // im nachrichtenkopf folgt die hbciversion auf segmentkopf und msgsize
+    private static final int HBCIVERSION = 2;
+
     @Override
-    public String incomingCrypted(String st, HBCIMsgStatus msgStatus, String msgName) {
-        int idx = st.indexOf("+");
-        if (idx != -1) { // + after SegHead found
-            idx = st.indexOf("+", idx + 1);
-            if (idx != -1) { // + after msgsize found
-                int idx2 = st.indexOf("+", idx + 1);
-                if (idx2 != -1) { // + after hbciversion found
-                    String version = st.substring(idx + 1, idx2);
-                    String origVersion = msgStatus.getData().get("orig_" + msgName + ".MsgHead.hbciversion");
+    public SegmentFilter incomingCryptedFilter(HBCIMsgStatus msgStatus, String msgName) {
+        return new SegmentFilter() {
+            private boolean first = true;
+
+            @Override
+            protected void segment(RawSegment segment) {
+                if (first) {
+                    first = false;
+                    // die hbciversion darf nicht das letzte datenelement sein
+                    if (segment.getDECount() > HBCIVERSION + 1) {
+                        String version = segment.getDE(HBCIVERSION);
+                        String origVersion = msgStatus.getSentValue(msgName + ".MsgHead.hbciversion");
 
-                    if (version.length() == 0 || version.equals("0")) {
-                        log.warn("received HBCI version of message ('" + version + "') is incorrect - replacing it " +
-                            "with " + origVersion);
-                        st = new StringBuffer(st).replace(idx + 1, idx2, origVersion).toString();
+                        if (version.length() == 0 || version.equals("0")) {
+                            log.warn("received HBCI version of message ('" + version + "') is incorrect - " +
+                                "replacing it with " + origVersion);
+                            segment.setDE(HBCIVERSION, origVersion);
+                        }
                     }
                 }
+                emit(segment);
             }
-        }
-        return st;
+        };
     }
 }
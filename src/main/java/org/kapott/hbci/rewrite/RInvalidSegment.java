@@ -27,16 +27,22 @@ public class RInvalidSegment extends Rewrite {
 
     // TODO: msgsize muss angepasst werden
     @Override
-    public String incomingClearText(String st) {
-        StringBuffer sb = new StringBuffer(st);
-
-        int idx = sb.indexOf("'IIDIA:");
-        if (idx != -1) {
-            int idx2 = sb.indexOf("'", idx + 1);
-            log.warn("removing invalid segment '" + sb.substring(idx + 1, idx2 + 1) + "'");
-            sb.delete(idx + 1, idx2 + 1);
-        }
-
-        return sb.toString();
+    public SegmentFilter incomingClearTextFilter() {
+        return new SegmentFilter() {
+            private boolean first = true;
+            private boolean removed;
+
+            @Override
+            protected void segment(RawSegment segment) {
+                // nur das erste ungueltige segment entfernen, nicht den nachrichtenkopf
+                if (!first && !removed && segment.getCode().equals("IIDIA")) {
+                    log.warn("removing invalid segment '" + segment + "'");
+                    removed = true;
+                } else {
+                    emit(segment);
+                }
+                first = false;
+            }
+        };
     }
 }
@@ -23,8 +23,8 @@ package org.kapott.hbci.rewrite;
 import lombok.extern.slf4j.Slf4j;
 import org.kapott.hbci.manager.HBCIUtils;
 import org.kapott.hbci.protocol.Message;
+import org.kapott.hbci.protocol.SyntaxModel;
 import org.kapott.hbci.protocol.SyntaxElement;
-import org.w3c.dom.Document;
 
 @Slf4j
 public class RInvalidSuppHBCIVersion extends Rewrite {
@@ -33,10 +33,10 @@ public class RInvalidSuppHBCIVersion extends Rewrite {
     // benutzt, weil nicht sichergestellt werden kann, dass die eingehende
     // nachricht hier tatsächlich schon geparst werden kann
     @Override
-    public String incomingClearText(String st, Document document, String msgName) {
+    public String incomingClearText(String st, SyntaxModel model, String msgName) {
         // empfangene Nachricht parsen, dabei die validvalues-Überprüfung weglassen
         String myMsgName = msgName + "Res";
-        Message msg = new Message(myMsgName, st, document,
+        Message msg = new Message(myMsgName, st, model,
             Message.DONT_CHECK_SEQ, Message.DONT_CHECK_VALIDS);
 
         // in einer Schleife durch alle SuppVersions-Datensätze laufen
@@ -22,9 +22,6 @@ package org.kapott.hbci.rewrite;
 
 import lombok.extern.slf4j.Slf4j;
 import org.kapott.hbci.protocol.Message;
-import org.kapott.hbci.protocol.SyntaxElement;
-
-import java.util.Map;
 
 /**
  * Rewriter-Modul für Kontoauszüge der 1822direkt-Bank (und vielleicht andere). Die
@@ -36,35 +33,39 @@ import java.util.Map;
 @Slf4j
 public final class RKUmsDelimiters extends Rewrite {
 
+    private static final String NEW_STATEMENT = "\r\n:20:";
+
+    // alle korrekturen in einem durchgang (bzw. zwei fuer fehlende trennzeichen vor
+    // ":20:"), damit grosse kontoauszuege in linearer zeit umgeschrieben werden
     private String rewriteKUms(String st) {
         log.debug("rewriting statement of account");
 
-        StringBuffer temp = new StringBuffer(st);
-        int posi = 0;
+        StringBuilder temp = new StringBuilder(st.length() + 16);
+        int len = st.length();
 
         boolean wrongCRLF = false;
-        while ((posi = temp.indexOf("\n", posi)) != -1) {
-            if (posi == 0 || temp.charAt(posi - 1) != '\r') {
-                temp.replace(posi, posi + 1, "\r\n");
-                posi += 2;
+        boolean wrongDelimiter = false;
+        for (int i = 0; i < len; i++) {
+            char ch = st.charAt(i);
+            if (ch == '\n' && (i == 0 || st.charAt(i - 1) != '\r')) {
+                temp.append("\r\n");
                 wrongCRLF = true;
+            } else if (ch == '@' && i + 1 < len && st.charAt(i + 1) == '@') {
+                temp.append("\r\n");
+                wrongDelimiter = true;
+                i++;
             } else {
-                posi++;
+                temp.append(ch);
             }
         }
 
-        boolean wrongDelimiter = false;
-        posi = 0;
-        while ((posi = temp.indexOf("@@", posi)) != -1) {
-            temp.replace(posi, posi + 2, "\r\n");
-            wrongDelimiter = true;
-        }
-
         boolean wrongEndSequence = false;
-        if (!temp.substring(temp.length() - 3, temp.length()).equals("\r\n-")) {
+        int tempLength = temp.length();
+        if (tempLength < 3 || temp.charAt(tempLength - 3) != '\r' || temp.charAt(tempLength - 2) != '\n' ||
+            temp.charAt(tempLength - 1) != '-') {
             wrongEndSequence = true;
 
-            posi = temp.length() - 1;
+            int posi = tempLength - 1;
             while (posi >= 0) {
                 char ch = temp.charAt(posi);
                 if (ch == '\r' || ch == '\n' || ch == '-')
@@ -74,8 +75,9 @@ public final class RKUmsDelimiters extends Rewrite {
             }
 
             if (posi >= 0) {
-                if (posi != temp.length() - 1) {
-                    temp.replace(posi + 1, temp.length(), "\r\n-");
+                if (posi != tempLength - 1) {
+                    temp.setLength(posi + 1);
+                    temp.append("\r\n-");
                 } else {
                     log.debug("absolutely no ending sequence found - " +
                         "maybe statement of account splitted at wrong position?");
@@ -85,25 +87,31 @@ public final class RKUmsDelimiters extends Rewrite {
             }
         }
 
-        posi = 0;
+        // fehlende trennzeichen vor dem beginn eines neuen auszugs einfuegen
         boolean missingMinusBetweenCRLFs = false;
         boolean missingCRLFMinus = false;
-
-        while ((posi = temp.indexOf("\r\n:20:", posi)) != -1) {
-            if (posi > 1 && temp.substring(posi - 2, posi).equals("\r\n")) {
+        StringBuilder ret = null;
+        int copied = 0;
+        for (int posi = temp.indexOf(NEW_STATEMENT); posi != -1; posi = temp.indexOf(NEW_STATEMENT, posi + 1)) {
+            String insert = null;
+            if (posi > 1 && temp.charAt(posi - 2) == '\r' && temp.charAt(posi - 1) == '\n') {
                 missingMinusBetweenCRLFs = true;
-                temp.insert(posi, "-");
-                posi += 3;
+                insert = "-";
             } else if (posi > 0 && temp.charAt(posi - 1) != '-') {
                 missingCRLFMinus = true;
-                temp.insert(posi, "\r\n-");
-                posi += 5;
-            } else {
-                posi++;
+                insert = "\r\n-";
+            }
+
+            if (insert != null) {
+                if (ret == null)
+                    ret = new StringBuilder(temp.length() + 64);
+                ret.append(temp, copied, posi).append(insert);
+                copied = posi;
             }
         }
 
-        if (!temp.toString().equals(st)) {
+        String result = (ret != null) ? ret.append(temp, copied, temp.length()).toString() : temp.toString();
+        if (log.isDebugEnabled() && !result.equals(st)) {
             log.debug("this institute produces buggy account statements!");
             log.debug("wrongCRLF:" + wrongCRLF
                 + " wrongDelimiterChars:" + wrongDelimiter
@@ -111,24 +119,20 @@ public final class RKUmsDelimiters extends Rewrite {
                 + " missingMinusBetweenCRLFs:" + missingMinusBetweenCRLFs
                 + " missingCRLFMinus:" + missingCRLFMinus);
         }
-        return temp.toString();
+        return result;
     }
 
     @Override
     public Message incomingData(Message msg) {
-        String header = "GVRes";
-        Map<String, String> data = msg.getData();
-
-        data.keySet().forEach(key -> {
-            if (key.startsWith(header) &&
-                key.indexOf("KUms") != -1 &&
-                key.endsWith(".booked")) {
-
-                String st = msg.getValueOfDE(msg.getName() + "." + key);
-                st = rewriteKUms(st);
-                msg.propagateValue(msg.getName() + "." + key, "B" + st,
-                    SyntaxElement.DONT_TRY_TO_CREATE,
-                    SyntaxElement.ALLOW_OVERWRITE);
+        // die umsaetze werden direkt in der geparsten nachricht ersetzt
+        String header = msg.getName() + ".GVRes";
+        msg.forEachDE(de -> {
+            String path = de.getPath();
+            if (path.startsWith(header) &&
+                path.indexOf("KUms") != -1 &&
+                path.endsWith(".booked")) {
+
+                msg.patchValue(path, "B" + rewriteKUms(de.toString()));
             }
         });
 
@@ -22,48 +22,45 @@ package org.kapott.hbci.rewrite;
 
 import lombok.extern.slf4j.Slf4j;
 import org.kapott.hbci.protocol.Message;
-import org.kapott.hbci.protocol.SyntaxElement;
-
-import java.util.Map;
 
 @Slf4j
 public class RKUmsEmptyBDateSets extends Rewrite {
 
-    private String rewriteKUms(String st) {
-        StringBuffer temp = new StringBuffer(st);
-        boolean foundError = false;
-        int posi;
+    private static final String EMPTY_BDATE_SET = "\r\n-\r\n-\r\n";
 
-        while ((posi = temp.indexOf("\r\n-\r\n-\r\n")) != -1) {
-            temp.delete(posi, posi + 3);
-            foundError = true;
+    private String rewriteKUms(String st) {
+        // von jeder folge leerer saetze bleibt nur einer uebrig
+        StringBuilder temp = null;
+        int copied = 0;
+        for (int posi = st.indexOf(EMPTY_BDATE_SET); posi != -1; posi = st.indexOf(EMPTY_BDATE_SET, posi + 3)) {
+            if (temp == null)
+                temp = new StringBuilder(st.length());
+            temp.append(st, copied, posi);
+            copied = posi + 3;
         }
+        boolean foundError = temp != null;
 
         if (foundError)
             log.error("rewriter KUmsEmptyBDateSets: found empty bdate sets: " + foundError);
         else
             log.warn("rewriter KUmsEmptyBDateSets: found empty bdate sets: " + foundError);
 
-        return temp.toString();
+        return foundError ? temp.append(st, copied, st.length()).toString() : st;
     }
 
     @Override
     public Message incomingData(Message msg) {
-        String header = "GVRes";
-        Map<String, String> data = msg.getData();
-
-        for (String key : data.keySet()) {
-            if (key.startsWith(header) &&
-                key.indexOf("KUms") != -1 &&
-                key.endsWith(".booked")) {
-
-                String st = msg.getValueOfDE(msg.getName() + "." + key);
-                st = rewriteKUms(st);
-                msg.propagateValue(msg.getName() + "." + key, "B" + st,
-                    SyntaxElement.DONT_TRY_TO_CREATE,
-                    SyntaxElement.ALLOW_OVERWRITE);
+        // die umsaetze werden direkt in der geparsten nachricht ersetzt
+        String header = msg.getName() + ".GVRes";
+        msg.forEachDE(de -> {
+            String path = de.getPath();
+            if (path.startsWith(header) &&
+                path.indexOf("KUms") != -1 &&
+                path.endsWith(".booked")) {
+
+                msg.patchValue(path, "B" + rewriteKUms(de.toString()));
             }
-        }
+        });
 
         return msg;
     }
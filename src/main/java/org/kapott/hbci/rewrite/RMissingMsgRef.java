@@ -27,32 +27,39 @@ import org.kapott.hbci.status.HBCIMsgStatus;
 @Slf4j
 public class RMissingMsgRef extends Rewrite {
 
+    // im nachrichtenkopf folgt die MsgRef auf segmentkopf, msgsize, hbciversion,
+    // dialogid und msgnum
+    private static final int MSGREF = 5;
+
     // TODO: msgsize muss angepasst werden
     @Override
-    public String incomingCrypted(String st, HBCIMsgStatus msgStatus, String msgName) {
-        int idx = st.indexOf("'");
-        if (idx != -1) {
-            try {
-                String msghead_st = st.substring(0, idx);
-                int plusidx = 0;
-                for (int i = 0; i < 5; i++)
-                    plusidx = msghead_st.indexOf("+", plusidx + 1);
-                if (plusidx == -1) {
-                    log.warn("MsgRef is missing, adding it");
-                    String[] des = {"dialogid", "msgnum"};
-                    for (int i = 0; i < 2; i++) {
-                        String temp = (msgStatus.getData().get("orig_" + msgName + ".MsgHead." + des[i]));
-                        log.warn("setting MsgRef." + des[i] + " to " + temp);
-                        msghead_st += (i == 0 ? "+" : ":");
-                        msghead_st += temp;
+    public SegmentFilter incomingCryptedFilter(HBCIMsgStatus msgStatus, String msgName) {
+        return new SegmentFilter() {
+            private boolean first = true;
+
+            @Override
+            protected void segment(RawSegment segment) {
+                if (first) {
+                    first = false;
+                    try {
+                        if (segment.getDECount() == MSGREF) {
+                            log.warn("MsgRef is missing, adding it");
+                            String[] des = {"dialogid", "msgnum"};
+                            StringBuilder msgref = new StringBuilder();
+                            for (int i = 0; i < 2; i++) {
+                                String temp = msgStatus.getSentValue(msgName + ".MsgHead." + des[i]);
+                                log.warn("setting MsgRef." + des[i] + " to " + temp);
+                                msgref.append(i == 0 ? "" : ":").append(temp);
+                            }
+                            segment.setDE(MSGREF, msgref.toString());
+                        }
+                    } catch (Exception ex) {
+                        throw new HBCI_Exception("*** error while fixing missing MsgRef", ex);
                     }
-                    st = new StringBuffer(st).replace(0, idx, msghead_st).toString();
                 }
-            } catch (Exception ex) {
-                throw new HBCI_Exception("*** error while fixing missing MsgRef", ex);
+                emit(segment);
             }
-        }
-        return st;
+        };
     }
 
 }
@@ -23,9 +23,9 @@ package org.kapott.hbci.rewrite;
 import lombok.extern.slf4j.Slf4j;
 import org.kapott.hbci.manager.HBCIUtils;
 import org.kapott.hbci.protocol.Message;
+import org.kapott.hbci.protocol.SyntaxModel;
 import org.kapott.hbci.protocol.MultipleSyntaxElements;
 import org.kapott.hbci.protocol.SyntaxElement;
-import org.w3c.dom.Document;
 
 import java.util.Iterator;
 
@@ -46,10 +46,10 @@ public class RSecTypeTAN extends Rewrite {
     // benutzt, weil nicht sichergestellt werden kann, dass die eingehende
     // nachricht hier tatsächlich schon geparst werden kann
     @Override
-    public String incomingClearText(String st, Document document, String msgName) {
+    public String incomingClearText(String st, SyntaxModel model, String msgName) {
         // empfangene Nachricht parsen, dabei die validvalues-Überprüfung weglassen
         String myMsgName = msgName + "Res";
-        Message msg = new Message(myMsgName, st, document,
+        Message msg = new Message(myMsgName, st, model,
             Message.CHECK_SEQ, Message.DONT_CHECK_VALIDS);
 
         // in einer Schleife durch alle SuppSecMethods-Datensätze laufen
@@ -25,42 +25,43 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class RSigIdLeadingZero extends Rewrite {
 
+    // sigid ist das 7. datenelement des signaturkopfes
+    private static final int SIGID = 6;
+
     @Override
-    public String incomingClearText(String st) {
-        StringBuffer ret = new StringBuffer(st);
-        int firstPlus = st.indexOf("HNSHK");
+    public SegmentFilter incomingClearTextFilter() {
+        return new SegmentFilter() {
+            private boolean done;
 
-        if (firstPlus != -1) {
-            for (int i = 0; i < 6; i++) {
-                firstPlus = st.indexOf("+", firstPlus + 1);
-                if (firstPlus == -1) {
-                    break;
+            @Override
+            protected void segment(RawSegment segment) {
+                if (!done && segment.getCode().equals("HNSHK")) {
+                    done = true;
+                    fixSigId(segment);
                 }
+                emit(segment);
             }
+        };
+    }
 
-            if (firstPlus != -1) {
-                int secondPlus = st.indexOf("+", firstPlus + 1);
-
-                if (secondPlus != -1) {
-                    StringBuffer value = new StringBuffer(st.substring(firstPlus + 1, secondPlus));
-
-                    if (value.length() > 1 && value.charAt(0) == '0') {
-                        log.warn("RSigIdLeadingZero: found leading zero (" + value + "), removing it");
-                        while (value.length() > 1 && value.charAt(0) == '0') {
-                            value.deleteCharAt(0);
-                        }
-
-                        ret.replace(firstPlus + 1, secondPlus, value.toString());
-                        log.warn("RSigIdLeadingZero: setting new sigid: " + value);
-                    }
-                } else {
-                    log.warn("RSigIdLeadingZero: can not find end of sigid in segment");
+    private void fixSigId(RawSegment segment) {
+        if (segment.getDECount() <= SIGID) {
+            log.warn("RSigIdLeadingZero: can not find sigid in segment");
+        } else if (segment.getDECount() == SIGID + 1) {
+            log.warn("RSigIdLeadingZero: can not find end of sigid in segment");
+        } else {
+            String value = segment.getDE(SIGID);
+            if (value.length() > 1 && value.charAt(0) == '0') {
+                log.warn("RSigIdLeadingZero: found leading zero (" + value + "), removing it");
+                int i = 0;
+                while (i < value.length() - 1 && value.charAt(i) == '0') {
+                    i++;
                 }
-            } else {
-                log.warn("RSigIdLeadingZero: can not find sigid in segment");
+
+                value = value.substring(i);
+                segment.setDE(SIGID, value);
+                log.warn("RSigIdLeadingZero: setting new sigid: " + value);
             }
         }
-
-        return ret.toString();
     }
 }
@@ -26,37 +26,20 @@ import lombok.extern.slf4j.Slf4j;
 public final class RWrongSequenceNumbers extends Rewrite {
 
     @Override
-    public String incomingClearText(String st) {
-        StringBuffer sb = new StringBuffer(st);
-
-        int idx;
-        boolean quoteNext = false;
-        int correctSeq = 1;
-
-        for (int i = 0; i < sb.length(); i++) {
-            char ch = sb.charAt(i);
-
-            if (!quoteNext && ch == '@') {
-                // skip binary values
-                idx = sb.indexOf("@", i + 1);
-                String len_st = sb.substring(i + 1, idx);
-                i += Integer.parseInt(len_st) + 1 + len_st.length();
-            } else if (!quoteNext && ch == '\'' || i == 0) {
-                idx = sb.indexOf(":", i + 1);
-                if (idx != -1) {
-                    int idx2 = sb.indexOf(":", idx + 1);
-                    int seq = Integer.parseInt(sb.substring(idx + 1, idx2));
-                    if (seq != correctSeq) {
-                        log.warn("found wrong sequence number " + seq + "; replacing with " + correctSeq);
-                        sb.replace(idx + 1, idx2, Integer.toString(correctSeq));
-                    }
-                    i = idx2;
+    public SegmentFilter incomingClearTextFilter() {
+        return new SegmentFilter() {
+            private int correctSeq = 1;
+
+            @Override
+            protected void segment(RawSegment segment) {
+                int seq = segment.getSeq();
+                if (seq != -1 && seq != correctSeq) {
+                    log.warn("found wrong sequence number " + seq + "; replacing with " + correctSeq);
+                    segment.setSeq(correctSeq);
                 }
                 correctSeq++;
+                emit(segment);
             }
-            quoteNext = !quoteNext && ch == '?';
-        }
-
-        return sb.toString();
+        };
     }
 }
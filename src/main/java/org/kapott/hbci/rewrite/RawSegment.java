@@ -0,0 +1,199 @@
+package org.kapott.hbci.rewrite;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Ein Segment einer empfangenen, noch nicht geparsten Nachricht.
+ * <p>
+ * Das Segment ist zunächst nur eine Sicht auf die Nachricht; erst wenn es über
+ * {@link #setDE(int, String)} oder {@link #setSeq(int)} geändert wird, wird es
+ * kopiert. Datenelemente werden so geliefert und erwartet, wie sie in der Nachricht
+ * stehen, also mit Escape-Zeichen und ggf. binär ("@len@...").
+ */
+public final class RawSegment {
+
+    private CharSequence data;
+    private int start;
+    private int end;
+    // positionen der '+'-trennzeichen zwischen den datenelementen, erst bei bedarf ermittelt
+    private int[] separators;
+    private int separatorCount;
+
+    RawSegment(CharSequence data, int start, int end) {
+        this.data = data;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Zerlegt <code>msg</code> in Segmente. Escape-Zeichen und Binärdaten werden
+     * dabei berücksichtigt.
+     *
+     * @return die Position hinter dem letzten Segmentende; dahinter stehende Zeichen
+     * gehören zu keinem Segment.
+     */
+    static int split(String msg, Consumer<RawSegment> consumer) {
+        int segmentStart = 0;
+        int len = msg.length();
+        for (int i = 0; i < len; i++) {
+            char ch = msg.charAt(i);
+            if (ch == '?') {
+                i++;
+            } else if (ch == '@') {
+                i = skipBinary(msg, i, len);
+            } else if (ch == '\'') {
+                consumer.accept(new RawSegment(msg, segmentStart, i));
+                segmentStart = i + 1;
+            }
+        }
+        return segmentStart;
+    }
+
+    /**
+     * @return die Position des letzten Zeichens der bei <code>at</code> beginnenden
+     * Binärdaten, oder <code>at</code>, wenn dort keine Längenangabe steht.
+     */
+    private static int skipBinary(CharSequence data, int at, int end) {
+        int length = 0;
+        int i = at + 1;
+        while (i < end && Character.isDigit(data.charAt(i))) {
+            length = length * 10 + (data.charAt(i) - '0');
+            i++;
+        }
+        if (i == at + 1 || i >= end || data.charAt(i) != '@')
+            return at;
+        return Math.min(i + length, end - 1);
+    }
+
+    /**
+     * @return der Segmentcode (z.B. "HNHBK").
+     */
+    public String getCode() {
+        for (int i = start; i < end; i++) {
+            char ch = data.charAt(i);
+            if (ch == ':' || ch == '+')
+                return data.subSequence(start, i).toString();
+        }
+        return data.subSequence(start, end).toString();
+    }
+
+    /**
+     * @return die Segmentnummer aus dem Segmentkopf oder -1, wenn keine angegeben ist.
+     * @throws NumberFormatException wenn die Segmentnummer keine Zahl ist.
+     */
+    public int getSeq() {
+        int[] pos = seqPosition();
+        return (pos != null) ? Integer.parseInt(data.subSequence(pos[0], pos[1]).toString()) : -1;
+    }
+
+    /**
+     * Setzt die Segmentnummer im Segmentkopf.
+     */
+    public void setSeq(int seq) {
+        int[] pos = seqPosition();
+        if (pos != null)
+            replace(pos[0], pos[1], Integer.toString(seq));
+    }
+
+    private int[] seqPosition() {
+        int headEnd = deEnd(0);
+        int first = indexOf(':', start, headEnd);
+        if (first == -1)
+            return null;
+        int second = indexOf(':', first + 1, headEnd);
+        return new int[]{first + 1, (second != -1) ? second : headEnd};
+    }
+
+    /**
+     * @return die Anzahl der Datenelemente (inklusive Segmentkopf).
+     */
+    public int getDECount() {
+        findSeparators();
+        return separatorCount + 1;
+    }
+
+    /**
+     * @param idx Index des Datenelementes, der Segmentkopf hat den Index 0.
+     * @return das Datenelement (bzw. die Datenelementgruppe) wie es in der Nachricht steht.
+     */
+    public String getDE(int idx) {
+        return data.subSequence(deStart(idx), deEnd(idx)).toString();
+    }
+
+    /**
+     * Ersetzt das Datenelement mit dem Index <code>idx</code>. Ist <code>idx</code>
+     * gleich {@link #getDECount()}, wird das Datenelement angehängt.
+     */
+    public void setDE(int idx, String value) {
+        if (idx == getDECount()) {
+            replace(end, end, "+" + value);
+        } else {
+            replace(deStart(idx), deEnd(idx), value);
+        }
+    }
+
+    private int deStart(int idx) {
+        checkIndex(idx);
+        return (idx == 0) ? start : separators[idx - 1] + 1;
+    }
+
+    private int deEnd(int idx) {
+        checkIndex(idx);
+        return (idx == separatorCount) ? end : separators[idx];
+    }
+
+    private void checkIndex(int idx) {
+        if (idx < 0 || idx >= getDECount())
+            throw new IndexOutOfBoundsException("DE " + idx + " of segment " + this);
+    }
+
+    private void findSeparators() {
+        if (separators != null)
+            return;
+
+        separators = new int[8];
+        separatorCount = 0;
+        for (int i = start; i < end; i++) {
+            char ch = data.charAt(i);
+            if (ch == '?') {
+                i++;
+            } else if (ch == '@') {
+                i = skipBinary(data, i, end);
+            } else if (ch == '+') {
+                if (separatorCount == separators.length)
+                    separators = Arrays.copyOf(separators, separatorCount * 2);
+                separators[separatorCount++] = i;
+            }
+        }
+    }
+
+    private int indexOf(char ch, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (data.charAt(i) == ch)
+                return i;
+        }
+        return -1;
+    }
+
+    private void replace(int from, int to, String value) {
+        StringBuilder sb = new StringBuilder(end - start - (to - from) + value.length());
+        sb.append(data, start, from).append(value).append(data, to, end);
+        data = sb;
+        start = 0;
+        end = sb.length();
+        separators = null;
+    }
+
+    /**
+     * Hängt das Segment ohne Segmentende-Zeichen an <code>sb</code> an.
+     */
+    void appendTo(StringBuilder sb) {
+        sb.append(data, start, end);
+    }
+
+    @Override
+    public String toString() {
+        return data.subSequence(start, end).toString();
+    }
+}
@@ -21,8 +21,10 @@
 package org.kapott.hbci.rewrite;
 
 import org.kapott.hbci.protocol.Message;
+import org.kapott.hbci.protocol.SyntaxModel;
 import org.kapott.hbci.status.HBCIMsgStatus;
-import org.w3c.dom.Document;
+
+import java.util.Collections;
 
 public abstract class Rewrite {
 
@@ -42,17 +44,45 @@ public abstract class Rewrite {
     }
 
     public String incomingCrypted(String st, HBCIMsgStatus msgStatus, String msgName) {
-        return st;
+        SegmentFilter filter = incomingCryptedFilter(msgStatus, msgName);
+        return (filter != null) ? SegmentFilter.apply(st, Collections.singletonList(filter)) : st;
+    }
+
+    /**
+     * Segmentweise Variante von {@link #incomingCrypted(String, HBCIMsgStatus, String)}.
+     * Liefert ein Rewriter hier einen Filter, wird er in der {@link RewriterPipeline}
+     * zusammen mit den Filtern der anderen Rewriter in einem Durchgang angewendet.
+     *
+     * @return ein neuer Filter für eine Nachricht oder <code>null</code>.
+     */
+    public SegmentFilter incomingCryptedFilter(HBCIMsgStatus msgStatus, String msgName) {
+        return null;
     }
 
     public String incomingClearText(String st) {
-        return st;
+        SegmentFilter filter = incomingClearTextFilter();
+        return (filter != null) ? SegmentFilter.apply(st, Collections.singletonList(filter)) : st;
+    }
+
+    /**
+     * Segmentweise Variante von {@link #incomingClearText(String)}, siehe
+     * {@link #incomingCryptedFilter(HBCIMsgStatus, String)}.
+     *
+     * @return ein neuer Filter für eine Nachricht oder <code>null</code>.
+     */
+    public SegmentFilter incomingClearTextFilter() {
+        return null;
     }
 
-    public String incomingClearText(String st, Document document, String msgName) {
+    public String incomingClearText(String st, SyntaxModel model, String msgName) {
         return st;
     }
 
+    /**
+     * Korrigiert die bereits geparste Antwortnachricht. Werte sollten dabei mit
+     * {@link Message#patchValue(String, String)} geändert werden, so dass die
+     * Nachricht nicht neu geparst werden muss.
+     */
     public Message incomingData(Message msg) {
         return msg;
     }
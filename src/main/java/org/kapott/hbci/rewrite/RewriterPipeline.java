@@ -0,0 +1,170 @@
+package org.kapott.hbci.rewrite;
+
+import lombok.extern.slf4j.Slf4j;
+import org.kapott.hbci.exceptions.HBCI_Exception;
+import org.kapott.hbci.protocol.Message;
+import org.kapott.hbci.status.HBCIMsgStatus;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Die für eine Konfiguration (Passport-Property <code>kernel.rewriter</code>)
+ * zuständigen {@link Rewrite}r.
+ * <p>
+ * Die Rewriter werden pro Konfiguration nur einmal erzeugt; die Pipeline ist
+ * unveränderlich und kann von beliebig vielen Dialogen gleichzeitig benutzt werden
+ * (die Rewriter selbst sind zustandslos). Für jeden Hook werden nur die Rewriter
+ * aufgerufen, die ihn auch überschreiben.
+ * <p>
+ * Bei empfangenen Nachrichten werden die {@link SegmentFilter} aller aufeinander
+ * folgenden Rewriter, die einen liefern, in einem einzigen Durchgang über die
+ * Segmente der Nachricht angewendet.
+ */
+@Slf4j
+public final class RewriterPipeline {
+
+    public static final RewriterPipeline EMPTY = new RewriterPipeline(Collections.emptyList());
+
+    private static final Map<String, RewriterPipeline> pipelines = new ConcurrentHashMap<>();
+
+    private final List<Rewrite> rewriters;
+    private final Rewrite[] outgoingClearText;
+    private final Rewrite[] outgoingSigned;
+    private final Rewrite[] outgoingCrypted;
+    private final Rewrite[] incomingCrypted;
+    private final Rewrite[] incomingClearText;
+    private final Rewrite[] incomingData;
+
+    private RewriterPipeline(List<Rewrite> rewriters) {
+        this.rewriters = Collections.unmodifiableList(rewriters);
+        this.outgoingClearText = overriding(overrides("outgoingClearText", Message.class));
+        this.outgoingSigned = overriding(overrides("outgoingSigned", Message.class));
+        this.outgoingCrypted = overriding(overrides("outgoingCrypted", Message.class));
+        this.incomingCrypted = overriding(overrides("incomingCrypted", String.class, HBCIMsgStatus.class, String.class)
+            .or(overrides("incomingCryptedFilter", HBCIMsgStatus.class, String.class)));
+        this.incomingClearText = overriding(overrides("incomingClearText", String.class)
+            .or(overrides("incomingClearTextFilter")));
+        this.incomingData = overriding(overrides("incomingData", Message.class));
+    }
+
+    /**
+     * @param rewritersString kommagetrennte Liste der Rewriter-Namen (ohne das
+     *                        Präfix "R"), kann <code>null</code> sein.
+     * @return die Pipeline für diese Konfiguration.
+     * @throws HBCI_Exception wenn ein Rewriter nicht erzeugt werden kann.
+     */
+    public static RewriterPipeline forConfig(String rewritersString) {
+        if (rewritersString == null || rewritersString.trim().isEmpty())
+            return EMPTY;
+        return pipelines.computeIfAbsent(rewritersString, RewriterPipeline::create);
+    }
+
+    private static RewriterPipeline create(String rewritersString) {
+        List<Rewrite> rewriters = new ArrayList<>();
+        for (String token : rewritersString.split(",")) {
+            String rewriterName = token.trim();
+            if (rewriterName.length() != 0) {
+                try {
+                    Class<?> cl = RewriterPipeline.class.getClassLoader().loadClass("org.kapott.hbci.rewrite.R" +
+                        rewriterName);
+                    rewriters.add((Rewrite) cl.getConstructor().newInstance());
+                } catch (ReflectiveOperationException | ClassCastException e) {
+                    throw new HBCI_Exception("*** can not create rewriter " + rewriterName, e);
+                }
+            }
+        }
+
+        log.debug("created rewriter pipeline for " + rewritersString);
+        return new RewriterPipeline(rewriters);
+    }
+
+    /**
+     * @return alle Rewriter in der konfigurierten Reihenfolge.
+     */
+    public List<Rewrite> getRewriters() {
+        return rewriters;
+    }
+
+    public Message outgoingClearText(Message msg) {
+        for (Rewrite rewriter : outgoingClearText)
+            msg = rewriter.outgoingClearText(msg);
+        return msg;
+    }
+
+    public Message outgoingSigned(Message msg) {
+        for (Rewrite rewriter : outgoingSigned)
+            msg = rewriter.outgoingSigned(msg);
+        return msg;
+    }
+
+    public Message outgoingCrypted(Message msg) {
+        for (Rewrite rewriter : outgoingCrypted)
+            msg = rewriter.outgoingCrypted(msg);
+        return msg;
+    }
+
+    public String incomingCrypted(String st, HBCIMsgStatus msgStatus, String msgName) {
+        List<SegmentFilter> filters = new ArrayList<>(incomingCrypted.length);
+        for (Rewrite rewriter : incomingCrypted) {
+            SegmentFilter filter = rewriter.incomingCryptedFilter(msgStatus, msgName);
+            if (filter != null) {
+                filters.add(filter);
+            } else {
+                st = SegmentFilter.apply(st, filters);
+                filters.clear();
+                st = rewriter.incomingCrypted(st, msgStatus, msgName);
+            }
+        }
+        return SegmentFilter.apply(st, filters);
+    }
+
+    public String incomingClearText(String st) {
+        List<SegmentFilter> filters = new ArrayList<>(incomingClearText.length);
+        for (Rewrite rewriter : incomingClearText) {
+            log.debug("applying rewriter " + rewriter.getClass().getSimpleName());
+            SegmentFilter filter = rewriter.incomingClearTextFilter();
+            if (filter != null) {
+                filters.add(filter);
+            } else {
+                st = SegmentFilter.apply(st, filters);
+                filters.clear();
+                st = rewriter.incomingClearText(st);
+            }
+        }
+        return SegmentFilter.apply(st, filters);
+    }
+
+    public Message incomingData(Message msg) {
+        for (Rewrite rewriter : incomingData)
+            msg = rewriter.incomingData(msg);
+        return msg;
+    }
+
+    private Rewrite[] overriding(Predicate<Rewrite> overrides) {
+        return rewriters.stream().filter(overrides).toArray(Rewrite[]::new);
+    }
+
+    // true fuer rewriter, die den hook selbst implementieren (statt der no-op aus Rewrite)
+    private static Predicate<Rewrite> overrides(String hook, Class<?>... parameterTypes) {
+        return rewriter -> {
+            try {
+                Method method = rewriter.getClass().getMethod(hook, parameterTypes);
+                return method.getDeclaringClass() != Rewrite.class;
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(rewriters.stream().map(r -> r.getClass().getSimpleName()).toArray());
+    }
+}
@@ -0,0 +1,80 @@
+package org.kapott.hbci.rewrite;
+
+import java.util.List;
+
+/**
+ * Stufe beim segmentweisen Umschreiben einer empfangenen Nachricht.
+ * <p>
+ * Die Nachricht wird nur einmal in Segmente zerlegt; die Segmente laufen dann
+ * nacheinander durch die Filter aller aktiven Rewriter (in der konfigurierten
+ * Reihenfolge) und werden am Ende in einen einzigen Puffer geschrieben. Ein Filter
+ * reicht ein Segment mit {@link #emit(RawSegment)} weiter, kann es vorher ändern,
+ * weglassen oder zurückhalten und in {@link #end()} nachliefern.
+ * <p>
+ * Filter werden für jede Nachricht neu erzeugt (siehe
+ * {@link Rewrite#incomingClearTextFilter()}) und dürfen deshalb Zustand halten.
+ */
+public abstract class SegmentFilter {
+
+    private SegmentFilter next;
+
+    /**
+     * Wird für jedes Segment aufgerufen. Die Default-Implementierung reicht das
+     * Segment unverändert weiter.
+     */
+    protected void segment(RawSegment segment) {
+        emit(segment);
+    }
+
+    /**
+     * Wird nach dem letzten Segment aufgerufen; zurückgehaltene Segmente müssen
+     * hier weitergereicht werden.
+     */
+    protected void end() {
+    }
+
+    /**
+     * Reicht ein Segment an den nächsten Filter weiter.
+     */
+    protected final void emit(RawSegment segment) {
+        next.segment(segment);
+    }
+
+    private void finish() {
+        end();
+        if (next != null)
+            next.finish();
+    }
+
+    /**
+     * Schreibt <code>msg</code> in einem Durchgang mit allen <code>filters</code> um.
+     *
+     * @return die umgeschriebene Nachricht bzw. <code>msg</code>, wenn keine Filter
+     * angegeben sind.
+     */
+    public static String apply(String msg, List<SegmentFilter> filters) {
+        if (filters.isEmpty())
+            return msg;
+
+        StringBuilder out = new StringBuilder(msg.length() + 64);
+        SegmentFilter sink = new SegmentFilter() {
+            @Override
+            protected void segment(RawSegment segment) {
+                segment.appendTo(out);
+                out.append('\'');
+            }
+        };
+
+        for (int i = 0; i < filters.size(); i++) {
+            filters.get(i).next = (i + 1 < filters.size()) ? filters.get(i + 1) : sink;
+        }
+
+        SegmentFilter first = filters.get(0);
+        int tail = RawSegment.split(msg, first::segment);
+        first.finish();
+
+        // zeichen hinter dem letzten segmentende bleiben erhalten
+        out.append(msg, tail, msg.length());
+        return out.toString();
+    }
+}
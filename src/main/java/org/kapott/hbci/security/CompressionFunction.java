@@ -0,0 +1,157 @@
+package org.kapott.hbci.security;
+
+import org.kapott.hbci.exceptions.HBCI_Exception;
+import org.kapott.hbci.manager.HBCIUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Komprimierungsfunktionen für die verschlüsselten Daten (DE "compfunc" im
+ * Verschlüsselungskopf HNVSK).
+ * <p>
+ * Die Daten werden vor dem Verschlüsseln komprimiert bzw. nach dem Entschlüsseln
+ * dekomprimiert. Welche Funktionen die Bank unterstützt, meldet sie in den BPD im
+ * Segment HIKPV.
+ */
+public enum CompressionFunction {
+
+    NONE("0") {
+        @Override
+        public byte[] compress(byte[] data) {
+            return data;
+        }
+
+        @Override
+        public byte[] decompress(byte[] data) {
+            return data;
+        }
+    },
+
+    /**
+     * PKZIP. Die Daten stehen im ersten Eintrag des ZIP-Archivs.
+     */
+    ZIP("5") {
+        @Override
+        public byte[] compress(byte[] data) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+            try (ZipOutputStream zip = new ZipOutputStream(out)) {
+                zip.putNextEntry(new ZipEntry("hbci"));
+                zip.write(data);
+                zip.closeEntry();
+            }
+            return out.toByteArray();
+        }
+
+        @Override
+        public byte[] decompress(byte[] data) throws IOException {
+            try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(data))) {
+                if (zip.getNextEntry() == null)
+                    throw new IOException("empty zip archive");
+                return zip.readAllBytes();
+            }
+        }
+    },
+
+    /**
+     * Deflate. Ausgehend wird das GZIP-Format benutzt; eingehend werden auch
+     * zlib-Daten und Daten ohne Header akzeptiert.
+     */
+    GZIP("6") {
+        @Override
+        public byte[] compress(byte[] data) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+            try (OutputStream gzip = new GZIPOutputStream(out, BUFFER_SIZE)) {
+                gzip.write(data);
+            }
+            return out.toByteArray();
+        }
+
+        @Override
+        public byte[] decompress(byte[] data) throws IOException {
+            InputStream in = new ByteArrayInputStream(data);
+            int header = (data.length >= 2) ? ((data[0] & 0xff) << 8) | (data[1] & 0xff) : -1;
+            if (header == 0x1f8b) {
+                in = new GZIPInputStream(in, BUFFER_SIZE);
+            } else if (header != -1 && (header & 0x0f00) == 0x0800 && header % 31 == 0) {
+                // zlib-header: methode deflate, pruefsumme ueber die ersten beiden bytes
+                in = new InflaterInputStream(in, new Inflater(), BUFFER_SIZE);
+            } else {
+                in = new InflaterInputStream(in, new Inflater(true), BUFFER_SIZE);
+            }
+
+            try (InputStream inflater = in) {
+                return inflater.readAllBytes();
+            }
+        }
+    };
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    // bevorzugte reihenfolge bei der auswahl aus den von der bank unterstuetzten funktionen
+    private static final CompressionFunction[] PREFERRED = {GZIP, ZIP};
+
+    private final String code;
+
+    CompressionFunction(String code) {
+        this.code = code;
+    }
+
+    /**
+     * @return der Code der Funktion im DE "compfunc".
+     */
+    public String getCode() {
+        return code;
+    }
+
+    public abstract byte[] compress(byte[] data) throws IOException;
+
+    public abstract byte[] decompress(byte[] data) throws IOException;
+
+    /**
+     * @param code der Code aus dem DE "compfunc".
+     * @return die Komprimierungsfunktion.
+     * @throws HBCI_Exception wenn die Funktion nicht unterstützt wird.
+     */
+    public static CompressionFunction byCode(String code) {
+        for (CompressionFunction function : values()) {
+            if (function.code.equals(code))
+                return function;
+        }
+        throw new HBCI_Exception(HBCIUtils.getLocMsg("EXCMSG_CRYPTCOMPFUNCFAIL", code));
+    }
+
+    /**
+     * Ermittelt die zu benutzende Komprimierungsfunktion aus den BPD.
+     *
+     * @param bpd die BPD, kann <code>null</code> sein.
+     * @return die bevorzugte der von der Bank in HIKPV gemeldeten und hier
+     * implementierten Funktionen oder {@link #NONE}.
+     */
+    public static CompressionFunction negotiate(Map<String, String> bpd) {
+        if (bpd == null)
+            return NONE;
+
+        for (CompressionFunction function : PREFERRED) {
+            String value;
+            int i = 0;
+            while ((value = bpd.get(HBCIUtils.withCounter("CompMethod.SuppCompMethods", i) + ".func")) != null) {
+                if (function.code.equals(value))
+                    return function;
+                i++;
+            }
+        }
+        return NONE;
+    }
+}
@@ -30,9 +30,8 @@ import org.kapott.hbci.protocol.Message;
 import org.kapott.hbci.protocol.MultipleSyntaxElements;
 import org.kapott.hbci.protocol.SEG;
 import org.kapott.hbci.protocol.SyntaxElement;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
 
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 
@@ -49,6 +48,14 @@ public final class Crypt {
     public static final String ENC_KEYTYPE_RSA = "6";
     public static final String ENC_KEYTYPE_DDV = "5";
 
+    /**
+     * Passport-Property, mit der das Komprimieren ausgehender Nachrichten
+     * eingeschaltet werden kann (<code>true</code>). Benutzt wird dann eine der von
+     * der Bank in HIKPV gemeldeten Komprimierungsfunktionen. Per Default wird nicht
+     * komprimiert; komprimierte Antworten der Bank werden immer entpackt.
+     */
+    public static final String PROPERTY_COMPRESSION = "client.compression";
+
     private HBCIPassportInternal passport;
 
     private String u_secfunc;    // 4=normal; 998=klartext
@@ -63,7 +70,7 @@ public final class Crypt {
     private String u_role;
     private String u_alg;       // crypthead.cryptalg.alg
     private String u_mode;      // crypthead.cryptalg.mode
-    private String u_compfunc;
+    private CompressionFunction u_compfunc;
 
     public Crypt(HBCIPassportInternal passport) {
         this.passport = passport;
@@ -83,7 +90,9 @@ public final class Crypt {
         u_role = "1";
         u_alg = passport.getCryptAlg();
         u_mode = passport.getCryptMode();
-        u_compfunc = "0";// TODO: spaeter kompression implementieren
+        u_compfunc = "true".equalsIgnoreCase(passport.getProperties().get(PROPERTY_COMPRESSION))
+            ? CompressionFunction.negotiate(passport.getBPD())
+            : CompressionFunction.NONE;
     }
 
 
@@ -91,13 +100,15 @@ public final class Crypt {
         Message newmsg = msg;
 
         if (passport.hasInstEncKey()) {
-            Node msgNode = passport.getSyntaxDef(msg.getName());
-            String dontcryptAttr = ((Element) msgNode).getAttribute("dontcrypt");
-
-            if (dontcryptAttr.length() == 0) {
-                newmsg = MessageFactory.createMessage("Crypted", passport.getSyntaxDocument());
+            if (!msg.getSyntaxDef().isDontCrypt()) {
+                newmsg = MessageFactory.createMessage("Crypted", passport.getSyntaxSpec().getSyntaxModel());
                 try {
-                    byte[][] crypteds = passport.encrypt(msg.getPlainString());
+                    byte[] plain = msg.getPlainString();
+                    if (u_compfunc != CompressionFunction.NONE) {
+                        // komprimiert werden die nutzdaten ohne padding
+                        plain = pad(u_compfunc.compress(Arrays.copyOf(plain, plain.length - plain[plain.length - 1])));
+                    }
+                    byte[][] crypteds = passport.encrypt(plain);
 
                     String msgPath = msg.getPath();
                     String dialogid = msg.getValueOfDE(msgPath + ".MsgHead.dialogid");
@@ -128,7 +139,7 @@ public final class Crypt {
                     newmsg.set("Crypted.CryptHead.SecTimestamp.time", HBCIUtils.time2StringISO(d));
                     newmsg.set("Crypted.CryptHead.role", u_role);
                     newmsg.set("Crypted.CryptHead.secfunc", u_secfunc);
-                    newmsg.set("Crypted.CryptHead.compfunc", u_compfunc);
+                    newmsg.set("Crypted.CryptHead.compfunc", u_compfunc.getCode());
                     newmsg.set("Crypted.MsgHead.dialogid", dialogid);
                     newmsg.set("Crypted.MsgHead.msgnum", msgnum);
                     newmsg.set("Crypted.MsgTail.msgnum", msgnum);
@@ -180,25 +191,28 @@ public final class Crypt {
                     throw new HBCI_Exception(errmsg);
                 }
 
-                // TODO spaeter kompression implementieren
-                String compfunc = crypthead.getValueOfDE(msgName + ".CryptHead.compfunc");
-                if (!compfunc.equals("0")) {
-                    String errmsg = HBCIUtils.getLocMsg("EXCMSG_CRYPTCOMPFUNCFAIL", compfunc);
-                    throw new HBCI_Exception(errmsg);
-                }
+                CompressionFunction compfunc =
+                    CompressionFunction.byCode(crypthead.getValueOfDE(msgName + ".CryptHead.compfunc"));
 
                 // TODO: hier auch die DEG SecProfile lesen und überprüfen
 
                 byte[] plainMsg = passport.decrypt(cryptedkey, cryptedstring);
                 int padLength = plainMsg[plainMsg.length - 1];
+                String plainString;
+                if (compfunc == CompressionFunction.NONE) {
+                    plainString = new String(plainMsg, 0, plainMsg.length - padLength, CommPinTan.ENCODING);
+                } else {
+                    byte[] compressed = Arrays.copyOf(plainMsg, plainMsg.length - padLength);
+                    plainString = new String(compfunc.decompress(compressed), CommPinTan.ENCODING);
+                }
 
                 // neuen nachrichtenstring zusammenbauen
                 StringBuffer ret = new StringBuffer(1024);
                 ret.append(msghead.toString(0)).
-                    append(new String(plainMsg, 0, plainMsg.length - padLength, CommPinTan.ENCODING)).
+                    append(plainString).
                     append(msgtail.toString(0));
 
-                log.debug("decrypted message: " + ret);
+                log.debug("decrypted message: {}", ret);
 
                 return ret.toString();
             } catch (Exception ex) {
@@ -208,4 +222,12 @@ public final class Crypt {
 
         return message.toString(0);
     }
+
+    // pad message (mit 0-bytes, das letzte byte enthaelt die laenge), siehe Message.getPlainString()
+    private static byte[] pad(byte[] data) {
+        int padLength = 8 - (data.length % 8);
+        byte[] ret = Arrays.copyOf(data, data.length + padLength);
+        ret[ret.length - 1] = (byte) padLength;
+        return ret;
+    }
 }
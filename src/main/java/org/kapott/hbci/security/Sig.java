@@ -25,8 +25,6 @@ import org.kapott.hbci.exceptions.HBCI_Exception;
 import org.kapott.hbci.manager.HBCIUtils;
 import org.kapott.hbci.passport.HBCIPassportInternal;
 import org.kapott.hbci.protocol.*;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
 
 import java.util.Date;
 import java.util.List;
@@ -55,19 +53,16 @@ public final class Sig {
     private String u_hashalg;
 
     public boolean signIt(Message msg, HBCIPassportInternal passport) {
-        Node msgNode = msg.getSyntaxDef(msg.getName(), passport.getSyntaxDocument());
-        String dontsignAttr = ((Element) msgNode).getAttribute("dontsign");
-
-        if (dontsignAttr.length() == 0) {
+        if (!msg.getSyntaxDef().isDontSign()) {
             try {
                 List<MultipleSyntaxElements> msgelements = msg.getChildContainers();
-                List<SyntaxElement> sigheads = msgelements.get(1).getElements();
-                List<SyntaxElement> sigtails = msgelements.get(msgelements.size() - 2).getElements();
+                MultipleSyntaxElements sigheads = msgelements.get(1);
+                MultipleSyntaxElements sigtails = msgelements.get(msgelements.size() - 2);
 
-                SEG sigHead = new SEG("SigHeadUser", "SigHead", msg.getName(), 0, passport.getSyntaxDocument());
-                sigheads.set(0, sigHead);
-                SEG sigTail = new SEG("SigTailUser", "SigTail", msg.getName(), 0, passport.getSyntaxDocument());
-                sigtails.set(0, sigTail);
+                SEG sigHead = new SEG("SigHeadUser", "SigHead", msg.getName(), 0, passport.getSyntaxSpec().getSyntaxModel());
+                sigheads.setElement(0, sigHead);
+                SEG sigTail = new SEG("SigTailUser", "SigTail", msg.getName(), 0, passport.getSyntaxSpec().getSyntaxModel());
+                sigtails.setElement(0, sigTail);
 
                 u_secfunc = passport.getSigFunction();
                 u_cid = "";
@@ -78,11 +73,10 @@ public final class Sig {
                 u_keynum = passport.getMySigKeyNum();
                 u_keyversion = passport.getMySigKeyVersion();
                 u_sysid = passport.getSysId();
-                u_sigid = passport.getSigId().toString();
+                u_sigid = passport.nextSigId().toString();
                 u_sigalg = passport.getSigAlg();
                 u_sigmode = passport.getSigMode();
                 u_hashalg = passport.getHashAlg();
-                passport.incSigId();
 
                 fillSigHead(sigHead, passport.getProfileMethod(), passport.getProfileVersion(),
                     msg.getName().endsWith("Res"));
@@ -93,8 +87,7 @@ public final class Sig {
                 msg.enumerateSegs(1, SyntaxElement.ALLOW_OVERWRITE);
 
                 msgelements = msg.getChildContainers();
-                sigtails = msgelements.get(msgelements.size() - 2).getElements();
-                sigTail = (SEG) sigtails.get(0);
+                sigTail = (SEG) msgelements.get(msgelements.size() - 2).getElements().get(0);
 
                 msg.propagateValue(sigTail.getPath() + ".UserSig.pin", passport.getPIN(),
                     SyntaxElement.DONT_TRY_TO_CREATE,
@@ -262,11 +255,7 @@ public final class Sig {
 
     public boolean verify(Message msg, HBCIPassportInternal passport) {
         if (passport.hasInstSigKey()) {
-            String msgName = msg.getName();
-            Node msgNode = msg.getSyntaxDef(msgName, passport.getSyntaxDocument());
-            String dontsignAttr = ((Element) msgNode).getAttribute("dontsign");
-
-            if (dontsignAttr.length() == 0) {
+            if (!msg.getSyntaxDef().isDontSign()) {
                 if (hasSig(msg)) {
                     readSigHead(msg);
                     return true;
@@ -21,6 +21,10 @@
 package org.kapott.hbci.status;
 
 import org.kapott.hbci.manager.HBCIUtils;
+import org.kapott.hbci.protocol.DE;
+import org.kapott.hbci.protocol.Message;
+import org.kapott.hbci.protocol.MultipleSyntaxElements;
+import org.kapott.hbci.protocol.SyntaxElement;
 
 import java.util.*;
 
@@ -37,6 +41,9 @@ import java.util.*;
  */
 public final class HBCIMsgStatus {
     private static final List<String> invalidPinCodes = Arrays.asList("9931", "9942", "9340");
+    private static final String RESPONSE_PREFIX = "GVRes";
+    private static final String SEGREF_SUFFIX = ".SegHead.ref";
+    private static final String[] NO_PARAMS = new String[0];
     /**
      * Globale Status-Informationen. Das sind Informationen, die die
      * Nachricht als ganzes betreffen (z.B. wenn die Nachricht nicht signiert
@@ -50,6 +57,13 @@ public final class HBCIMsgStatus {
      */
     public HBCIStatus segStatus;
     private HashMap<String, String> data;
+    // antwortsegmente der geschaeftsvorfaelle, nach SegHead.ref gruppiert; wird erst
+    // bei bedarf aus 'data' aufgebaut und bei jeder aenderung von 'data' verworfen
+    private Map<Integer, List<ResponseSegment>> responseSegments;
+    private Map<String, ResponseSegment> responseSegmentsByHeader;
+    // die gesendete nachricht; element-pfade und werte werden erst bei bedarf daraus gelesen
+    private Message sentMessage;
+    private Map<String, String> elementPaths;
 
     public HBCIMsgStatus() {
         this.globStatus = new HBCIStatus();
@@ -69,54 +83,147 @@ public final class HBCIMsgStatus {
      */
     public void addData(Map<String, String> _data) {
         this.data.putAll(_data);
-        extractStatusData();
+        this.responseSegments = null;
+        this.responseSegmentsByHeader = null;
+        extractStatusData(_data);
     }
 
-    private void extractStatusData() {
-        this.globStatus = new HBCIStatus();
-        this.segStatus = new HBCIStatus();
+    /**
+     * Wird von der <em>HBCI4Java</em>-Dialog-Engine aufgerufen. Übernimmt die Daten der
+     * empfangenen Nachricht; die Rückmeldungen werden direkt aus den Segmenten
+     * <code>RetGlob</code> und <code>RetSeg</code> der geparsten Nachricht gelesen.
+     */
+    public void addResponse(Message response) {
+        this.data.putAll(response.getData());
+        this.responseSegments = null;
+        this.responseSegmentsByHeader = null;
+
+        for (MultipleSyntaxElements list : response.getChildContainers()) {
+            for (SyntaxElement seg : list.getElements()) {
+                if (seg == null || !seg.isValid())
+                    continue;
+
+                if (seg.getName().equals("RetGlob"))
+                    extractRetVals(seg, globStatus, true);
+                else if (seg.getName().equals("RetSeg"))
+                    extractRetVals(seg, segStatus, false);
+            }
+        }
+    }
 
+    // haengt die return-codes aus 'source' an die bisherigen an
+    private void extractStatusData(Map<String, String> source) {
         // globale return-codes extrahieren
         for (int i = 0; true; i++) {
-            HBCIRetVal rv;
-            try {
-                rv = new HBCIRetVal(data, HBCIUtils.withCounter("RetGlob.RetVal", i));
-            } catch (Exception e) {
+            String header = HBCIUtils.withCounter("RetGlob.RetVal", i);
+            if (!source.containsKey(header + ".code"))
                 break;
-            }
 
-            globStatus.addRetVal(rv);
+            globStatus.addRetVal(new HBCIRetVal(source, header, null, this));
         }
 
         // segment-codes extrahieren
         for (int i = 0; true; i++) {
             String segheader = HBCIUtils.withCounter("RetSeg", i);
-            String segref = data.get(segheader + ".SegHead.ref");
+            String segref = source.get(segheader + ".SegHead.ref");
             if (segref == null) {
                 break;
             }
 
             for (int j = 0; true; j++) {
-                HBCIRetVal rv = null;
-                try {
-                    rv = new HBCIRetVal(data, HBCIUtils.withCounter(segheader + ".RetVal", j), segref);
-                } catch (Exception e) {
+                String header = HBCIUtils.withCounter(segheader + ".RetVal", j);
+                if (!source.containsKey(header + ".code"))
                     break;
+
+                segStatus.addRetVal(new HBCIRetVal(source, header, segref, this));
+            }
+        }
+    }
+
+    // liest alle RetVal-DEGs eines RetGlob- bzw. RetSeg-segmentes
+    private void extractRetVals(SyntaxElement seg, HBCIStatus status, boolean global) {
+        String segref = null;
+        for (MultipleSyntaxElements list : seg.getChildContainers()) {
+            for (SyntaxElement deg : list.getElements()) {
+                if (deg == null || !deg.isValid())
+                    continue;
+
+                if (deg.getName().equals("SegHead")) {
+                    // bei RetGlob bezieht sich die rueckmeldung auf die ganze nachricht
+                    if (!global)
+                        segref = valueOf(deg, "ref");
+                } else if (deg.getName().equals("RetVal")) {
+                    status.addRetVal(decodeRetVal(deg, segref));
+                }
+            }
+        }
+    }
+
+    private HBCIRetVal decodeRetVal(SyntaxElement retVal, String segref) {
+        String code = null;
+        String deref = null;
+        String text = null;
+        String[] params = NO_PARAMS;
+
+        for (MultipleSyntaxElements list : retVal.getChildContainers()) {
+            for (SyntaxElement de : list.getElements()) {
+                if (de == null || !de.isValid())
+                    continue;
+
+                switch (de.getName()) {
+                    case "code":
+                        code = de.toString();
+                        break;
+                    case "ref":
+                        deref = de.toString();
+                        break;
+                    case "text":
+                        text = de.toString();
+                        break;
+                    case "parm":
+                        params = Arrays.copyOf(params, params.length + 1);
+                        params[params.length - 1] = de.toString();
+                        break;
+                    default:
+                        break;
                 }
+            }
+        }
 
-                segStatus.addRetVal(rv);
+        return new HBCIRetVal(segref, deref, describeElement(segref, deref), code, text, params);
+    }
+
+    private static String valueOf(SyntaxElement deg, String name) {
+        for (MultipleSyntaxElements list : deg.getChildContainers()) {
+            for (SyntaxElement de : list.getElements()) {
+                if (de != null && de.isValid() && de.getName().equals(name))
+                    return de.toString();
             }
         }
+        return null;
+    }
+
+    /**
+     * @return Pfad und Wert des Elementes der gesendeten Nachricht, auf das sich eine
+     * Rückmeldung bezieht (siehe {@link HBCIRetVal#element}).
+     */
+    String describeElement(String segref, String deref) {
+        if (segref == null)
+            return null;
+
+        String path = getElementPath(segref + ((deref != null) ? ":" + deref : ""));
+        String value = (path != null) ? getSentValue(path) : null;
+        return path + ((value != null) ? ("=" + value) : "");
     }
 
     /**
-     * <p>Gibt den eigentlichen Inhalt sowohl der gesendeten wie auch der
-     * empfangenen Nachricht zurück. Die <em>keys</em> des Property-Objektes
-     * enthalten die Lowlevelnamen der Datenelemente, die dazugehörigen
-     * <em>values</em> enthalten jeweils den Wert des entsprechenden Datenelementes.
-     * Die Bezeichnungen der Datenelemente der <em>gesendeten</em> Nachricht tragen
-     * zur Unterscheidung mit den Datenelementen der empfangenen Nachricht das
-     * Prefix "<code>orig_</code>".</p>
+     * <p>Gibt den eigentlichen Inhalt der empfangenen Nachricht zurück. Die
+     * <em>keys</em> des Property-Objektes enthalten die Lowlevelnamen der
+     * Datenelemente, die dazugehörigen <em>values</em> enthalten jeweils den Wert
+     * des entsprechenden Datenelementes.</p>
+     * <p>Die Daten der <em>gesendeten</em> Nachricht (früher mit dem Prefix
+     * "<code>orig_</code>" hier enthalten) liefern {@link #getSentValue(String)}
+     * und {@link #getElementPath(String)}.</p>
      */
     public HashMap<String, String> getData() {
         return data;
@@ -127,7 +234,114 @@ public final class HBCIMsgStatus {
      */
     public void setData(HashMap<String, String> data) {
         this.data = data;
-        extractStatusData();
+        this.responseSegments = null;
+        this.responseSegmentsByHeader = null;
+        this.globStatus = new HBCIStatus();
+        this.segStatus = new HBCIStatus();
+        extractStatusData(data);
+    }
+
+    /**
+     * Wird von der <em>HBCI4Java</em>-Dialog-Engine aufgerufen
+     */
+    public void setSentMessage(Message sentMessage) {
+        this.sentMessage = sentMessage;
+        this.elementPaths = null;
+    }
+
+    /**
+     * @return die gesendete Nachricht (signiert, aber unverschlüsselt) oder
+     * <code>null</code>.
+     */
+    public Message getSentMessage() {
+        return sentMessage;
+    }
+
+    /**
+     * @param path Pfad des Datenelementes inklusive Nachrichtenname (z.B.
+     *             <code>DialogInit.MsgHead.dialogid</code>).
+     * @return der Wert des Datenelementes in der gesendeten Nachricht oder
+     * <code>null</code>.
+     */
+    public String getSentValue(String path) {
+        SyntaxElement elem = (sentMessage != null) ? sentMessage.getElement(path) : null;
+        return (elem instanceof DE && elem.isValid()) ? elem.toString() : null;
+    }
+
+    /**
+     * @param ref Referenz auf ein Element der gesendeten Nachricht, wie sie in
+     *            Rückmeldungen benutzt wird (<code>SEG</code>, <code>SEG:DE</code>
+     *            bzw. <code>SEG:DEG,DE</code>).
+     * @return der Pfad des Elementes inklusive Nachrichtenname oder <code>null</code>.
+     */
+    public String getElementPath(String ref) {
+        if (sentMessage == null)
+            return null;
+
+        if (elementPaths == null) {
+            Map<String, String> paths = new HashMap<>();
+            sentMessage.getElementPaths(paths, null, null, null);
+            elementPaths = paths;
+        }
+        return elementPaths.get(ref);
+    }
+
+    /**
+     * Liefert die Antwortsegmente (<code>GVRes...</code>), die sich auf ein Segment
+     * der gesendeten Nachricht beziehen. Die Segmente werden beim ersten Aufruf in einem
+     * Durchgang über {@link #getData()} ermittelt.
+     *
+     * @param segref die Segmentnummer in der gesendeten Nachricht (<code>SegHead.ref</code>).
+     * @return die Antwortsegmente in der Reihenfolge, in der sie empfangen wurden; nie
+     * <code>null</code>.
+     */
+    public List<ResponseSegment> getResponseSegments(int segref) {
+        indexResponseSegments();
+        return responseSegments.getOrDefault(segref, Collections.emptyList());
+    }
+
+    /**
+     * @param header der Pfad des Antwortsegmentes in {@link #getData()} (z.B.
+     *               <code>GVRes_2.KUmsZeitRes5</code>).
+     * @return das Antwortsegment oder <code>null</code>.
+     */
+    public ResponseSegment getResponseSegment(String header) {
+        indexResponseSegments();
+        return responseSegmentsByHeader.get(header);
+    }
+
+    private void indexResponseSegments() {
+        if (responseSegments != null)
+            return;
+
+        Map<String, ResponseSegment> byHeader = new HashMap<>();
+        data.forEach((key, value) -> {
+            if (key.startsWith(RESPONSE_PREFIX) && key.endsWith(SEGREF_SUFFIX)) {
+                String header = key.substring(0, key.length() - SEGREF_SUFFIX.length());
+                byHeader.put(header, new ResponseSegment(header, Integer.parseInt(value)));
+            }
+        });
+
+        // alle werte dem segment zuordnen, zu dem sie gehoeren
+        data.forEach((key, value) -> {
+            if (key.startsWith(RESPONSE_PREFIX)) {
+                for (int dot = key.indexOf('.'); dot != -1; dot = key.indexOf('.', dot + 1)) {
+                    ResponseSegment segment = byHeader.get(key.substring(0, dot));
+                    if (segment != null) {
+                        segment.data.put(key.substring(dot + 1), value);
+                        break;
+                    }
+                }
+            }
+        });
+
+        Map<Integer, List<ResponseSegment>> byRef = new HashMap<>();
+        byHeader.values().forEach(segment ->
+            byRef.computeIfAbsent(segment.getRef(), ref -> new ArrayList<>()).add(segment));
+        byRef.values().forEach(segments -> segments.sort(Comparator.comparingInt(ResponseSegment::getResnum)));
+
+        this.responseSegmentsByHeader = byHeader;
+        this.responseSegments = byRef;
     }
 
     /**
@@ -262,21 +476,19 @@ public final class HBCIMsgStatus {
     }
 
     /**
-     * Sucht in den Ergebnis-Daten des Kernels nach der ersten Segment-Nummer mit einem Task-Response.
+     * Sucht in der gesendeten Nachricht nach der ersten Segment-Nummer mit einem Task, auf die
+     * sich die Task-Responses beziehen.
      *
      * @return die Nummer des Segments oder -1, wenn keines gefunden wurde.
      */
     public int findTaskSegment() {
-        HashMap<String, String> result = getData();
-
         // searching for first segment number that belongs to the custom_msg
-        // we look for entries like {"1","CustomMsg.GV*"} and so on (this data is inserted from the HBCIKernelImpl
-        // .rawDoIt() method),
-        // until we find the first segment containing a task
+        // we look for element paths like {"1","CustomMsg.GV*"} and so on (resolved from the
+        // sent message, see getElementPath()), until we find the first segment containing a task
         int segnum = 1;
         while (segnum < 1000) // Wir brauchen ja nicht endlos suchen
         {
-            final String path = result.get(Integer.toString(segnum));
+            final String path = getElementPath(Integer.toString(segnum));
 
             // Wir sind am Ende der Segmente angekommen
             if (path == null)
@@ -292,4 +504,52 @@ public final class HBCIMsgStatus {
 
         return -1;
     }
+
+    /**
+     * Ein Antwortsegment eines Geschäftsvorfalls mit seinen Daten.
+     */
+    public static final class ResponseSegment {
+
+        private final String header;
+        private final int ref;
+        private final int resnum;
+        private final Map<String, String> data = new HashMap<>();
+
+        private ResponseSegment(String header, int ref) {
+            this.header = header;
+            this.ref = ref;
+            this.resnum = header.startsWith(RESPONSE_PREFIX + "_") ?
+                Integer.parseInt(header.substring(RESPONSE_PREFIX.length() + 1, header.indexOf('.'))) : 0;
+        }
+
+        /**
+         * @return der Pfad des Segmentes in {@link HBCIMsgStatus#getData()}.
+         */
+        public String getHeader() {
+            return header;
+        }
+
+        /**
+         * @return die Segmentnummer in der gesendeten Nachricht, auf die sich das
+         * Segment bezieht.
+         */
+        public int getRef() {
+            return ref;
+        }
+
+        /**
+         * @return die laufende Nummer des Antwortsegmentes in der Nachricht.
+         */
+        public int getResnum() {
+            return resnum;
+        }
+
+        /**
+         * @return die Daten des Segmentes; die Schlüssel sind relativ zu {@link #getHeader()}
+         * (z.B. <code>SegHead.ref</code>).
+         */
+        public Map<String, String> getData() {
+            return Collections.unmodifiableMap(data);
+        }
+    }
 }
@@ -108,6 +108,14 @@ public final class HBCIRetVal
      * Wird von der <em>HBCI4Java</em>-Dialog-Engine aufgerufen
      */
     public HBCIRetVal(Map<String, String> result, String header, String segref) {
+        this(result, header, segref, null);
+    }
+
+    /**
+     * Wird von der <em>HBCI4Java</em>-Dialog-Engine aufgerufen; das betroffene Element
+     * wird in der gesendeten Nachricht von <code>status</code> gesucht.
+     */
+    HBCIRetVal(Map<String, String> result, String header, String segref, HBCIMsgStatus status) {
         this.segref = segref;
 
         code = result.get(header + ".code");
@@ -117,7 +125,9 @@ public final class HBCIRetVal
         text = result.get(header + ".text");
 
         element = null;
-        if (segref != null) {
+        if (status != null) {
+            element = status.describeElement(segref, deref);
+        } else if (segref != null) {
             String path = result.get(segref + ((deref != null) ? ":" + deref : ""));
             String value = (path != null) ? result.get("orig_" + path) : null;
             element = path + ((value != null) ? ("=" + value) : "");
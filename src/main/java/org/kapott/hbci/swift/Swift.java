@@ -137,10 +137,31 @@ public class Swift {
     }
 
     public static String decodeUmlauts(String st) {
-        String ret = st.replace('\133', '\304');
-        ret = ret.replace('\134', '\326');
-        ret = ret.replace('\135', '\334');
-        ret = ret.replace('\176', '\337');
-        return ret;
+        // in einem durchlauf; ohne umlaute wird der string unveraendert zurueckgegeben
+        char[] chars = null;
+        for (int i = 0, len = st.length(); i < len; i++) {
+            char decoded = decodeUmlaut(st.charAt(i));
+            if (decoded != st.charAt(i)) {
+                if (chars == null)
+                    chars = st.toCharArray();
+                chars[i] = decoded;
+            }
+        }
+        return (chars != null) ? new String(chars) : st;
+    }
+
+    private static char decodeUmlaut(char ch) {
+        switch (ch) {
+            case '\133':
+                return '\304';
+            case '\134':
+                return '\326';
+            case '\135':
+                return '\334';
+            case '\176':
+                return '\337';
+            default:
+                return ch;
+        }
     }
 }
@@ -23,6 +23,7 @@ package org.kapott.hbci.tools;
 import org.kapott.hbci.comm.CommPinTan;
 import org.kapott.hbci.manager.DocumentFactory;
 import org.kapott.hbci.protocol.Message;
+import org.kapott.hbci.protocol.SyntaxModel;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
@@ -77,9 +78,10 @@ public final class SyntaxCheck {
         fi.close();
 
         Document document = DocumentFactory.createDocument(version);
+        SyntaxModel model = SyntaxModel.compile(document);
 
         if (msgName != null && msgName.length() != 0) {
-            Message msg = new Message(msgName, st.toString(), document, checkSeq, checkValids);
+            Message msg = new Message(msgName, st.toString(), model, checkSeq, checkValids);
             String st2 = msg.toString(0);
 
             if (st2.equals(st.toString())) {
@@ -109,7 +111,7 @@ public final class SyntaxCheck {
                 msgName = ((Element) list.item(i)).getAttribute("id");
                 System.out.println("checking for '" + msgName + "'");
                 try {
-                    msg = new Message(msgName, st.toString(), document, checkSeq, checkValids);
+                    msg = new Message(msgName, st.toString(), model, checkSeq, checkValids);
                 } catch (Exception e) {
                     msg = null;
                 }
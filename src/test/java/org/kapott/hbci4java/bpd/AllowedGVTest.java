@@ -4,13 +4,13 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.kapott.hbci.GV.GVDTAZV;
 import org.kapott.hbci.GV.GVUebSEPA;
-import org.kapott.hbci.manager.DocumentFactory;
 import org.kapott.hbci.manager.HBCIKernel;
+import org.kapott.hbci.manager.SyntaxSpecRegistry;
 import org.kapott.hbci.passport.PinTanPassport;
 import org.kapott.hbci.protocol.Message;
+import org.kapott.hbci.protocol.SyntaxModel;
 import org.kapott.hbci.rewrite.Rewrite;
 import org.kapott.hbci4java.AbstractTest;
-import org.w3c.dom.Document;
 
 import java.lang.reflect.Constructor;
 import java.util.*;
@@ -23,9 +23,9 @@ public class AllowedGVTest extends AbstractTest {
     public void testBpdRaw() throws Exception {
         String data = getFile("bpd/bpd2-raw.txt");
 
-        Document document = DocumentFactory.createDocument("300");
+        SyntaxModel model = SyntaxSpecRegistry.getSpec("300").getSyntaxModel();
 
-        Message message = new Message("SynchRes", data, document,
+        Message message = new Message("SynchRes", data, model,
             Message.CHECK_SEQ, true);
 
         System.out.println();
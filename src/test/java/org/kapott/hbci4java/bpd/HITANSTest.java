@@ -13,12 +13,12 @@ package org.kapott.hbci4java.bpd;
 
 import org.junit.Assert;
 import org.junit.Test;
-import org.kapott.hbci.manager.DocumentFactory;
 import org.kapott.hbci.manager.HBCITwoStepMechanism;
+import org.kapott.hbci.manager.SyntaxSpecRegistry;
 import org.kapott.hbci.passport.PinTanPassport;
 import org.kapott.hbci.protocol.Message;
+import org.kapott.hbci.protocol.SyntaxModel;
 import org.kapott.hbci4java.AbstractTest;
-import org.w3c.dom.Document;
 
 import java.util.HashMap;
 
@@ -39,9 +39,9 @@ public class HITANSTest extends AbstractTest {
      */
     public static HashMap<String, String> getBPD(String file, String version) throws Exception {
         String data = getFile(file);
-        Document document = DocumentFactory.createDocument(version);
+        SyntaxModel model = SyntaxSpecRegistry.getSpec(version).getSyntaxModel();
 
-        Message msg = new Message("DialogInitAnonRes", data, document, Message.CHECK_SEQ, true);
+        Message msg = new Message("DialogInitAnonRes", data, model, Message.CHECK_SEQ, true);
         HashMap<String, String> ht = new HashMap<>();
         msg.extractValues(ht);
 
@@ -0,0 +1,108 @@
+package org.kapott.hbci4java.comm;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.kapott.hbci.comm.PooledHttpTransport;
+import org.kapott.hbci.comm.TransportConfig;
+import org.kapott.hbci.dialog.DialogExecutors;
+import org.kapott.hbci4java.AbstractTest;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lasttest mit vielen gleichzeitigen, simulierten Dialogen gegen eine lokale Stub-Bank.
+ * <p>
+ * Jeder Dialog läuft (wie bei {@link org.kapott.hbci.dialog.AbstractHbciDialog#executeAsync(boolean)})
+ * in einem Thread von {@link DialogExecutors#getDefault()} und schickt nacheinander
+ * die Nachrichten eines typischen Dialogs (Init, Auftrag, HKTAN, Ende) ab. Die
+ * Stub-Bank antwortet jeweils mit einer Verzögerung.
+ * <p>
+ * Läuft nur mit <code>-Dhbci4java.benchmark=true</code>; die Anzahl der Dialoge kann per
+ * <code>-Dhbci4java.benchmark.dialogs=...</code> geändert werden (Default 10000).
+ */
+public class TestDialogLoad extends AbstractTest {
+
+    private static final int ROUND_TRIPS = 4;
+    private static final int BANK_LATENCY_MS = 20;
+
+    @Test
+    public void test001() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("hbci4java.benchmark"));
+        int dialogs = Integer.getInteger("hbci4java.benchmark.dialogs", 10000);
+
+        ExecutorService serverExecutor = Executors.newFixedThreadPool(128);
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4096);
+        server.createContext("/pintan", exchange -> {
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            try {
+                Thread.sleep(BANK_LATENCY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        try {
+            URL url = new URL("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() +
+                "/pintan");
+            PooledHttpTransport transport = new PooledHttpTransport(TransportConfig.builder()
+                .maxConnectionsPerHost(128).build());
+            Executor executor = DialogExecutors.getDefault();
+
+            long start = System.nanoTime();
+            List<CompletableFuture<Integer>> results = new ArrayList<>(dialogs);
+            for (int i = 0; i < dialogs; i++) {
+                String dialogId = Integer.toString(i);
+                results.add(CompletableFuture.supplyAsync(() -> runDialog(transport, url, dialogId), executor));
+            }
+
+            int ok = 0;
+            for (CompletableFuture<Integer> result : results) {
+                ok += result.get(10, TimeUnit.MINUTES);
+            }
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            System.out.println(dialogs + " dialogs (" + ROUND_TRIPS + " round trips each, virtual threads: " +
+                DialogExecutors.isVirtualThreadsAvailable() + ") in " + millis + "ms, " +
+                (dialogs * 1000L / Math.max(1, millis)) + " dialogs/s");
+            Assert.assertEquals(dialogs * ROUND_TRIPS, ok);
+        } finally {
+            server.stop(0);
+            serverExecutor.shutdownNow();
+        }
+    }
+
+    private static int runDialog(PooledHttpTransport transport, URL url, String dialogId) {
+        int ok = 0;
+        for (int i = 0; i < ROUND_TRIPS; i++) {
+            String msg = "dialog " + dialogId + " msg " + i;
+            try (InputStream in = transport.post(url, msg.getBytes(StandardCharsets.ISO_8859_1))) {
+                byte[] response = in.readAllBytes();
+                if (msg.equals(new String(response, StandardCharsets.ISO_8859_1)))
+                    ok++;
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return ok;
+    }
+}
@@ -0,0 +1,92 @@
+package org.kapott.hbci4java.comm;
+
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Assert;
+import org.junit.Test;
+import org.kapott.hbci.callback.AbstractHBCICallback;
+import org.kapott.hbci.comm.CommPinTan;
+import org.kapott.hbci.comm.LoggingMessageTap;
+import org.kapott.hbci.comm.MessageTap;
+import org.kapott.hbci.exceptions.HBCI_Exception;
+import org.kapott.hbci.manager.SyntaxSpecRegistry;
+import org.kapott.hbci.protocol.Message;
+import org.kapott.hbci.rewrite.RewriterPipeline;
+import org.kapott.hbci4java.AbstractTest;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Testet den Mitschnitt der gesendeten und empfangenen Nachrichten.
+ */
+public class TestMessageTap extends AbstractTest {
+
+    /**
+     * Testet das Maskieren von PIN und TAN.
+     */
+    @Test
+    public void test001() throws Exception {
+        Assert.assertEquals("HNHBS:5:1+1'", LoggingMessageTap.mask("HNHBS:5:1+1'"));
+        Assert.assertEquals("HNSHA:4:2+123++***'HNHBS:5:1+1'",
+            LoggingMessageTap.mask("HNSHA:4:2+123++12345'HNHBS:5:1+1'"));
+        Assert.assertEquals("HNSHA:4:2+123++***:***'", LoggingMessageTap.mask("HNSHA:4:2+123++ab?'c:987654'"));
+
+        // klartext in den daten der "verschluesselten" nachricht
+        Assert.assertEquals("HNVSD:999:1+@31@HNSHA:4:2+123++***'HNHBS:5:1+1'",
+            LoggingMessageTap.mask("HNVSD:999:1+@31@HNSHA:4:2+123++12345'HNHBS:5:1+1'"));
+    }
+
+    /**
+     * Testet, dass der Tap jede Nachricht einmal bekommt, und dass ein abgeschalteter
+     * Tap nicht aufgerufen wird.
+     */
+    @Test
+    public void test002() throws Exception {
+        Message msg = new Message("DialogEndAnon", SyntaxSpecRegistry.getSpec("300").getSyntaxModel());
+        msg.rawSet("DialogEndS.dialogid", "abc");
+        msg.rawSet("MsgHead.dialogid", "0");
+        msg.rawSet("MsgHead.msgnum", "1");
+        msg.rawSet("MsgTail.msgnum", "1");
+        msg.complete();
+
+        byte[] response = "HNHBK:1:3+000000000052+300+abc+1'HNHBS:2:1+1'".getBytes(StandardCharsets.ISO_8859_1);
+
+        for (boolean enabled : new boolean[]{true, false}) {
+            List<MessageTap.Direction> directions = new ArrayList<>();
+            List<byte[]> messages = new ArrayList<>();
+            MessageTap tap = new MessageTap() {
+                @Override
+                public boolean isEnabled() {
+                    return enabled;
+                }
+
+                @Override
+                public void tap(Direction direction, byte[] message) {
+                    directions.add(direction);
+                    messages.add(message);
+                }
+            };
+
+            CommPinTan comm = new CommPinTan("http://localhost/pintan", new AbstractHBCICallback())
+                .withTransport((url, request, proxy) -> new ByteArrayInputStream(Base64.encodeBase64(response)))
+                .withMessageTap(tap);
+            try {
+                comm.pingpong(msg, "DialogEndAnon", RewriterPipeline.EMPTY, null);
+            } catch (HBCI_Exception e) {
+                // die antwort muss hier nicht geparst werden koennen
+            }
+
+            if (enabled) {
+                Assert.assertEquals(2, directions.size());
+                Assert.assertEquals(MessageTap.Direction.SEND, directions.get(0));
+                Assert.assertArrayEquals(msg.toByteArray(), messages.get(0));
+                Assert.assertEquals(MessageTap.Direction.RECEIVE, directions.get(1));
+                Assert.assertArrayEquals(response, messages.get(1));
+            } else {
+                Assert.assertTrue(directions.isEmpty());
+            }
+        }
+    }
+}
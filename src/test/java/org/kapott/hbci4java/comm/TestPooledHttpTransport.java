@@ -0,0 +1,322 @@
+package org.kapott.hbci4java.comm;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kapott.hbci.comm.HttpProxy;
+import org.kapott.hbci.comm.HttpStatusException;
+import org.kapott.hbci.comm.PooledHttpTransport;
+import org.kapott.hbci.comm.TransportConfig;
+import org.kapott.hbci4java.AbstractTest;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Testet den Transport gegen einen lokalen HTTP-Server.
+ */
+public class TestPooledHttpTransport extends AbstractTest {
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+    private final Set<String> requestHosts = ConcurrentHashMap.newKeySet();
+
+    @Before
+    public void start() throws Exception {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/pintan", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            requestHosts.add(String.valueOf(exchange.getRequestURI().getHost()));
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/slow", exchange -> {
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            try {
+                byte[] body = exchange.getRequestBody().readAllBytes();
+                Thread.sleep(50);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                concurrent.decrementAndGet();
+            }
+        });
+        server.createContext("/error", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        // antwortet wie ein proxy, der eine authentifizierung verlangt
+        server.createContext("/proxyauth", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            String auth = exchange.getRequestHeaders().getFirst("Proxy-Authorization");
+            if (auth == null) {
+                exchange.getResponseHeaders().add("Proxy-Authenticate", "Basic realm=\"proxy\"");
+                exchange.sendResponseHeaders(407, -1);
+                exchange.close();
+                return;
+            }
+            byte[] body = auth.getBytes(StandardCharsets.ISO_8859_1);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        // schickt nur den anfang der antwort und bleibt dann haengen
+        server.createContext("/stall", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.sendResponseHeaders(200, 100);
+            OutputStream out = exchange.getResponseBody();
+            out.write(new byte[10]);
+            out.flush();
+            try {
+                Thread.sleep(30000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+        });
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+    }
+
+    @After
+    public void stop() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    /**
+     * Testet, dass alle Nachrichten eines Dialogs über die gleiche Verbindung gehen.
+     */
+    @Test
+    public void test001() throws Exception {
+        PooledHttpTransport transport = new PooledHttpTransport(TransportConfig.DEFAULT);
+        URL url = url("/pintan");
+
+        for (int i = 0; i < 5; i++) {
+            byte[] response = read(transport.post(url, ("msg" + i).getBytes(StandardCharsets.ISO_8859_1)));
+            Assert.assertEquals("msg" + i, new String(response, StandardCharsets.ISO_8859_1));
+        }
+        Assert.assertEquals(1, clientPorts.size());
+    }
+
+    /**
+     * Testet, dass HTTP-Fehlercodes als {@link HttpStatusException} gemeldet werden.
+     */
+    @Test
+    public void test002() throws Exception {
+        PooledHttpTransport transport = new PooledHttpTransport(TransportConfig.DEFAULT);
+        try {
+            transport.post(url("/error"), new byte[]{1});
+            Assert.fail("HttpStatusException expected");
+        } catch (HttpStatusException e) {
+            Assert.assertEquals(500, e.getStatusCode());
+        }
+    }
+
+    /**
+     * Testet, dass nicht mehr als maxHosts Bank-Server gehalten werden.
+     */
+    @Test
+    public void test003() throws Exception {
+        HttpServer other = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        other.createContext("/pintan", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        other.start();
+
+        try {
+            PooledHttpTransport transport = new PooledHttpTransport(TransportConfig.builder().maxHosts(1).build());
+            read(transport.post(url("/pintan"), new byte[]{1}));
+            Assert.assertEquals(1, transport.getHostCount());
+            read(transport.post(new URL("http://" + other.getAddress().getHostString() + ":" +
+                other.getAddress().getPort() + "/pintan"), new byte[]{1}));
+            Assert.assertEquals(1, transport.getHostCount());
+        } finally {
+            other.stop(0);
+        }
+    }
+
+    /**
+     * Testet, dass asynchrone Requests über maxPerHost hinaus warten, statt weitere
+     * Verbindungen zu öffnen.
+     */
+    @Test
+    public void test004() throws Exception {
+        PooledHttpTransport transport = new PooledHttpTransport(TransportConfig.builder()
+            .maxConnectionsPerHost(2).build());
+        URL url = url("/slow");
+
+        List<CompletableFuture<InputStream>> futures = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            futures.add(transport.postAsync(url, ("msg" + i).getBytes(StandardCharsets.ISO_8859_1)));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            Assert.assertEquals("msg" + i, new String(read(futures.get(i).get(10, TimeUnit.SECONDS)),
+                StandardCharsets.ISO_8859_1));
+        }
+        Assert.assertTrue(maxConcurrent.get() <= 2);
+    }
+
+    /**
+     * Testet, dass Requests über den beim Aufruf angegebenen Proxy gehen und
+     * pro Proxy ein eigener Client gehalten wird.
+     */
+    @Test
+    public void test005() throws Exception {
+        PooledHttpTransport transport = new PooledHttpTransport(TransportConfig.DEFAULT);
+        URL url = new URL("http://bank.invalid/pintan");
+        HttpProxy proxy = new HttpProxy(server.getAddress().getHostString(), server.getAddress().getPort(), null,
+            null);
+
+        byte[] response = read(transport.post(url, "msg".getBytes(StandardCharsets.ISO_8859_1), proxy));
+        Assert.assertEquals("msg", new String(response, StandardCharsets.ISO_8859_1));
+        Assert.assertEquals(Set.of("bank.invalid"), requestHosts);
+        Assert.assertEquals(1, transport.getHostCount());
+
+        HttpProxy other = new HttpProxy(proxy.getHost(), proxy.getPort(), "user", "secret");
+        read(transport.post(url, "msg".getBytes(StandardCharsets.ISO_8859_1), other));
+        Assert.assertEquals(2, transport.getHostCount());
+        Assert.assertNull(System.getProperty("http.proxyHost"));
+    }
+
+    /**
+     * Testet, dass die Proxy-Zugangsdaten nur an den Proxy gehen.
+     */
+    @Test
+    public void test006() throws Exception {
+        PooledHttpTransport transport = new PooledHttpTransport(TransportConfig.DEFAULT);
+        HttpProxy proxy = new HttpProxy(server.getAddress().getHostString(), server.getAddress().getPort(), "user",
+            "secret");
+
+        URL url = new URL("http://bank.invalid/proxyauth");
+        String expected = "Basic " +
+            Base64.getEncoder().encodeToString("user:secret".getBytes(StandardCharsets.ISO_8859_1));
+
+        byte[] response = read(transport.post(url, new byte[]{1}, proxy));
+        Assert.assertEquals(expected, new String(response, StandardCharsets.ISO_8859_1));
+
+        // ohne zugangsdaten bleibt es beim 407
+        try {
+            transport.post(url, new byte[]{1}, new HttpProxy(proxy.getHost(), proxy.getPort(), null, null));
+            Assert.fail("HttpStatusException expected");
+        } catch (HttpStatusException e) {
+            Assert.assertEquals(407, e.getStatusCode());
+        }
+    }
+
+    /**
+     * Testet, dass ein Request bis zum Schließen seiner Antwort als unterwegs zählt.
+     */
+    @Test
+    public void test007() throws Exception {
+        PooledHttpTransport transport = new PooledHttpTransport(TransportConfig.builder()
+            .maxConnectionsPerHost(1).build());
+        URL url = url("/pintan");
+
+        InputStream first = transport.post(url, "msg0".getBytes(StandardCharsets.ISO_8859_1));
+        CompletableFuture<InputStream> second = transport.postAsync(url,
+            "msg1".getBytes(StandardCharsets.ISO_8859_1));
+        Thread.sleep(100);
+        Assert.assertFalse(second.isDone());
+
+        first.close();
+        Assert.assertEquals("msg1", new String(read(second.get(10, TimeUnit.SECONDS)), StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Testet, dass der Read-Timeout auch gilt, wenn der Bank-Server mitten in der
+     * Antwort hängen bleibt.
+     */
+    @Test(timeout = 20000)
+    public void test008() throws Exception {
+        PooledHttpTransport transport = new PooledHttpTransport(TransportConfig.builder()
+            .readTimeout(Duration.ofSeconds(1)).build());
+
+        InputStream response = transport.post(url("/stall"), new byte[]{1});
+        try {
+            read(response);
+            Assert.fail("HttpTimeoutException expected");
+        } catch (HttpTimeoutException e) {
+            // erwartet
+        }
+    }
+
+    /**
+     * Testet das Empfangen der vollständigen Antwort ohne Stream, inkl. Fehlercodes und
+     * Read-Timeout.
+     */
+    @Test(timeout = 20000)
+    public void test009() throws Exception {
+        PooledHttpTransport transport = new PooledHttpTransport(TransportConfig.builder()
+            .maxConnectionsPerHost(1).readTimeout(Duration.ofSeconds(1)).build());
+
+        for (int i = 0; i < 3; i++) {
+            byte[] response = transport.postAsyncFully(url("/pintan"),
+                ("msg" + i).getBytes(StandardCharsets.ISO_8859_1), null).get(10, TimeUnit.SECONDS);
+            Assert.assertEquals("msg" + i, new String(response, StandardCharsets.ISO_8859_1));
+        }
+
+        try {
+            transport.postAsyncFully(url("/error"), new byte[]{1}, null).get(10, TimeUnit.SECONDS);
+            Assert.fail("HttpStatusException expected");
+        } catch (ExecutionException e) {
+            Assert.assertEquals(500, ((HttpStatusException) e.getCause()).getStatusCode());
+        }
+
+        try {
+            transport.postAsyncFully(url("/stall"), new byte[]{1}, null).get(10, TimeUnit.SECONDS);
+            Assert.fail("HttpTimeoutException expected");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof HttpTimeoutException);
+        }
+
+        // alle requests wurden freigegeben, sonst wuerde dieser warten
+        byte[] response = transport.postAsyncFully(url("/pintan"), "msg".getBytes(StandardCharsets.ISO_8859_1),
+            null).get(10, TimeUnit.SECONDS);
+        Assert.assertEquals("msg", new String(response, StandardCharsets.ISO_8859_1));
+    }
+
+    private static byte[] read(InputStream response) throws Exception {
+        try (InputStream in = response) {
+            return in.readAllBytes();
+        }
+    }
+
+    private URL url(String path) throws Exception {
+        return new URL("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + path);
+    }
+}
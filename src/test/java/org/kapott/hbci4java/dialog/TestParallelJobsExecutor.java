@@ -0,0 +1,254 @@
+package org.kapott.hbci4java.dialog;
+
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Assert;
+import org.junit.Test;
+import org.kapott.hbci.GV.AbstractHBCIJob;
+import org.kapott.hbci.GV.GVSaldoReq;
+import org.kapott.hbci.GV.GVUebSEPA;
+import org.kapott.hbci.GV_Result.GVRSaldoReq;
+import org.kapott.hbci.callback.AbstractHBCICallback;
+import org.kapott.hbci.comm.HttpProxy;
+import org.kapott.hbci.comm.Transport;
+import org.kapott.hbci.dialog.ParallelJobsExecutor;
+import org.kapott.hbci.exceptions.HBCI_Exception;
+import org.kapott.hbci.passport.PinTanPassport;
+import org.kapott.hbci.status.HBCIExecStatus;
+import org.kapott.hbci.structures.Konto;
+import org.kapott.hbci4java.AbstractTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.kapott.hbci4java.bpd.HITANSTest.getBPD;
+
+/**
+ * Testet parallele Dialoge mit demselben Passport.
+ */
+public class TestParallelJobsExecutor extends AbstractTest {
+
+    /**
+     * Testet, dass Aufträge mit TAN abgelehnt werden, bevor ein Dialog startet.
+     */
+    @Test
+    public void test001() throws Exception {
+        PinTanPassport passport = new PinTanPassport("300", new HashMap<>(), null, null);
+        passport.setBPD(getBPD("bpd/bpd2-formatted.txt", "300"));
+
+        ParallelJobsExecutor executor = new ParallelJobsExecutor(passport, 4);
+        try {
+            executor.executeAsync(Arrays.asList(new GVSaldoReq(passport), new GVUebSEPA(passport)));
+            Assert.fail("job with TAN accepted");
+        } catch (HBCI_Exception e) {
+            Assert.assertTrue(e.getMessage().contains("TAN"));
+        }
+    }
+
+    /**
+     * Testet, dass parallele Dialoge nie dieselbe Signatur-ID bekommen.
+     */
+    @Test
+    public void test002() throws Exception {
+        PinTanPassport passport = new PinTanPassport("300", new HashMap<>(), null, null);
+        Set<Long> sigIds = ConcurrentHashMap.newKeySet();
+
+        int threads = 8;
+        int perThread = 1000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < threads; i++) {
+            pool.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int j = 0; j < perThread; j++) {
+                    sigIds.add(passport.nextSigId());
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
+
+        Assert.assertEquals(threads * perThread, sigIds.size());
+        Assert.assertEquals(Long.valueOf(threads * perThread + 1), passport.getSigId());
+    }
+
+    /**
+     * Testet das Verteilen der Aufträge auf die Dialoge und das Zusammenführen der
+     * Ergebnisse gegen eine simulierte Bank.
+     */
+    @Test(timeout = 60000)
+    public void test003() throws Exception {
+        StubBank.reset(0);
+        PinTanPassport passport = createPassport("https://test003.invalid/pintan", "3");
+        List<AbstractHBCIJob> jobs = createJobs(passport, 6);
+
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+        try {
+            HBCIExecStatus status = new ParallelJobsExecutor(passport, 3).withExecutor(pool)
+                .executeAsync(jobs).get(30, TimeUnit.SECONDS);
+
+            Assert.assertTrue(status.toString(), status.isOK());
+            // je dialog eine init-nachricht und eine nachricht pro auftrag
+            Assert.assertEquals(9, status.getMsgStatusList().size());
+            Assert.assertEquals(3, StubBank.dialogs.get());
+            Assert.assertEquals(0, StubBank.active.get());
+        } finally {
+            pool.shutdown();
+        }
+
+        // reihum verteilt: auftrag i und i + 3 laufen im selben dialog
+        Set<String> dialogIds = new HashSet<>();
+        for (int i = 0; i < jobs.size(); i++) {
+            GVRSaldoReq result = (GVRSaldoReq) jobs.get(i).getJobResult();
+            Assert.assertTrue(result.isOK());
+            Assert.assertEquals(1, result.getEntries().size());
+            Assert.assertEquals(((GVRSaldoReq) jobs.get(i % 3).getJobResult()).getDialogId(), result.getDialogId());
+            dialogIds.add(result.getDialogId());
+        }
+        Assert.assertEquals(3, dialogIds.size());
+    }
+
+    /**
+     * Testet, dass nie mehr Dialoge gleichzeitig laufen als erlaubt, auch wenn Passports
+     * für denselben Bank-Server andere Grenzen haben, und dass ungültige Werte ignoriert
+     * werden.
+     */
+    @Test(timeout = 60000)
+    public void test004() throws Exception {
+        String[][] runs = {{"3", "3"}, {"1", "1"}, {"0", "2"}, {"abc", "2"}};
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            for (String[] run : runs) {
+                StubBank.reset(100);
+                PinTanPassport passport = createPassport("https://test004.invalid/pintan", run[0]);
+
+                HBCIExecStatus status = new ParallelJobsExecutor(passport, 4).withExecutor(pool)
+                    .executeAsync(createJobs(passport, 8)).get(30, TimeUnit.SECONDS);
+
+                Assert.assertTrue(status.toString(), status.isOK());
+                Assert.assertEquals(4, StubBank.dialogs.get());
+                Assert.assertTrue(run[0] + ": " + StubBank.maxActive.get(),
+                    StubBank.maxActive.get() <= Integer.parseInt(run[1]));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static PinTanPassport createPassport(String host, String maxParallelDialogs) throws Exception {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("client.connection.transport", StubBank.class.getName());
+        properties.put("client.connection.maxParallelDialogs", maxParallelDialogs);
+        properties.put("client.passport.country", "DE");
+        properties.put("client.passport.blz", "25040090");
+        properties.put("client.passport.customerId", "kunde");
+
+        PinTanPassport passport = new PinTanPassport("300", properties, new AbstractHBCICallback(), null);
+        passport.setHost(host);
+        passport.setBPD(getBPD("bpd/bpd2-formatted.txt", "300"));
+        passport.setSysId("4711");
+        passport.setPIN("12345");
+        passport.setUPD(new HashMap<>());
+        return passport;
+    }
+
+    private static List<AbstractHBCIJob> createJobs(PinTanPassport passport, int count) {
+        List<AbstractHBCIJob> jobs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            GVSaldoReq job = new GVSaldoReq(passport);
+            job.setParam("my", new Konto("DE", "25040090", String.valueOf(1000000000L + i)));
+            jobs.add(job);
+        }
+        return jobs;
+    }
+
+    /**
+     * Simulierte Bank, beantwortet Dialog-Initialisierung, Saldenabfragen und Dialog-Ende
+     * und zählt die gleichzeitig laufenden Dialoge.
+     */
+    public static class StubBank implements Transport {
+
+        private static final Pattern HEAD = Pattern.compile("HNHBK:1:3\\+\\d{12}\\+300\\+([^+]*)\\+(\\d+)'");
+        private static final Pattern SALDO = Pattern.compile("HKSAL:(\\d+):\\d+\\+(\\d+)");
+
+        static final AtomicInteger dialogs = new AtomicInteger();
+        static final AtomicInteger active = new AtomicInteger();
+        static final AtomicInteger maxActive = new AtomicInteger();
+        static volatile long delay;
+
+        static void reset(long jobDelay) {
+            dialogs.set(0);
+            active.set(0);
+            maxActive.set(0);
+            delay = jobDelay;
+        }
+
+        @Override
+        public InputStream post(URL url, byte[] request, HttpProxy proxy) throws IOException {
+            String msg = new String(Base64.decodeBase64(request), StandardCharsets.ISO_8859_1);
+            Matcher head = HEAD.matcher(msg);
+            if (!head.find())
+                throw new IOException("no message head in " + msg);
+
+            String dialogId = head.group(1);
+            String msgnum = head.group(2);
+            StringBuilder body = new StringBuilder("HIRMG:2:2+0010::Nachricht entgegengenommen.'");
+            if (msg.contains("HKIDN:")) {
+                dialogId = "dialog" + dialogs.incrementAndGet();
+                maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            } else if (msg.contains("HKEND:")) {
+                active.decrementAndGet();
+            } else {
+                sleep();
+                Matcher saldo = SALDO.matcher(msg);
+                int seg = 3;
+                while (saldo.find()) {
+                    body.append("HIRMS:").append(seg++).append(":2:").append(saldo.group(1))
+                        .append("+0020::Auftrag ausgeführt.'");
+                    body.append("HISAL:").append(seg++).append(":6:").append(saldo.group(1)).append('+')
+                        .append(saldo.group(2)).append("::280:25040090+Girokonto+EUR+C:1500,:EUR:20261017'");
+                }
+            }
+
+            // "verschluesselt" wie bei PIN/TAN: die daten stehen im klartext in HNVSD,
+            // der verschluesselungskopf wird aus der anfrage uebernommen
+            String tail = "HNHBS:" + (body.toString().split("'").length + 2) + ":1+" + msgnum + "'";
+            String rest = "+300+" + dialogId + "+" + msgnum + "+" + dialogId + ":" + msgnum + "'" +
+                msg.substring(msg.indexOf("HNVSK:"), msg.indexOf("HNVSD:")) +
+                "HNVSD:999:1+@" + body.length() + "@" + body + "'" + tail;
+            String response = "HNHBK:1:3+" + String.format("%012d", 22 + rest.length()) + rest;
+            return new ByteArrayInputStream(Base64.encodeBase64(response.getBytes(StandardCharsets.ISO_8859_1)));
+        }
+
+        private static void sleep() {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package org.kapott.hbci4java.manager;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kapott.hbci.GV.AbstractHBCIJob;
+import org.kapott.hbci.GV.GVKUmsAll;
+import org.kapott.hbci.GV.GVSaldoReq;
+import org.kapott.hbci.GV.GVUebSEPA;
+import org.kapott.hbci.manager.HBCIMessage;
+import org.kapott.hbci.manager.HBCIMessagePlanner;
+import org.kapott.hbci.passport.PinTanPassport;
+import org.kapott.hbci4java.AbstractTest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.kapott.hbci4java.bpd.HITANSTest.getBPD;
+
+/**
+ * Testet das Verteilen von Aufträgen auf Nachrichten mit {@link HBCIMessagePlanner}.
+ */
+public class TestHBCIMessagePlanner extends AbstractTest {
+
+    /**
+     * Testet, dass die Grenzen aus BPD und Passport eingehalten werden und Aufträge mit
+     * TAN jeweils eine eigene Nachricht bekommen.
+     */
+    @Test
+    public void test001() throws Exception {
+        HashMap<String, String> bpd = getBPD("bpd/bpd2-formatted.txt", "300");
+        bpd.put("BPA.numgva", "1");
+
+        Map<String, String> properties = new HashMap<>();
+        properties.put("client.passport.PinTan.maxGVSegsPerMsg", "3");
+        PinTanPassport passport = new PinTanPassport("300", properties, null, null);
+        passport.setBPD(bpd);
+
+        // S S K S S S K S S U
+        List<AbstractHBCIJob> jobs = new ArrayList<>();
+        for (char type : "SSKSSSKSSU".toCharArray()) {
+            jobs.add(type == 'S' ? new GVSaldoReq(passport) : type == 'K' ? new GVKUmsAll(passport) :
+                new GVUebSEPA(passport));
+        }
+
+        HBCIMessagePlanner.Plan plan = new HBCIMessagePlanner(passport).plan(jobs);
+        Assert.assertEquals(10, plan.getJobCount());
+        Assert.assertEquals(5, plan.getMessageCount());
+        Assert.assertEquals(5, plan.getRoundTripsSaved());
+
+        List<HBCIMessage> messages = plan.getMessages();
+        Assert.assertEquals(3, messages.get(0).getTaskCount());
+        Assert.assertEquals(2, messages.get(1).getTaskCount());
+        Assert.assertNotNull(messages.get(1).findTask("HKKAZ"));
+        Assert.assertEquals(3, messages.get(2).getTaskCount());
+        Assert.assertEquals(1, messages.get(3).getTaskCount());
+        Assert.assertSame(jobs.get(9), messages.get(4).getTasks().get(0));
+        Assert.assertEquals(10, plan.toQueue().getTaskCount());
+
+        // ohne die Passport-Property nur ein Auftrag je Nachricht
+        passport = new PinTanPassport("300", new HashMap<>(), null, null);
+        passport.setBPD(bpd);
+        plan = new HBCIMessagePlanner(passport).plan(jobs);
+        Assert.assertEquals(10, plan.getMessageCount());
+        Assert.assertEquals(0, plan.getRoundTripsSaved());
+    }
+
+    /**
+     * Testet, dass ungültige Werte für die Passport-Property ignoriert werden.
+     */
+    @Test
+    public void test002() throws Exception {
+        String[][] values = {{"3", "3"}, {" 2 ", "2"}, {"0", "1"}, {"-2", "1"}, {"abc", "1"}, {"", "1"}};
+        for (String[] value : values) {
+            Map<String, String> properties = new HashMap<>();
+            properties.put("client.passport.PinTan.maxGVSegsPerMsg", value[0]);
+            PinTanPassport passport = new PinTanPassport("300", properties, null, null);
+            Assert.assertEquals(value[0], Integer.parseInt(value[1]), passport.getMaxGVSegsPerMsg());
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package org.kapott.hbci4java.manager;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kapott.hbci.manager.SyntaxSpec;
+import org.kapott.hbci.manager.SyntaxSpecRegistry;
+import org.kapott.hbci4java.AbstractTest;
+
+/**
+ * Testet den prozessweiten Cache der Syntax-Spezifikationen.
+ */
+public class TestSyntaxSpecRegistry extends AbstractTest {
+
+    /**
+     * Testet, dass eine HBCI-Version nur einmal geladen wird.
+     */
+    @Test
+    public void test001() {
+        SyntaxSpec spec = SyntaxSpecRegistry.getSpec("300");
+        Assert.assertSame(spec, SyntaxSpecRegistry.getSpec("300"));
+        Assert.assertNotNull(spec.getDocument().getElementById("DialogInit"));
+        Assert.assertTrue(spec.getLowlevelGVs().containsKey("KUmsZeit"));
+    }
+
+    /**
+     * Testet das Neuladen einer Spezifikation.
+     */
+    @Test
+    public void test002() {
+        SyntaxSpec spec = SyntaxSpecRegistry.getSpec("300");
+        SyntaxSpec reloaded = SyntaxSpecRegistry.reload("300");
+        Assert.assertNotSame(spec, reloaded);
+        Assert.assertSame(reloaded, SyntaxSpecRegistry.getSpec("300"));
+
+        SyntaxSpecRegistry.evict("300");
+        Assert.assertNotSame(reloaded, SyntaxSpecRegistry.getSpec("300"));
+    }
+}
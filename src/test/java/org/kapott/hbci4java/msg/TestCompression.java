@@ -0,0 +1,122 @@
+package org.kapott.hbci4java.msg;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kapott.hbci.manager.MessageFactory;
+import org.kapott.hbci.manager.SyntaxSpecRegistry;
+import org.kapott.hbci.passport.PinTanPassport;
+import org.kapott.hbci.protocol.Message;
+import org.kapott.hbci.protocol.SyntaxModel;
+import org.kapott.hbci.security.CompressionFunction;
+import org.kapott.hbci.security.Crypt;
+import org.kapott.hbci4java.AbstractTest;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Testet die Komprimierung der verschlüsselten Daten.
+ */
+public class TestCompression extends AbstractTest {
+
+    /**
+     * Testet, dass alle Komprimierungsfunktionen die Daten unverändert wiederherstellen.
+     */
+    @Test
+    public void test001() throws Exception {
+        byte[] data = new byte[100000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ((i % 7 == 0) ? i : 'a' + (i % 26));
+        }
+
+        for (CompressionFunction function : CompressionFunction.values()) {
+            byte[] compressed = function.compress(data);
+            if (function != CompressionFunction.NONE)
+                Assert.assertTrue(function.name(), compressed.length < data.length / 2);
+            Assert.assertArrayEquals(function.name(), data, function.decompress(compressed));
+        }
+    }
+
+    /**
+     * Testet, dass bei Deflate auch zlib-Daten und Daten ohne Header gelesen werden.
+     */
+    @Test
+    public void test002() throws Exception {
+        byte[] data = "HNHBK:1:3+000000000123+300+0+1'".getBytes(StandardCharsets.ISO_8859_1);
+
+        for (boolean nowrap : new boolean[]{false, true}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (DeflaterOutputStream deflater = new DeflaterOutputStream(out,
+                new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap))) {
+                deflater.write(data);
+            }
+            Assert.assertArrayEquals(data, CompressionFunction.GZIP.decompress(out.toByteArray()));
+        }
+    }
+
+    /**
+     * Testet die Auswahl der Komprimierungsfunktion anhand der BPD.
+     */
+    @Test
+    public void test003() throws Exception {
+        Map<String, String> bpd = new HashMap<>();
+        Assert.assertEquals(CompressionFunction.NONE, CompressionFunction.negotiate(null));
+        Assert.assertEquals(CompressionFunction.NONE, CompressionFunction.negotiate(bpd));
+
+        bpd.put("CompMethod.SuppCompMethods.func", "1");
+        Assert.assertEquals(CompressionFunction.NONE, CompressionFunction.negotiate(bpd));
+
+        bpd.put("CompMethod.SuppCompMethods_2.func", "5");
+        Assert.assertEquals(CompressionFunction.ZIP, CompressionFunction.negotiate(bpd));
+
+        bpd.put("CompMethod.SuppCompMethods_3.func", "6");
+        Assert.assertEquals(CompressionFunction.GZIP, CompressionFunction.negotiate(bpd));
+    }
+
+    /**
+     * Testet das Verschlüsseln mit Komprimierung und das Entschlüsseln der vom
+     * Server so empfangenen Nachricht.
+     */
+    @Test
+    public void test004() throws Exception {
+        SyntaxModel model = SyntaxSpecRegistry.getSpec("300").getSyntaxModel();
+        Message msg = MessageFactory.createMessage("DialogEnd", model);
+        msg.rawSet("DialogEndS.dialogid", "4711");
+        msg.rawSet("MsgHead.dialogid", "4711");
+        msg.rawSet("MsgHead.msgnum", "2");
+        msg.rawSet("MsgTail.msgnum", "2");
+        msg.complete();
+        msg.autoSetMsgSize();
+        byte[] plain = msg.getPlainString();
+        String segments = new String(plain, 0, plain.length - plain[plain.length - 1], StandardCharsets.ISO_8859_1);
+
+        for (String compfunc : new String[]{"0", "5", "6"}) {
+            Map<String, String> bpd = new HashMap<>();
+            bpd.put("CompMethod.SuppCompMethods.func", compfunc);
+
+            Map<String, String> properties = new HashMap<>();
+            properties.put(Crypt.PROPERTY_COMPRESSION, "true");
+            PinTanPassport passport = new PinTanPassport("300", properties, null, null);
+            passport.setBPD(bpd);
+            passport.setCountry("DE");
+            passport.setBLZ("12345678");
+            passport.setUserId("test");
+
+            Message crypted = new Crypt(passport).cryptIt(msg);
+            Assert.assertEquals(compfunc, crypted.getValueOfDE("Crypted.CryptHead.compfunc"));
+
+            // so kommt die nachricht beim server an
+            Message received = new Message("Crypted", crypted.toString(0), model, Message.DONT_CHECK_SEQ, true);
+            String decrypted = new Crypt(passport).decryptIt(received);
+            Assert.assertTrue(compfunc, decrypted.contains(segments));
+
+            // ohne die Passport-Property wird nicht komprimiert
+            passport.getProperties().remove(Crypt.PROPERTY_COMPRESSION);
+            Assert.assertEquals("0", new Crypt(passport).cryptIt(msg).getValueOfDE("Crypted.CryptHead.compfunc"));
+        }
+    }
+}
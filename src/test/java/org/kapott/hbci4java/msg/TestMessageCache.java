@@ -0,0 +1,90 @@
+package org.kapott.hbci4java.msg;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kapott.hbci.manager.SyntaxSpecRegistry;
+import org.kapott.hbci.protocol.Message;
+import org.kapott.hbci.protocol.SyntaxElement;
+import org.kapott.hbci4java.AbstractTest;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Testet das Zwischenspeichern der Nachrichten-Darstellung.
+ */
+public class TestMessageCache extends AbstractTest {
+
+    /**
+     * Testet, dass die Darstellung nach einer Änderung neu erzeugt und die
+     * Nachrichtengröße korrekt gesetzt wird.
+     */
+    @Test
+    public void test001() {
+        Message msg = new Message("DialogEndAnon", SyntaxSpecRegistry.getSpec("300").getSyntaxModel());
+        msg.rawSet("DialogEndS.dialogid", "abc");
+        msg.rawSet("MsgHead.dialogid", "0");
+        msg.rawSet("MsgHead.msgnum", "1");
+        msg.rawSet("MsgTail.msgnum", "1");
+        msg.complete();
+
+        String s = msg.toString(0);
+        Assert.assertSame(s, msg.toString(0));
+        Assert.assertEquals("HNHBK:1:3+000000000057+300+0+1'HKEND:2:1+abc'HNHBS:3:1+1'", s);
+
+        msg.propagateValue("DialogEndAnon.MsgHead.msgnum", "22", SyntaxElement.DONT_TRY_TO_CREATE,
+            SyntaxElement.ALLOW_OVERWRITE);
+        Assert.assertEquals("HNHBK:1:3+000000000057+300+0+22'HKEND:2:1+abc'HNHBS:3:1+1'", msg.toString(0));
+
+        msg.autoSetMsgSize();
+        Assert.assertEquals("HNHBK:1:3+000000000058+300+0+22'HKEND:2:1+abc'HNHBS:3:1+1'", msg.toString(0));
+        Assert.assertEquals(58, msg.toByteArray().length);
+        Assert.assertEquals("000000000058", msg.getValueOfDE("DialogEndAnon.MsgHead.msgsize"));
+    }
+
+    /**
+     * Testet, dass nach dem Ändern eines Wertes in einer geparsten Nachricht die
+     * Positionen der nachfolgenden Elemente zur neuen Darstellung passen.
+     */
+    @Test
+    public void test002() {
+        String st = "HNHBK:1:3+000000000057+300+0+1'HKEND:2:1+abc'HNHBS:3:1+1'";
+        Message msg = new Message("DialogEndAnon", st, SyntaxSpecRegistry.getSpec("300").getSyntaxModel(),
+            Message.CHECK_SEQ, true);
+        Assert.assertEquals(st, msg.toString(0));
+
+        msg.patchValue("DialogEndAnon.DialogEndS.dialogid", "abcdef");
+        String patched = msg.toString(0);
+        Assert.assertEquals("HNHBK:1:3+000000000057+300+0+1'HKEND:2:1+abcdef'HNHBS:3:1+1'", patched);
+
+        SyntaxElement dialogid = msg.getElement("DialogEndAnon.DialogEndS.dialogid");
+        Assert.assertEquals(st.indexOf("+abc"), dialogid.getPosInMsg());
+        SyntaxElement msgnum = msg.getElement("DialogEndAnon.MsgTail.msgnum");
+        Assert.assertEquals(patched.lastIndexOf("+1'"), msgnum.getPosInMsg());
+    }
+
+    /**
+     * Testet, dass ein bereits herausgegebenes Byte-Array nachträglich nicht mehr
+     * geändert wird und Umlaute als ISO-8859-1 geschrieben werden.
+     */
+    @Test
+    public void test003() {
+        Message msg = new Message("DialogEndAnon", SyntaxSpecRegistry.getSpec("300").getSyntaxModel());
+        msg.rawSet("DialogEndS.dialogid", "\u00e4bc");
+        msg.rawSet("MsgHead.dialogid", "0");
+        msg.rawSet("MsgHead.msgnum", "1");
+        msg.rawSet("MsgTail.msgnum", "1");
+        msg.complete();
+
+        msg.propagateValue("DialogEndAnon.MsgHead.msgnum", "22", SyntaxElement.DONT_TRY_TO_CREATE,
+            SyntaxElement.ALLOW_OVERWRITE);
+        byte[] before = msg.toByteArray();
+        msg.autoSetMsgSize();
+
+        Assert.assertEquals("HNHBK:1:3+000000000057+300+0+22'HKEND:2:1+\u00e4bc'HNHBS:3:1+1'",
+            new String(before, StandardCharsets.ISO_8859_1));
+        Assert.assertEquals("HNHBK:1:3+000000000058+300+0+22'HKEND:2:1+\u00e4bc'HNHBS:3:1+1'",
+            new String(msg.toByteArray(), StandardCharsets.ISO_8859_1));
+        Assert.assertEquals((byte) 0xE4, msg.toByteArray()[42]);
+        Assert.assertNotSame(msg.toByteArray(), msg.toByteArray());
+    }
+}
@@ -0,0 +1,48 @@
+package org.kapott.hbci4java.msg;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kapott.hbci.manager.MessageFactory;
+import org.kapott.hbci.manager.SyntaxSpecRegistry;
+import org.kapott.hbci.protocol.Message;
+import org.kapott.hbci.protocol.SyntaxModel;
+import org.kapott.hbci4java.AbstractTest;
+
+/**
+ * Testet das Erzeugen von Nachrichten aus einer Vorlage.
+ */
+public class TestMessageTemplate extends AbstractTest {
+
+    /**
+     * Testet, dass aus der Vorlage erzeugte Nachrichten unabhängig voneinander sind
+     * und der direkt erzeugten Nachricht entsprechen.
+     */
+    @Test
+    public void test001() {
+        SyntaxModel model = SyntaxSpecRegistry.getSpec("300").getSyntaxModel();
+
+        Message first = MessageFactory.createMessage("DialogEndAnon", model);
+        fill(first, "abc");
+        first.complete();
+
+        Message second = MessageFactory.createMessage("DialogEndAnon", model);
+        fill(second, "xyz");
+        second.complete();
+
+        Message direct = new Message("DialogEndAnon", model);
+        fill(direct, "xyz");
+        direct.complete();
+
+        Assert.assertNotSame(first, second);
+        Assert.assertEquals("abc", first.getValueOfDE("DialogEndAnon.DialogEndS.dialogid"));
+        Assert.assertEquals("xyz", second.getValueOfDE("DialogEndAnon.DialogEndS.dialogid"));
+        Assert.assertEquals(direct.toString(0), second.toString(0));
+    }
+
+    private static void fill(Message msg, String dialogId) {
+        msg.rawSet("DialogEndS.dialogid", dialogId);
+        msg.rawSet("MsgHead.dialogid", "0");
+        msg.rawSet("MsgHead.msgnum", "1");
+        msg.rawSet("MsgTail.msgnum", "1");
+    }
+}
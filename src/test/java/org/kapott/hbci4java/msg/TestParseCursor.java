@@ -0,0 +1,188 @@
+package org.kapott.hbci4java.msg;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kapott.hbci.comm.CommPinTan;
+import org.kapott.hbci.datatypes.ParseCursor;
+import org.kapott.hbci.datatypes.SyntaxAN;
+import org.kapott.hbci.datatypes.SyntaxBin;
+import org.kapott.hbci.datatypes.SyntaxDE;
+import org.kapott.hbci.datatypes.factory.SyntaxDEFactory;
+import org.kapott.hbci.exceptions.ParseErrorException;
+import org.kapott.hbci.manager.SyntaxSpecRegistry;
+import org.kapott.hbci.protocol.Message;
+import org.kapott.hbci.protocol.SyntaxModel;
+import org.kapott.hbci4java.AbstractTest;
+
+import java.io.InputStream;
+import java.util.HashMap;
+
+/**
+ * Testet das Parsen mit {@link ParseCursor}.
+ */
+public class TestParseCursor extends AbstractTest {
+
+    /**
+     * Testet, dass mit "?" maskierte Trennzeichen nicht als Trennzeichen gelten.
+     */
+    @Test
+    public void test001() throws Exception {
+        ParseCursor res = new ParseCursor("HNHBK+ab?+c??:d?'e'rest");
+        res.skip(5);
+
+        Assert.assertEquals(8, SyntaxDE.findNextDelim(res, 1));
+
+        SyntaxAN an = new SyntaxAN(res, 0, 0);
+        Assert.assertEquals("ab+c?", an.toString());
+        Assert.assertEquals(":d?'e'rest", res.toString());
+        Assert.assertEquals(13, res.getPosition());
+
+        an = new SyntaxAN(res, 0, 0);
+        Assert.assertEquals("d'e", an.toString());
+        Assert.assertEquals("'rest", res.toString());
+    }
+
+    /**
+     * Testet, dass Trennzeichen in Binärdaten übersprungen werden.
+     */
+    @Test
+    public void test002() throws Exception {
+        ParseCursor res = new ParseCursor("x+@5@a+b':+@2@?'+y");
+        res.skip(1);
+
+        Assert.assertEquals(9, SyntaxDE.findNextDelim(res, 1));
+        Assert.assertEquals("a+b':", new SyntaxBin(res, 0, 0).toString());
+        Assert.assertEquals("?'", new SyntaxBin(res, 0, 0).toString());
+        Assert.assertEquals("+y", res.toString());
+        Assert.assertEquals(-1, res.indexOf('\'', 0));
+    }
+
+    /**
+     * Testet die Suche nach Trennzeichen am Ende der Nachricht.
+     */
+    @Test
+    public void test003() throws Exception {
+        ParseCursor res = new ParseCursor("ab+cd");
+        res.skip(3);
+        Assert.assertEquals(2, SyntaxDE.findNextDelim(res, 0));
+        Assert.assertEquals(2, SyntaxDE.findNextDelim(res, 2));
+
+        res.skip(2);
+        Assert.assertEquals(0, res.length());
+        Assert.assertEquals(0, SyntaxDE.findNextDelim(res, 0));
+        Assert.assertEquals(-1, res.indexOf('+', 0));
+        try {
+            res.skip(1);
+            Assert.fail("position after end accepted");
+        } catch (IndexOutOfBoundsException e) {
+            // erwartet
+        }
+
+        // maskierung bzw. binaerdaten, die hinter dem ende weitergehen wuerden
+        Assert.assertEquals(3, SyntaxDE.findNextDelim(new ParseCursor("ab?"), 0));
+        Assert.assertEquals(7, SyntaxDE.findNextDelim(new ParseCursor("@10@abc"), 0));
+        try {
+            new SyntaxBin(new ParseCursor("@10@abc"), 0, 0);
+            Assert.fail("truncated binary accepted");
+        } catch (IndexOutOfBoundsException e) {
+            // erwartet
+        }
+    }
+
+    /**
+     * Testet, dass die geparsten BPD wieder genau die empfangene Nachricht ergeben.
+     */
+    @Test
+    public void test004() throws Exception {
+        String[][] files = {
+            {"bpd/bpd-raw.txt", "220"},
+            {"bpd/bpd2-raw.txt", "300"},
+            {"bpd/bpd3-raw.txt", "220"},
+        };
+
+        for (String[] file : files) {
+            String data = getRaw(file[0]);
+            SyntaxModel model = SyntaxSpecRegistry.getSpec(file[1]).getSyntaxModel();
+            Message msg = new Message("DialogInitAnonRes", data, model, Message.CHECK_SEQ, true);
+            Assert.assertEquals(file[0], data, msg.toString(0));
+        }
+    }
+
+    /**
+     * Testet, dass die aus geparsten UPD erzeugte Nachricht wieder die gleichen Daten
+     * ergibt. Leere Elemente am Ende eines Segments werden beim Erzeugen weggelassen,
+     * deshalb wird hier nicht der String verglichen.
+     */
+    @Test
+    public void test005() throws Exception {
+        SyntaxModel model = SyntaxSpecRegistry.getSpec("300").getSyntaxModel();
+        Message msg = new Message("SynchRes", getRaw("bpd/bpd-allowedgv2.txt"), model, Message.CHECK_SEQ, false);
+        Message again = new Message("SynchRes", msg.toString(0), model, Message.CHECK_SEQ, false);
+
+        HashMap<String, String> expected = new HashMap<>();
+        msg.extractValues(expected);
+        HashMap<String, String> actual = new HashMap<>();
+        again.extractValues(actual);
+        Assert.assertEquals(expected, actual);
+        Assert.assertTrue(expected.containsKey("SynchRes.UPD.KInfo.AllowedGV.code"));
+    }
+
+    /**
+     * Testet, dass die Prüfung der Datentypen nur Werte ablehnt, an denen auch das
+     * Parsen scheitert.
+     */
+    @Test
+    public void test006() throws Exception {
+        String[] types = {"Bin", "Ctr", "Cur", "Date", "Dig", "Float", "JN", "Num", "Time"};
+        String[] values = {"", "0", "01", "12", "x", "J", "EUR", "280", "20201017", "120000", "1,5", "@2@ab",
+            "@5@ab", "@x@", "abc"};
+
+        for (String type : types) {
+            SyntaxDEFactory.Creator creator = SyntaxDEFactory.findCreator(type);
+            for (String value : values) {
+                if (creator.accepts(new ParseCursor("+" + value + "'"), 1, 1 + value.length(), 0))
+                    continue;
+                try {
+                    creator.parse("path", new ParseCursor("+" + value + "'"), 0, 0);
+                    Assert.fail(type + " rejected " + value);
+                } catch (ParseErrorException e) {
+                    // erwartet
+                }
+            }
+        }
+
+        Assert.assertFalse(SyntaxDEFactory.findCreator("Num").accepts("01", 0, 2, 0));
+        Assert.assertFalse(SyntaxDEFactory.findCreator("JN").accepts("x", 0, 1, 0));
+        Assert.assertFalse(SyntaxDEFactory.findCreator("Bin").accepts("@5@ab", 0, 5, 0));
+        Assert.assertFalse(SyntaxDEFactory.findCreator("Bin").accepts("@0@", 0, 3, 1));
+        Assert.assertTrue(SyntaxDEFactory.findCreator("Bin").accepts("@2@ab", 0, 5, 1));
+    }
+
+    /**
+     * Testet, dass der Cursor den am weitesten hinten liegenden Fehlschlag behält.
+     */
+    @Test
+    public void test007() throws Exception {
+        ParseCursor res = new ParseCursor("ab:c");
+        Assert.assertNull(res.getMismatchReason());
+
+        res.skip(2);
+        res.setDelimiterMismatch("A.B", '+');
+        res.setPosition(1);
+        res.setMismatch("A.C", ParseCursor.Mismatch.EMPTY);
+
+        Assert.assertEquals(2, res.getMismatchPosition());
+        Assert.assertEquals("A.B", res.getMismatchPath());
+        Assert.assertEquals(ParseCursor.Mismatch.PREDELIM, res.getMismatchCode());
+        Assert.assertTrue(res.getMismatchReason(), res.getMismatchReason().contains("\"+\""));
+        Assert.assertTrue(res.getMismatchReason(), res.getMismatchReason().contains("\":\""));
+    }
+
+    // die nachricht steht komplett in einer zeile; gelesen wird sie wie beim
+    // empfang als ISO-8859-1, damit sie sich unveraendert wieder serialisieren laesst
+    private static String getRaw(String name) throws Exception {
+        try (InputStream in = getStream(name)) {
+            return new String(in.readAllBytes(), CommPinTan.ENCODING).trim();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package org.kapott.hbci4java.msg;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kapott.hbci.GV.GVSaldoReq;
+import org.kapott.hbci.GV_Result.GVRSaldoReq;
+import org.kapott.hbci.manager.MessageFactory;
+import org.kapott.hbci.manager.SyntaxSpecRegistry;
+import org.kapott.hbci.passport.PinTanPassport;
+import org.kapott.hbci.protocol.Message;
+import org.kapott.hbci.status.HBCIMsgStatus;
+import org.kapott.hbci.status.HBCIRetVal;
+import org.kapott.hbci.structures.Konto;
+import org.kapott.hbci4java.AbstractTest;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.kapott.hbci4java.bpd.HITANSTest.getBPD;
+
+/**
+ * Testet die nach Segmentnummer gruppierten Antwortsegmente, die Rückmeldungen und
+ * den Zugriff auf die gesendete Nachricht in {@link HBCIMsgStatus}.
+ */
+public class TestResponseSegments extends AbstractTest {
+
+    /**
+     * Testet Gruppierung, Reihenfolge und Daten der Antwortsegmente.
+     */
+    @Test
+    public void test001() throws Exception {
+        Map<String, String> data = new HashMap<>();
+        data.put("MsgHead.msgnum", "2");
+        data.put("GVRes_10.KUmsZeitRes5.SegHead.ref", "3");
+        data.put("GVRes_10.KUmsZeitRes5.booked", "b");
+        data.put("GVRes.KUmsZeitRes5.SegHead.ref", "3");
+        data.put("GVRes.KUmsZeitRes5.booked", "a");
+        data.put("GVRes_2.SaldoRes5.SegHead.ref", "4");
+        data.put("GVRes_2.SaldoRes5.KInfo.number", "1234");
+
+        HBCIMsgStatus status = new HBCIMsgStatus();
+        status.addData(data);
+
+        List<HBCIMsgStatus.ResponseSegment> segments = status.getResponseSegments(3);
+        Assert.assertEquals(2, segments.size());
+        Assert.assertEquals("GVRes.KUmsZeitRes5", segments.get(0).getHeader());
+        Assert.assertEquals("a", segments.get(0).getData().get("booked"));
+        Assert.assertEquals("GVRes_10.KUmsZeitRes5", segments.get(1).getHeader());
+        Assert.assertEquals(2, segments.get(1).getData().size());
+
+        Assert.assertEquals("1234", status.getResponseSegment("GVRes_2.SaldoRes5").getData().get("KInfo.number"));
+        Assert.assertTrue(status.getResponseSegments(5).isEmpty());
+
+        // neue daten verwerfen den index
+        data.clear();
+        data.put("GVRes_3.SaldoRes5.SegHead.ref", "5");
+        status.addData(data);
+        Assert.assertEquals(1, status.getResponseSegments(5).size());
+    }
+
+    /**
+     * Testet Element-Pfade und Werte der gesendeten Nachricht.
+     */
+    @Test
+    public void test002() throws Exception {
+        Message msg = new Message("DialogEndAnon", SyntaxSpecRegistry.getSpec("300").getSyntaxModel());
+        msg.rawSet("DialogEndS.dialogid", "abc");
+        msg.rawSet("MsgHead.dialogid", "0");
+        msg.rawSet("MsgHead.msgnum", "1");
+        msg.rawSet("MsgTail.msgnum", "1");
+        msg.complete();
+
+        HBCIMsgStatus status = new HBCIMsgStatus();
+        Assert.assertNull(status.getElementPath("1"));
+        Assert.assertNull(status.getSentValue("DialogEndAnon.MsgHead.dialogid"));
+
+        status.setSentMessage(msg);
+        Assert.assertEquals("DialogEndAnon.MsgHead", status.getElementPath("1"));
+        Assert.assertEquals("DialogEndAnon.DialogEndS.SegHead", status.getElementPath("2:1"));
+        Assert.assertEquals("abc", status.getSentValue(status.getElementPath("2") + ".dialogid"));
+        Assert.assertEquals("1", status.getSentValue("DialogEndAnon.MsgHead.msgnum"));
+        Assert.assertNull(status.getSentValue("DialogEndAnon.MsgHead"));
+        Assert.assertFalse(status.getData().containsKey("1"));
+        // keine auftragssegmente in der gesendeten nachricht
+        Assert.assertEquals(-1, status.findTaskSegment());
+    }
+
+    /**
+     * Testet, dass die Antwort auf einen Auftrag über {@link HBCIMsgStatus#findTaskSegment()}
+     * im Job-Result des Auftrags landet.
+     */
+    @Test
+    public void test003() throws Exception {
+        PinTanPassport passport = new PinTanPassport("300", new HashMap<>(), null, null);
+        passport.setBPD(getBPD("bpd/bpd2-formatted.txt", "300"));
+
+        GVSaldoReq job = new GVSaldoReq(passport);
+        job.setParam("my", new Konto("DE", "25040090", "1234567890"));
+        job.verifyConstraints();
+        job.setIdx(0);
+
+        Message sent = MessageFactory.createMessage("CustomMsg", passport.getSyntaxSpec().getSyntaxModel());
+        job.getLowlevelParams().forEach((key, value) -> sent.rawSet("GV." + key, value));
+        sent.rawSet("MsgHead.dialogid", "abc");
+        sent.rawSet("MsgHead.msgnum", "2");
+        sent.rawSet("MsgTail.msgnum", "2");
+        sent.complete();
+
+        String st = "HNHBK:1:3+000000000000+300+abc+2+abc:2'" +
+            "HIRMG:2:2+0010::Nachricht entgegengenommen.'" +
+            "HIRMS:3:2:2+0020::Auftrag ausgeführt.'" +
+            "HISAL:4:6:2+1234567890::280:25040090+Girokonto+EUR+C:1500,:EUR:20261017'" +
+            "HNHBS:5:1+2'";
+        Message response = new Message("CustomMsgRes", st, passport.getSyntaxSpec().getSyntaxModel(),
+            Message.CHECK_SEQ, true);
+
+        HBCIMsgStatus status = new HBCIMsgStatus();
+        status.setSentMessage(sent);
+        status.addData(response.getData());
+
+        int segnum = status.findTaskSegment();
+        Assert.assertEquals(2, segnum);
+        job.fillJobResult(status, segnum);
+
+        GVRSaldoReq result = (GVRSaldoReq) job.getJobResult();
+        Assert.assertEquals("abc", result.getDialogId());
+        Assert.assertEquals("2", result.getMsgNum());
+        Assert.assertEquals(1, result.getJobStatus().getRetVals().size());
+        Assert.assertEquals(1, result.getEntries().size());
+        BigDecimal booked = result.getEntries().get(0).ready.value.getBigDecimalValue();
+        Assert.assertEquals(0, new BigDecimal("1500").compareTo(booked));
+    }
+
+    /**
+     * Testet, dass die Rückmeldungen aus der geparsten Nachricht dieselben sind wie
+     * die aus den Daten der Nachricht.
+     */
+    @Test
+    public void test004() throws Exception {
+        Message sent = new Message("DialogEndAnon", SyntaxSpecRegistry.getSpec("300").getSyntaxModel());
+        sent.rawSet("DialogEndS.dialogid", "abc");
+        sent.rawSet("MsgHead.dialogid", "abc");
+        sent.rawSet("MsgHead.msgnum", "2");
+        sent.rawSet("MsgTail.msgnum", "2");
+        sent.complete();
+
+        String st = "HNHBK:1:3+000000000000+300+abc+2+abc:2'" +
+            "HIRMG:2:2+0010::Nachricht entgegengenommen.+3060::Teilweise liegen Warnungen vor.'" +
+            "HIRMS:3:2:2+0100::Dialog beendet.+3920:2:Zugelassene Verfahren:942:946'" +
+            "HNHBS:4:1+2'";
+        Message response = new Message("DialogEndAnonRes", st, SyntaxSpecRegistry.getSpec("300").getSyntaxModel(),
+            Message.CHECK_SEQ, true);
+
+        HBCIMsgStatus status = new HBCIMsgStatus();
+        status.setSentMessage(sent);
+        status.addResponse(response);
+
+        HBCIMsgStatus expected = new HBCIMsgStatus();
+        expected.setSentMessage(sent);
+        expected.addData(response.getData());
+
+        Assert.assertEquals(expected.getData(), status.getData());
+        Assert.assertEquals(2, status.globStatus.getRetVals().size());
+        Assert.assertEquals(expected.globStatus.getRetVals(), status.globStatus.getRetVals());
+        Assert.assertEquals(2, status.segStatus.getRetVals().size());
+        Assert.assertEquals(expected.segStatus.getRetVals(), status.segStatus.getRetVals());
+
+        HBCIRetVal w3920 = status.segStatus.getRetVals().get(1);
+        Assert.assertEquals("2", w3920.segref);
+        Assert.assertEquals("2", w3920.deref);
+        Assert.assertArrayEquals(new String[]{"942", "946"}, w3920.params);
+        Assert.assertEquals(expected.segStatus.getRetVals().get(1).element, w3920.element);
+        Assert.assertEquals("DialogEndAnon.DialogEndS", status.segStatus.getRetVals().get(0).element);
+        Assert.assertNull(status.globStatus.getRetVals().get(0).element);
+    }
+}
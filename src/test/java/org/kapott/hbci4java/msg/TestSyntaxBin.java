@@ -0,0 +1,34 @@
+package org.kapott.hbci4java.msg;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kapott.hbci.datatypes.MessageBuffer;
+import org.kapott.hbci.datatypes.ParseCursor;
+import org.kapott.hbci.datatypes.SyntaxBin;
+import org.kapott.hbci4java.AbstractTest;
+
+/**
+ * Testet das Parsen von Binärdaten.
+ */
+public class TestSyntaxBin extends AbstractTest {
+
+    /**
+     * Testet, dass die Sicht auf die Binärdaten den gleichen Inhalt liefert wie der String.
+     */
+    @Test
+    public void test001() throws Exception {
+        ParseCursor res = new ParseCursor("+@6@ab'c+Ä+next");
+        SyntaxBin bin = new SyntaxBin(res, 0, 0);
+
+        Assert.assertEquals("+next", res.toString());
+        Assert.assertEquals(6, bin.length());
+
+        MessageBuffer sb = new MessageBuffer();
+        bin.appendTo(sb);
+        Assert.assertEquals("@6@ab'c+Ä", sb.toString());
+
+        Assert.assertEquals("ab'c+Ä", bin.toString());
+        Assert.assertEquals("@6@ab'c+Ä", bin.toString(0));
+        Assert.assertEquals(6, bin.length());
+    }
+}
@@ -0,0 +1,65 @@
+package org.kapott.hbci4java.msg;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kapott.hbci.manager.DocumentFactory;
+import org.kapott.hbci.manager.SyntaxSpec;
+import org.kapott.hbci.manager.SyntaxSpecRegistry;
+import org.kapott.hbci.protocol.Message;
+import org.kapott.hbci.protocol.SyntaxDef;
+import org.kapott.hbci.protocol.SyntaxModel;
+import org.kapott.hbci4java.AbstractTest;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Testet das vorkompilierte Syntax-Modell.
+ */
+public class TestSyntaxModel extends AbstractTest {
+
+    /**
+     * Testet, dass das Modell pro HBCI-Version nur einmal kompiliert wird.
+     */
+    @Test
+    public void test001() {
+        SyntaxSpec spec = SyntaxSpecRegistry.getSpec("300");
+        SyntaxModel model = spec.getSyntaxModel();
+        Assert.assertSame(model, SyntaxSpecRegistry.getSpec("300").getSyntaxModel());
+        Assert.assertSame(spec.getDocument(), model.getDocument());
+    }
+
+    /**
+     * Testet die Attribute der kompilierten Definitionen.
+     */
+    @Test
+    public void test002() {
+        SyntaxModel model = SyntaxSpecRegistry.getSpec("300").getSyntaxModel();
+
+        SyntaxDef anon = model.getDef("MSG", "DialogInitAnon");
+        Assert.assertTrue(anon.isDontSign());
+        Assert.assertTrue(anon.isDontCrypt());
+        Assert.assertFalse(model.getDef("MSG", "DialogInit").isDontSign());
+
+        Message msg = new Message("DialogInitAnon", model);
+        Assert.assertSame(anon, msg.getSyntaxDef());
+        Assert.assertSame(model.getDocument(), msg.getDocument());
+        Assert.assertEquals("HKIDN", msg.getValueOfDE("DialogInitAnon.Idn.SegHead.code"));
+    }
+
+    /**
+     * Testet, dass ein selbst kompiliertes Modell nirgends global festgehalten wird.
+     */
+    @Test
+    public void test003() throws Exception {
+        SyntaxModel model = SyntaxModel.compile(DocumentFactory.createDocument("300"));
+        new Message("DialogInitAnon", model);
+
+        WeakReference<SyntaxModel> ref = new WeakReference<>(model);
+        model = null;
+        for (int i = 0; i < 50 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        Assert.assertNull(ref.get());
+    }
+}
@@ -0,0 +1,53 @@
+package org.kapott.hbci4java.msg;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kapott.hbci.exceptions.HBCI_Exception;
+import org.kapott.hbci.exceptions.ParseErrorException;
+import org.kapott.hbci.manager.SyntaxSpecRegistry;
+import org.kapott.hbci.protocol.Message;
+import org.kapott.hbci.protocol.SyntaxModel;
+import org.kapott.hbci4java.AbstractTest;
+
+/**
+ * Testet das Parsen abgeschnittener Nachrichten.
+ */
+public class TestTruncatedMessage extends AbstractTest {
+
+    /**
+     * Testet, dass eine mitten in einem Segment abgeschnittene Nachricht mit einem
+     * Fehler abgelehnt wird, statt den Parser endlos laufen zu lassen.
+     */
+    @Test(timeout = 30000)
+    public void test001() throws Exception {
+        String data = getFile("bpd/bpd2-raw.txt");
+        SyntaxModel model = SyntaxSpecRegistry.getSpec("300").getSyntaxModel();
+
+        try {
+            new Message("DialogInitAnonRes", data.substring(0, 86), model, Message.CHECK_SEQ, true);
+            Assert.fail("truncated message accepted");
+        } catch (ParseErrorException e) {
+            // die meldung nennt das element, bei dem die nachricht zu ende war
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("position 86"));
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("DialogInitAnonRes.RetGlob.RetVal.parm"));
+        }
+    }
+
+    /**
+     * Testet Nachrichten, die an verschiedenen Stellen abgeschnitten wurden.
+     */
+    @Test(timeout = 60000)
+    public void test002() throws Exception {
+        String data = getFile("bpd/bpd2-raw.txt");
+        SyntaxModel model = SyntaxSpecRegistry.getSpec("300").getSyntaxModel();
+
+        for (int len = 1; len < data.length() - 1; len += 97) {
+            try {
+                new Message("DialogInitAnonRes", data.substring(0, len), model, Message.CHECK_SEQ, true);
+                Assert.fail("message truncated at " + len + " accepted");
+            } catch (HBCI_Exception e) {
+                // erwartet, z.B. ParseErrorException oder NoValidValueException
+            }
+        }
+    }
+}
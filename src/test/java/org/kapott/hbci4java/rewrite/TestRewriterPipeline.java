@@ -0,0 +1,71 @@
+package org.kapott.hbci4java.rewrite;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kapott.hbci.exceptions.HBCI_Exception;
+import org.kapott.hbci.rewrite.RInvalidSegment;
+import org.kapott.hbci.rewrite.RMissingMsgRef;
+import org.kapott.hbci.rewrite.RewriterPipeline;
+import org.kapott.hbci4java.AbstractTest;
+
+/**
+ * Testet die Pipeline der Rewriter.
+ */
+public class TestRewriterPipeline extends AbstractTest {
+
+    /**
+     * Testet, dass die Rewriter pro Konfiguration nur einmal erzeugt werden.
+     */
+    @Test
+    public void test001() throws Exception {
+        RewriterPipeline pipeline = RewriterPipeline.forConfig("InvalidSegment, MissingMsgRef");
+        Assert.assertSame(pipeline, RewriterPipeline.forConfig("InvalidSegment, MissingMsgRef"));
+        Assert.assertSame(RewriterPipeline.EMPTY, RewriterPipeline.forConfig(null));
+        Assert.assertSame(RewriterPipeline.EMPTY, RewriterPipeline.forConfig(" "));
+
+        Assert.assertEquals(2, pipeline.getRewriters().size());
+        Assert.assertTrue(pipeline.getRewriters().get(0) instanceof RInvalidSegment);
+        Assert.assertTrue(pipeline.getRewriters().get(1) instanceof RMissingMsgRef);
+    }
+
+    /**
+     * Testet, dass die Rewriter in den Hooks angewendet werden, die sie überschreiben.
+     */
+    @Test
+    public void test002() throws Exception {
+        RewriterPipeline pipeline = RewriterPipeline.forConfig("InvalidSegment");
+        String msg = "HNHBK:1:3+000000000123+300+0+1'IIDIA:5:1+x'HNHBS:6:1+1'";
+
+        Assert.assertEquals("HNHBK:1:3+000000000123+300+0+1'HNHBS:6:1+1'", pipeline.incomingClearText(msg));
+        Assert.assertSame(msg, pipeline.incomingCrypted(msg, null, "DialogInit"));
+    }
+
+    /**
+     * Testet, dass ein unbekannter Rewriter gemeldet wird.
+     */
+    @Test(expected = HBCI_Exception.class)
+    public void test003() throws Exception {
+        RewriterPipeline.forConfig("DoesNotExist");
+    }
+
+    /**
+     * Testet mehrere Rewriter, die in einem Durchgang über die Segmente angewendet werden.
+     */
+    @Test
+    public void test004() throws Exception {
+        RewriterPipeline pipeline = RewriterPipeline.forConfig("InvalidSegment,WrongStatusSegOrder," +
+            "WrongSequenceNumbers,SigIdLeadingZero");
+        String msg = "HNHBK:1:3+000000000123+300+4711+2'" +
+            "HNSHK:2:4+PIN:1+999+0815+1+1+00042+1+1:20200101:120000+1:999:1+6:10:16+280:12345678:test:S:0:0'" +
+            "IIDIA:3:1+x'" +
+            "HIRMS:7:2:4+3050::Teil?'weise'" +
+            "HIRMG:9:2+0010::Nachricht entgegengenommen'" +
+            "HNHBS:12:1+2'";
+
+        Assert.assertEquals("HNHBK:1:3+000000000123+300+4711+2'" +
+            "HNSHK:2:4+PIN:1+999+0815+1+1+42+1+1:20200101:120000+1:999:1+6:10:16+280:12345678:test:S:0:0'" +
+            "HIRMG:3:2+0010::Nachricht entgegengenommen'" +
+            "HIRMS:4:2:4+3050::Teil?'weise'" +
+            "HNHBS:5:1+2'", pipeline.incomingClearText(msg));
+    }
+}